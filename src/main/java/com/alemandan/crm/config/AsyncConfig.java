@@ -6,10 +6,15 @@ import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Async configuration for sending emails asynchronously after transaction commit.
  * This prevents SMTP timeouts from blocking HTTP responses.
+ * Also provides the receipt rendering pool so checkout does not wait for iText,
+ * the report job pool so heavy admin reports do not run on Tomcat threads,
+ * the pool that writes live sales events to admin dashboards,
+ * and the pool that builds the sections of the advanced sales report in parallel.
  */
 @Configuration
 @EnableAsync
@@ -18,6 +23,8 @@ public class AsyncConfig {
     /**
      * Thread pool executor for async email operations.
      * Core pool: 2 threads, Max: 5 threads, Queue: 50 tasks
+     * Also sends the batches claimed by MailOutboxService; when the queue is full the rest of the
+     * batch stays in mail_outbox for the next dispatch.
      */
     @Bean(name = "mailExecutor")
     public Executor mailExecutor() {
@@ -29,4 +36,94 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    /**
+     * Thread pool executor for receipt PDF rendering (ReciboService).
+     * Core pool: 2 threads, Max: 2 threads, Queue: 100 tasks.
+     * Bounded on purpose: rendering is CPU-bound and must not starve request threads;
+     * when the queue is full the task is rejected and the receipt is rendered on the next request.
+     */
+    @Bean(name = "reciboExecutor")
+    public Executor reciboExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("recibo-async-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Thread pool executor for background report jobs (ReportJobService).
+     * Core pool: 2 threads, Max: 2 threads, Queue: 20 tasks.
+     * Separate from the web threads: month-end exports queue here instead of holding Tomcat threads
+     * needed by the tills. When the queue is full the submit is rejected and the admin retries later.
+     */
+    @Bean(name = "reportJobExecutor")
+    public Executor reportJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(20);
+        executor.setThreadNamePrefix("report-job-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Thread pool executor for live dashboard events (VentasEnVivoService).
+     * Core pool: 2 threads, Max: 4 threads, Queue: 20 tasks (one pending write per subscriber).
+     * A slow client only blocks one of these threads; when the queue is full the write is skipped
+     * and that client gets the coalesced update on the next cycle.
+     */
+    @Bean(name = "dashboardStreamExecutor")
+    public Executor dashboardStreamExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(20);
+        executor.setThreadNamePrefix("dashboard-sse-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Thread pool executor for the sections of the advanced sales report (ReportService).
+     * Core pool: 3 threads, Max: 3 threads, Queue: 30 tasks.
+     * Each section holds a DB connection while its query runs; with the Hikari pool at 5 this leaves
+     * connections for the tills even when a report is being built. When the queue is full the section
+     * runs on the calling thread (CallerRunsPolicy) instead of failing the report.
+     */
+    @Bean(name = "reportSectionExecutor")
+    public Executor reportSectionExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(3);
+        executor.setMaxPoolSize(3);
+        executor.setQueueCapacity(30);
+        executor.setThreadNamePrefix("report-section-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Thread pool executor for bulk receipt exports (ReciboService.exportarLote).
+     * Core pool: 2 threads, Max: 2 threads, Queue: 16 tasks.
+     * Separate from reciboExecutor so a month of receipts does not delay the till's receipts.
+     * Rendering is CPU-only (the sales are already loaded); each export keeps at most
+     * app.recibos.lote.ventana receipts in flight, and when the queue is full the receipt is
+     * rendered on the request thread (CallerRunsPolicy).
+     */
+    @Bean(name = "reciboLoteExecutor")
+    public Executor reciboLoteExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(16);
+        executor.setThreadNamePrefix("recibo-lote-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
 }
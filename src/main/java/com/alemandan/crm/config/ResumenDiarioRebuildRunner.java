@@ -0,0 +1,56 @@
+package com.alemandan.crm.config;
+
+import com.alemandan.crm.service.ResumenDiarioService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Backfill del resumen diario de ventas al arrancar, sólo si se pide por argumento:
+ *
+ *   java -jar crm.jar --rebuild-resumen-diario [--desde=2024-01-01] [--hasta=2024-12-31]
+ *
+ * Sin --desde se reconstruye desde 2000-01-01; sin --hasta, hasta hoy.
+ * Se procesa mes a mes para no mantener una única transacción enorme sobre detalle_venta.
+ */
+@Component
+public class ResumenDiarioRebuildRunner implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResumenDiarioRebuildRunner.class);
+
+    static final String OPCION = "rebuild-resumen-diario";
+
+    @Autowired
+    private ResumenDiarioService resumenDiarioService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(OPCION)) return;
+
+        LocalDate desde = fecha(args, "desde", LocalDate.of(2000, 1, 1));
+        LocalDate hasta = fecha(args, "hasta", LocalDate.now());
+        logger.info("Reconstruyendo resumen diario de ventas {} - {}", desde, hasta);
+
+        int total = 0;
+        LocalDate inicio = desde;
+        while (!inicio.isAfter(hasta)) {
+            LocalDate fin = inicio.withDayOfMonth(inicio.lengthOfMonth());
+            if (fin.isAfter(hasta)) fin = hasta;
+            total += resumenDiarioService.reconstruir(inicio, fin);
+            inicio = fin.plusDays(1);
+        }
+        logger.info("Resumen diario reconstruido: {} filas", total);
+    }
+
+    private LocalDate fecha(ApplicationArguments args, String nombre, LocalDate porDefecto) {
+        List<String> valores = args.getOptionValues(nombre);
+        if (valores == null || valores.isEmpty() || valores.get(0).isBlank()) return porDefecto;
+        return LocalDate.parse(valores.get(0).trim());
+    }
+}
@@ -0,0 +1,15 @@
+package com.alemandan.crm.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables @Scheduled tasks (e.g. cleanup of expired report job files).
+ * The scheduler pool has one thread per task (spring.task.scheduling.pool.size), so a slow task such as
+ * the product index reload or the mail outbox does not delay the 1 s live-sales broadcast.
+ * Adding a task means raising the pool size.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -47,6 +47,11 @@ public class SecurityConfig {
         http
                 .authenticationProvider(authenticationProvider())
                 .authorizeHttpRequests(auth -> auth
+                        // Los reportes generados en segundo plano se guardan en uploads/reportes:
+                        // sólo se descargan por /ventas/reporte/jobs/{id}/descarga (verifica el dueño)
+                        .requestMatchers("/uploads/reportes/**").denyAll()
+                        // Caché de PDFs (ReportePdfCache): sólo se sirve desde los endpoints de exportación
+                        .requestMatchers("/uploads/reportes-cache/**").denyAll()
                         // Permite POST al endpoint de exportar gráfica a PDF
                         .requestMatchers(HttpMethod.POST, "/admin/ventas/exportar-grafico-pdf").permitAll()
                         // Acceso público (páginas legales y ayuda) + recursos públicos y uploads
@@ -76,6 +81,10 @@ public class SecurityConfig {
                         .requestMatchers("/api/ventas/resumen").authenticated()
                         // Dashboard general (redirigido según rol)
                         .requestMatchers("/dashboard").authenticated()
+                        // Recibos en lote: exportación de contabilidad
+                        .requestMatchers("/admin/ventas/recibos").hasAuthority("ADMIN")
+                        // Métricas de la aplicación (cachés, tiempos de reportes)
+                        .requestMatchers("/actuator/metrics", "/actuator/metrics/**").hasAuthority("ADMIN")
                         // Módulos solo para ADMIN (usar hasAuthority si tus authorities son "ADMIN" / "EMPLEADO")
                         .requestMatchers("/usuarios/**", "/productos/**", "/proveedores/**", "/dashboard-admin", "/dashboard-admin/**").hasAuthority("ADMIN")
                         // Módulos solo para EMPLEADO
@@ -0,0 +1,54 @@
+package com.alemandan.crm.config;
+
+import com.sendgrid.Client;
+import com.sendgrid.SendGrid;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Shared SendGrid client for MailService.
+ * Creating a SendGrid per message also created a new HTTP client (and TLS handshake) per message;
+ * this single instance keeps a small pool of keep-alive connections to the API instead.
+ * The client is thread-safe: mailExecutor threads send through it concurrently.
+ */
+@Configuration
+public class SendGridConfig {
+
+    @Bean(destroyMethod = "close")
+    public Client sendGridHttpClient(@Value("${sendgrid.api.max-conexiones:10}") int maxConexiones,
+                                     @Value("${sendgrid.api.timeout-ms:10000}") int timeoutMs) {
+        return new Client(crearHttpClient(maxConexiones, timeoutMs), false);
+    }
+
+    @Bean
+    public SendGrid sendGrid(Client sendGridHttpClient,
+                             @Value("${sendgrid.api.key:}") String apiKey,
+                             @Value("${sendgrid.api.host:api.sendgrid.com}") String host) {
+        SendGrid sendGrid = new SendGrid(apiKey, sendGridHttpClient);
+        sendGrid.setHost(host);
+        return sendGrid;
+    }
+
+    /**
+     * Pooled HTTP client with the same timeouts as SMTP, so a slow API call cannot hold a mail thread indefinitely.
+     */
+    public static CloseableHttpClient crearHttpClient(int maxConexiones, int timeoutMs) {
+        PoolingHttpClientConnectionManager conexiones = new PoolingHttpClientConnectionManager();
+        conexiones.setMaxTotal(maxConexiones);
+        conexiones.setDefaultMaxPerRoute(maxConexiones);
+        RequestConfig tiempos = RequestConfig.custom()
+                .setConnectTimeout(timeoutMs)
+                .setConnectionRequestTimeout(timeoutMs)
+                .setSocketTimeout(timeoutMs)
+                .build();
+        return HttpClients.custom()
+                .setConnectionManager(conexiones)
+                .setDefaultRequestConfig(tiempos)
+                .build();
+    }
+}
@@ -1,7 +1,6 @@
 package com.alemandan.crm.controller;
 
 import com.alemandan.crm.model.Usuario;
-import com.alemandan.crm.repository.UsuarioRepository;
 import com.alemandan.crm.service.UsuarioService;
 import org.springframework.beans.BeanWrapperImpl;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -31,9 +30,6 @@ public class AdminProfileController {
     @Autowired
     private UsuarioService usuarioService;
 
-    @Autowired
-    private UsuarioRepository usuarioRepository;
-
     @Autowired
     private AuthenticationManager authenticationManager;
 
@@ -82,7 +78,7 @@ public class AdminProfileController {
             usuario.setPassword(encoded);
         }
 
-        usuarioRepository.save(usuario);
+        usuarioService.saveUsuario(usuario);
 
         // Now re-authenticate/set new Authentication in SecurityContext with new credentials
         try {
@@ -160,7 +156,7 @@ public class AdminProfileController {
                 // ignore binding errors
             }
 
-            usuarioRepository.save(usuario);
+            usuarioService.saveUsuario(usuario);
         }
         return "redirect:/dashboard?photoUpdated=1";
     }
@@ -4,8 +4,9 @@ import com.alemandan.crm.events.UsuarioRegistradoEvent;
 import com.alemandan.crm.model.SolicitudRegistro;
 import com.alemandan.crm.model.Usuario;
 import com.alemandan.crm.repository.SolicitudRegistroRepository;
-import com.alemandan.crm.repository.UsuarioRepository;
+import com.alemandan.crm.service.MailOutboxService;
 import com.alemandan.crm.service.MailService;
+import com.alemandan.crm.service.UsuarioService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,11 +25,11 @@ public class AdminSolicitudesController {
     @Autowired
     private SolicitudRegistroRepository solicitudRepo;
     @Autowired
-    private UsuarioRepository usuarioRepo;
+    private UsuarioService usuarioService;
     @Autowired
     private PasswordEncoder passwordEncoder;
     @Autowired
-    private MailService mailService;
+    private MailOutboxService mailOutboxService;
     @Autowired
     private ApplicationEventPublisher eventPublisher;
 
@@ -51,7 +52,7 @@ public class AdminSolicitudesController {
         usuario.setPassword(passwordEncoder.encode(solicitud.getPassword()));
         usuario.setActivo(true);
         usuario.setRol("EMPLEADO");
-        usuario = usuarioRepo.save(usuario);
+        usuario = usuarioService.saveUsuario(usuario);
 
         // Publish event for async email sending after commit
         eventPublisher.publishEvent(new UsuarioRegistradoEvent(usuario.getId()));
@@ -66,8 +67,13 @@ public class AdminSolicitudesController {
         solicitud.setRechazada(true);
         solicitudRepo.save(solicitud);
 
-        // Enviar correo de rechazo
-        mailService.enviarRechazo(solicitud.getEmail(), solicitud.getNombre());
+        // Correo de rechazo: sólo se encola, MailOutboxService lo envía (con reintentos) en segundo plano
+        try {
+            mailOutboxService.encolar(solicitud.getEmail(), MailService.ASUNTO_RECHAZO,
+                    MailService.cuerpoRechazo(solicitud.getNombre()), false);
+        } catch (Exception e) {
+            logger.error("Failed to queue rejection email to {}, but the request was rejected", solicitud.getEmail(), e);
+        }
 
         return "redirect:/admin/solicitudes";
     }
@@ -1,24 +1,35 @@
 package com.alemandan.crm.controller;
 
+import com.alemandan.crm.dto.VentasPagina;
 import com.alemandan.crm.model.Usuario;
 import com.alemandan.crm.model.Producto;
-import com.alemandan.crm.model.Venta;
 import com.alemandan.crm.service.AdminVentaService;
+import com.alemandan.crm.service.ExcelExportService;
 import com.alemandan.crm.service.UsuarioService;
 import com.alemandan.crm.service.ProductoService;
+import com.alemandan.crm.service.ReciboService;
 import com.alemandan.crm.service.ReportService;
+import com.alemandan.crm.service.ReportePdfCache;
+import com.alemandan.crm.util.FileDownloadUtil;
 import com.alemandan.crm.repository.ProductoRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -41,9 +52,18 @@ public class AdminVentaController {
     @Autowired
     private ReportService reportService;
 
+    @Autowired
+    private ExcelExportService excelExportService;
+
     @Autowired
     private ProductoRepository productoRepository;
 
+    @Autowired
+    private ReportePdfCache reportePdfCache;
+
+    @Autowired
+    private ReciboService reciboService;
+
     // Utilidad para limpiar parámetros
     private Long cleanLong(Long val) {
         if (val == null || val == 0) return null;
@@ -54,6 +74,10 @@ public class AdminVentaController {
         return val;
     }
 
+    /**
+     * Listado paginado por cursor: cursorFecha/cursorId son la fecha e id de la última venta de la página
+     * anterior (los devuelve la propia página en el enlace "Siguiente"). size entre 1 y 200 (50 por defecto).
+     */
     @GetMapping
     public String verVentas(
             Model model,
@@ -61,14 +85,22 @@ public class AdminVentaController {
             @RequestParam(required = false) String fechaFin,
             @RequestParam(required = false) Long usuarioId,
             @RequestParam(required = false) Long productoId,
-            @RequestParam(required = false) String metodoPago
+            @RequestParam(required = false) String metodoPago,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime cursorFecha,
+            @RequestParam(required = false) Long cursorId,
+            @RequestParam(required = false) Integer size
     ) {
         usuarioId   = cleanLong(usuarioId);
         productoId  = cleanLong(productoId);
         metodoPago  = cleanString(metodoPago);
 
-        List<Venta> ventas = adminVentaService.filtrarVentas(fechaInicio, fechaFin, usuarioId, productoId, metodoPago);
-        model.addAttribute("ventas", ventas);
+        VentasPagina pagina = adminVentaService.paginarVentas(fechaInicio, fechaFin, usuarioId, productoId, metodoPago,
+                cursorFecha, cursorId, size);
+        model.addAttribute("ventas", pagina.getFilas());
+        model.addAttribute("pagina", pagina);
+        model.addAttribute("esPrimeraPagina", cursorFecha == null || cursorId == null);
+        model.addAttribute("ventasPorEmpleado",
+                adminVentaService.totalesPorEmpleado(fechaInicio, fechaFin, usuarioId, productoId, metodoPago));
 
         List<Usuario> empleados = usuarioService.listarEmpleados();
         model.addAttribute("empleados", empleados);
@@ -82,6 +114,7 @@ public class AdminVentaController {
     /**
      * Exportar resumen PDF (integrado con ReportService).
      * Reemplaza la implementación anterior para usar el formato estilizado.
+     * Se sirve desde ReportePdfCache (ETag / 304) mientras no cambien las ventas del rango.
      */
     @GetMapping("/exportar-pdf")
     public void exportarPdf(
@@ -90,6 +123,7 @@ public class AdminVentaController {
             @RequestParam(required = false) Long usuarioId,
             @RequestParam(required = false) Long productoId,
             @RequestParam(required = false) String metodoPago,
+            HttpServletRequest request,
             HttpServletResponse response
     ) {
         try {
@@ -118,9 +152,6 @@ public class AdminVentaController {
             LocalDateTime start = fromDate.atStartOfDay();
             LocalDateTime end = toDate.atTime(23, 59, 59);
 
-            // Generar PDF con ReportService (resumen estilizado)
-            byte[] pdf = reportService.generarResumenVentasPdf(start, end, usuarioId, productoId, metodoPago);
-
             // Construir filename, incluyendo nombre de producto sanitizado si aplica
             String fileSuffix = "";
             if (productoId != null) {
@@ -130,20 +161,32 @@ public class AdminVentaController {
             }
             String filename = "resumen_ventas_" + fromDate + "_" + toDate + fileSuffix + ".pdf";
 
-            response.setContentType("application/pdf");
-            response.setHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
-            response.setContentLength(pdf.length);
+            // Generar PDF con ReportService (resumen estilizado) a disco, o reutilizar el ya generado
+            Long usuario = usuarioId, producto = productoId;
+            String metodo = metodoPago;
+            ReportePdfCache.Clave clave = reportePdfCache.clave("ventas-resumen-admin", start, end, false,
+                    usuarioId, productoId, metodoPago);
 
-            try (OutputStream os = response.getOutputStream()) {
-                os.write(pdf);
-                os.flush();
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+            if (new ServletWebRequest(request, response).checkNotModified(clave.getEtag())) {
+                return;
             }
-            
-            logger.info("PDF admin exportado exitosamente: {} bytes", pdf.length);
+            try (ReportePdfCache.Entrada pdf = reportePdfCache.obtener(clave,
+                    out -> reportService.generarResumenVentasPdf(start, end, usuario, producto, metodo, out))) {
+                response.setDateHeader(HttpHeaders.LAST_MODIFIED, pdf.getModificado());
+                FileDownloadUtil.enviarCanal(response, pdf.getCanal(), MediaType.APPLICATION_PDF_VALUE, filename);
+            }
+
+            logger.info("PDF admin exportado exitosamente: {}", filename);
         } catch (Exception e) {
             logger.error("Error al exportar PDF admin: {}", e.getMessage(), e);
+            if (response.isCommitted()) {
+                // Ya se enviaron páginas del PDF: no se puede cambiar el status
+                return;
+            }
             try {
                 // Send error response with generic message (detailed error already logged)
+                response.reset();
                 response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, 
                     "No se pudo generar el PDF. Por favor, intente nuevamente o contacte al administrador.");
             } catch (Exception sendErrorException) {
@@ -153,6 +196,61 @@ public class AdminVentaController {
         }
     }
 
+    /**
+     * Recibos de muchas ventas en una descarga (contabilidad: los de un día o de un cajero), en orden de fecha.
+     * formato=pdf (por defecto) une todas las páginas en un PDF; formato=zip envía un PDF por venta.
+     * Sin fechas exporta el día de hoy; fechaFin por defecto es fechaInicio. El límite de ventas se valida
+     * antes de escribir (400); luego el archivo se escribe en la respuesta a medida que se renderiza.
+     */
+    @GetMapping("/recibos")
+    public void exportarRecibos(
+            @RequestParam(required = false) String fechaInicio,
+            @RequestParam(required = false) String fechaFin,
+            @RequestParam(required = false) Long usuarioId,
+            @RequestParam(required = false, defaultValue = "pdf") String formato,
+            HttpServletResponse response
+    ) throws IOException {
+        usuarioId = cleanLong(usuarioId);
+        ReciboService.FormatoLote formatoLote;
+        LocalDate desde;
+        LocalDate hasta;
+        List<Long> ids;
+        try {
+            formatoLote = ReciboService.FormatoLote.valueOf(formato.trim().toUpperCase());
+            desde = cleanString(fechaInicio) == null ? LocalDate.now() : LocalDate.parse(fechaInicio);
+            hasta = cleanString(fechaFin) == null ? desde : LocalDate.parse(fechaFin);
+            ids = reciboService.idsLote(desde.atStartOfDay(), hasta.atTime(23, 59, 59), usuarioId);
+        } catch (DateTimeParseException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Fecha inválida (formato yyyy-MM-dd)");
+            return;
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        if (ids.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "No hay ventas en el rango indicado");
+            return;
+        }
+
+        String nombre = "recibos_" + desde + (hasta.equals(desde) ? "" : "_" + hasta)
+                + (usuarioId != null ? "_cajero" + usuarioId : "")
+                + (formatoLote == ReciboService.FormatoLote.ZIP ? ".zip" : ".pdf");
+        response.setContentType(formatoLote == ReciboService.FormatoLote.ZIP ? "application/zip" : MediaType.APPLICATION_PDF_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + nombre + "\"");
+        try {
+            int escritos = reciboService.exportarLote(ids, formatoLote, response.getOutputStream());
+            logger.info("Recibos exportados en lote: {} de {} ventas ({})", escritos, ids.size(), nombre);
+        } catch (Exception e) {
+            logger.error("Error exportando recibos en lote {}: {}", nombre, e.getMessage(), e);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "No se pudieron generar los recibos.");
+            }
+            // Si ya se enviaron recibos, el cliente recibe un archivo truncado
+        }
+    }
+
+    // Exportar a Excel con los filtros del listado (todas las páginas), escrito en streaming en la respuesta
     @GetMapping("/exportar-excel")
     public void exportarExcel(
             @RequestParam(required = false) String fechaInicio,
@@ -163,13 +261,34 @@ public class AdminVentaController {
             HttpServletResponse response
     ) {
         try {
-            logger.info("Exportación a Excel deshabilitada - petición recibida con filtros: fechaInicio={}, fechaFin={}, usuarioId={}, productoId={}, metodoPago={}",
+            usuarioId   = cleanLong(usuarioId);
+            productoId  = cleanLong(productoId);
+            metodoPago  = cleanString(metodoPago);
+
+            logger.info("Exportando Excel admin con filtros: fechaInicio={}, fechaFin={}, usuarioId={}, productoId={}, metodoPago={}",
                     fechaInicio, fechaFin, usuarioId, productoId, metodoPago);
-            
-            response.sendError(HttpServletResponse.SC_GONE, 
-                "La exportación a Excel ha sido deshabilitada. Por favor, utilice la exportación a PDF.");
+
+            String filename = "ventas_" + LocalDate.now() + ".xlsx";
+            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+            response.setHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+
+            OutputStream os = response.getOutputStream();
+            int ventas = excelExportService.exportarVentasAdmin(fechaInicio, fechaFin, usuarioId, productoId, metodoPago, os);
+            os.flush();
+
+            logger.info("Excel admin exportado exitosamente: {} ({} ventas)", filename, ventas);
         } catch (Exception e) {
-            logger.error("Error al enviar respuesta 410: {}", e.getMessage(), e);
+            logger.error("Error al exportar Excel admin: {}", e.getMessage(), e);
+            if (response.isCommitted()) {
+                return;
+            }
+            try {
+                response.reset();
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                    "No se pudo generar el Excel. Por favor, intente nuevamente o contacte al administrador.");
+            } catch (Exception sendErrorException) {
+                logger.error("No se pudo enviar respuesta de error al cliente", sendErrorException);
+            }
         }
     }
 
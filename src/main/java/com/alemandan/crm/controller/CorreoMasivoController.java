@@ -2,9 +2,8 @@ package com.alemandan.crm.controller;
 
 import com.alemandan.crm.model.Usuario;
 import com.alemandan.crm.repository.UsuarioRepository;
-import com.alemandan.crm.service.MailService;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.alemandan.crm.model.MailOutbox;
+import com.alemandan.crm.service.MailOutboxService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -16,17 +15,16 @@ import java.util.List;
 @RequestMapping("/admin/correos-masivos")
 public class CorreoMasivoController {
 
-    private static final Logger logger = LoggerFactory.getLogger(CorreoMasivoController.class);
-
     @Autowired
     private UsuarioRepository usuarioRepo;
     @Autowired
-    private MailService mailService;
+    private MailOutboxService mailOutboxService;
 
     @GetMapping
     public String mostrarFormulario(Model model) {
         List<Usuario> usuarios = usuarioRepo.findAll();
         model.addAttribute("usuarios", usuarios);
+        agregarEstadoCola(model);
         return "correos_masivos";
     }
 
@@ -37,29 +35,20 @@ public class CorreoMasivoController {
                                 Model model) {
         if (destinatarios != null && !destinatarios.isEmpty()) {
             List<Usuario> usuarios = usuarioRepo.findAllById(destinatarios);
-            int enviados = 0;
-            int fallidos = 0;
-            
-            for (Usuario usuario : usuarios) {
-                try {
-                    mailService.enviarCorreoGenerico(usuario.getEmail(), asunto, mensaje);
-                    enviados++;
-                } catch (Exception e) {
-                    // Log but continue with other recipients
-                    logger.error("Failed to send email to {}: {}", usuario.getEmail(), e.getMessage());
-                    fallidos++;
-                }
-            }
-            
-            if (fallidos > 0) {
-                model.addAttribute("mensaje", String.format("Correos enviados: %d exitosos, %d fallidos. Revisa los logs para detalles.", enviados, fallidos));
-            } else {
-                model.addAttribute("mensaje", "Correos enviados correctamente.");
-            }
+            // Sólo se encolan: el envío (con reintentos) lo hace MailOutboxService en segundo plano
+            int encolados = mailOutboxService.encolarTodos(usuarios.stream().map(Usuario::getEmail).toList(), asunto, mensaje);
+            model.addAttribute("mensaje", String.format("%d correos en cola de envío. Se enviarán en los próximos minutos.", encolados));
         } else {
             model.addAttribute("error", "Debes seleccionar al menos un destinatario.");
         }
         model.addAttribute("usuarios", usuarioRepo.findAll());
+        agregarEstadoCola(model);
         return "correos_masivos";
     }
+
+    private void agregarEstadoCola(Model model) {
+        model.addAttribute("correosPendientes", mailOutboxService.contarPorEstado(MailOutbox.Estado.PENDIENTE)
+                + mailOutboxService.contarPorEstado(MailOutbox.Estado.ENVIANDO));
+        model.addAttribute("correosFallidos", mailOutboxService.contarPorEstado(MailOutbox.Estado.FALLIDO));
+    }
 }
\ No newline at end of file
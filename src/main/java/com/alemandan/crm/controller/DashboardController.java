@@ -5,12 +5,18 @@ import com.alemandan.crm.service.UsuarioService;
 import com.alemandan.crm.service.ProveedorService;
 import com.alemandan.crm.service.ProductoService;
 import com.alemandan.crm.service.VentaService;
+import com.alemandan.crm.service.VentasEnVivoService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
@@ -27,6 +33,8 @@ public class DashboardController {
     private ProductoService productoService;
     @Autowired
     private VentaService ventaService;
+    @Autowired
+    private VentasEnVivoService ventasEnVivoService;
 
     @GetMapping("/dashboard")
     public String dashboard(Authentication auth, Model model) {
@@ -98,4 +106,17 @@ public class DashboardController {
     public String dashboardAdmin(Authentication auth, Model model) {
         return dashboard(auth, model);
     }
+
+    /**
+     * Ventas en vivo del dashboard de administración (Server-Sent Events, evento "ventas").
+     * Una conexión por pestaña en lugar de recargar la página; 503 si se alcanzó el máximo de conexiones.
+     */
+    @GetMapping(value = "/dashboard-admin/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> dashboardAdminStream(Authentication auth) {
+        try {
+            return ResponseEntity.ok(ventasEnVivoService.suscribir(auth.getName()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "60").build();
+        }
+    }
 }
\ No newline at end of file
@@ -1,7 +1,6 @@
 package com.alemandan.crm.controller;
 
 import com.alemandan.crm.model.Usuario;
-import com.alemandan.crm.repository.UsuarioRepository;
 import com.alemandan.crm.service.UsuarioService;
 import org.springframework.beans.BeanWrapperImpl;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,9 +29,6 @@ public class EmpleadoProfileController {
     @Autowired
     private UsuarioService usuarioService;
 
-    @Autowired
-    private UsuarioRepository usuarioRepository;
-
     @Autowired
     private AuthenticationManager authenticationManager;
 
@@ -74,7 +70,7 @@ public class EmpleadoProfileController {
             usuario.setPassword(passwordEncoder.encode(newPassword));
         }
 
-        usuarioRepository.save(usuario);
+        usuarioService.saveUsuario(usuario);
 
         // Re-authenticate so session principal is updated
         try {
@@ -142,7 +138,7 @@ public class EmpleadoProfileController {
                 // ignore
             }
 
-            usuarioRepository.save(usuario);
+            usuarioService.saveUsuario(usuario);
         }
         return "redirect:/dashboard-empleado?photoUpdated=1";
     }
@@ -4,6 +4,7 @@ import com.alemandan.crm.model.PasswordResetToken;
 import com.alemandan.crm.model.Usuario;
 import com.alemandan.crm.repository.PasswordResetTokenRepository;
 import com.alemandan.crm.repository.UsuarioRepository;
+import com.alemandan.crm.service.UsuarioService;
 import com.alemandan.crm.service.PasswordResetService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +34,8 @@ public class PasswordResetApiController {
 
     @Autowired
     private UsuarioRepository usuarioRepo;
+    @Autowired
+    private UsuarioService usuarioService;
     
     @Autowired
     private PasswordResetTokenRepository tokenRepo;
@@ -136,7 +139,7 @@ public class PasswordResetApiController {
             }
             
             usuario.setPassword(passwordEncoder.encode(request.getPassword()));
-            usuarioRepo.save(usuario);
+            usuarioService.saveUsuario(usuario);
             
             // Mark token as used
             passwordResetService.consumeToken(request.getToken());
@@ -3,6 +3,7 @@ package com.alemandan.crm.controller;
 import com.alemandan.crm.model.Producto;
 import com.alemandan.crm.service.ProductoService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -14,11 +15,18 @@ public class ProductoApiController {
     @Autowired
     private ProductoService productoService;
 
+    @Value("${app.productos.busqueda.limite:20}")
+    private int limitePorDefecto;
+
+    @Value("${app.productos.busqueda.limite-max:200}")
+    private int limiteMaximo;
+
+    // Autocompletar de la caja: resultados del índice en memoria, ordenados por relevancia.
+    // Sin término devuelve los primeros productos por nombre (ya no todo el catálogo).
     @GetMapping("/buscar")
-    public List<Producto> buscarProductos(@RequestParam(required = false) String term) {
-        if (term == null || term.trim().isEmpty()) {
-            return productoService.getAllProductos();
-        }
-        return productoService.buscarPorNombre(term.trim());
+    public List<Producto> buscarProductos(@RequestParam(required = false) String term,
+                                          @RequestParam(required = false) Integer limit) {
+        int limite = limit == null ? limitePorDefecto : Math.min(Math.max(limit, 1), limiteMaximo);
+        return productoService.buscarParaCaja(term, limite);
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,7 @@ package com.alemandan.crm.controller;
 
 import com.alemandan.crm.model.Usuario;
 import com.alemandan.crm.repository.UsuarioRepository;
+import com.alemandan.crm.service.UsuarioService;
 import com.alemandan.crm.service.MailService;
 import com.alemandan.crm.service.PasswordResetService;
 import org.slf4j.Logger;
@@ -28,6 +29,8 @@ public class RecuperarPasswordController {
     @Autowired
     private UsuarioRepository usuarioRepo;
     @Autowired
+    private UsuarioService usuarioService;
+    @Autowired
     private MailService mailService;
     @Autowired
     private PasswordEncoder passwordEncoder;
@@ -156,7 +159,7 @@ public class RecuperarPasswordController {
         
         // Update user password
         usuario.setPassword(passwordEncoder.encode(password));
-        usuarioRepo.save(usuario);
+        usuarioService.saveUsuario(usuario);
         
         // Clear session attributes
         session.removeAttribute("resetAuthorizedEmail");
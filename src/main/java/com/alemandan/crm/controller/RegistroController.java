@@ -2,6 +2,7 @@ package com.alemandan.crm.controller;
 
 import com.alemandan.crm.model.SolicitudRegistro;
 import com.alemandan.crm.repository.SolicitudRegistroRepository;
+import com.alemandan.crm.service.MailOutboxService;
 import com.alemandan.crm.service.MailService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,7 +21,7 @@ public class RegistroController {
     private SolicitudRegistroRepository solicitudRepo;
 
     @Autowired
-    private MailService mailService;
+    private MailOutboxService mailOutboxService;
 
     @GetMapping("/registro")
     public String mostrarFormularioRegistro(Model model) {
@@ -47,12 +48,13 @@ public class RegistroController {
         solicitud.setRechazada(false);
         solicitudRepo.save(solicitud);
 
-        // Enviar correo de bienvenida - wrapped in try-catch to prevent SMTP failures from blocking registration
+        // Correo de bienvenida: sólo se encola, MailOutboxService lo envía (con reintentos) en segundo plano
         try {
-            mailService.enviarBienvenida(solicitud.getEmail(), solicitud.getNombre());
+            mailOutboxService.encolar(solicitud.getEmail(), MailService.ASUNTO_BIENVENIDA,
+                    MailService.cuerpoBienvenida(solicitud.getNombre()), false);
         } catch (Exception e) {
             // Log error but continue - user is already registered
-            logger.error("Failed to send welcome email to {} after registration, but registration succeeded", 
+            logger.error("Failed to queue welcome email to {} after registration, but registration succeeded",
                 solicitud.getEmail(), e);
         }
 
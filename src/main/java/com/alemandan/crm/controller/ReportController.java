@@ -2,23 +2,34 @@ package com.alemandan.crm.controller;
 
 import com.alemandan.crm.model.Producto;
 import com.alemandan.crm.repository.ProductoRepository;
+import com.alemandan.crm.service.ReportJobService;
 import com.alemandan.crm.service.ReportService;
+import com.alemandan.crm.service.ReportePdfCache;
+import com.alemandan.crm.util.FileDownloadUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.ui.Model;
-import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
-import java.io.OutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Controlador para el informe avanzado.
@@ -26,8 +37,11 @@ import java.util.Optional;
  * NOTA: Los endpoints de exportación administrativa (/admin/ventas/...) se han dejado
  * en AdminVentaController para evitar colisiones de rutas. Aquí solo quedan:
  * - GET  /ventas/reporte        -> formulario del reporte avanzado
- * - GET  /ventas/reporte/pdf    -> descarga del informe avanzado (PDF)
+ * - GET  /ventas/reporte/pdf    -> descarga del informe avanzado (PDF, desde ReportePdfCache; ETag / 304)
  * - GET  /ventas/reporte/excel  -> descarga del informe avanzado (Excel)
+ * - POST /ventas/reporte/jobs               -> encola el informe avanzado en segundo plano (202 + jobId)
+ * - GET  /ventas/reporte/jobs/{id}          -> estado y progreso del trabajo
+ * - GET  /ventas/reporte/jobs/{id}/descarga -> PDF generado (sendfile desde disco)
  */
 @Controller
 public class ReportController {
@@ -40,18 +54,30 @@ public class ReportController {
     @Autowired
     private ProductoRepository productoRepository;
 
+    @Autowired
+    private ReportJobService reportJobService;
+
+    @Autowired
+    private ReportePdfCache reportePdfCache;
+
     @GetMapping("/ventas/reporte")
     public String formReporte(Model model) {
         // Si en el futuro necesitas pasar empleados/productos al formulario, puedes inyectarlos aquí.
         return "ventas/reporte_form";
     }
 
+    /**
+     * Descarga del informe avanzado. El PDF se genera a disco la primera vez (ReportePdfCache) y se envía con
+     * FileChannel.transferTo; mientras no cambien las ventas del rango ni el stock, las descargas siguientes
+     * no lo regeneran y un navegador con el mismo ETag recibe 304 sin que se genere ni se abra el PDF.
+     */
     @GetMapping("/ventas/reporte/pdf")
-    public ResponseEntity<byte[]> descargarReportePdf(
+    public void descargarReportePdf(
             @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
             @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
             @RequestParam(value = "productoId", required = false) Long productoId,
-            @RequestParam(value = "includeAnalysis", required = false, defaultValue = "true") boolean includeAnalysis) throws Exception {
+            @RequestParam(value = "includeAnalysis", required = false, defaultValue = "true") boolean includeAnalysis,
+            HttpServletRequest request, HttpServletResponse response) throws Exception {
 
         LocalDate today = LocalDate.now();
         if (to == null) to = today;
@@ -62,20 +88,100 @@ public class ReportController {
 
         logger.info("Generando reporte avanzado: from={} to={} productoId={} includeAnalysis={}", start, end, productoId, includeAnalysis);
 
-        byte[] pdf = reportService.generarReporteVentasPdf(start, end, productoId, includeAnalysis);
+        // Con análisis, el informe incluye la sección de stock bajo: su versión depende también del stock
+        ReportePdfCache.Clave clave = reportePdfCache.clave("ventas-avanzado", start, end, includeAnalysis,
+                productoId, includeAnalysis);
 
-        String fileSuffix = "";
-        if (productoId != null) {
-            Optional<Producto> opt = productoRepository.findById(productoId);
-            String prodName = opt.map(Producto::getNombre).orElse("prod" + productoId);
-            fileSuffix = "_" + sanitizeFilename(prodName);
+        // El navegador revalida siempre; si su copia sigue vigente, 304 sin cuerpo
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        if (new ServletWebRequest(request, response).checkNotModified(clave.getEtag())) {
+            return;
         }
-        String filename = "reporte_ventas_" + from + "_" + to + fileSuffix + ".pdf";
+        try (ReportePdfCache.Entrada pdf = reportePdfCache.obtener(clave,
+                out -> reportService.generarReporteVentasPdf(start, end, productoId, includeAnalysis, out))) {
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, pdf.getModificado());
+            FileDownloadUtil.enviarCanal(response, pdf.getCanal(), MediaType.APPLICATION_PDF_VALUE,
+                    nombreReporte(from, to, productoId));
+        }
+    }
+
+    /**
+     * Encola el informe avanzado en reportJobExecutor y responde de inmediato con el id del trabajo.
+     * 429 si el usuario ya tiene el máximo de trabajos activos; 503 si la cola está llena.
+     */
+    @PostMapping("/ventas/reporte/jobs")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> enviarReporteJob(
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(value = "productoId", required = false) Long productoId,
+            @RequestParam(value = "includeAnalysis", required = false, defaultValue = "true") boolean includeAnalysis,
+            Authentication auth) {
+
+        LocalDate today = LocalDate.now();
+        if (to == null) to = today;
+        if (from == null) from = today.minusDays(30);
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_PDF);
-        headers.setContentDispositionFormData("attachment", filename);
-        return ResponseEntity.ok().headers(headers).body(pdf);
+        Map<String, Object> resp = new HashMap<>();
+        try {
+            ReportJobService.ReportJob job = reportJobService.enviar(auth.getName(), from.atStartOfDay(), to.atTime(23, 59, 59),
+                    productoId, includeAnalysis, nombreReporte(from, to, productoId));
+            resp.put("jobId", job.getId());
+            resp.put("estadoUrl", "/ventas/reporte/jobs/" + job.getId());
+            resp.put("descargaUrl", "/ventas/reporte/jobs/" + job.getId() + "/descarga");
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(resp);
+        } catch (IllegalStateException e) {
+            resp.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(resp);
+        } catch (RejectedExecutionException e) {
+            resp.put("error", "Hay demasiados reportes en cola. Inténtalo en unos minutos.");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "60").body(resp);
+        }
+    }
+
+    @GetMapping("/ventas/reporte/jobs/{id}")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> estadoReporteJob(@PathVariable String id, Authentication auth) {
+        Optional<ReportJobService.ReportJob> opt = reportJobService.obtener(id, auth.getName());
+        if (opt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        ReportJobService.ReportJob job = opt.get();
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("jobId", job.getId());
+        resp.put("estado", job.getEstado().name());
+        resp.put("progreso", job.getProgreso());
+        if (job.getEstado() == ReportJobService.Estado.COMPLETADO) {
+            resp.put("descargaUrl", "/ventas/reporte/jobs/" + job.getId() + "/descarga");
+        }
+        if (job.getError() != null) {
+            resp.put("error", job.getError());
+        }
+        return ResponseEntity.ok(resp);
+    }
+
+    /**
+     * Descarga del PDF ya generado. El archivo lo envía el conector (sendfile) sin copiarlo al heap.
+     * 409 si el trabajo aún no terminó; 404 si no existe, es de otro usuario o ya expiró.
+     */
+    @GetMapping("/ventas/reporte/jobs/{id}/descarga")
+    public void descargarReporteJob(@PathVariable String id, Authentication auth,
+                                    HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<ReportJobService.ReportJob> opt = reportJobService.obtener(id, auth.getName());
+        if (opt.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        ReportJobService.ReportJob job = opt.get();
+        if (job.getEstado() != ReportJobService.Estado.COMPLETADO || job.getArchivo() == null) {
+            response.sendError(HttpServletResponse.SC_CONFLICT, "El reporte aún no está listo.");
+            return;
+        }
+        if (!Files.exists(job.getArchivo())) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        FileDownloadUtil.enviarArchivo(request, response, job.getArchivo(), MediaType.APPLICATION_PDF_VALUE, job.getNombreArchivo());
     }
 
     @GetMapping("/ventas/reporte/excel")
@@ -94,6 +200,16 @@ public class ReportController {
         }
     }
 
+    private String nombreReporte(LocalDate from, LocalDate to, Long productoId) {
+        String fileSuffix = "";
+        if (productoId != null) {
+            Optional<Producto> opt = productoRepository.findById(productoId);
+            String prodName = opt.map(Producto::getNombre).orElse("prod" + productoId);
+            fileSuffix = "_" + sanitizeFilename(prodName);
+        }
+        return "reporte_ventas_" + from + "_" + to + fileSuffix + ".pdf";
+    }
+
     private String sanitizeFilename(String s) {
         if (s == null) return "";
         return s.replaceAll("[^a-zA-Z0-9\\-_\\.]", "_");
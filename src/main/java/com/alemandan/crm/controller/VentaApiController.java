@@ -2,7 +2,7 @@ package com.alemandan.crm.controller;
 
 import com.alemandan.crm.model.Venta;
 import com.alemandan.crm.model.Usuario;
-import com.alemandan.crm.service.VentaService;
+import com.alemandan.crm.service.VentaIdempotenciaService;
 import com.alemandan.crm.service.UsuarioService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
@@ -17,25 +17,25 @@ import java.util.Map;
 public class VentaApiController {
 
     @Autowired
-    private VentaService ventaService;
+    private VentaIdempotenciaService ventaIdempotenciaService;
     @Autowired
     private UsuarioService usuarioService;
 
+    // Con Idempotency-Key, un reintento devuelve el ventaId original sin registrar otra venta
     @PostMapping("/registrar")
-    public Map<String, Object> registrarVentaAjax(@RequestBody Venta venta, Authentication auth) {
+    public Map<String, Object> registrarVentaAjax(@RequestBody Venta venta, Authentication auth,
+                                                  @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         Map<String, Object> resp = new HashMap<>();
         try {
             String email = ((User)auth.getPrincipal()).getUsername();
             Usuario usuario = usuarioService.findByEmail(email);
             venta.setUsuario(usuario);
-            String error = ventaService.registrarVenta(venta);
-            if (error == null) {
-                resp.put("success", true);
-                resp.put("ventaId", venta.getId());
-            } else {
-                resp.put("success", false);
-                resp.put("error", error);
-            }
+            Venta saved = ventaIdempotenciaService.registrar(venta, idempotencyKey);
+            resp.put("success", true);
+            resp.put("ventaId", saved.getId());
+        } catch (IllegalArgumentException e) {
+            resp.put("success", false);
+            resp.put("error", e.getMessage());
         } catch (Exception e) {
             resp.put("success", false);
             resp.put("error", "Error inesperado al registrar la venta: " + e.getMessage());
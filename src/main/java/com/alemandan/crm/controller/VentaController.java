@@ -1,43 +1,49 @@
 package com.alemandan.crm.controller;
 
 import com.alemandan.crm.model.Venta;
-import com.alemandan.crm.model.DetalleVenta;
 import com.alemandan.crm.model.Producto;
 import com.alemandan.crm.model.Usuario;
-import com.alemandan.crm.repository.VentaRepository;
-import com.alemandan.crm.repository.ProductoRepository;
 import com.alemandan.crm.service.VentaService;
+import com.alemandan.crm.service.ExcelExportService;
 import com.alemandan.crm.service.ProductoService;
 import com.alemandan.crm.service.UsuarioService;
+import com.alemandan.crm.service.ReciboService;
 import com.alemandan.crm.service.ReportService;
+import com.alemandan.crm.service.VentaIdempotenciaService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.web.context.request.async.DeferredResult;
 import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.OutputStream;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Base64;
-import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Controlador de ventas (caja, historial y exportes).
  * - Guarda ventas (form clásico y AJAX).
- * - Al generar recibo por AJAX recarga la venta desde BD para asegurar que DetalleVenta->Producto esté inicializado.
- * - Rellena precios/IVA si faltan (y recalcula totales) antes de generar el PDF.
- * - Provee endpoint /ventas/recibo/{id} para descarga directa del PDF.
+ * - El checkout responde tras el commit; el recibo PDF se genera en segundo plano (ReciboService).
+ * - Provee endpoint /ventas/recibo/{id} (long-poll, 202 mientras se genera) para descargar el PDF.
+ * - El registro AJAX acepta la cabecera Idempotency-Key: un reintento devuelve la venta original y su recibo.
  */
 @Controller
 @RequestMapping("/ventas")
@@ -45,12 +51,23 @@ public class VentaController {
 
     private static final Logger logger = LoggerFactory.getLogger(VentaController.class);
 
+    // Long-poll del recibo: espera por defecto y máxima (segundos)
+    private static final int RECIBO_ESPERA_DEFECTO_SEG = 10;
+    private static final int RECIBO_ESPERA_MAX_SEG = 25;
+
+    // Historial del empleado: tamaño de página por defecto y máximo
+    private static final int MIS_VENTAS_PAGINA_DEFECTO = 50;
+    private static final int MIS_VENTAS_PAGINA_MAX = 200;
+
     @Autowired
     private VentaService ventaService;
 
     @Autowired
     private ProductoService productoService;
 
+    @Autowired
+    private ExcelExportService excelExportService;
+
     @Autowired
     private UsuarioService usuarioService;
 
@@ -58,10 +75,10 @@ public class VentaController {
     private ReportService reportService;
 
     @Autowired
-    private VentaRepository ventaRepository;
+    private VentaIdempotenciaService ventaIdempotenciaService;
 
     @Autowired
-    private ProductoRepository productoRepository;
+    private ReciboService reciboService;
 
     // Mostrar formulario de caja
     @GetMapping("/caja")
@@ -94,6 +111,8 @@ public class VentaController {
         String email = ((User) auth.getPrincipal()).getUsername();
         Usuario usuario = usuarioService.findByEmail(email);
         venta.setUsuario(usuario);
+        // La idempotencia sólo aplica al flujo AJAX (cabecera), no a parámetros del formulario
+        venta.setIdempotencyKey(null);
 
         try {
             Venta saved = ventaService.procesarYGuardarVenta(venta);
@@ -106,99 +125,25 @@ public class VentaController {
         }
     }
 
-    // Registrar venta por AJAX (flujo moderno): devuelve JSON con success, ventaId y receiptBase64 (PDF)
+    // Registrar venta por AJAX (flujo moderno): devuelve JSON con success, ventaId y receiptUrl.
+    // El recibo PDF se genera tras el commit en reciboExecutor; la caja lo descarga desde receiptUrl.
+    // Con Idempotency-Key, un reintento del mismo ticket devuelve la venta ya registrada sin volver a procesarla.
     @PostMapping("/api/ventas/registrar")
     @ResponseBody
-    public Map<String, Object> registrarVentaAjax(@RequestBody Venta venta, Authentication auth) {
+    public Map<String, Object> registrarVentaAjax(@RequestBody Venta venta, Authentication auth,
+                                                  @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         Map<String, Object> resp = new HashMap<>();
         try {
             String email = ((User) auth.getPrincipal()).getUsername();
             Usuario usuario = usuarioService.findByEmail(email);
             venta.setUsuario(usuario);
 
-            // 1) Procesar y guardar la venta (valida stock, actualiza stock y persiste)
-            Venta saved = ventaService.procesarYGuardarVenta(venta);
-
-            // 2) Recargar la venta desde la BD para asegurar que las relaciones (detalles -> producto) estén inicializadas
-            Venta full = ventaRepository.findById(saved.getId()).orElse(saved);
-
-            // 3) Rellenar valores faltantes en cada detalle (precioUnitario, ivaRate, ivaMonto) desde la entidad Producto si es necesario
-            BigDecimal calcSubtotal = BigDecimal.ZERO;
-            BigDecimal calcIva = BigDecimal.ZERO;
-            if (full.getDetalles() != null) {
-                for (DetalleVenta d : full.getDetalles()) {
-                    if (d.getProducto() != null && d.getProducto().getId() != null) {
-                        Long pid = d.getProducto().getId();
-                        Optional<Producto> optP = productoRepository.findById(pid);
-                        if (optP.isPresent()) {
-                            Producto p = optP.get();
-                            d.setProducto(p); // asegurar que producto esté completo
-
-                            // precio unitario
-                            if (d.getPrecioUnitario() == null || d.getPrecioUnitario().compareTo(BigDecimal.ZERO) == 0) {
-                                if (p.getPrecio() != null) {
-                                    d.setPrecioUnitario(BigDecimal.valueOf(p.getPrecio()));
-                                } else {
-                                    d.setPrecioUnitario(BigDecimal.ZERO);
-                                }
-                            }
-
-                            // iva rate
-                            if (d.getIvaRate() == null) {
-                                d.setIvaRate(p.getIva() == null ? BigDecimal.ZERO : p.getIva());
-                            }
-
-                            // iva monto
-                            if (d.getIvaMonto() == null || d.getIvaMonto().compareTo(BigDecimal.ZERO) == 0) {
-                                BigDecimal qty = BigDecimal.valueOf(d.getCantidad() == null ? 0 : d.getCantidad());
-                                BigDecimal lineaSubtotal = d.getPrecioUnitario().multiply(qty);
-                                BigDecimal ivaMonto = lineaSubtotal.multiply(d.getIvaRate() == null ? BigDecimal.ZERO : d.getIvaRate())
-                                        .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
-                                d.setIvaMonto(ivaMonto);
-                            }
-                        } else {
-                            // producto no encontrado: asegurar campos a 0
-                            if (d.getPrecioUnitario() == null) d.setPrecioUnitario(BigDecimal.ZERO);
-                            if (d.getIvaRate() == null) d.setIvaRate(BigDecimal.ZERO);
-                            if (d.getIvaMonto() == null) d.setIvaMonto(BigDecimal.ZERO);
-                        }
-                    } else {
-                        // sin producto: asegurar campos a 0
-                        if (d.getPrecioUnitario() == null) d.setPrecioUnitario(BigDecimal.ZERO);
-                        if (d.getIvaRate() == null) d.setIvaRate(BigDecimal.ZERO);
-                        if (d.getIvaMonto() == null) d.setIvaMonto(BigDecimal.ZERO);
-                    }
-
-                    // acumular para recálculo de totales locales
-                    BigDecimal qty = BigDecimal.valueOf(d.getCantidad() == null ? 0 : d.getCantidad());
-                    BigDecimal lineaSubtotal = (d.getPrecioUnitario() == null ? BigDecimal.ZERO : d.getPrecioUnitario()).multiply(qty);
-                    BigDecimal ivaLinea = d.getIvaMonto() == null ? BigDecimal.ZERO : d.getIvaMonto();
-                    calcSubtotal = calcSubtotal.add(lineaSubtotal);
-                    calcIva = calcIva.add(ivaLinea);
-                }
-            }
-
-            // 4) Si la Venta no tiene totales (o son cero), rellenarlos con cálculos
-            if (full.getSubtotal() == null || full.getSubtotal().compareTo(BigDecimal.ZERO) == 0) {
-                full.setSubtotal(calcSubtotal.setScale(2, RoundingMode.HALF_UP));
-            }
-            if (full.getIva() == null || full.getIva().compareTo(BigDecimal.ZERO) == 0) {
-                full.setIva(calcIva.setScale(2, RoundingMode.HALF_UP));
-            }
-            if (full.getTotal() == null || full.getTotal().compareTo(BigDecimal.ZERO) == 0) {
-                full.setTotal(full.getSubtotal().add(full.getIva()).setScale(2, RoundingMode.HALF_UP));
-            }
-
-            // 5) Persistir cambios (opcional, asegura que los detalles ahora contienen precio/iva en BD)
-            full = ventaRepository.save(full);
-
-            // 6) Generar PDF usando la entidad recargada y completa
-            byte[] pdf = reportService.generarReciboVentaPdf(full);
-            String base64 = Base64.getEncoder().encodeToString(pdf);
+            // Procesar y guardar la venta (valida stock, actualiza stock y persiste), o recuperar la ya registrada con la misma clave
+            Venta saved = ventaIdempotenciaService.registrar(venta, idempotencyKey);
 
             resp.put("success", true);
             resp.put("ventaId", saved.getId());
-            resp.put("receiptBase64", base64);
+            resp.put("receiptUrl", "/ventas/recibo/" + saved.getId());
         } catch (IllegalArgumentException e) {
             resp.put("success", false);
             resp.put("error", e.getMessage());
@@ -209,80 +154,55 @@ public class VentaController {
         return resp;
     }
 
-    // Endpoint para descargar recibo PDF por id (más eficiente que base64)
+    /**
+     * Descarga del recibo PDF por id (long-poll).
+     * - 200 con el PDF si ya está generado o termina dentro de la espera (parámetro espera, segundos).
+     * - 202 con Retry-After si sigue en cola: el cliente vuelve a pedir la misma URL.
+     * - 404 si la venta no existe; 503 si la cola de render está llena.
+     * Usa DeferredResult para no ocupar un hilo de Tomcat mientras se espera.
+     */
     @GetMapping("/recibo/{id}")
-    public void descargarRecibo(@PathVariable Long id, HttpServletResponse response) throws Exception {
-        Venta v = ventaRepository.findById(id).orElse(null);
-        if (v == null) {
-            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Venta no encontrada");
-            return;
-        }
-
-        // Asegurar detalles/ producto inicializados y rellenar valores faltantes
-        if (v.getDetalles() != null) {
-            for (DetalleVenta d : v.getDetalles()) {
-                if (d.getProducto() != null && d.getProducto().getId() != null) {
-                    Long pid = d.getProducto().getId();
-                    productoRepository.findById(pid).ifPresent(p -> {
-                        d.setProducto(p);
-                        if (d.getPrecioUnitario() == null || d.getPrecioUnitario().compareTo(BigDecimal.ZERO) == 0) {
-                            if (p.getPrecio() != null) d.setPrecioUnitario(BigDecimal.valueOf(p.getPrecio()));
-                            else d.setPrecioUnitario(BigDecimal.ZERO);
-                        }
-                        if (d.getIvaRate() == null) {
-                            d.setIvaRate(p.getIva() == null ? BigDecimal.ZERO : p.getIva());
-                        }
-                        if (d.getIvaMonto() == null || d.getIvaMonto().compareTo(BigDecimal.ZERO) == 0) {
-                            BigDecimal pu = d.getPrecioUnitario() == null ? BigDecimal.ZERO : d.getPrecioUnitario();
-                            BigDecimal cantidad = BigDecimal.valueOf(d.getCantidad() == null ? 0 : d.getCantidad());
-                            BigDecimal rate = d.getIvaRate() == null ? BigDecimal.ZERO : d.getIvaRate();
-                            BigDecimal lineaSubtotal = pu.multiply(cantidad);
-                            BigDecimal ivaMonto = lineaSubtotal.multiply(rate).divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
-                            d.setIvaMonto(ivaMonto);
-                        }
-                    });
-                } else {
-                    if (d.getPrecioUnitario() == null) d.setPrecioUnitario(BigDecimal.ZERO);
-                    if (d.getIvaRate() == null) d.setIvaRate(BigDecimal.ZERO);
-                    if (d.getIvaMonto() == null) d.setIvaMonto(BigDecimal.ZERO);
-                }
+    public DeferredResult<ResponseEntity<byte[]>> descargarRecibo(@PathVariable Long id,
+                                                                  @RequestParam(value = "espera", required = false) Integer espera) {
+        int segundos = espera == null ? RECIBO_ESPERA_DEFECTO_SEG : Math.max(0, Math.min(espera, RECIBO_ESPERA_MAX_SEG));
+        ResponseEntity<byte[]> pendiente = ResponseEntity.status(HttpStatus.ACCEPTED)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .header(HttpHeaders.LOCATION, "/ventas/recibo/" + id)
+                .build();
+        DeferredResult<ResponseEntity<byte[]>> result = new DeferredResult<>(TimeUnit.SECONDS.toMillis(segundos) + 1, pendiente);
+
+        reciboService.solicitar(id).whenComplete((pdf, ex) -> {
+            if (ex == null) {
+                String filename = "recibo_venta_" + id + ".pdf";
+                result.setResult(ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_PDF)
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"")
+                        .body(pdf));
+                return;
             }
-            // Recalcular totales si faltan
-            BigDecimal subtotal = BigDecimal.ZERO;
-            BigDecimal ivaTotal = BigDecimal.ZERO;
-            for (DetalleVenta d : v.getDetalles()) {
-                BigDecimal pu = d.getPrecioUnitario() == null ? BigDecimal.ZERO : d.getPrecioUnitario();
-                BigDecimal qty = BigDecimal.valueOf(d.getCantidad() == null ? 0 : d.getCantidad());
-                BigDecimal lineaSubtotal = pu.multiply(qty);
-                subtotal = subtotal.add(lineaSubtotal);
-                ivaTotal = ivaTotal.add(d.getIvaMonto() == null ? BigDecimal.ZERO : d.getIvaMonto());
+            Throwable causa = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (causa instanceof IllegalArgumentException) {
+                result.setResult(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+            } else if (causa instanceof RejectedExecutionException) {
+                result.setResult(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "2").build());
+            } else {
+                result.setResult(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
             }
-            if (v.getSubtotal() == null || v.getSubtotal().compareTo(BigDecimal.ZERO) == 0) v.setSubtotal(subtotal.setScale(2, RoundingMode.HALF_UP));
-            if (v.getIva() == null || v.getIva().compareTo(BigDecimal.ZERO) == 0) v.setIva(ivaTotal.setScale(2, RoundingMode.HALF_UP));
-            if (v.getTotal() == null || v.getTotal().compareTo(BigDecimal.ZERO) == 0) v.setTotal(v.getSubtotal().add(v.getIva()).setScale(2, RoundingMode.HALF_UP));
-            // Persistir los ajustes (opcional)
-            v = ventaRepository.save(v);
-        }
-
-        byte[] pdf = reportService.generarReciboVentaPdf(v);
-        String filename = "recibo_venta_" + (v.getId() == null ? "recibo" : v.getId()) + ".pdf";
-        response.setContentType("application/pdf");
-        response.setHeader("Content-Disposition", "inline; filename=\"" + filename + "\"");
-        response.setContentLength(pdf.length);
-        try (OutputStream os = response.getOutputStream()) {
-            os.write(pdf);
-            os.flush();
-        }
+        });
+        return result;
     }
 
-    // Historial de ventas con filtros
+    // Historial de ventas con filtros, paginado (page desde 0; size entre 1 y 200, 50 por defecto)
     @GetMapping("/mis-ventas")
     public String verMisVentas(
             Model model, Authentication auth,
             @RequestParam(required = false) String fechaInicio,
             @RequestParam(required = false) String fechaFin,
             @RequestParam(required = false) Long productoId,
-            @RequestParam(required = false) String metodoPago) {
+            @RequestParam(required = false) String metodoPago,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) Integer size) {
 
         String email = ((User) auth.getPrincipal()).getUsername();
         Usuario usuario = usuarioService.findByEmail(email);
@@ -290,8 +210,11 @@ public class VentaController {
         List<Producto> productos = productoService.getAllProductos();
         model.addAttribute("productos", productos);
 
-        List<Venta> ventas = ventaService.filtrarVentas(usuario.getId(), fechaInicio, fechaFin, productoId, metodoPago);
-        model.addAttribute("ventas", ventas);
+        int tamano = size == null ? MIS_VENTAS_PAGINA_DEFECTO : Math.min(Math.max(size, 1), MIS_VENTAS_PAGINA_MAX);
+        Page<Venta> ventas = ventaService.filtrarVentas(usuario.getId(), fechaInicio, fechaFin, productoId, metodoPago,
+                PageRequest.of(Math.max(page, 0), tamano));
+        model.addAttribute("ventas", ventas.getContent());
+        model.addAttribute("pagina", ventas);
 
         return "ventas/misventas";
     }
@@ -312,10 +235,6 @@ public class VentaController {
             logger.info("Exportando PDF empleado para usuario ID: {}, filtros: fechaInicio={}, fechaFin={}, productoId={}, metodoPago={}",
                     usuario.getId(), fechaInicio, fechaFin, productoId, metodoPago);
 
-            // Obtener exactamente la misma lista que se muestra en la UI
-            List<Venta> ventas = ventaService.filtrarVentas(usuario.getId(), fechaInicio, fechaFin, productoId, metodoPago);
-            logger.info("Generando PDF para {} ventas", ventas.size());
-
             // Parsear fechas con defaults (ISO yyyy-MM-dd esperadas en los inputs)
             LocalDate today = LocalDate.now();
             LocalDate fromDate;
@@ -333,26 +252,29 @@ public class VentaController {
             LocalDateTime start = fromDate.atStartOfDay();
             LocalDateTime end = toDate.atTime(23, 59, 59);
 
-            // Llamar al ReportService con la LISTA de ventas para generar el PDF que coincida con la UI
-            byte[] pdf = reportService.generarMisVentasPdfFromList(ventas, start, end, usuario.getNombre());
-
             String safeName = usuario.getNombre() == null ? "mis_ventas" : usuario.getNombre().replaceAll("[^a-zA-Z0-9\\-_\\.]", "_");
             String filename = "mis_ventas_" + safeName + "_" + fromDate + "_" + toDate + ".pdf";
 
             response.setContentType("application/pdf");
             response.setHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
-            response.setContentLength(pdf.length);
 
-            try (OutputStream os = response.getOutputStream()) {
-                os.write(pdf);
-                os.flush();
-            }
-            
-            logger.info("PDF empleado exportado exitosamente: {} bytes", pdf.length);
+            // Mismos filtros que la UI; las ventas se leen con un cursor de la BD y se escriben directamente
+            // en la respuesta (chunked, sin cargar la lista ni acumular el documento en memoria)
+            OutputStream os = response.getOutputStream();
+            reportService.generarMisVentasPdf(usuario.getId(), fechaInicio, fechaFin, productoId, metodoPago,
+                    start, end, usuario.getNombre(), os);
+            os.flush();
+
+            logger.info("PDF empleado exportado exitosamente: {}", filename);
         } catch (Exception e) {
             logger.error("Error al exportar PDF empleado: {}", e.getMessage(), e);
+            if (response.isCommitted()) {
+                // Ya se enviaron páginas del PDF: no se puede cambiar el status
+                return;
+            }
             try {
                 // Send error response with generic message (detailed error already logged)
+                response.reset();
                 response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, 
                     "No se pudo generar el PDF. Por favor, intente nuevamente o contacte al administrador.");
             } catch (Exception sendErrorException) {
@@ -362,7 +284,7 @@ public class VentaController {
         }
     }
 
-    // Exportar historial filtrado a Excel - DESHABILITADO
+    // Exportar historial filtrado a Excel: mismos filtros que la vista, escrito en streaming en la respuesta
     @GetMapping("/exportar-excel")
     public void exportarExcel(
             Authentication auth,
@@ -374,14 +296,31 @@ public class VentaController {
         try {
             String email = ((User) auth.getPrincipal()).getUsername();
             Usuario usuario = usuarioService.findByEmail(email);
-            
-            logger.info("Exportación a Excel deshabilitada - petición recibida de usuario ID: {}, filtros: fechaInicio={}, fechaFin={}, productoId={}, metodoPago={}",
+
+            logger.info("Exportando Excel empleado para usuario ID: {}, filtros: fechaInicio={}, fechaFin={}, productoId={}, metodoPago={}",
                     usuario.getId(), fechaInicio, fechaFin, productoId, metodoPago);
-            
-            response.sendError(HttpServletResponse.SC_GONE, 
-                "La exportación a Excel ha sido deshabilitada. Por favor, utilice la exportación a PDF.");
+
+            String filename = "mis_ventas_" + LocalDate.now() + ".xlsx";
+            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+            response.setHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+
+            OutputStream os = response.getOutputStream();
+            int ventas = excelExportService.exportarVentasEmpleado(usuario.getId(), fechaInicio, fechaFin, productoId, metodoPago, os);
+            os.flush();
+
+            logger.info("Excel empleado exportado exitosamente: {} ({} ventas)", filename, ventas);
         } catch (Exception e) {
-            logger.error("Error al enviar respuesta 410: {}", e.getMessage(), e);
+            logger.error("Error al exportar Excel empleado: {}", e.getMessage(), e);
+            if (response.isCommitted()) {
+                return;
+            }
+            try {
+                response.reset();
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                    "No se pudo generar el Excel. Por favor, intente nuevamente o contacte al administrador.");
+            } catch (Exception sendErrorException) {
+                logger.error("No se pudo enviar respuesta de error al cliente", sendErrorException);
+            }
         }
     }
 }
\ No newline at end of file
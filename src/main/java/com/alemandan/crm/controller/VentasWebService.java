@@ -1,21 +1,21 @@
 package com.alemandan.crm.controller;
 
+import com.alemandan.crm.service.VentaService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 
 @RestController
 public class VentasWebService {
 
+    @Autowired
+    private VentaService ventaService;
+
+    // Resumen real (consulta agregada en caché): totalVentas, montoTotal y fecha ISO8601
     @GetMapping("/api/ventas/resumen")
     public Map<String, Object> getResumenVentas() {
-        Map<String, Object> resumen = new HashMap<>();
-        resumen.put("totalVentas", 158);
-        resumen.put("montoTotal", 5420000);
-        resumen.put("fecha", new Date());
-        return resumen;
+        return ventaService.getResumenVentas();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,123 @@
+package com.alemandan.crm.dto;
+
+import com.alemandan.crm.model.DetalleVenta;
+import com.alemandan.crm.model.Venta;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Venta con sus líneas para exportes (Excel / PDF), sin entidades JPA.
+ * Se construye agrupando las filas de VentaRepository.streamLineas*, que llegan ordenadas por venta:
+ * [ventaId, fecha, usuarioNombre, usuarioEmail, metodoPago, subtotal, iva, total,
+ *  detalleId, productoNombre, cantidad, precioUnitario, ivaRate]
+ * {@link #agrupar(Iterator)} sólo retiene la venta en curso, así un exporte de millones de filas
+ * ocupa la memoria de una venta.
+ */
+public class VentaExportada {
+
+    public static class Linea {
+        private final String producto;
+        private final int cantidad;
+        private final BigDecimal precioUnitario;
+        private final BigDecimal ivaRate;
+
+        public Linea(String producto, int cantidad, BigDecimal precioUnitario, BigDecimal ivaRate) {
+            this.producto = producto;
+            this.cantidad = cantidad;
+            this.precioUnitario = precioUnitario == null ? BigDecimal.ZERO : precioUnitario;
+            this.ivaRate = ivaRate == null ? BigDecimal.ZERO : ivaRate;
+        }
+
+        // Nombre del producto o null si fue eliminado
+        public String getProducto() { return producto; }
+        public int getCantidad() { return cantidad; }
+        public BigDecimal getPrecioUnitario() { return precioUnitario; }
+        public BigDecimal getIvaRate() { return ivaRate; }
+    }
+
+    private final Long id;
+    private final LocalDateTime fecha;
+    private final String usuarioNombre;
+    private final String usuarioEmail;
+    private final String metodoPago;
+    private final BigDecimal subtotal;
+    private final BigDecimal iva;
+    private final BigDecimal total;
+    private final List<Linea> lineas = new ArrayList<>();
+
+    public VentaExportada(Long id, LocalDateTime fecha, String usuarioNombre, String usuarioEmail, String metodoPago,
+                          BigDecimal subtotal, BigDecimal iva, BigDecimal total) {
+        this.id = id;
+        this.fecha = fecha;
+        this.usuarioNombre = usuarioNombre;
+        this.usuarioEmail = usuarioEmail;
+        this.metodoPago = metodoPago;
+        this.subtotal = subtotal == null ? BigDecimal.ZERO : subtotal;
+        this.iva = iva == null ? BigDecimal.ZERO : iva;
+        this.total = total == null ? BigDecimal.ZERO : total;
+    }
+
+    /**
+     * Agrupa filas consecutivas de la misma venta. Perezoso: lee de {@code filas} a medida que se consume.
+     */
+    public static Iterator<VentaExportada> agrupar(Iterator<Object[]> filas) {
+        return new Iterator<>() {
+            private Object[] pendiente = filas.hasNext() ? filas.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return pendiente != null;
+            }
+
+            @Override
+            public VentaExportada next() {
+                if (pendiente == null) throw new NoSuchElementException();
+                Object[] f = pendiente;
+                VentaExportada v = new VentaExportada((Long) f[0], (LocalDateTime) f[1], (String) f[2], (String) f[3],
+                        (String) f[4], (BigDecimal) f[5], (BigDecimal) f[6], (BigDecimal) f[7]);
+                do {
+                    if (pendiente[8] != null) { // sin detalle: venta sin líneas (LEFT JOIN)
+                        v.lineas.add(new Linea((String) pendiente[9],
+                                pendiente[10] == null ? 0 : ((Number) pendiente[10]).intValue(),
+                                (BigDecimal) pendiente[11], (BigDecimal) pendiente[12]));
+                    }
+                    pendiente = filas.hasNext() ? filas.next() : null;
+                } while (pendiente != null && v.id.equals(pendiente[0]));
+                return v;
+            }
+        };
+    }
+
+    /**
+     * Adaptador para código que ya tiene las entidades cargadas.
+     */
+    public static VentaExportada de(Venta venta) {
+        String nombre = venta.getUsuario() == null ? null : venta.getUsuario().getNombre();
+        String email = venta.getUsuario() == null ? null : venta.getUsuario().getEmail();
+        VentaExportada v = new VentaExportada(venta.getId(), venta.getFecha(), nombre, email, venta.getMetodoPago(),
+                venta.getSubtotal(), venta.getIva(), venta.getTotal());
+        if (venta.getDetalles() != null) {
+            for (DetalleVenta d : venta.getDetalles()) {
+                v.lineas.add(new Linea(d.getProducto() == null ? null : d.getProducto().getNombre(),
+                        d.getCantidad(), d.getPrecioUnitario(), d.getIvaRate()));
+            }
+        }
+        return v;
+    }
+
+    // Getters
+    public Long getId() { return id; }
+    public LocalDateTime getFecha() { return fecha; }
+    public String getUsuarioNombre() { return usuarioNombre; }
+    public String getUsuarioEmail() { return usuarioEmail; }
+    public String getMetodoPago() { return metodoPago; }
+    public BigDecimal getSubtotal() { return subtotal; }
+    public BigDecimal getIva() { return iva; }
+    public BigDecimal getTotal() { return total; }
+    public List<Linea> getLineas() { return lineas; }
+}
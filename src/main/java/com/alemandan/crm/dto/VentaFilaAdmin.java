@@ -0,0 +1,37 @@
+package com.alemandan.crm.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fila del listado de ventas del administrador (proyección ligera, sin entidades).
+ * La cabecera sale de una consulta JPQL con constructor; las líneas de productos se
+ * completan después con una sola consulta para toda la página.
+ */
+public class VentaFilaAdmin {
+    private final Long id;
+    private final LocalDateTime fecha;
+    private final String empleado;
+    private final String metodoPago;
+    private final BigDecimal total;
+    // "Producto ( cantidad x precio )", en el orden de las líneas
+    private final List<String> productos = new ArrayList<>();
+
+    public VentaFilaAdmin(Long id, LocalDateTime fecha, String empleado, String metodoPago, BigDecimal total) {
+        this.id = id;
+        this.fecha = fecha;
+        this.empleado = empleado;
+        this.metodoPago = metodoPago;
+        this.total = total;
+    }
+
+    // Getters
+    public Long getId() { return id; }
+    public LocalDateTime getFecha() { return fecha; }
+    public String getEmpleado() { return empleado; }
+    public String getMetodoPago() { return metodoPago; }
+    public BigDecimal getTotal() { return total; }
+    public List<String> getProductos() { return productos; }
+}
@@ -0,0 +1,32 @@
+package com.alemandan.crm.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Página del listado de ventas del administrador con paginación por cursor (keyset sobre fecha, id).
+ * Para pedir la siguiente página se envían siguienteFecha/siguienteId como cursor.
+ */
+public class VentasPagina {
+    private final List<VentaFilaAdmin> filas;
+    private final int tamano;
+    private final boolean haySiguiente;
+    private final LocalDateTime siguienteFecha;
+    private final Long siguienteId;
+
+    public VentasPagina(List<VentaFilaAdmin> filas, int tamano, boolean haySiguiente,
+                        LocalDateTime siguienteFecha, Long siguienteId) {
+        this.filas = filas;
+        this.tamano = tamano;
+        this.haySiguiente = haySiguiente;
+        this.siguienteFecha = siguienteFecha;
+        this.siguienteId = siguienteId;
+    }
+
+    // Getters
+    public List<VentaFilaAdmin> getFilas() { return filas; }
+    public int getTamano() { return tamano; }
+    public boolean isHaySiguiente() { return haySiguiente; }
+    public LocalDateTime getSiguienteFecha() { return siguienteFecha; }
+    public Long getSiguienteId() { return siguienteId; }
+}
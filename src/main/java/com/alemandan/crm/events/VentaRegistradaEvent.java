@@ -0,0 +1,53 @@
+package com.alemandan.crm.events;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Event published when a sale is successfully registered (after save).
+ * Listeners can handle this event after transaction commit (e.g. render the receipt PDF).
+ */
+public class VentaRegistradaEvent {
+
+    private final Long ventaId;
+    private final Long usuarioId;
+    private final LocalDateTime fecha;
+    private final BigDecimal total;
+    // Unidades vendidas por producto (para reflejar el stock en cachés tras el commit)
+    private final Map<Long, Integer> cantidadesPorProducto;
+
+    public VentaRegistradaEvent(Long ventaId, Long usuarioId, LocalDateTime fecha, BigDecimal total) {
+        this(ventaId, usuarioId, fecha, total, Collections.emptyMap());
+    }
+
+    public VentaRegistradaEvent(Long ventaId, Long usuarioId, LocalDateTime fecha, BigDecimal total,
+                                Map<Long, Integer> cantidadesPorProducto) {
+        this.ventaId = ventaId;
+        this.usuarioId = usuarioId;
+        this.fecha = fecha;
+        this.total = total;
+        this.cantidadesPorProducto = Collections.unmodifiableMap(cantidadesPorProducto);
+    }
+
+    public Long getVentaId() {
+        return ventaId;
+    }
+
+    public Long getUsuarioId() {
+        return usuarioId;
+    }
+
+    public LocalDateTime getFecha() {
+        return fecha;
+    }
+
+    public BigDecimal getTotal() {
+        return total;
+    }
+
+    public Map<Long, Integer> getCantidadesPorProducto() {
+        return cantidadesPorProducto;
+    }
+}
@@ -0,0 +1,63 @@
+package com.alemandan.crm.listeners;
+
+import com.alemandan.crm.events.VentaRegistradaEvent;
+import com.alemandan.crm.service.DashboardCounters;
+import com.alemandan.crm.service.ProductoSearchIndex;
+import com.alemandan.crm.service.ReciboService;
+import com.alemandan.crm.service.ReporteAgregadosCache;
+import com.alemandan.crm.service.VentasEnVivoService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Listener for sale registration events.
+ * Runs after transaction commit so work derived from the sale never delays or rolls back the checkout.
+ */
+@Component
+public class VentasListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(VentasListener.class);
+
+    @Autowired
+    private ReciboService reciboService;
+
+    @Autowired
+    private DashboardCounters dashboardCounters;
+
+    @Autowired
+    private ProductoSearchIndex productoSearchIndex;
+
+    @Autowired
+    private VentasEnVivoService ventasEnVivoService;
+
+    @Autowired
+    private ReporteAgregadosCache reporteAgregadosCache;
+
+    /**
+     * Queue the receipt PDF rendering on reciboExecutor.
+     * solicitar() only enqueues, so this does not block the request thread that committed the sale.
+     *
+     * @param event VentaRegistradaEvent containing the sale ID
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void handleVentaRegistrada(VentaRegistradaEvent event) {
+        // Contadores del dashboard (ventas del día, por empleado y resumen global)
+        dashboardCounters.registrarVenta(event);
+        // Dashboards de administración abiertos (después de los contadores: los totales enviados ya la incluyen)
+        ventasEnVivoService.registrarVenta(event);
+        // El autocompletar de la caja muestra el stock desde el índice en memoria
+        productoSearchIndex.descontarStock(event);
+        // Los agregados de reportes que incluyen el día de la venta dejan de ser válidos
+        reporteAgregadosCache.registrarVenta(event);
+        try {
+            reciboService.solicitar(event.getVentaId());
+        } catch (Exception e) {
+            // Log but don't rethrow - the receipt is rendered on demand by /ventas/recibo/{id}
+            logger.error("Failed to queue receipt for sale ID: {}. Error: {}", event.getVentaId(), e.getMessage(), e);
+        }
+    }
+}
@@ -16,7 +16,10 @@ import java.math.BigDecimal;
  * - Si usas migraiones (Flyway/Liquibase) añade la ALTER TABLE correspondiente.
  */
 @Entity
-@Table(name = "detalle_venta")
+@Table(name = "detalle_venta", indexes = {
+        // Filtro "ventas que contienen el producto X" (EXISTS por producto y venta)
+        @Index(name = "idx_detalle_producto_venta", columnList = "producto_id, venta_id")
+})
 public class DetalleVenta {
 
     @Id
@@ -0,0 +1,92 @@
+package com.alemandan.crm.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Correo pendiente de envío (tabla mail_outbox).
+ * Se inserta al encolar (MailOutboxService) y lo envía el despachador programado, así el envío
+ * sobrevive a reinicios y no ocupa el hilo de la petición.
+ *
+ * - PENDIENTE: espera a proximoIntento (primer envío o reintento con backoff).
+ * - ENVIANDO: reclamado por un despachador; proximoIntento es el fin del plazo. Si la aplicación se
+ *   reinicia a mitad de envío, el correo se vuelve a reclamar cuando vence ese plazo.
+ * - ENVIADO / FALLIDO: estados finales (FALLIDO tras agotar los intentos).
+ */
+@Entity
+@Table(name = "mail_outbox",
+        indexes = {
+                @Index(name = "idx_mail_outbox_estado_proximo", columnList = "estado, proximo_intento")
+        })
+public class MailOutbox {
+
+    public enum Estado { PENDIENTE, ENVIANDO, ENVIADO, FALLIDO }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String destinatario;
+
+    @Column(nullable = false)
+    private String asunto;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String cuerpo;
+
+    @Column(nullable = false)
+    private boolean html = false;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Estado estado = Estado.PENDIENTE;
+
+    @Column(nullable = false)
+    private int intentos = 0;
+
+    @Column(name = "proximo_intento", nullable = false)
+    private LocalDateTime proximoIntento;
+
+    @Column(name = "ultimo_error", length = 500)
+    private String ultimoError;
+
+    @Column(nullable = false)
+    private LocalDateTime creado;
+
+    private LocalDateTime enviado;
+
+    // getters / setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getDestinatario() { return destinatario; }
+    public void setDestinatario(String destinatario) { this.destinatario = destinatario; }
+
+    public String getAsunto() { return asunto; }
+    public void setAsunto(String asunto) { this.asunto = asunto; }
+
+    public String getCuerpo() { return cuerpo; }
+    public void setCuerpo(String cuerpo) { this.cuerpo = cuerpo; }
+
+    public boolean isHtml() { return html; }
+    public void setHtml(boolean html) { this.html = html; }
+
+    public Estado getEstado() { return estado; }
+    public void setEstado(Estado estado) { this.estado = estado; }
+
+    public int getIntentos() { return intentos; }
+    public void setIntentos(int intentos) { this.intentos = intentos; }
+
+    public LocalDateTime getProximoIntento() { return proximoIntento; }
+    public void setProximoIntento(LocalDateTime proximoIntento) { this.proximoIntento = proximoIntento; }
+
+    public String getUltimoError() { return ultimoError; }
+    public void setUltimoError(String ultimoError) { this.ultimoError = ultimoError; }
+
+    public LocalDateTime getCreado() { return creado; }
+    public void setCreado(LocalDateTime creado) { this.creado = creado; }
+
+    public LocalDateTime getEnviado() { return enviado; }
+    public void setEnviado(LocalDateTime enviado) { this.enviado = enviado; }
+}
@@ -1,13 +1,19 @@
 package com.alemandan.crm.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "venta")
+@Table(name = "venta", indexes = {
+        // Listado de administración paginado por cursor (fecha, id)
+        @Index(name = "idx_venta_fecha_id", columnList = "fecha, id"),
+        // Historial de un empleado filtrado por fechas (mis-ventas)
+        @Index(name = "idx_venta_usuario_fecha", columnList = "usuario_id, fecha")
+})
 public class Venta {
 
     @Id
@@ -16,7 +22,9 @@ public class Venta {
 
     private LocalDateTime fecha = LocalDateTime.now();
 
+    // Sin entity graph, los detalles de hasta 50 ventas ya cargadas se inicializan con un solo IN (...)
     @OneToMany(mappedBy = "venta", cascade = CascadeType.ALL, orphanRemoval = true)
+    @BatchSize(size = 50)
     private List<DetalleVenta> detalles = new ArrayList<>();
 
     @Column(precision = 12, scale = 2)
@@ -40,6 +48,10 @@ public class Venta {
     private String compradorCedula;
     private String compradorNombre;
 
+    // Clave de idempotencia enviada por la caja (cabecera Idempotency-Key); única para evitar ventas duplicadas en reintentos
+    @Column(name = "idempotency_key", length = 64, unique = true)
+    private String idempotencyKey;
+
     // getters / setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -75,4 +87,7 @@ public class Venta {
     
     public String getCompradorNombre() { return compradorNombre; }
     public void setCompradorNombre(String compradorNombre) { this.compradorNombre = compradorNombre; }
-}
\ No newline at end of file
+
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+}
@@ -0,0 +1,81 @@
+package com.alemandan.crm.model;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Resumen diario de ventas (tabla de agregados) por día, producto, vendedor y método de pago.
+ * Se actualiza en la misma transacción que registra la venta (ResumenDiarioService) y
+ * las consultas de reportes leen de aquí en lugar de recorrer venta/detalle_venta.
+ *
+ * - usuarioId = 0 cuando la venta no tiene usuario; metodoPago = '' cuando no tiene método
+ *   (las columnas de la clave única no admiten NULL para que el upsert agrupe correctamente).
+ * - monto = suma de cantidad * precio_unitario (sin IVA); iva = suma de iva_monto.
+ * - numVentas cuenta cada venta una sola vez (en la fila de su primera línea).
+ */
+@Entity
+@Table(name = "venta_resumen_diario",
+        uniqueConstraints = @UniqueConstraint(name = "uk_resumen_diario",
+                columnNames = {"dia", "producto_id", "usuario_id", "metodo_pago"}),
+        indexes = {
+                @Index(name = "idx_resumen_diario_dia_usuario", columnList = "dia, usuario_id")
+        })
+public class VentaResumenDiario {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private LocalDate dia;
+
+    @Column(name = "producto_id", nullable = false)
+    private Long productoId;
+
+    @Column(name = "usuario_id", nullable = false)
+    private Long usuarioId = 0L;
+
+    @Column(name = "metodo_pago", nullable = false, length = 50)
+    private String metodoPago = "";
+
+    @Column(nullable = false)
+    private Long unidades = 0L;
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal monto = BigDecimal.ZERO;
+
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal iva = BigDecimal.ZERO;
+
+    @Column(name = "num_ventas", nullable = false)
+    private Long numVentas = 0L;
+
+    // getters / setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public LocalDate getDia() { return dia; }
+    public void setDia(LocalDate dia) { this.dia = dia; }
+
+    public Long getProductoId() { return productoId; }
+    public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+    public Long getUsuarioId() { return usuarioId; }
+    public void setUsuarioId(Long usuarioId) { this.usuarioId = usuarioId; }
+
+    public String getMetodoPago() { return metodoPago; }
+    public void setMetodoPago(String metodoPago) { this.metodoPago = metodoPago; }
+
+    public Long getUnidades() { return unidades; }
+    public void setUnidades(Long unidades) { this.unidades = unidades; }
+
+    public BigDecimal getMonto() { return monto; }
+    public void setMonto(BigDecimal monto) { this.monto = monto; }
+
+    public BigDecimal getIva() { return iva; }
+    public void setIva(BigDecimal iva) { this.iva = iva; }
+
+    public Long getNumVentas() { return numVentas; }
+    public void setNumVentas(Long numVentas) { this.numVentas = numVentas; }
+}
@@ -0,0 +1,35 @@
+package com.alemandan.crm.repository;
+
+import com.alemandan.crm.model.MailOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repositorio de la cola de correos (mail_outbox).
+ * bloquearListos + marcarEnviando se llaman en la misma transacción (MailOutboxService.reclamar):
+ * dos instancias despachando a la vez se saltan las filas bloqueadas por la otra en lugar de esperarlas.
+ */
+public interface MailOutboxRepository extends JpaRepository<MailOutbox, Long> {
+
+    /**
+     * Ids listos para enviar (pendientes o con el plazo de envío vencido), bloqueados hasta el commit.
+     * SKIP LOCKED requiere MySQL 8.0+ / MariaDB 10.6+.
+     */
+    @Query(value = "SELECT id FROM mail_outbox " +
+            "WHERE estado IN ('PENDIENTE', 'ENVIANDO') AND proximo_intento <= :ahora " +
+            "ORDER BY proximo_intento, id " +
+            "LIMIT :limite FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> bloquearListos(@Param("ahora") LocalDateTime ahora, @Param("limite") int limite);
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE MailOutbox m SET m.estado = com.alemandan.crm.model.MailOutbox.Estado.ENVIANDO, " +
+            "m.proximoIntento = :plazo WHERE m.id IN :ids")
+    int marcarEnviando(@Param("ids") List<Long> ids, @Param("plazo") LocalDateTime plazo);
+
+    long countByEstado(MailOutbox.Estado estado);
+}
@@ -2,6 +2,7 @@ package com.alemandan.crm.repository;
 
 import com.alemandan.crm.model.Producto;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -11,7 +12,10 @@ import java.util.List;
  * Repositorio para Producto.
  * Contiene consultas básicas y algunas consultas adicionales útiles para los reportes:
  * - stockProductos: devuelve [productoId, nombre, cantidad]
+ * - firmaStock: resumen del stock que cambia con cualquier cambio de cantidad (caché de PDFs)
  * - productosConStockBajo: devuelve entidades Producto cuyo stock está por debajo del umbral indicado
+ * - descontarStock: descuento atómico y condicional de stock usado en el checkout
+ * - stockActual: cantidad vigente en la BD (mensaje de stock insuficiente)
  *
  * Ajusta los nombres de las propiedades en las consultas JPQL si tu entidad Producto usa nombres distintos.
  */
@@ -33,9 +37,33 @@ public interface ProductoRepository extends JpaRepository<Producto, Long> {
     @Query("SELECT p.id, p.nombre, p.cantidad FROM Producto p ORDER BY p.cantidad ASC")
     List<Object[]> stockProductos();
 
+    /**
+     * Firma del stock: [productos, unidades totales, suma de id * cantidad]. Cambia cuando cambia la cantidad de
+     * algún producto (ReportePdfCache la usa en la clave de los PDF que muestran stock).
+     */
+    @Query("SELECT COUNT(p), COALESCE(SUM(p.cantidad), 0), COALESCE(SUM(p.id * p.cantidad), 0) FROM Producto p")
+    List<Object[]> firmaStock();
+
     /**
      * Devuelve los productos cuyo stock es menor o igual al umbral pasado.
      */
     @Query("SELECT p FROM Producto p WHERE p.cantidad <= :threshold ORDER BY p.cantidad ASC")
     List<Producto> productosConStockBajo(@Param("threshold") Integer threshold);
-}
\ No newline at end of file
+
+    /**
+     * Descuenta stock de forma atómica sólo si hay unidades suficientes.
+     * Devuelve el número de filas afectadas: 1 si se descontó, 0 si el stock no alcanzaba
+     * (o el producto no existe). Evita la condición de carrera lectura-modificación-escritura
+     * entre cajas sin necesidad de bloquear la fila desde la aplicación.
+     */
+    @Modifying
+    @Query("UPDATE Producto p SET p.cantidad = p.cantidad - :qty WHERE p.id = :id AND p.cantidad >= :qty")
+    int descontarStock(@Param("id") Long id, @Param("qty") Integer qty);
+
+    /**
+     * Stock actual leído de la BD. Tras descontarStock los Producto ya cargados conservan la cantidad anterior
+     * (el UPDATE no pasa por el contexto de persistencia); una consulta escalar no los usa.
+     */
+    @Query("SELECT p.cantidad FROM Producto p WHERE p.id = :id")
+    Integer stockActual(@Param("id") Long id);
+}
@@ -1,13 +1,24 @@
 package com.alemandan.crm.repository;
 
+import com.alemandan.crm.dto.VentaFilaAdmin;
 import com.alemandan.crm.model.Venta;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Repositorio para consultas sobre ventas.
@@ -16,6 +27,92 @@ public interface VentaRepository extends JpaRepository<Venta, Long> {
 
     List<Venta> findByUsuarioId(Long usuarioId);
 
+    /**
+     * Historial de un empleado (mis-ventas y su PDF) con usuario, detalles, productos y categorías
+     * en una sola consulta: las vistas recorren todas las líneas de cada venta.
+     */
+    @EntityGraph(attributePaths = {"usuario", "detalles", "detalles.producto", "detalles.producto.categoria"})
+    List<Venta> findConDetallesByUsuarioId(Long usuarioId);
+
+    // Ventas por id con detalles y productos (segunda fase de la paginación del historial)
+    @EntityGraph(attributePaths = {"usuario", "detalles", "detalles.producto", "detalles.producto.categoria"})
+    List<Venta> findConDetallesByIdIn(Collection<Long> ids);
+
+    /**
+     * Historial filtrado de un empleado (mis-ventas / exportar-pdf), más recientes primero.
+     * hasta es exclusivo (inicio del día siguiente a fechaFin). Usa idx_venta_usuario_fecha y,
+     * con filtro de producto, idx_detalle_producto_venta.
+     */
+    @EntityGraph(attributePaths = {"usuario", "detalles", "detalles.producto", "detalles.producto.categoria"})
+    @Query("SELECT v FROM Venta v " +
+            "WHERE v.usuario.id = :usuarioId " +
+            "AND (:desde IS NULL OR v.fecha >= :desde) " +
+            "AND (:hasta IS NULL OR v.fecha < :hasta) " +
+            "AND (:productoId IS NULL OR EXISTS (SELECT d FROM DetalleVenta d WHERE d.venta = v AND d.producto.id = :productoId)) " +
+            "AND (:metodoPago IS NULL OR UPPER(v.metodoPago) = UPPER(:metodoPago)) " +
+            "ORDER BY v.fecha DESC, v.id DESC")
+    List<Venta> filtrarEmpleado(@Param("usuarioId") Long usuarioId,
+                                @Param("desde") LocalDateTime desde,
+                                @Param("hasta") LocalDateTime hasta,
+                                @Param("productoId") Long productoId,
+                                @Param("metodoPago") String metodoPago);
+
+    /**
+     * Ids de una página del historial filtrado (mismos filtros que filtrarEmpleado). Paginar sobre ids evita
+     * que Hibernate pagine en memoria al traer la colección de detalles; las entidades se cargan después
+     * con findConDetallesByIdIn.
+     */
+    @Query(value = "SELECT v.id FROM Venta v " +
+            "WHERE v.usuario.id = :usuarioId " +
+            "AND (:desde IS NULL OR v.fecha >= :desde) " +
+            "AND (:hasta IS NULL OR v.fecha < :hasta) " +
+            "AND (:productoId IS NULL OR EXISTS (SELECT d FROM DetalleVenta d WHERE d.venta = v AND d.producto.id = :productoId)) " +
+            "AND (:metodoPago IS NULL OR UPPER(v.metodoPago) = UPPER(:metodoPago)) " +
+            "ORDER BY v.fecha DESC, v.id DESC",
+            countQuery = "SELECT COUNT(v) FROM Venta v " +
+            "WHERE v.usuario.id = :usuarioId " +
+            "AND (:desde IS NULL OR v.fecha >= :desde) " +
+            "AND (:hasta IS NULL OR v.fecha < :hasta) " +
+            "AND (:productoId IS NULL OR EXISTS (SELECT d FROM DetalleVenta d WHERE d.venta = v AND d.producto.id = :productoId)) " +
+            "AND (:metodoPago IS NULL OR UPPER(v.metodoPago) = UPPER(:metodoPago))")
+    Page<Long> idsFiltrarEmpleado(@Param("usuarioId") Long usuarioId,
+                                  @Param("desde") LocalDateTime desde,
+                                  @Param("hasta") LocalDateTime hasta,
+                                  @Param("productoId") Long productoId,
+                                  @Param("metodoPago") String metodoPago,
+                                  Pageable pageable);
+
+    // Venta registrada con una clave de idempotencia (reintentos de la caja)
+    Optional<Venta> findByIdempotencyKey(String idempotencyKey);
+
+    /**
+     * Venta con sus detalles y productos en una sola consulta (para generar el recibo fuera de una transacción).
+     */
+    @Query("SELECT DISTINCT v FROM Venta v LEFT JOIN FETCH v.detalles d LEFT JOIN FETCH d.producto WHERE v.id = :id")
+    Optional<Venta> findByIdConDetalles(@Param("id") Long id);
+
+    /**
+     * Ids de las ventas para la exportación de recibos en lote, en orden de fecha. El límite se pasa como Pageable.
+     */
+    @Query("SELECT v.id FROM Venta v " +
+            "WHERE (:desde IS NULL OR v.fecha >= :desde) " +
+            "AND (:hasta IS NULL OR v.fecha <= :hasta) " +
+            "AND (:usuarioId IS NULL OR v.usuario.id = :usuarioId) " +
+            "ORDER BY v.fecha, v.id")
+    List<Long> idsParaRecibos(@Param("desde") LocalDateTime desde,
+                              @Param("hasta") LocalDateTime hasta,
+                              @Param("usuarioId") Long usuarioId,
+                              Pageable pageable);
+
+    /**
+     * Lote de ventas con cajero, detalles, productos y categorías en una sola consulta (recibos en lote).
+     */
+    @Query("SELECT DISTINCT v FROM Venta v LEFT JOIN FETCH v.usuario LEFT JOIN FETCH v.detalles d " +
+            "LEFT JOIN FETCH d.producto p LEFT JOIN FETCH p.categoria WHERE v.id IN :ids")
+    List<Venta> findByIdInConDetalles(@Param("ids") Collection<Long> ids);
+
+    // Carga usuario, detalles y productos en la misma consulta (el resumen PDF recorre todas las líneas)
+    @EntityGraph(attributePaths = {"usuario", "detalles", "detalles.producto", "detalles.producto.categoria"})
     @Query("SELECT v FROM Venta v " +
             "WHERE (:fechaInicio IS NULL OR v.fecha >= :fechaInicio) " +
             "AND (:fechaFin IS NULL OR v.fecha <= :fechaFin) " +
@@ -28,24 +125,184 @@ public interface VentaRepository extends JpaRepository<Venta, Long> {
                              @Param("productoId") Long productoId,
                              @Param("metodoPago") String metodoPago);
 
-    @Query("SELECT COUNT(v) FROM Venta v WHERE v.fecha >= :inicio AND v.fecha < :fin")
-    long countByFechaBetween(@Param("inicio") LocalDateTime inicio, @Param("fin") LocalDateTime fin);
+    /**
+     * Página del listado de administración con paginación por cursor (keyset) sobre (fecha, id) descendente.
+     * Sin cursor devuelve las más recientes; con cursor, las anteriores a la última fila ya mostrada.
+     * Con el índice (fecha, id) el coste no depende de cuántas páginas se hayan recorrido.
+     * El tamaño de página lo fija el Pageable (sin consulta de conteo).
+     */
+    @Query("SELECT new com.alemandan.crm.dto.VentaFilaAdmin(v.id, v.fecha, u.nombre, v.metodoPago, v.total) " +
+            "FROM Venta v LEFT JOIN v.usuario u " +
+            "WHERE (:fechaInicio IS NULL OR v.fecha >= :fechaInicio) " +
+            "AND (:fechaFin IS NULL OR v.fecha <= :fechaFin) " +
+            "AND (:usuarioId IS NULL OR u.id = :usuarioId) " +
+            "AND (:productoId IS NULL OR EXISTS (SELECT d FROM DetalleVenta d WHERE d.venta = v AND d.producto.id = :productoId)) " +
+            "AND (:metodoPago IS NULL OR v.metodoPago = :metodoPago) " +
+            "AND (:cursorFecha IS NULL OR v.fecha < :cursorFecha OR (v.fecha = :cursorFecha AND v.id < :cursorId)) " +
+            "ORDER BY v.fecha DESC, v.id DESC")
+    List<VentaFilaAdmin> paginaAdmin(@Param("fechaInicio") LocalDateTime fechaInicio,
+                                     @Param("fechaFin") LocalDateTime fechaFin,
+                                     @Param("usuarioId") Long usuarioId,
+                                     @Param("productoId") Long productoId,
+                                     @Param("metodoPago") String metodoPago,
+                                     @Param("cursorFecha") LocalDateTime cursorFecha,
+                                     @Param("cursorId") Long cursorId,
+                                     Pageable pageable);
 
-    @Query("SELECT COUNT(v) FROM Venta v WHERE v.usuario.id = :usuarioId AND v.fecha >= :inicio AND v.fecha < :fin")
-    long countByUsuarioIdAndFechaBetween(@Param("usuarioId") Long usuarioId, @Param("inicio") LocalDateTime inicio, @Param("fin") LocalDateTime fin);
+    /**
+     * Líneas de las ventas de una página: [ventaId, productoNombre, cantidad, precioUnitario].
+     */
+    @Query("SELECT d.venta.id, p.nombre, d.cantidad, d.precioUnitario " +
+            "FROM DetalleVenta d LEFT JOIN d.producto p " +
+            "WHERE d.venta.id IN :ventaIds ORDER BY d.id")
+    List<Object[]> lineasDeVentas(@Param("ventaIds") Collection<Long> ventaIds);
 
-    @Query("SELECT COUNT(v) FROM Venta v WHERE v.usuario.id = :usuarioId")
-    long countByUsuarioId(@Param("usuarioId") Long usuarioId);
+    /**
+     * Total vendido por empleado con los mismos filtros del listado (para la gráfica): [nombre, total].
+     */
+    @Query("SELECT u.nombre, SUM(v.total) FROM Venta v LEFT JOIN v.usuario u " +
+            "WHERE (:fechaInicio IS NULL OR v.fecha >= :fechaInicio) " +
+            "AND (:fechaFin IS NULL OR v.fecha <= :fechaFin) " +
+            "AND (:usuarioId IS NULL OR u.id = :usuarioId) " +
+            "AND (:productoId IS NULL OR EXISTS (SELECT d FROM DetalleVenta d WHERE d.venta = v AND d.producto.id = :productoId)) " +
+            "AND (:metodoPago IS NULL OR v.metodoPago = :metodoPago) " +
+            "GROUP BY u.nombre")
+    List<Object[]> totalesPorEmpleadoAdmin(@Param("fechaInicio") LocalDateTime fechaInicio,
+                                           @Param("fechaFin") LocalDateTime fechaFin,
+                                           @Param("usuarioId") Long usuarioId,
+                                           @Param("productoId") Long productoId,
+                                           @Param("metodoPago") String metodoPago);
+
+    /* -------------------
+       Exportación a Excel en streaming: una fila por línea de venta (sin entidades), agrupadas por venta.
+       [ventaId, fecha, usuarioNombre, usuarioEmail, metodoPago, subtotal, iva, total,
+        detalleId, productoNombre, cantidad, precioUnitario, ivaRate]
+       Deben consumirse dentro de una transacción y cerrarse (try-with-resources). Con useCursorFetch=true
+       MySQL entrega las filas por bloques del fetch size en lugar de cargar el resultado entero.
+       ------------------- */
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT v.id, v.fecha, u.nombre, u.email, v.metodoPago, v.subtotal, v.iva, v.total, " +
+            "d.id, p.nombre, d.cantidad, d.precioUnitario, d.ivaRate " +
+            "FROM Venta v LEFT JOIN v.usuario u LEFT JOIN v.detalles d LEFT JOIN d.producto p " +
+            "WHERE (:fechaInicio IS NULL OR v.fecha >= :fechaInicio) " +
+            "AND (:fechaFin IS NULL OR v.fecha <= :fechaFin) " +
+            "AND (:usuarioId IS NULL OR u.id = :usuarioId) " +
+            "AND (:productoId IS NULL OR EXISTS (SELECT d2 FROM DetalleVenta d2 WHERE d2.venta = v AND d2.producto.id = :productoId)) " +
+            "AND (:metodoPago IS NULL OR v.metodoPago = :metodoPago) " +
+            "ORDER BY v.fecha DESC, v.id DESC, d.id")
+    Stream<Object[]> streamLineasAdmin(@Param("fechaInicio") LocalDateTime fechaInicio,
+                                       @Param("fechaFin") LocalDateTime fechaFin,
+                                       @Param("usuarioId") Long usuarioId,
+                                       @Param("productoId") Long productoId,
+                                       @Param("metodoPago") String metodoPago);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT v.id, v.fecha, u.nombre, u.email, v.metodoPago, v.subtotal, v.iva, v.total, " +
+            "d.id, p.nombre, d.cantidad, d.precioUnitario, d.ivaRate " +
+            "FROM Venta v LEFT JOIN v.usuario u LEFT JOIN v.detalles d LEFT JOIN d.producto p " +
+            "WHERE u.id = :usuarioId " +
+            "AND (:desde IS NULL OR v.fecha >= :desde) " +
+            "AND (:hasta IS NULL OR v.fecha < :hasta) " +
+            "AND (:productoId IS NULL OR EXISTS (SELECT d2 FROM DetalleVenta d2 WHERE d2.venta = v AND d2.producto.id = :productoId)) " +
+            "AND (:metodoPago IS NULL OR UPPER(v.metodoPago) = UPPER(:metodoPago)) " +
+            "ORDER BY v.fecha DESC, v.id DESC, d.id")
+    Stream<Object[]> streamLineasEmpleado(@Param("usuarioId") Long usuarioId,
+                                          @Param("desde") LocalDateTime desde,
+                                          @Param("hasta") LocalDateTime hasta,
+                                          @Param("productoId") Long productoId,
+                                          @Param("metodoPago") String metodoPago);
+
+    /**
+     * Resumen PDF de administración: [cantidadVentas, montoTotal] con los filtros del listado.
+     */
+    @Query("SELECT COUNT(v), COALESCE(SUM(v.total), 0) FROM Venta v LEFT JOIN v.usuario u " +
+            "WHERE (:fechaInicio IS NULL OR v.fecha >= :fechaInicio) " +
+            "AND (:fechaFin IS NULL OR v.fecha <= :fechaFin) " +
+            "AND (:usuarioId IS NULL OR u.id = :usuarioId) " +
+            "AND (:productoId IS NULL OR EXISTS (SELECT d FROM DetalleVenta d WHERE d.venta = v AND d.producto.id = :productoId)) " +
+            "AND (:metodoPago IS NULL OR v.metodoPago = :metodoPago)")
+    List<Object[]> resumenFiltradoAdmin(@Param("fechaInicio") LocalDateTime fechaInicio,
+                                        @Param("fechaFin") LocalDateTime fechaFin,
+                                        @Param("usuarioId") Long usuarioId,
+                                        @Param("productoId") Long productoId,
+                                        @Param("metodoPago") String metodoPago);
+
+    /**
+     * Productos más vendidos (unidades) en las ventas filtradas: [productoId, nombre, cantidad]. El límite lo da el Pageable.
+     */
+    @Query("SELECT p.id, p.nombre, SUM(dv.cantidad) FROM DetalleVenta dv JOIN dv.venta v JOIN dv.producto p LEFT JOIN v.usuario u " +
+            "WHERE (:fechaInicio IS NULL OR v.fecha >= :fechaInicio) " +
+            "AND (:fechaFin IS NULL OR v.fecha <= :fechaFin) " +
+            "AND (:usuarioId IS NULL OR u.id = :usuarioId) " +
+            "AND (:productoId IS NULL OR EXISTS (SELECT d FROM DetalleVenta d WHERE d.venta = v AND d.producto.id = :productoId)) " +
+            "AND (:metodoPago IS NULL OR v.metodoPago = :metodoPago) " +
+            "GROUP BY p.id, p.nombre " +
+            "ORDER BY SUM(dv.cantidad) DESC")
+    List<Object[]> topProductosFiltradoAdmin(@Param("fechaInicio") LocalDateTime fechaInicio,
+                                             @Param("fechaFin") LocalDateTime fechaFin,
+                                             @Param("usuarioId") Long usuarioId,
+                                             @Param("productoId") Long productoId,
+                                             @Param("metodoPago") String metodoPago,
+                                             Pageable pageable);
+
+    /**
+     * Versión de las ventas de un rango: [cantidad, mayor id]. Cambia con cada venta registrada o borrada en el rango
+     * (ReportePdfCache la usa en la clave de los PDF en caché).
+     */
+    @Query("SELECT COUNT(v), COALESCE(MAX(v.id), 0) FROM Venta v " +
+            "WHERE (:from IS NULL OR v.fecha >= :from) AND (:to IS NULL OR v.fecha <= :to)")
+    List<Object[]> versionEntre(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    /*
+     * Carga de los contadores del dashboard (DashboardCounters), en una misma instantánea (REPEATABLE READ).
+     * Todas se limitan a id <= :hastaId para que las ventas confirmadas durante la carga se sumen una sola vez
+     * (por evento); idsExistentes dice cuáles de las ventas con id <= :hastaId vio la carga. La recarga de
+     * ProductoSearchIndex lo usa igual para saber qué descuentos de stock ya trae su instantánea.
+     */
+
+    @Query("SELECT COALESCE(MAX(v.id), 0) FROM Venta v")
+    Long maxId();
+
+    @Query("SELECT v.id FROM Venta v WHERE v.id IN :ids")
+    List<Long> idsExistentes(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT COUNT(v), COALESCE(SUM(v.total), 0) FROM Venta v WHERE v.id <= :hastaId")
+    List<Object[]> resumenGlobalHasta(@Param("hastaId") Long hastaId);
+
+    /**
+     * Ventas por empleado: [usuarioId, cantidad].
+     */
+    @Query("SELECT v.usuario.id, COUNT(v) FROM Venta v WHERE v.id <= :hastaId GROUP BY v.usuario.id")
+    List<Object[]> conteoPorEmpleadoHasta(@Param("hastaId") Long hastaId);
+
+    /**
+     * Ventas por empleado en [inicio, fin): [usuarioId, cantidad].
+     */
+    @Query("SELECT v.usuario.id, COUNT(v) FROM Venta v WHERE v.id <= :hastaId AND v.fecha >= :inicio AND v.fecha < :fin " +
+            "GROUP BY v.usuario.id")
+    List<Object[]> conteoPorEmpleadoEntreHasta(@Param("inicio") LocalDateTime inicio,
+                                               @Param("fin") LocalDateTime fin,
+                                               @Param("hastaId") Long hastaId);
 
     /* -------------------
        Consultas para reportes e informes
        ------------------- */
 
-    @Query("SELECT COALESCE(SUM(v.total), 0) FROM Venta v WHERE v.fecha BETWEEN :from AND :to")
-    BigDecimal totalVentasBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+    /*
+     * totalVentasBetween, countVentasBetween, ventasPorDiaBetween, salesByProductBetween, salesByUserBetween
+     * y salesByMonthBetween leen del resumen diario (venta_resumen_diario), que se mantiene en el checkout.
+     * Un reporte de 12 meses agrega unos miles de filas en lugar de todo detalle_venta.
+     * La granularidad es el día: from/to se toman por fecha (ambos días inclusive).
+     */
+
+    default BigDecimal totalVentasBetween(LocalDateTime from, LocalDateTime to) {
+        return resumenTotalEntre(diaDesde(from), diaHasta(to));
+    }
 
-    @Query("SELECT COUNT(v) FROM Venta v WHERE v.fecha BETWEEN :from AND :to")
-    Long countVentasBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+    default Long countVentasBetween(LocalDateTime from, LocalDateTime to) {
+        return resumenNumVentasEntre(diaDesde(from), diaHasta(to));
+    }
 
     @Query("SELECT dv.producto.id, dv.producto.nombre, SUM(dv.cantidad) as totalVendida " +
             "FROM DetalleVenta dv JOIN dv.venta v " +
@@ -60,10 +317,12 @@ public interface VentaRepository extends JpaRepository<Venta, Long> {
             "ORDER BY SUM(v.total) DESC")
     List<Object[]> topVendedoresBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
 
-    @Query("SELECT FUNCTION('DATE', v.fecha) as dia, SUM(v.total) " +
-            "FROM Venta v WHERE v.fecha BETWEEN :from AND :to " +
-            "GROUP BY FUNCTION('DATE', v.fecha) ORDER BY FUNCTION('DATE', v.fecha)")
-    List<Object[]> ventasPorDiaBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+    /**
+     * Returns: [dia, totalMonto]
+     */
+    default List<Object[]> ventasPorDiaBetween(LocalDateTime from, LocalDateTime to) {
+        return resumenPorDiaEntre(diaDesde(from), diaHasta(to));
+    }
 
     /**
      * Top vendedores para un producto específico (cantidad vendida del producto por vendedor).
@@ -86,31 +345,67 @@ public interface VentaRepository extends JpaRepository<Venta, Long> {
      * Sales by product with quantity and total amount sold.
      * Returns: [productoId, productoNombre, cantidadVendida, totalMontoVendido]
      */
-    @Query("SELECT dv.producto.id, dv.producto.nombre, SUM(dv.cantidad) as cantidadVendida, " +
-            "SUM(dv.cantidad * dv.precioUnitario) as totalMonto " +
-            "FROM DetalleVenta dv JOIN dv.venta v " +
-            "WHERE v.fecha BETWEEN :from AND :to " +
-            "GROUP BY dv.producto.id, dv.producto.nombre " +
-            "ORDER BY SUM(dv.cantidad * dv.precioUnitario) DESC")
-    List<Object[]> salesByProductBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+    default List<Object[]> salesByProductBetween(LocalDateTime from, LocalDateTime to) {
+        return resumenPorProductoEntre(diaDesde(from), diaHasta(to));
+    }
 
     /**
      * Sales by user/seller with count and total amount.
      * Returns: [usuarioId, usuarioNombre, cantidadVentas, totalVendido]
      */
-    @Query("SELECT v.usuario.id, v.usuario.nombre, COUNT(v) as cantidadVentas, SUM(v.total) as totalVendido " +
-            "FROM Venta v WHERE v.fecha BETWEEN :from AND :to " +
-            "GROUP BY v.usuario.id, v.usuario.nombre " +
-            "ORDER BY SUM(v.total) DESC")
-    List<Object[]> salesByUserBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+    default List<Object[]> salesByUserBetween(LocalDateTime from, LocalDateTime to) {
+        return resumenPorUsuarioEntre(diaDesde(from), diaHasta(to));
+    }
 
     /**
      * Sales by month for the given period.
      * Returns: [year-month, totalMonto]
      */
-    @Query("SELECT FUNCTION('DATE_FORMAT', v.fecha, '%Y-%m') as mes, SUM(v.total) " +
-            "FROM Venta v WHERE v.fecha BETWEEN :from AND :to " +
-            "GROUP BY FUNCTION('DATE_FORMAT', v.fecha, '%Y-%m') " +
-            "ORDER BY FUNCTION('DATE_FORMAT', v.fecha, '%Y-%m')")
-    List<Object[]> salesByMonthBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
-}
\ No newline at end of file
+    default List<Object[]> salesByMonthBetween(LocalDateTime from, LocalDateTime to) {
+        return resumenPorMesEntre(diaDesde(from), diaHasta(to));
+    }
+
+    /* -------------------
+       Consultas sobre venta_resumen_diario (total = monto + iva, como Venta.total)
+       ------------------- */
+
+    @Query("SELECT COALESCE(SUM(r.monto + r.iva), 0) FROM VentaResumenDiario r WHERE r.dia BETWEEN :desde AND :hasta")
+    BigDecimal resumenTotalEntre(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+    @Query("SELECT COALESCE(SUM(r.numVentas), 0) FROM VentaResumenDiario r WHERE r.dia BETWEEN :desde AND :hasta")
+    Long resumenNumVentasEntre(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+    @Query("SELECT r.dia, SUM(r.monto + r.iva) FROM VentaResumenDiario r " +
+            "WHERE r.dia BETWEEN :desde AND :hasta " +
+            "GROUP BY r.dia ORDER BY r.dia")
+    List<Object[]> resumenPorDiaEntre(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+    @Query("SELECT p.id, p.nombre, SUM(r.unidades), SUM(r.monto) " +
+            "FROM VentaResumenDiario r JOIN Producto p ON p.id = r.productoId " +
+            "WHERE r.dia BETWEEN :desde AND :hasta " +
+            "GROUP BY p.id, p.nombre " +
+            "ORDER BY SUM(r.monto) DESC")
+    List<Object[]> resumenPorProductoEntre(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+    // usuario_id = 0 (ventas sin usuario) no cruza con Usuario, igual que el antiguo JOIN por v.usuario
+    @Query("SELECT u.id, u.nombre, SUM(r.numVentas), SUM(r.monto + r.iva) " +
+            "FROM VentaResumenDiario r JOIN Usuario u ON u.id = r.usuarioId " +
+            "WHERE r.dia BETWEEN :desde AND :hasta " +
+            "GROUP BY u.id, u.nombre " +
+            "ORDER BY SUM(r.monto + r.iva) DESC")
+    List<Object[]> resumenPorUsuarioEntre(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+    @Query("SELECT FUNCTION('DATE_FORMAT', r.dia, '%Y-%m') as mes, SUM(r.monto + r.iva) " +
+            "FROM VentaResumenDiario r WHERE r.dia BETWEEN :desde AND :hasta " +
+            "GROUP BY FUNCTION('DATE_FORMAT', r.dia, '%Y-%m') " +
+            "ORDER BY FUNCTION('DATE_FORMAT', r.dia, '%Y-%m')")
+    List<Object[]> resumenPorMesEntre(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+    private static LocalDate diaDesde(LocalDateTime from) {
+        return from == null ? LocalDate.of(1970, 1, 1) : from.toLocalDate();
+    }
+
+    private static LocalDate diaHasta(LocalDateTime to) {
+        return to == null ? LocalDate.now() : to.toLocalDate();
+    }
+}
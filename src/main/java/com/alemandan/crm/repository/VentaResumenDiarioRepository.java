@@ -0,0 +1,66 @@
+package com.alemandan.crm.repository;
+
+import com.alemandan.crm.model.VentaResumenDiario;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Repositorio del resumen diario de ventas (venta_resumen_diario).
+ * - acumular: upsert incremental usado en el checkout (misma transacción que la venta).
+ * - borrarRango / reconstruirRango: backfill desde venta/detalle_venta.
+ * Las consultas de reportes sobre el resumen están en VentaRepository (mismas firmas de siempre).
+ */
+public interface VentaResumenDiarioRepository extends JpaRepository<VentaResumenDiario, Long> {
+
+    /**
+     * Suma los valores de una venta a la fila (dia, producto, usuario, metodo) creándola si no existe.
+     * ON DUPLICATE KEY UPDATE es atómico en MySQL: dos cajas concurrentes no pierden incrementos.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO venta_resumen_diario " +
+            "(dia, producto_id, usuario_id, metodo_pago, unidades, monto, iva, num_ventas) " +
+            "VALUES (:dia, :productoId, :usuarioId, :metodoPago, :unidades, :monto, :iva, :numVentas) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "unidades = unidades + VALUES(unidades), " +
+            "monto = monto + VALUES(monto), " +
+            "iva = iva + VALUES(iva), " +
+            "num_ventas = num_ventas + VALUES(num_ventas)", nativeQuery = true)
+    int acumular(@Param("dia") LocalDate dia,
+                 @Param("productoId") Long productoId,
+                 @Param("usuarioId") Long usuarioId,
+                 @Param("metodoPago") String metodoPago,
+                 @Param("unidades") long unidades,
+                 @Param("monto") BigDecimal monto,
+                 @Param("iva") BigDecimal iva,
+                 @Param("numVentas") long numVentas);
+
+    @Modifying
+    @Query(value = "DELETE FROM venta_resumen_diario WHERE dia BETWEEN :desde AND :hasta", nativeQuery = true)
+    int borrarRango(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+    /**
+     * Recalcula el resumen de un rango de días a partir de las ventas (llamar tras borrarRango).
+     * Cada venta se cuenta una vez en num_ventas: en la fila de su primera línea (MIN(detalle.id)).
+     */
+    @Modifying
+    @Query(value = "INSERT INTO venta_resumen_diario " +
+            "(dia, producto_id, usuario_id, metodo_pago, unidades, monto, iva, num_ventas) " +
+            "SELECT DATE(v.fecha), d.producto_id, COALESCE(v.usuario_id, 0), COALESCE(v.metodo_pago, ''), " +
+            "COALESCE(SUM(d.cantidad), 0), " +
+            "COALESCE(SUM(d.cantidad * d.precio_unitario), 0), " +
+            "COALESCE(SUM(d.iva_monto), 0), " +
+            "SUM(CASE WHEN d.id = pd.primer_id THEN 1 ELSE 0 END) " +
+            "FROM venta v " +
+            "JOIN detalle_venta d ON d.venta_id = v.id " +
+            "JOIN (SELECT venta_id, MIN(id) AS primer_id FROM detalle_venta WHERE producto_id IS NOT NULL GROUP BY venta_id) pd ON pd.venta_id = v.id " +
+            "WHERE d.producto_id IS NOT NULL " +
+            "AND v.fecha >= :desde AND v.fecha < DATE_ADD(:hasta, INTERVAL 1 DAY) " +
+            "GROUP BY DATE(v.fecha), d.producto_id, COALESCE(v.usuario_id, 0), COALESCE(v.metodo_pago, '')",
+            nativeQuery = true)
+    int reconstruirRango(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+}
@@ -1,25 +1,91 @@
 package com.alemandan.crm.service;
 
+import com.alemandan.crm.dto.VentaFilaAdmin;
+import com.alemandan.crm.dto.VentasPagina;
 import com.alemandan.crm.model.Venta;
 import com.alemandan.crm.repository.VentaRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class AdminVentaService {
+
+    public static final int TAMANO_PAGINA_POR_DEFECTO = 50;
+    public static final int TAMANO_PAGINA_MAXIMO = 200;
+
     @Autowired
     private VentaRepository ventaRepository;
 
     public List<Venta> filtrarVentas(String fechaInicio, String fechaFin, Long usuarioId, Long productoId, String metodoPago) {
-        LocalDateTime fechaInicioDT = null, fechaFinDT = null;
-        if (fechaInicio != null && !fechaInicio.isEmpty())
-            fechaInicioDT = LocalDateTime.parse(fechaInicio + "T00:00:00");
-        if (fechaFin != null && !fechaFin.isEmpty())
-            fechaFinDT = LocalDateTime.parse(fechaFin + "T23:59:59");
-
+        LocalDateTime fechaInicioDT = inicioDelDia(fechaInicio), fechaFinDT = finDelDia(fechaFin);
         return ventaRepository.filtrarAdmin(fechaInicioDT, fechaFinDT, usuarioId, productoId, metodoPago);
     }
-}
\ No newline at end of file
+
+    /**
+     * Página del listado de ventas (más recientes primero) a partir del cursor (cursorFecha, cursorId)
+     * de la última fila de la página anterior; sin cursor, la primera página.
+     * Dos consultas por página sin importar el historial: cabeceras (proyección) y líneas de esas ventas.
+     */
+    public VentasPagina paginarVentas(String fechaInicio, String fechaFin, Long usuarioId, Long productoId, String metodoPago,
+                                      LocalDateTime cursorFecha, Long cursorId, Integer tamano) {
+        int size = tamano == null ? TAMANO_PAGINA_POR_DEFECTO : Math.min(Math.max(tamano, 1), TAMANO_PAGINA_MAXIMO);
+        if (cursorFecha == null || cursorId == null) {
+            cursorFecha = null;
+            cursorId = null;
+        }
+
+        // Se pide una fila de más para saber si hay página siguiente sin contar
+        List<VentaFilaAdmin> filas = new ArrayList<>(ventaRepository.paginaAdmin(inicioDelDia(fechaInicio), finDelDia(fechaFin),
+                usuarioId, productoId, metodoPago, cursorFecha, cursorId, PageRequest.of(0, size + 1)));
+        boolean haySiguiente = filas.size() > size;
+        if (haySiguiente) {
+            filas = filas.subList(0, size);
+        }
+
+        if (!filas.isEmpty()) {
+            Map<Long, VentaFilaAdmin> porId = new LinkedHashMap<>();
+            for (VentaFilaAdmin f : filas) porId.put(f.getId(), f);
+            for (Object[] r : ventaRepository.lineasDeVentas(porId.keySet())) {
+                VentaFilaAdmin f = porId.get((Long) r[0]);
+                if (f == null) continue;
+                String nombre = r[1] == null ? "Producto eliminado" : r[1].toString();
+                f.getProductos().add(nombre + " ( " + r[2] + " x " + r[3] + " )");
+            }
+        }
+
+        VentaFilaAdmin ultima = filas.isEmpty() ? null : filas.get(filas.size() - 1);
+        return new VentasPagina(filas, size, haySiguiente,
+                haySiguiente ? ultima.getFecha() : null,
+                haySiguiente ? ultima.getId() : null);
+    }
+
+    /**
+     * Total vendido por empleado con los filtros del listado (todas las páginas), para la gráfica.
+     */
+    public Map<String, BigDecimal> totalesPorEmpleado(String fechaInicio, String fechaFin, Long usuarioId, Long productoId, String metodoPago) {
+        Map<String, BigDecimal> totales = new LinkedHashMap<>();
+        for (Object[] r : ventaRepository.totalesPorEmpleadoAdmin(inicioDelDia(fechaInicio), finDelDia(fechaFin),
+                usuarioId, productoId, metodoPago)) {
+            String nombre = r[0] == null ? "Sin nombre" : r[0].toString();
+            BigDecimal total = r[1] == null ? BigDecimal.ZERO : (BigDecimal) r[1];
+            totales.merge(nombre, total, BigDecimal::add);
+        }
+        return totales;
+    }
+
+    private LocalDateTime inicioDelDia(String fecha) {
+        return (fecha != null && !fecha.isEmpty()) ? LocalDateTime.parse(fecha + "T00:00:00") : null;
+    }
+
+    private LocalDateTime finDelDia(String fecha) {
+        return (fecha != null && !fecha.isEmpty()) ? LocalDateTime.parse(fecha + "T23:59:59") : null;
+    }
+}
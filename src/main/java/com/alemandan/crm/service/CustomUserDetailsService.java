@@ -1,7 +1,6 @@
 package com.alemandan.crm.service;
 
 import com.alemandan.crm.model.Usuario;
-import com.alemandan.crm.repository.UsuarioRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.*;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -11,12 +10,13 @@ import java.util.Collections;
 
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
+    // Búsqueda por email desde la caché de usuarios (se invalida al guardar, p.ej. al cambiar la contraseña)
     @Autowired
-    private UsuarioRepository usuarioRepository;
+    private UsuarioService usuarioService;
 
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        Usuario usuario = usuarioRepository.findByEmail(email);
+        Usuario usuario = usuarioService.findByEmail(email);
         if (usuario == null) {
             throw new UsernameNotFoundException("Usuario no encontrado con email: " + email);
         }
@@ -28,4 +28,4 @@ public class CustomUserDetailsService implements UserDetailsService {
                 Collections.singletonList(new SimpleGrantedAuthority(usuario.getRol()))
         );
     }
-}
\ No newline at end of file
+}
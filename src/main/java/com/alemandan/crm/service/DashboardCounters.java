@@ -0,0 +1,354 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.events.VentaRegistradaEvent;
+import com.alemandan.crm.repository.ProductoRepository;
+import com.alemandan.crm.repository.ProveedorRepository;
+import com.alemandan.crm.repository.UsuarioRepository;
+import com.alemandan.crm.repository.VentaRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Contadores en memoria del dashboard: ventas del día (global y por empleado), ventas totales por empleado,
+ * resumen global (cantidad y monto) y totales de empleados, proveedores y productos.
+ * Los dashboards se pintan desde aquí sin consultar la BD.
+ *
+ * - Las ventas se suman con LongAdder (VentasListener, tras el commit): muchas cajas confirmando a la vez
+ *   no compiten por el mismo contador.
+ * - Los contadores del día se reinician al cambiar la fecha (la primera lectura o venta del nuevo día).
+ * - Se cargan desde la BD al arrancar y se reconcilian periódicamente, lo que corrige ventas hechas fuera
+ *   de la aplicación o eventos perdidos. La carga es una sola transacción REPEATABLE READ (todas las consultas
+ *   ven la misma instantánea) limitada a id <= MAX(id) leído al empezar. Las ventas confirmadas mientras tanto
+ *   se guardan aparte y se suman al resultado si la carga no las vio: las de id mayor siempre, y las de id
+ *   menor o igual (ids asignados antes pero confirmadas después) si no están en la instantánea.
+ * - Empleados, proveedores y productos no cambian con las ventas: se recalculan en la siguiente lectura
+ *   tras un alta o baja (invalidarCatalogo) y en cada reconciliación.
+ */
+@Component
+public class DashboardCounters {
+
+    private static final Logger logger = LoggerFactory.getLogger(DashboardCounters.class);
+
+    @Autowired
+    private VentaRepository ventaRepository;
+
+    @Autowired
+    private UsuarioRepository usuarioRepository;
+
+    @Autowired
+    private ProveedorRepository proveedorRepository;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Clock clock = Clock.systemDefaultZone();
+
+    private TransactionTemplate cargaTemplate;
+
+    private volatile Estado estado;
+
+    // Ventas confirmadas durante una reconciliación (null fuera de ella)
+    private volatile Queue<VentaRegistradaEvent> pendientes;
+
+    // Lectura: registrar ventas (concurrente). Escritura: empezar y terminar una reconciliación.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile Catalogo catalogo;
+    private final AtomicLong catalogoVersion = new AtomicLong();
+
+    private static final class Dia {
+        final LocalDate fecha;
+        final LongAdder ventas = new LongAdder();
+        final Map<Long, LongAdder> ventasPorEmpleado = new ConcurrentHashMap<>();
+
+        Dia(LocalDate fecha) {
+            this.fecha = fecha;
+        }
+    }
+
+    private static final class Estado {
+        final AtomicReference<Dia> dia;
+        final LongAdder ventas = new LongAdder();
+        // Monto total en centavos
+        final LongAdder centavos = new LongAdder();
+        final Map<Long, LongAdder> ventasPorEmpleado = new ConcurrentHashMap<>();
+
+        Estado(LocalDate hoy) {
+            this.dia = new AtomicReference<>(new Dia(hoy));
+        }
+    }
+
+    private static final class Catalogo {
+        final long empleados;
+        final long proveedores;
+        final long productos;
+
+        Catalogo(long empleados, long proveedores, long productos) {
+            this.empleados = empleados;
+            this.proveedores = proveedores;
+            this.productos = productos;
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        cargaTemplate = new TransactionTemplate(transactionManager);
+        cargaTemplate.setReadOnly(true);
+        cargaTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    /**
+     * Suma una venta confirmada. Llamado tras el commit; no consulta la BD.
+     */
+    public void registrarVenta(VentaRegistradaEvent event) {
+        if (event == null) return;
+        lock.readLock().lock();
+        try {
+            Queue<VentaRegistradaEvent> p = pendientes;
+            if (p != null) p.add(event);
+            Estado e = estado;
+            if (e != null) sumar(e, event);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long ventasDelDia() {
+        return diaActual(asegurarCargado()).ventas.sum();
+    }
+
+    public long ventasDelDiaEmpleado(Long usuarioId) {
+        return valor(diaActual(asegurarCargado()).ventasPorEmpleado, usuarioId);
+    }
+
+    public long ventasTotalesEmpleado(Long usuarioId) {
+        return valor(asegurarCargado().ventasPorEmpleado, usuarioId);
+    }
+
+    public long totalVentas() {
+        return asegurarCargado().ventas.sum();
+    }
+
+    public BigDecimal montoTotal() {
+        return BigDecimal.valueOf(asegurarCargado().centavos.sum(), 2);
+    }
+
+    public long empleados() {
+        return catalogo().empleados;
+    }
+
+    public long proveedores() {
+        return catalogo().proveedores;
+    }
+
+    public long productos() {
+        return catalogo().productos;
+    }
+
+    /**
+     * Alta, baja o (in)activación de empleados, proveedores o productos: la próxima lectura recalcula los totales.
+     */
+    public void invalidarCatalogo() {
+        catalogoVersion.incrementAndGet();
+        catalogo = null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarAlArrancar() {
+        try {
+            reconciliar();
+        } catch (Exception e) {
+            // Sin BD al arrancar: se cargan en la primera lectura
+            logger.warn("No se pudieron cargar los contadores del dashboard al arrancar: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Recalcula todos los contadores desde la BD y reemplaza los actuales.
+     * Las lecturas siguen usando los anteriores hasta el reemplazo.
+     */
+    @Scheduled(initialDelayString = "${app.dashboard.contadores.reconciliacion-ms:300000}",
+            fixedDelayString = "${app.dashboard.contadores.reconciliacion-ms:300000}")
+    public synchronized void reconciliar() {
+        lock.writeLock().lock();
+        try {
+            pendientes = new ConcurrentLinkedQueue<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            cargaTemplate.executeWithoutResult(status -> {
+                long hastaId = valorLong(ventaRepository.maxId());
+                Estado nuevo = cargar(hastaId);
+
+                // Ventas con id <= hastaId que la instantánea sí contiene: ya están en la carga
+                Set<Long> comprobadas = new HashSet<>();
+                Set<Long> vistas = new HashSet<>();
+                comprobarEnInstantanea(hastaId, comprobadas, vistas);
+
+                lock.writeLock().lock();
+                try {
+                    // Sólo las que llegaron desde la comprobación anterior: las cajas esperan una consulta corta
+                    comprobarEnInstantanea(hastaId, comprobadas, vistas);
+                    for (VentaRegistradaEvent ev : pendientes) {
+                        Long id = ev.getVentaId();
+                        if (id == null || id > hastaId || !vistas.contains(id)) sumar(nuevo, ev);
+                    }
+                    Estado anterior = estado;
+                    if (anterior != null && anterior.ventas.sum() != nuevo.ventas.sum()) {
+                        logger.info("Contadores del dashboard corregidos: {} ventas en memoria, {} en la BD",
+                                anterior.ventas.sum(), nuevo.ventas.sum());
+                    }
+                    estado = nuevo;
+                    pendientes = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            });
+        } finally {
+            lock.writeLock().lock();
+            try {
+                pendientes = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        cargarCatalogo();
+    }
+
+    /**
+     * Busca en la instantánea de la carga las ventas pendientes con id <= hastaId aún no comprobadas.
+     * Un id asignado antes de leer MAX(id) puede confirmarse después: entonces la carga no lo contó.
+     */
+    private void comprobarEnInstantanea(long hastaId, Set<Long> comprobadas, Set<Long> vistas) {
+        List<Long> ids = new ArrayList<>();
+        for (VentaRegistradaEvent ev : pendientes) {
+            Long id = ev.getVentaId();
+            if (id != null && id <= hastaId && comprobadas.add(id)) ids.add(id);
+        }
+        if (!ids.isEmpty()) vistas.addAll(ventaRepository.idsExistentes(ids));
+    }
+
+    private Estado cargar(long hastaId) {
+        LocalDate hoy = LocalDate.now(clock);
+        Estado e = new Estado(hoy);
+
+        List<Object[]> resumen = ventaRepository.resumenGlobalHasta(hastaId);
+        if (resumen != null && !resumen.isEmpty() && resumen.get(0) != null) {
+            Object[] fila = resumen.get(0);
+            e.ventas.add(valorLong(fila[0]));
+            if (fila[1] != null) e.centavos.add(centavos((BigDecimal) fila[1]));
+        }
+        for (Object[] r : ventaRepository.conteoPorEmpleadoHasta(hastaId)) {
+            if (r[0] != null) contador(e.ventasPorEmpleado, (Long) r[0]).add(valorLong(r[1]));
+        }
+        Dia dia = e.dia.get();
+        for (Object[] r : ventaRepository.conteoPorEmpleadoEntreHasta(hoy.atStartOfDay(), hoy.plusDays(1).atStartOfDay(), hastaId)) {
+            long cantidad = valorLong(r[1]);
+            dia.ventas.add(cantidad);
+            if (r[0] != null) contador(dia.ventasPorEmpleado, (Long) r[0]).add(cantidad);
+        }
+        return e;
+    }
+
+    private Catalogo cargarCatalogo() {
+        long version = catalogoVersion.get();
+        Catalogo c = new Catalogo(usuarioRepository.countByRolAndActivoTrue("EMPLEADO"),
+                proveedorRepository.count(), productoRepository.count());
+        // Si hubo un alta o baja mientras se contaba, este valor ya es viejo: no se guarda
+        if (catalogoVersion.get() == version) {
+            catalogo = c;
+        }
+        return c;
+    }
+
+    private Catalogo catalogo() {
+        Catalogo c = catalogo;
+        return c != null ? c : cargarCatalogo();
+    }
+
+    private Estado asegurarCargado() {
+        Estado e = estado;
+        if (e == null) {
+            synchronized (this) {
+                if (estado == null) reconciliar();
+                e = estado;
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Contadores del día en curso; al cambiar la fecha se reemplazan por unos en cero.
+     */
+    private Dia diaActual(Estado e) {
+        LocalDate hoy = LocalDate.now(clock);
+        Dia d = e.dia.get();
+        while (d.fecha.isBefore(hoy)) {
+            e.dia.compareAndSet(d, new Dia(hoy));
+            d = e.dia.get();
+        }
+        return d;
+    }
+
+    private void sumar(Estado e, VentaRegistradaEvent event) {
+        e.ventas.increment();
+        if (event.getTotal() != null) e.centavos.add(centavos(event.getTotal()));
+        if (event.getUsuarioId() != null) contador(e.ventasPorEmpleado, event.getUsuarioId()).increment();
+
+        // Una venta de ayer confirmada después de medianoche no cuenta para hoy
+        Dia dia = diaActual(e);
+        if (event.getFecha() == null || dia.fecha.equals(event.getFecha().toLocalDate())) {
+            dia.ventas.increment();
+            if (event.getUsuarioId() != null) contador(dia.ventasPorEmpleado, event.getUsuarioId()).increment();
+        }
+    }
+
+    private static LongAdder contador(Map<Long, LongAdder> mapa, Long usuarioId) {
+        return mapa.computeIfAbsent(usuarioId, k -> new LongAdder());
+    }
+
+    private static long valor(Map<Long, LongAdder> mapa, Long usuarioId) {
+        if (usuarioId == null) return 0;
+        LongAdder a = mapa.get(usuarioId);
+        return a == null ? 0 : a.sum();
+    }
+
+    private static long valorLong(Object o) {
+        return o == null ? 0 : ((Number) o).longValue();
+    }
+
+    private static long centavos(BigDecimal monto) {
+        return monto.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+}
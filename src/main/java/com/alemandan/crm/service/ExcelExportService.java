@@ -0,0 +1,59 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.dto.VentaExportada;
+import com.alemandan.crm.repository.VentaRepository;
+import com.alemandan.crm.util.ExcelVentasStreamWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+/**
+ * Exportes a Excel de ventas (/ventas/exportar-excel y /admin/ventas/exportar-excel).
+ * Las líneas se leen con un cursor de la BD y se escriben al OutputStream a medida que llegan
+ * (ExcelVentasStreamWriter): ni las entidades ni el libro completo se cargan en memoria.
+ * Mismos filtros que el historial del empleado (filtrarEmpleado) y el listado de admin (filtrarAdmin).
+ */
+@Service
+public class ExcelExportService {
+
+    @Autowired
+    private VentaRepository ventaRepository;
+
+    /**
+     * Historial del empleado. Fechas yyyy-MM-dd, ambos días inclusive. Devuelve el número de ventas exportadas.
+     */
+    @Transactional(readOnly = true)
+    public int exportarVentasEmpleado(Long usuarioId, String fechaInicio, String fechaFin, Long productoId,
+                                      String metodoPago, OutputStream out) throws IOException {
+        LocalDateTime desde = esVacio(fechaInicio) ? null : LocalDate.parse(fechaInicio).atStartOfDay();
+        LocalDateTime hasta = esVacio(fechaFin) ? null : LocalDate.parse(fechaFin).plusDays(1).atStartOfDay();
+        try (Stream<Object[]> lineas = ventaRepository.streamLineasEmpleado(usuarioId, desde, hasta, productoId,
+                esVacio(metodoPago) ? null : metodoPago)) {
+            return ExcelVentasStreamWriter.escribirVentas(VentaExportada.agrupar(lineas.iterator()), false, "Mis Ventas", out);
+        }
+    }
+
+    /**
+     * Ventas de todos los empleados con los filtros del listado de administración.
+     */
+    @Transactional(readOnly = true)
+    public int exportarVentasAdmin(String fechaInicio, String fechaFin, Long usuarioId, Long productoId,
+                                   String metodoPago, OutputStream out) throws IOException {
+        LocalDateTime desde = esVacio(fechaInicio) ? null : LocalDateTime.parse(fechaInicio + "T00:00:00");
+        LocalDateTime hasta = esVacio(fechaFin) ? null : LocalDateTime.parse(fechaFin + "T23:59:59");
+        try (Stream<Object[]> lineas = ventaRepository.streamLineasAdmin(desde, hasta, usuarioId, productoId,
+                esVacio(metodoPago) ? null : metodoPago)) {
+            return ExcelVentasStreamWriter.escribirVentas(VentaExportada.agrupar(lineas.iterator()), true, "Ventas - Admin", out);
+        }
+    }
+
+    private static boolean esVacio(String valor) {
+        return valor == null || valor.isEmpty();
+    }
+}
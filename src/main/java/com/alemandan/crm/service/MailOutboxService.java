@@ -0,0 +1,287 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.model.MailOutbox;
+import com.alemandan.crm.repository.MailOutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Cola persistente de correos (tabla mail_outbox).
+ * - encolar / encolarTodos sólo insertan filas: la petición HTTP responde al instante.
+ * - despachar (programado) reclama lotes con SELECT ... FOR UPDATE SKIP LOCKED, los marca ENVIANDO con un
+ *   plazo y los envía en mailExecutor fuera de la transacción.
+ * - Un fallo reprograma el correo con backoff exponencial (backoff-inicial-segundos * 2^(intentos-1), hasta
+ *   backoff-max-minutos); al agotar max-intentos queda FALLIDO con el último error.
+ * - Si la aplicación se reinicia con correos ENVIANDO, se reclaman de nuevo al vencer el plazo.
+ * - Con SendGrid, los primeros intentos de un mismo correo masivo se envían juntos (MailService.enviarMasivo):
+ *   despachar los junta entre lotes reclamados y envía una llamada a la API por cada
+ *   MailService.MAX_PERSONALIZACIONES destinatarios en lugar de una por lote o por destinatario.
+ *
+ * Eager (@Lazy(false)) para que el despachador corra aunque nadie haya encolado nada desde el arranque.
+ */
+@Service
+@Lazy(false)
+public class MailOutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailOutboxService.class);
+
+    private static final int MAX_LONGITUD_ERROR = 500;
+
+    @Autowired
+    private MailOutboxRepository mailOutboxRepository;
+
+    @Autowired
+    private MailService mailService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("mailExecutor")
+    private Executor mailExecutor;
+
+    @Value("${app.mail.outbox.lote:100}")
+    private int lote;
+
+    @Value("${app.mail.outbox.max-intentos:5}")
+    private int maxIntentos;
+
+    @Value("${app.mail.outbox.backoff-inicial-segundos:60}")
+    private long backoffInicialSegundos;
+
+    @Value("${app.mail.outbox.backoff-max-minutos:60}")
+    private long backoffMaxMinutos;
+
+    @Value("${app.mail.outbox.plazo-envio-minutos:10}")
+    private long plazoEnvioMinutos;
+
+    private Clock clock = Clock.systemDefaultZone();
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Encola un correo para enviarlo lo antes posible.
+     */
+    public MailOutbox encolar(String destinatario, String asunto, String cuerpo, boolean html) {
+        return mailOutboxRepository.save(nuevo(destinatario, asunto, cuerpo, html, LocalDateTime.now(clock)));
+    }
+
+    /**
+     * Encola el mismo correo de texto para varios destinatarios (correos masivos).
+     *
+     * @return número de correos encolados
+     */
+    public int encolarTodos(List<String> destinatarios, String asunto, String cuerpo) {
+        LocalDateTime ahora = LocalDateTime.now(clock);
+        List<MailOutbox> filas = new ArrayList<>();
+        for (String destinatario : destinatarios) {
+            if (destinatario == null || destinatario.isBlank()) continue;
+            filas.add(nuevo(destinatario, asunto, cuerpo, false, ahora));
+        }
+        mailOutboxRepository.saveAll(filas);
+        logger.info("Encolados {} correos: {}", filas.size(), asunto);
+        return filas.size();
+    }
+
+    public long contarPorEstado(MailOutbox.Estado estado) {
+        return mailOutboxRepository.countByEstado(estado);
+    }
+
+    /**
+     * Reclama y envía lotes hasta vaciar los correos listos o llenar la cola de mailExecutor.
+     * Con envío masivo, los primeros intentos con el mismo asunto y cuerpo se juntan entre lotes reclamados:
+     * cada grupo sale al llegar a MAX_PERSONALIZACIONES o cuando no quedan correos listos.
+     * Los reintentos van uno a uno para poder caer a SMTP.
+     */
+    @Scheduled(fixedDelayString = "${app.mail.outbox.intervalo-ms:5000}")
+    public void despachar() {
+        boolean masivo = mailService.admiteEnvioMasivo();
+        // Grupos aún incompletos; sus correos ya están ENVIANDO (si algo falla se reclaman al vencer el plazo)
+        Map<List<Object>, List<MailOutbox>> grupos = new LinkedHashMap<>();
+        while (true) {
+            List<MailOutbox> reclamados = reclamar();
+            List<List<MailOutbox>> envios = new ArrayList<>();
+            for (MailOutbox correo : reclamados) {
+                if (!masivo || correo.getIntentos() > 0) {
+                    envios.add(List.of(correo));
+                    continue;
+                }
+                List<Object> clave = List.of(correo.getAsunto(), correo.getCuerpo(), correo.isHtml());
+                List<MailOutbox> grupo = grupos.computeIfAbsent(clave, k -> new ArrayList<>());
+                grupo.add(correo);
+                if (grupo.size() >= MailService.MAX_PERSONALIZACIONES) {
+                    envios.add(grupos.remove(clave));
+                }
+            }
+            boolean ultimo = reclamados.size() < lote;
+            if (ultimo) {
+                envios.addAll(grupos.values());
+                grupos.clear();
+            }
+            if (!ejecutar(envios, grupos) || ultimo) return;
+        }
+    }
+
+    /**
+     * Pasa los envíos a mailExecutor. Si el pool está lleno, devuelve a la cola el resto y los grupos pendientes.
+     */
+    private boolean ejecutar(List<List<MailOutbox>> envios, Map<List<Object>, List<MailOutbox>> pendientes) {
+        for (int i = 0; i < envios.size(); i++) {
+            List<MailOutbox> envio = envios.get(i);
+            try {
+                if (envio.size() == 1) mailExecutor.execute(() -> enviar(envio.get(0)));
+                else mailExecutor.execute(() -> enviarMasivo(envio));
+            } catch (RejectedExecutionException e) {
+                // Pool lleno: el resto vuelve a la cola y se reintenta en el siguiente ciclo
+                List<MailOutbox> resto = new ArrayList<>();
+                envios.subList(i, envios.size()).forEach(resto::addAll);
+                pendientes.values().forEach(resto::addAll);
+                liberar(resto);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Bloquea hasta {@code lote} correos listos y los marca ENVIANDO en una sola transacción.
+     */
+    List<MailOutbox> reclamar() {
+        List<MailOutbox> reclamados = transactionTemplate.execute(status -> {
+            LocalDateTime ahora = LocalDateTime.now(clock);
+            List<Long> ids = mailOutboxRepository.bloquearListos(ahora, lote);
+            if (ids == null || ids.isEmpty()) return List.of();
+            mailOutboxRepository.marcarEnviando(ids, ahora.plusMinutes(plazoEnvioMinutos));
+            return mailOutboxRepository.findAllById(ids);
+        });
+        return reclamados == null ? List.of() : reclamados;
+    }
+
+    /**
+     * Envía un correo reclamado y guarda el resultado (ENVIADO, reintento programado o FALLIDO).
+     */
+    void enviar(MailOutbox correo) {
+        correo.setIntentos(correo.getIntentos() + 1);
+        try {
+            mailService.enviarDesdeOutbox(correo.getDestinatario(), correo.getAsunto(), correo.getCuerpo(), correo.isHtml());
+            marcarEnviado(correo);
+        } catch (Exception e) {
+            registrarFallo(correo, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+        guardar(List.of(correo));
+    }
+
+    /**
+     * Envía un grupo con el mismo contenido en una llamada a SendGrid por cada MAX_PERSONALIZACIONES destinatarios.
+     * Cada correo queda ENVIADO o con su propio error (destinatario rechazado) y reintento.
+     */
+    void enviarMasivo(List<MailOutbox> correos) {
+        MailOutbox primero = correos.get(0);
+        Map<String, String> fallidos;
+        try {
+            fallidos = mailService.enviarMasivo(correos.stream().map(MailOutbox::getDestinatario).toList(),
+                    primero.getAsunto(), primero.getCuerpo(), primero.isHtml());
+        } catch (Exception e) {
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            fallidos = new HashMap<>();
+            for (MailOutbox correo : correos) fallidos.put(correo.getDestinatario(), error);
+        }
+        for (MailOutbox correo : correos) {
+            correo.setIntentos(correo.getIntentos() + 1);
+            String error = fallidos.get(correo.getDestinatario());
+            if (error == null) marcarEnviado(correo);
+            else registrarFallo(correo, error);
+        }
+        guardar(correos);
+    }
+
+    private void marcarEnviado(MailOutbox correo) {
+        correo.setEstado(MailOutbox.Estado.ENVIADO);
+        correo.setEnviado(LocalDateTime.now(clock));
+        correo.setUltimoError(null);
+    }
+
+    private void registrarFallo(MailOutbox correo, String error) {
+        correo.setUltimoError(recortar(error));
+        if (correo.getIntentos() >= maxIntentos) {
+            correo.setEstado(MailOutbox.Estado.FALLIDO);
+            logger.error("Correo {} a {} descartado tras {} intentos: {}", correo.getId(),
+                    correo.getDestinatario(), correo.getIntentos(), error);
+        } else {
+            correo.setEstado(MailOutbox.Estado.PENDIENTE);
+            correo.setProximoIntento(LocalDateTime.now(clock).plusSeconds(backoffSegundos(correo.getIntentos())));
+            logger.warn("Correo {} a {} falló (intento {}), reintento a las {}: {}", correo.getId(),
+                    correo.getDestinatario(), correo.getIntentos(), correo.getProximoIntento(), error);
+        }
+    }
+
+    private void guardar(List<MailOutbox> correos) {
+        try {
+            mailOutboxRepository.saveAll(correos);
+        } catch (Exception e) {
+            // Quedan ENVIANDO: se reclaman de nuevo al vencer el plazo
+            logger.error("No se pudo guardar el estado de {} correo(s): {}", correos.size(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Segundos de espera antes del siguiente intento: inicial, doble, cuádruple... hasta el máximo.
+     */
+    long backoffSegundos(int intentos) {
+        long maximo = backoffMaxMinutos * 60;
+        long espera = backoffInicialSegundos;
+        for (int i = 1; i < intentos && espera < maximo; i++) {
+            espera *= 2;
+        }
+        return Math.min(espera, maximo);
+    }
+
+    private void liberar(List<MailOutbox> correos) {
+        LocalDateTime ahora = LocalDateTime.now(clock);
+        for (MailOutbox correo : correos) {
+            correo.setEstado(MailOutbox.Estado.PENDIENTE);
+            correo.setProximoIntento(ahora);
+        }
+        mailOutboxRepository.saveAll(correos);
+    }
+
+    private static MailOutbox nuevo(String destinatario, String asunto, String cuerpo, boolean html, LocalDateTime ahora) {
+        MailOutbox correo = new MailOutbox();
+        correo.setDestinatario(destinatario);
+        correo.setAsunto(asunto);
+        correo.setCuerpo(cuerpo);
+        correo.setHtml(html);
+        correo.setEstado(MailOutbox.Estado.PENDIENTE);
+        correo.setProximoIntento(ahora);
+        correo.setCreado(ahora);
+        return correo;
+    }
+
+    private static String recortar(String texto) {
+        return texto.length() <= MAX_LONGITUD_ERROR ? texto : texto.substring(0, MAX_LONGITUD_ERROR);
+    }
+}
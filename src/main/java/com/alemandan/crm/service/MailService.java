@@ -1,9 +1,12 @@
 package com.alemandan.crm.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sendgrid.*;
 import com.sendgrid.helpers.mail.Mail;
 import com.sendgrid.helpers.mail.objects.Content;
 import com.sendgrid.helpers.mail.objects.Email;
+import com.sendgrid.helpers.mail.objects.Personalization;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,20 +22,42 @@ import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Centralized email service with exception handling to prevent SMTP failures from crashing the app.
  * All mail sending methods catch and log exceptions without rethrowing.
  * 
  * Uses SendGrid API when SENDGRID_API_KEY is configured, falls back to JavaMailSender (SMTP) otherwise.
+ * All SendGrid calls share the pooled client from SendGridConfig; the same text for many recipients
+ * (bulk mail from the outbox) goes in one API call per {@link #MAX_PERSONALIZACIONES} recipients.
  */
 @Service
 public class MailService {
 
     private static final Logger logger = LoggerFactory.getLogger(MailService.class);
 
+    /** SendGrid limit of personalizations (one per recipient here) per mail/send request. */
+    public static final int MAX_PERSONALIZACIONES = 1000;
+
+    public static final String ASUNTO_BIENVENIDA = "Bienvenido a AlemandanPOS";
+    public static final String ASUNTO_RECHAZO = "Solicitud rechazada - AlemandanPOS";
+
+    // "personalizations.<n>.to..." in a SendGrid 400 error: the recipient at index n was rejected
+    private static final Pattern CAMPO_PERSONALIZACION = Pattern.compile("^personalizations\\.(\\d+)\\.");
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
     @Autowired
     private JavaMailSender mailSender;
+
+    @Autowired
+    private SendGrid sendGrid;
     
     @Value("${sendgrid.api.key:}")
     private String sendGridApiKey;
@@ -119,13 +144,12 @@ public class MailService {
             Content content = new Content("text/html", htmlBody);
             Mail mail = new Mail(from, subject, toEmail, content);
             
-            SendGrid sg = new SendGrid(sendGridApiKey);
             Request request = new Request();
             request.setMethod(Method.POST);
             request.setEndpoint("mail/send");
             request.setBody(mail.build());
             
-            Response response = sg.api(request);
+            Response response = sendGrid.api(request);
             
             if (response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
                 logger.info("Email sent successfully via SendGrid to: {} (status: {})", to, response.getStatusCode());
@@ -165,43 +189,25 @@ public class MailService {
         }
     }
 
-    public void enviarBienvenida(String to, String nombre) {
-        String subject = "Bienvenido a AlemandanPOS";
-        String body = "Hola " + nombre + ",\n\n"
+    /**
+     * Cuerpo (texto) del correo de bienvenida tras enviar la solicitud de registro; se encola en MailOutboxService.
+     */
+    public static String cuerpoBienvenida(String nombre) {
+        return "Hola " + nombre + ",\n\n"
                 + "Gracias por solicitar acceso a nuestra plataforma AlemandanPOS.\n"
                 + "Tu registro fue recibido y está pendiente de aprobación por el administrador.\n"
                 + "Recibirás otro correo cuando tu acceso sea aprobado.\n\n"
                 + "Saludos,\nEquipo AlemandanPOS";
-        
-        // Try SendGrid API first if configured
-        if (StringUtils.hasText(sendGridApiKey)) {
-            if (enviarConSendGridTexto(to, subject, body)) {
-                return; // Success with SendGrid
-            }
-            logger.warn("SendGrid failed, falling back to SMTP for: {}", to);
-        }
-        
-        // Fallback to SMTP
-        enviarConSMTPTexto(to, subject, body);
     }
 
-    public void enviarRechazo(String to, String nombre) {
-        String subject = "Solicitud rechazada - AlemandanPOS";
-        String body = "Hola " + nombre + ",\n\n"
+    /**
+     * Cuerpo (texto) del correo de solicitud rechazada; se encola en MailOutboxService.
+     */
+    public static String cuerpoRechazo(String nombre) {
+        return "Hola " + nombre + ",\n\n"
                 + "Tu solicitud de acceso fue rechazada por el administrador.\n"
                 + "Si crees que esto es un error, comunícate con la empresa.\n\n"
                 + "Saludos,\nEquipo AlemandanPOS";
-        
-        // Try SendGrid API first if configured
-        if (StringUtils.hasText(sendGridApiKey)) {
-            if (enviarConSendGridTexto(to, subject, body)) {
-                return; // Success with SendGrid
-            }
-            logger.warn("SendGrid failed, falling back to SMTP for: {}", to);
-        }
-        
-        // Fallback to SMTP
-        enviarConSMTPTexto(to, subject, body);
     }
 
     /**
@@ -269,6 +275,131 @@ public class MailService {
         enviarConSMTPTexto(to, asunto, mensajeTexto);
     }
     
+    /**
+     * Send one queued email (MailOutboxService).
+     * Unlike the other methods, failures are thrown so the outbox can schedule a retry.
+     *
+     * @throws Exception if neither SendGrid nor SMTP could send the email
+     */
+    public void enviarDesdeOutbox(String to, String subject, String body, boolean html) throws Exception {
+        // Try SendGrid API first if configured
+        if (StringUtils.hasText(sendGridApiKey)) {
+            boolean enviado = html ? enviarConSendGrid(to, subject, body) : enviarConSendGridTexto(to, subject, body);
+            if (enviado) {
+                return; // Success with SendGrid
+            }
+            logger.warn("SendGrid failed, falling back to SMTP for: {}", to);
+        }
+
+        // Fallback to SMTP - throw exception if it fails
+        if (html) {
+            MimeMessage message = mailSender.createMimeMessage();
+            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+            helper.setTo(to);
+            helper.setSubject(subject);
+            helper.setText(body, true);
+            mailSender.send(message);
+            logger.info("Email sent successfully via SMTP to: {}", to);
+        } else {
+            enviarConSMTPTextoConExcepcion(to, subject, body);
+        }
+    }
+
+    /**
+     * True when bulk sending (one SendGrid call for many recipients) is available.
+     */
+    public boolean admiteEnvioMasivo() {
+        return StringUtils.hasText(sendGridApiKey);
+    }
+
+    /**
+     * Send the same email to many recipients through SendGrid, one personalization per recipient
+     * (recipients do not see each other) and up to {@link #MAX_PERSONALIZACIONES} per API call.
+     * When SendGrid rejects specific recipients (400 with personalizations.N fields), those are reported
+     * and the rest of the request is sent again once.
+     *
+     * @return recipients that could not be sent, with the error; empty if all were accepted
+     */
+    public Map<String, String> enviarMasivo(List<String> destinatarios, String subject, String body, boolean html) {
+        Map<String, String> fallidos = new LinkedHashMap<>();
+        for (int desde = 0; desde < destinatarios.size(); desde += MAX_PERSONALIZACIONES) {
+            List<String> lote = destinatarios.subList(desde, Math.min(desde + MAX_PERSONALIZACIONES, destinatarios.size()));
+            enviarLoteSendGrid(lote, subject, body, html, fallidos, true);
+        }
+        logger.info("Bulk email via SendGrid: {} recipients, {} failed", destinatarios.size(), fallidos.size());
+        return fallidos;
+    }
+
+    private void enviarLoteSendGrid(List<String> destinatarios, String subject, String body, boolean html,
+                                    Map<String, String> fallidos, boolean reintentar) {
+        Mail mail = new Mail();
+        mail.setFrom(new Email(senderEmail));
+        mail.setSubject(subject);
+        mail.addContent(new Content(html ? "text/html" : "text/plain", body));
+        for (String to : destinatarios) {
+            Personalization personalization = new Personalization();
+            personalization.addTo(new Email(to));
+            mail.addPersonalization(personalization);
+        }
+
+        Response response;
+        try {
+            Request request = new Request();
+            request.setMethod(Method.POST);
+            request.setEndpoint("mail/send");
+            request.setBody(mail.build());
+            response = sendGrid.api(request);
+        } catch (IOException e) {
+            logger.error("SendGrid API IO error sending bulk email to {} recipients. Error: {}", destinatarios.size(), e.getMessage());
+            for (String to : destinatarios) fallidos.put(to, "SendGrid: " + e.getMessage());
+            return;
+        }
+        if (response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
+            return;
+        }
+
+        Map<Integer, String> rechazados = response.getStatusCode() == 400 ? rechazadosPorIndice(response.getBody()) : Map.of();
+        if (rechazados.isEmpty()) {
+            logger.error("SendGrid API returned error status {} for bulk email to {} recipients. Body: {}",
+                    response.getStatusCode(), destinatarios.size(), response.getBody());
+            for (String to : destinatarios) fallidos.put(to, "SendGrid status " + response.getStatusCode());
+            return;
+        }
+        List<String> resto = new ArrayList<>();
+        for (int i = 0; i < destinatarios.size(); i++) {
+            String error = rechazados.get(i);
+            if (error != null) fallidos.put(destinatarios.get(i), error);
+            else resto.add(destinatarios.get(i));
+        }
+        logger.warn("SendGrid rejected {} of {} bulk recipients", destinatarios.size() - resto.size(), destinatarios.size());
+        if (resto.isEmpty()) return;
+        if (reintentar) {
+            enviarLoteSendGrid(resto, subject, body, html, fallidos, false);
+        } else {
+            for (String to : resto) fallidos.put(to, "SendGrid status " + response.getStatusCode());
+        }
+    }
+
+    /**
+     * Index of each rejected personalization -> error message, from a SendGrid 400 body.
+     * Empty when any error is not tied to a personalization (the whole request is invalid).
+     */
+    static Map<Integer, String> rechazadosPorIndice(String body) {
+        Map<Integer, String> rechazados = new LinkedHashMap<>();
+        try {
+            JsonNode errores = JSON.readTree(body == null ? "" : body).path("errors");
+            if (!errores.isArray() || errores.isEmpty()) return Map.of();
+            for (JsonNode error : errores) {
+                Matcher m = CAMPO_PERSONALIZACION.matcher(error.path("field").asText(""));
+                if (!m.find()) return Map.of();
+                rechazados.putIfAbsent(Integer.parseInt(m.group(1)), error.path("message").asText("Rejected by SendGrid"));
+            }
+        } catch (IOException | RuntimeException e) {
+            return Map.of();
+        }
+        return rechazados;
+    }
+
     /**
      * Send plain text email using SendGrid API.
      * @return true if successful, false otherwise
@@ -280,13 +411,12 @@ public class MailService {
             Content content = new Content("text/plain", textBody);
             Mail mail = new Mail(from, subject, toEmail, content);
             
-            SendGrid sg = new SendGrid(sendGridApiKey);
             Request request = new Request();
             request.setMethod(Method.POST);
             request.setEndpoint("mail/send");
             request.setBody(mail.build());
             
-            Response response = sg.api(request);
+            Response response = sendGrid.api(request);
             
             if (response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
                 logger.info("Email sent successfully via SendGrid to: {} (status: {})", to, response.getStatusCode());
@@ -317,13 +447,12 @@ public class MailService {
             Content content = new Content("text/plain", textBody);
             Mail mail = new Mail(from, subject, toEmail, content);
             
-            SendGrid sg = new SendGrid(sendGridApiKey);
             Request request = new Request();
             request.setMethod(Method.POST);
             request.setEndpoint("mail/send");
             request.setBody(mail.build());
             
-            Response response = sg.api(request);
+            Response response = sendGrid.api(request);
             
             if (response.getStatusCode() >= 200 && response.getStatusCode() < 300) {
                 logger.info("Email sent successfully via SendGrid to: {} (status: {})", to, response.getStatusCode());
@@ -0,0 +1,440 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.events.VentaRegistradaEvent;
+import com.alemandan.crm.model.Producto;
+import com.alemandan.crm.repository.ProductoRepository;
+import com.alemandan.crm.repository.VentaRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Índice en memoria de los productos activos para el autocompletar de la caja (/api/productos/buscar).
+ * - Nombres normalizados: minúsculas, sin tildes ni signos ("Café" = "cafe").
+ * - Términos de 3+ caracteres: trigramas (coincidencia en cualquier parte de una palabra).
+ *   Términos de 1-2 caracteres: prefijo de palabra.
+ * - Varios términos: deben coincidir todos.
+ * - Orden: nombre exacto, nombre que empieza por la búsqueda, palabras que empiezan por los términos,
+ *   resto; a igualdad, nombre más corto y alfabético.
+ *
+ * Se carga en la primera búsqueda y se mantiene al día desde ProductoService (alta/edición/activación)
+ * y con el stock vendido (VentasListener, tras el commit). Una recarga periódica corrige cualquier
+ * desviación (cambios hechos fuera de la aplicación).
+ *
+ * Las búsquedas toman el lock de lectura del índice y los cambios el de escritura. La recarga lee la BD sin
+ * bloquear a nadie, en una transacción REPEATABLE READ. Los cambios hechos mientras tanto se guardan aparte
+ * y se aplican también al índice nuevo: altas y ediciones siempre (dejan el mismo estado), y el stock de una
+ * venta sólo si la venta no está en la instantánea leída (si está, su descuento ya viene en la carga).
+ * Se devuelven copias de los productos: nadie fuera del índice puede modificar su contenido.
+ */
+@Component
+public class ProductoSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductoSearchIndex.class);
+
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    private static final Pattern NO_ALFANUMERICO = Pattern.compile("[^a-z0-9]+");
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private VentaRepository ventaRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate cargaTemplate;
+
+    private volatile Indice indice;
+
+    // Cambios hechos durante una recarga (null fuera de ella)
+    private volatile Queue<Cambio> pendientes;
+
+    // Lectura: registrar cambios (concurrente). Escritura: empezar y terminar una recarga.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Cambio del índice; ventaId es la venta que descontó el stock (null en altas, ediciones y bajas).
+     */
+    private static final class Cambio {
+        final Long ventaId;
+        final Consumer<Indice> aplicar;
+
+        Cambio(Long ventaId, Consumer<Indice> aplicar) {
+            this.ventaId = ventaId;
+            this.aplicar = aplicar;
+        }
+    }
+
+    private static final class Entrada {
+        final Producto producto;
+        final String nombre;
+        final String[] palabras;
+
+        Entrada(Producto producto, String nombre) {
+            this.producto = producto;
+            this.nombre = nombre;
+            this.palabras = nombre.isEmpty() ? new String[0] : nombre.split(" ");
+        }
+    }
+
+    private static final class Coincidencia {
+        final Entrada entrada;
+        final int puntaje;
+
+        Coincidencia(Entrada entrada, int puntaje) {
+            this.entrada = entrada;
+            this.puntaje = puntaje;
+        }
+    }
+
+    private static final Comparator<Coincidencia> ORDEN = Comparator
+            .<Coincidencia>comparingInt(c -> c.puntaje)
+            .thenComparingInt(c -> c.entrada.nombre.length())
+            .thenComparing(c -> c.entrada.nombre);
+
+    /**
+     * Estructuras de búsqueda. Se reemplaza entera en cada recarga.
+     */
+    private static final class Indice {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        final Map<Long, Entrada> entradas = new HashMap<>();
+        final Map<String, Set<Long>> trigramas = new HashMap<>();
+        final TreeMap<String, Set<Long>> palabras = new TreeMap<>();
+        // Nombre normalizado + id -> id: listado alfabético para la búsqueda vacía
+        final TreeMap<String, Long> porNombre = new TreeMap<>();
+
+        void agregar(Entrada e) {
+            Long id = e.producto.getId();
+            entradas.put(id, e);
+            porNombre.put(claveNombre(e), id);
+            for (String palabra : e.palabras) {
+                palabras.computeIfAbsent(palabra, k -> new HashSet<>()).add(id);
+                for (String t : trigramasDe(palabra)) {
+                    trigramas.computeIfAbsent(t, k -> new HashSet<>()).add(id);
+                }
+            }
+        }
+
+        void quitar(Long id) {
+            Entrada e = entradas.remove(id);
+            if (e == null) return;
+            porNombre.remove(claveNombre(e));
+            for (String palabra : e.palabras) {
+                quitarDe(palabras, palabra, id);
+                for (String t : trigramasDe(palabra)) {
+                    quitarDe(trigramas, t, id);
+                }
+            }
+        }
+
+        private static void quitarDe(Map<String, Set<Long>> mapa, String clave, Long id) {
+            Set<Long> ids = mapa.get(clave);
+            if (ids == null) return;
+            ids.remove(id);
+            if (ids.isEmpty()) mapa.remove(clave);
+        }
+
+        private static String claveNombre(Entrada e) {
+            return e.nombre + '\u0000' + e.producto.getId();
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        cargaTemplate = new TransactionTemplate(transactionManager);
+        cargaTemplate.setReadOnly(true);
+        cargaTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    /**
+     * Productos activos que coinciden con {@code termino}, ordenados por relevancia, como máximo {@code limite}.
+     * Con término vacío devuelve los primeros {@code limite} productos por nombre.
+     */
+    public List<Producto> buscar(String termino, int limite) {
+        Indice idx = asegurarCargado();
+        String consulta = normalizar(termino);
+        List<Producto> resultado = new ArrayList<>();
+        if (limite <= 0) return resultado;
+
+        idx.lock.readLock().lock();
+        try {
+            if (consulta.isEmpty()) {
+                for (Long id : idx.porNombre.values()) {
+                    resultado.add(copiar(idx.entradas.get(id).producto));
+                    if (resultado.size() >= limite) break;
+                }
+                return resultado;
+            }
+
+            String[] terminos = consulta.split(" ");
+            Set<Long> candidatos = null;
+            for (String t : terminos) {
+                Set<Long> coincidencias = candidatosPara(idx, t);
+                if (candidatos == null) {
+                    candidatos = coincidencias;
+                } else {
+                    candidatos.retainAll(coincidencias);
+                }
+                if (candidatos.isEmpty()) return resultado;
+            }
+
+            List<Coincidencia> encontrados = new ArrayList<>();
+            for (Long id : candidatos) {
+                Entrada e = idx.entradas.get(id);
+                int puntaje = puntaje(e, consulta, terminos);
+                if (puntaje >= 0) encontrados.add(new Coincidencia(e, puntaje));
+            }
+            encontrados.sort(ORDEN);
+            for (int i = 0; i < encontrados.size() && resultado.size() < limite; i++) {
+                resultado.add(copiar(encontrados.get(i).entrada.producto));
+            }
+            return resultado;
+        } finally {
+            idx.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Alta o edición de un producto: se indexa si está activo y se quita si no.
+     */
+    public void actualizar(Producto producto) {
+        if (producto == null || producto.getId() == null) return;
+        Long id = producto.getId();
+        Entrada nueva = Boolean.FALSE.equals(producto.getActivo()) ? null
+                : new Entrada(copiar(producto), normalizar(producto.getNombre()));
+        registrar(null, idx -> {
+            idx.quitar(id);
+            if (nueva != null) idx.agregar(nueva);
+        });
+    }
+
+    public void eliminar(Long productoId) {
+        if (productoId == null) return;
+        registrar(null, idx -> idx.quitar(productoId));
+    }
+
+    /**
+     * Refleja el stock descontado por una venta ya confirmada (la BD ya tiene el valor correcto).
+     * Llamado tras el commit; no consulta la BD ni espera a una recarga en curso.
+     */
+    public void descontarStock(VentaRegistradaEvent event) {
+        if (event == null || event.getCantidadesPorProducto() == null) return;
+        Map<Long, Integer> cantidades = event.getCantidadesPorProducto();
+        registrar(event.getVentaId(), idx -> {
+            for (Map.Entry<Long, Integer> c : cantidades.entrySet()) {
+                Entrada e = idx.entradas.get(c.getKey());
+                if (e == null || c.getValue() == null) continue;
+                Producto p = copiar(e.producto);
+                int actual = p.getCantidad() == null ? 0 : p.getCantidad();
+                p.setCantidad(Math.max(0, actual - c.getValue()));
+                // Mismo nombre: sólo cambia el producto de la entrada, no las estructuras de búsqueda
+                idx.entradas.put(c.getKey(), new Entrada(p, e.nombre));
+            }
+        });
+    }
+
+    /**
+     * Reconstruye el índice desde la BD. Las búsquedas y los cambios siguen usando el índice anterior
+     * hasta el reemplazo; sólo las recargas se esperan entre sí.
+     */
+    @Scheduled(initialDelayString = "${app.productos.busqueda.recarga-ms:600000}",
+            fixedDelayString = "${app.productos.busqueda.recarga-ms:600000}")
+    public synchronized void recargar() {
+        long inicio = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            pendientes = new ConcurrentLinkedQueue<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            cargaTemplate.executeWithoutResult(status -> {
+                Indice nuevo = new Indice();
+                for (Producto p : productoRepository.findByActivoTrue()) {
+                    if (p.getId() == null) continue;
+                    nuevo.agregar(new Entrada(copiar(p), normalizar(p.getNombre())));
+                }
+
+                // Ventas cuyo descuento ya está en la carga: las que la instantánea contiene
+                Set<Long> comprobadas = new HashSet<>();
+                Set<Long> vistas = new HashSet<>();
+                comprobarEnInstantanea(comprobadas, vistas);
+
+                lock.writeLock().lock();
+                try {
+                    // Sólo las que llegaron desde la comprobación anterior: las cajas esperan una consulta corta
+                    comprobarEnInstantanea(comprobadas, vistas);
+                    for (Cambio c : pendientes) {
+                        if (c.ventaId == null || !vistas.contains(c.ventaId)) c.aplicar.accept(nuevo);
+                    }
+                    indice = nuevo;
+                    pendientes = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            });
+        } finally {
+            lock.writeLock().lock();
+            try {
+                pendientes = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        Indice cargado = indice;
+        logger.info("Índice de productos cargado: {} productos en {} ms", cargado == null ? 0 : cargado.entradas.size(),
+                (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    public int size() {
+        Indice idx = indice;
+        return idx == null ? 0 : idx.entradas.size();
+    }
+
+    private Indice asegurarCargado() {
+        Indice idx = indice;
+        if (idx == null) {
+            synchronized (this) {
+                if (indice == null) recargar();
+                idx = indice;
+            }
+        }
+        return idx;
+    }
+
+    /**
+     * Aplica el cambio al índice actual y, si hay una recarga en curso, lo guarda para el índice nuevo.
+     * Sin índice cargado sólo se guarda: la primera búsqueda lo leerá de la BD.
+     */
+    private void registrar(Long ventaId, Consumer<Indice> cambio) {
+        lock.readLock().lock();
+        try {
+            Queue<Cambio> p = pendientes;
+            Indice idx = indice;
+            if (idx == null) {
+                if (p != null) p.add(new Cambio(ventaId, cambio));
+                return;
+            }
+            // Guardar y aplicar bajo el mismo lock: el índice nuevo los recibe en el mismo orden
+            idx.lock.writeLock().lock();
+            try {
+                if (p != null) p.add(new Cambio(ventaId, cambio));
+                cambio.accept(idx);
+            } finally {
+                idx.lock.writeLock().unlock();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Busca en la instantánea de la recarga las ventas pendientes aún no comprobadas.
+     */
+    private void comprobarEnInstantanea(Set<Long> comprobadas, Set<Long> vistas) {
+        List<Long> ids = new ArrayList<>();
+        for (Cambio c : pendientes) {
+            if (c.ventaId != null && comprobadas.add(c.ventaId)) ids.add(c.ventaId);
+        }
+        if (!ids.isEmpty()) vistas.addAll(ventaRepository.idsExistentes(ids));
+    }
+
+    private static Set<Long> candidatosPara(Indice idx, String termino) {
+        Set<Long> resultado = new HashSet<>();
+        if (termino.length() < 3) {
+            // Prefijo de palabra: rango del TreeMap con todas las palabras que empiezan por el término
+            for (Set<Long> ids : idx.palabras.subMap(termino, termino + Character.MAX_VALUE).values()) {
+                resultado.addAll(ids);
+            }
+            return resultado;
+        }
+        // Intersección de los trigramas, empezando por la lista más corta
+        List<Set<Long>> listas = new ArrayList<>();
+        for (String t : trigramasDe(termino)) {
+            Set<Long> ids = idx.trigramas.get(t);
+            if (ids == null) return resultado;
+            listas.add(ids);
+        }
+        listas.sort(Comparator.comparingInt(Collection::size));
+        resultado.addAll(listas.get(0));
+        for (int i = 1; i < listas.size() && !resultado.isEmpty(); i++) {
+            resultado.retainAll(listas.get(i));
+        }
+        return resultado;
+    }
+
+    /**
+     * 0 = nombre exacto, 1 = empieza por la consulta, 2 = cada término es prefijo de una palabra,
+     * 3 = cada término aparece dentro del nombre, -1 = falso positivo de los trigramas.
+     */
+    private static int puntaje(Entrada e, String consulta, String[] terminos) {
+        if (e.nombre.equals(consulta)) return 0;
+        if (e.nombre.startsWith(consulta)) return 1;
+        boolean todosPrefijo = true;
+        for (String t : terminos) {
+            boolean prefijo = false;
+            for (String palabra : e.palabras) {
+                if (palabra.startsWith(t)) { prefijo = true; break; }
+            }
+            if (!prefijo) {
+                if (t.length() < 3 || !e.nombre.contains(t)) return -1;
+                todosPrefijo = false;
+            }
+        }
+        return todosPrefijo ? 2 : 3;
+    }
+
+    private static List<String> trigramasDe(String palabra) {
+        List<String> resultado = new ArrayList<>();
+        for (int i = 0; i + 3 <= palabra.length(); i++) {
+            resultado.add(palabra.substring(i, i + 3));
+        }
+        return resultado;
+    }
+
+    static String normalizar(String texto) {
+        if (texto == null) return "";
+        String sinTildes = MARCAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return NO_ALFANUMERICO.matcher(sinTildes.toLowerCase()).replaceAll(" ").trim();
+    }
+
+    private static Producto copiar(Producto p) {
+        Producto c = new Producto();
+        c.setId(p.getId());
+        c.setNombre(p.getNombre());
+        c.setDescripcion(p.getDescripcion());
+        c.setCantidad(p.getCantidad());
+        c.setPrecio(p.getPrecio());
+        c.setActivo(p.getActivo());
+        c.setUnidadMedida(p.getUnidadMedida());
+        c.setImagePath(p.getImagePath());
+        c.setCategoria(p.getCategoria());
+        c.setIva(p.getIva());
+        return c;
+    }
+}
@@ -14,6 +14,12 @@ public class ProductoService {
     @Autowired
     private ProductoRepository productoRepository;
 
+    @Autowired
+    private ProductoSearchIndex productoSearchIndex;
+
+    @Autowired
+    private DashboardCounters dashboardCounters;
+
     // Listar solo productos activos
     public List<Producto> getAllProductos() {
         return productoRepository.findByActivoTrue();
@@ -32,10 +38,15 @@ public class ProductoService {
             existente.setCantidad(producto.getCantidad());
             existente.setPrecio(producto.getPrecio());
             existente.setActivo(true);
-            return productoRepository.save(existente);
+            Producto saved = productoRepository.save(existente);
+            productoSearchIndex.actualizar(saved);
+            return saved;
         }
         producto.setActivo(true);
-        return productoRepository.save(producto);
+        Producto saved = productoRepository.save(producto);
+        productoSearchIndex.actualizar(saved);
+        dashboardCounters.invalidarCatalogo();
+        return saved;
     }
 
     public Optional<Producto> getProductoById(Long id) {
@@ -48,6 +59,7 @@ public class ProductoService {
             Producto producto = productoOpt.get();
             producto.setActivo(false);
             productoRepository.save(producto);
+            productoSearchIndex.eliminar(id);
         }
     }
 
@@ -56,16 +68,23 @@ public class ProductoService {
         if (productoOpt.isPresent()) {
             Producto producto = productoOpt.get();
             producto.setActivo(true);
-            productoRepository.save(producto);
+            Producto saved = productoRepository.save(producto);
+            productoSearchIndex.actualizar(saved);
         }
     }
 
+    // Contadores del dashboard, sin consultar la BD
     public long countProductos() {
-        return productoRepository.count();
+        return dashboardCounters.productos();
     }
 
     // NUEVO: Buscar productos para AJAX/autocompletar en caja
     public List<Producto> buscarPorNombre(String nombre) {
         return productoRepository.findByNombreContainingIgnoreCaseAndActivoTrue(nombre);
     }
+
+    // Autocompletar de la caja desde el índice en memoria (sin consultar la BD), como máximo 'limite' resultados
+    public List<Producto> buscarParaCaja(String termino, int limite) {
+        return productoSearchIndex.buscar(termino, limite);
+    }
 }
\ No newline at end of file
@@ -13,12 +13,17 @@ public class ProveedorService {
     @Autowired
     private ProveedorRepository proveedorRepository;
 
+    @Autowired
+    private DashboardCounters dashboardCounters;
+
     public List<Proveedor> listarProveedores() {
         return proveedorRepository.findAll();
     }
 
     public Proveedor guardarProveedor(Proveedor proveedor) {
-        return proveedorRepository.save(proveedor);
+        Proveedor saved = proveedorRepository.save(proveedor);
+        dashboardCounters.invalidarCatalogo();
+        return saved;
     }
 
     public Proveedor obtenerProveedor(Long id) {
@@ -43,9 +48,11 @@ public class ProveedorService {
 
     public void eliminarProveedor(Long id) {
         proveedorRepository.deleteById(id);
+        dashboardCounters.invalidarCatalogo();
     }
 
+    // Contadores del dashboard, sin consultar la BD
     public long countProveedores() {
-        return proveedorRepository.count();
+        return dashboardCounters.proveedores();
     }
 }
\ No newline at end of file
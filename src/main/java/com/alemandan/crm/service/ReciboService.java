@@ -0,0 +1,306 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.model.DetalleVenta;
+import com.alemandan.crm.model.Producto;
+import com.alemandan.crm.model.Venta;
+import com.alemandan.crm.repository.VentaRepository;
+import com.alemandan.crm.util.TtlCache;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.pdf.PdfCopy;
+import com.itextpdf.text.pdf.PdfReader;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generación de recibos PDF fuera del hilo de la petición de checkout.
+ * - solicitar(ventaId) encola el render en reciboExecutor (o devuelve el que ya está en curso).
+ * - El PDF se guarda en una caché acotada por ventaId; /ventas/recibo/{id} lo sirve cuando está listo.
+ * - Los valores faltantes (precio/IVA de ventas antiguas) se completan sólo en memoria: ya no se re-guarda la venta.
+ * - exportarLote escribe los recibos de muchas ventas (un día, un cajero) como un único PDF o un ZIP:
+ *   ventas cargadas por lotes con una consulta cada uno, render en reciboLoteExecutor con a lo sumo
+ *   app.recibos.lote.ventana recibos en memoria, y escritura en orden de fecha directamente en la respuesta.
+ */
+@Service
+public class ReciboService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReciboService.class);
+
+    private static final int MAX_RECIBOS_EN_CACHE = 200;
+    private static final long TTL_RECIBO_MS = TimeUnit.MINUTES.toMillis(30);
+
+    // Ventas por consulta en la exportación en lote (ids en el IN)
+    static final int TAMANO_LOTE = 50;
+
+    /** Formato de la exportación en lote. */
+    public enum FormatoLote { PDF, ZIP }
+
+    @Autowired
+    private VentaRepository ventaRepository;
+
+    @Autowired
+    private ReportService reportService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    @Qualifier("reciboExecutor")
+    private Executor reciboExecutor;
+
+    @Autowired
+    @Qualifier("reciboLoteExecutor")
+    private Executor reciboLoteExecutor;
+
+    @Value("${app.recibos.lote.max-ventas:2000}")
+    private int maxVentasLote;
+
+    @Value("${app.recibos.lote.ventana:8}")
+    private int ventanaLote;
+
+    private final TtlCache<Long, byte[]> recibos = new TtlCache<>(MAX_RECIBOS_EN_CACHE, TTL_RECIBO_MS);
+
+    // Renders en curso: varias peticiones del mismo recibo comparten el mismo future
+    private final ConcurrentHashMap<Long, CompletableFuture<byte[]>> enCurso = new ConcurrentHashMap<>();
+
+    /**
+     * Devuelve el PDF si ya está en caché (future completado) o el future del render en curso/encolado.
+     * El future falla con IllegalArgumentException si la venta no existe y con
+     * RejectedExecutionException si la cola de render está llena.
+     */
+    public CompletableFuture<byte[]> solicitar(Long ventaId) {
+        byte[] cached = recibos.get(ventaId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<byte[]> nuevo = new CompletableFuture<>();
+        CompletableFuture<byte[]> existente = enCurso.putIfAbsent(ventaId, nuevo);
+        if (existente != null) {
+            return existente;
+        }
+
+        try {
+            reciboExecutor.execute(() -> {
+                try {
+                    byte[] pdf = renderizar(ventaId);
+                    // Guardar en caché antes de completar: quien llegue después lo encuentra ahí
+                    recibos.put(ventaId, pdf);
+                    nuevo.complete(pdf);
+                } catch (Throwable t) {
+                    logger.error("Error generando recibo de la venta {}: {}", ventaId, t.getMessage(), t);
+                    nuevo.completeExceptionally(t);
+                } finally {
+                    enCurso.remove(ventaId, nuevo);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Cola de recibos llena, se rechaza el recibo de la venta {}", ventaId);
+            enCurso.remove(ventaId, nuevo);
+            nuevo.completeExceptionally(e);
+        }
+        return nuevo;
+    }
+
+    /**
+     * Invalida el PDF en caché (p.ej. si la venta se modifica).
+     */
+    public void invalidar(Long ventaId) {
+        recibos.invalidate(ventaId);
+    }
+
+    /**
+     * Ids de las ventas del rango (y cajero, si se indica) cuyos recibos se exportan, en orden de fecha.
+     * Lanza IllegalArgumentException si superan app.recibos.lote.max-ventas: se valida antes de escribir la respuesta.
+     */
+    public List<Long> idsLote(LocalDateTime desde, LocalDateTime hasta, Long usuarioId) {
+        List<Long> ids = ventaRepository.idsParaRecibos(desde, hasta, usuarioId, PageRequest.ofSize(maxVentasLote + 1));
+        if (ids.size() > maxVentasLote) {
+            throw new IllegalArgumentException("Demasiadas ventas para exportar (máximo " + maxVentasLote
+                    + "); reduzca el rango de fechas o filtre por cajero");
+        }
+        return ids;
+    }
+
+    /**
+     * Escribe en {@code out} los recibos de {@code ventaIds} en ese orden: un PDF con todas las páginas (PdfCopy)
+     * o un ZIP con un PDF por venta. No cierra {@code out}. Las ventas borradas entre medio se omiten.
+     * Los recibos ya generados se toman de la caché; los nuevos no se guardan en ella (no desplazan los de la caja).
+     * Vacía el contexto de persistencia tras cargar cada lote: no llamar con cambios sin guardar.
+     *
+     * @return cantidad de recibos escritos
+     */
+    public int exportarLote(List<Long> ventaIds, FormatoLote formato, OutputStream out) throws Exception {
+        if (formato == FormatoLote.ZIP) {
+            ZipOutputStream zip = new ZipOutputStream(out);
+            int escritos = renderizarEnOrden(ventaIds, (ventaId, pdf) -> {
+                // El PDF ya va comprimido: STORED evita recomprimir (requiere tamaño y CRC de antemano)
+                ZipEntry entry = new ZipEntry("recibo_venta_" + ventaId + ".pdf");
+                CRC32 crc = new CRC32();
+                crc.update(pdf);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(pdf.length);
+                entry.setCompressedSize(pdf.length);
+                entry.setCrc(crc.getValue());
+                zip.putNextEntry(entry);
+                zip.write(pdf);
+                zip.closeEntry();
+            });
+            // finish() y no close(): el stream es de quien lo abrió
+            zip.finish();
+            zip.flush();
+            return escritos;
+        }
+
+        Document document = new Document();
+        PdfCopy copy = new PdfCopy(document, out);
+        copy.setCloseStream(false);
+        document.open();
+        int escritos = renderizarEnOrden(ventaIds, (ventaId, pdf) -> {
+            PdfReader reader = new PdfReader(pdf);
+            for (int pagina = 1; pagina <= reader.getNumberOfPages(); pagina++) {
+                copy.addPage(copy.getImportedPage(reader, pagina));
+            }
+            // Escribe las páginas ya copiadas y suelta el recibo: la memoria no crece con el lote
+            copy.freeReader(reader);
+            reader.close();
+        });
+        if (escritos == 0) {
+            // Un PDF sin páginas no es válido
+            throw new IllegalArgumentException("No hay ventas para exportar");
+        }
+        document.close();
+        out.flush();
+        return escritos;
+    }
+
+    @FunctionalInterface
+    private interface ReciboListo {
+        void escribir(Long ventaId, byte[] pdf) throws Exception;
+    }
+
+    /**
+     * Carga las ventas de TAMANO_LOTE en TAMANO_LOTE y renderiza en reciboLoteExecutor. Los recibos se entregan
+     * en el orden de {@code ventaIds}; como mucho ventanaLote están encolados o renderizados sin escribir.
+     */
+    private int renderizarEnOrden(List<Long> ventaIds, ReciboListo destino) throws Exception {
+        Deque<Map.Entry<Long, CompletableFuture<byte[]>>> ventana = new ArrayDeque<>();
+        int escritos = 0;
+        try {
+            for (int i = 0; i < ventaIds.size(); i += TAMANO_LOTE) {
+                List<Long> lote = ventaIds.subList(i, Math.min(i + TAMANO_LOTE, ventaIds.size()));
+                Map<Long, Venta> porId = new HashMap<>();
+                for (Venta v : ventaRepository.findByIdInConDetalles(lote)) {
+                    porId.put(v.getId(), v);
+                }
+                // Con open-in-view el EntityManager de la petición retendría todas las ventas del rango hasta
+                // terminar la respuesta. El lote ya trae todo lo que usa el recibo: se suelta del contexto
+                // y en memoria quedan sólo este lote y la ventana de recibos en curso.
+                entityManager.clear();
+                for (Long ventaId : lote) {
+                    Venta venta = porId.get(ventaId);
+                    if (venta == null) continue;
+                    ventana.addLast(Map.entry(ventaId, CompletableFuture.supplyAsync(() -> renderizarLote(venta), reciboLoteExecutor)));
+                    if (ventana.size() >= ventanaLote) {
+                        escribir(ventana.pollFirst(), destino);
+                        escritos++;
+                    }
+                }
+            }
+            while (!ventana.isEmpty()) {
+                escribir(ventana.pollFirst(), destino);
+                escritos++;
+            }
+        } finally {
+            // Error a mitad (p.ej. el cliente cerró la conexión): no seguir renderizando lo encolado
+            ventana.forEach(e -> e.getValue().cancel(false));
+        }
+        return escritos;
+    }
+
+    private static void escribir(Map.Entry<Long, CompletableFuture<byte[]>> pendiente, ReciboListo destino) throws Exception {
+        byte[] pdf;
+        try {
+            pdf = pendiente.getValue().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception causa) throw causa;
+            throw e;
+        }
+        destino.escribir(pendiente.getKey(), pdf);
+    }
+
+    private byte[] renderizarLote(Venta venta) {
+        byte[] cached = recibos.get(venta.getId());
+        if (cached != null) return cached;
+        try {
+            completarValores(venta);
+            return reportService.generarReciboVentaPdf(venta);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private byte[] renderizar(Long ventaId) throws Exception {
+        Venta venta = ventaRepository.findByIdConDetalles(ventaId)
+                .orElseThrow(() -> new IllegalArgumentException("Venta no encontrada: " + ventaId));
+        completarValores(venta);
+        return reportService.generarReciboVentaPdf(venta);
+    }
+
+    /**
+     * Rellena en memoria precioUnitario/ivaRate/ivaMonto y totales faltantes desde el Producto.
+     * Las ventas registradas por procesarYGuardarVenta ya los traen; esto cubre ventas antiguas.
+     */
+    private void completarValores(Venta v) {
+        if (v.getDetalles() == null) return;
+
+        BigDecimal subtotal = BigDecimal.ZERO;
+        BigDecimal ivaTotal = BigDecimal.ZERO;
+        for (DetalleVenta d : v.getDetalles()) {
+            Producto p = d.getProducto();
+            if (p != null) {
+                if (d.getPrecioUnitario().compareTo(BigDecimal.ZERO) == 0 && p.getPrecio() != null) {
+                    d.setPrecioUnitario(BigDecimal.valueOf(p.getPrecio()));
+                }
+                if (d.getIvaRate().compareTo(BigDecimal.ZERO) == 0) {
+                    d.setIvaRate(p.getIva());
+                }
+            }
+            BigDecimal lineaSubtotal = d.getPrecioUnitario().multiply(BigDecimal.valueOf(d.getCantidad()));
+            if (d.getIvaMonto().compareTo(BigDecimal.ZERO) == 0) {
+                d.setIvaMonto(lineaSubtotal.multiply(d.getIvaRate()).divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP));
+            }
+            subtotal = subtotal.add(lineaSubtotal);
+            ivaTotal = ivaTotal.add(d.getIvaMonto());
+        }
+
+        if (v.getSubtotal().compareTo(BigDecimal.ZERO) == 0) v.setSubtotal(subtotal.setScale(2, RoundingMode.HALF_UP));
+        if (v.getIva().compareTo(BigDecimal.ZERO) == 0) v.setIva(ivaTotal.setScale(2, RoundingMode.HALF_UP));
+        if (v.getTotal().compareTo(BigDecimal.ZERO) == 0) v.setTotal(v.getSubtotal().add(v.getIva()).setScale(2, RoundingMode.HALF_UP));
+    }
+}
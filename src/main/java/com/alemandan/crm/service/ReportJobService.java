@@ -0,0 +1,213 @@
+package com.alemandan.crm.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reportes PDF pesados en segundo plano.
+ * - enviar() registra el trabajo y lo encola en reportJobExecutor (pool acotado, separado de Tomcat).
+ * - Límite de trabajos activos (en cola o en proceso) por usuario.
+ * - El avance lo informa ReportService sección a sección.
+ * - El PDF se escribe en &lt;app.uploads-dir&gt;/reportes/&lt;id&gt;.pdf (primero .part, luego se renombra)
+ *   y se borra pasado el TTL junto con el trabajo.
+ *
+ * Los trabajos viven en memoria: tras un reinicio se pierden y sus archivos se limpian al arrancar.
+ * Eager (@Lazy(false)) para que la limpieza programada corra aunque nadie haya pedido un reporte todavía.
+ */
+@Service
+@Lazy(false)
+public class ReportJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportJobService.class);
+
+    static final String SUBDIRECTORIO = "reportes";
+
+    public enum Estado { EN_COLA, EN_PROCESO, COMPLETADO, ERROR }
+
+    /**
+     * Estado de un trabajo. Los campos que cambia el worker son volatile: los lee el hilo de la petición de estado.
+     */
+    public static class ReportJob {
+        private final String id;
+        private final String usuario;
+        private final String nombreArchivo;
+        private final Instant creado = Instant.now();
+        private volatile Estado estado = Estado.EN_COLA;
+        private volatile int progreso;
+        private volatile String error;
+        private volatile Path archivo;
+        private volatile Instant finalizado;
+
+        ReportJob(String id, String usuario, String nombreArchivo) {
+            this.id = id;
+            this.usuario = usuario;
+            this.nombreArchivo = nombreArchivo;
+        }
+
+        public String getId() { return id; }
+        public String getUsuario() { return usuario; }
+        public String getNombreArchivo() { return nombreArchivo; }
+        public Instant getCreado() { return creado; }
+        public Estado getEstado() { return estado; }
+        public int getProgreso() { return progreso; }
+        public String getError() { return error; }
+        public Path getArchivo() { return archivo; }
+        public Instant getFinalizado() { return finalizado; }
+
+        boolean isActivo() {
+            return estado == Estado.EN_COLA || estado == Estado.EN_PROCESO;
+        }
+    }
+
+    @Autowired
+    private ReportService reportService;
+
+    @Autowired
+    @Qualifier("reportJobExecutor")
+    private Executor reportJobExecutor;
+
+    @Value("${app.uploads-dir:uploads}")
+    private String uploadsDir;
+
+    @Value("${app.reportes.jobs.max-por-usuario:2}")
+    private int maxPorUsuario;
+
+    @Value("${app.reportes.jobs.ttl-minutos:60}")
+    private long ttlMinutos;
+
+    private final Map<String, ReportJob> jobs = new ConcurrentHashMap<>();
+
+    private Path directorio;
+
+    @PostConstruct
+    void init() {
+        directorio = Paths.get(uploadsDir).toAbsolutePath().resolve(SUBDIRECTORIO);
+        try {
+            Files.createDirectories(directorio);
+            // Restos de una ejecución anterior: los trabajos en memoria ya no existen
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(directorio)) {
+                for (Path p : ds) Files.deleteIfExists(p);
+            }
+        } catch (IOException e) {
+            logger.warn("No se pudo preparar el directorio de reportes {}: {}", directorio, e.getMessage());
+        }
+    }
+
+    /**
+     * Registra y encola un informe avanzado.
+     *
+     * @throws IllegalStateException si el usuario ya tiene el máximo de trabajos activos
+     * @throws RejectedExecutionException si la cola del pool está llena
+     */
+    public ReportJob enviar(String usuario, LocalDateTime from, LocalDateTime to, Long productoId,
+                            boolean includeAnalysis, String nombreArchivo) {
+        ReportJob job;
+        // Sincronizado: dos envíos simultáneos del mismo usuario no pueden superar el límite
+        synchronized (this) {
+            long activos = jobs.values().stream()
+                    .filter(j -> j.usuario.equals(usuario) && j.isActivo())
+                    .count();
+            if (activos >= maxPorUsuario) {
+                throw new IllegalStateException("Ya tienes " + activos + " reporte(s) en proceso. Espera a que terminen.");
+            }
+            job = new ReportJob(UUID.randomUUID().toString(), usuario, nombreArchivo);
+            jobs.put(job.id, job);
+        }
+
+        try {
+            reportJobExecutor.execute(() -> ejecutar(job, from, to, productoId, includeAnalysis));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw e;
+        }
+        logger.info("Reporte {} encolado para {}: from={} to={} productoId={}", job.id, usuario, from, to, productoId);
+        return job;
+    }
+
+    /**
+     * Trabajo por id, sólo si pertenece al usuario indicado.
+     */
+    public Optional<ReportJob> obtener(String id, String usuario) {
+        ReportJob job = id == null ? null : jobs.get(id);
+        if (job == null || !job.usuario.equals(usuario)) return Optional.empty();
+        return Optional.of(job);
+    }
+
+    private void ejecutar(ReportJob job, LocalDateTime from, LocalDateTime to, Long productoId, boolean includeAnalysis) {
+        job.estado = Estado.EN_PROCESO;
+        Path destino = directorio.resolve(job.id + ".pdf");
+        Path temporal = directorio.resolve(job.id + ".pdf.part");
+        long inicio = System.nanoTime();
+        try {
+            try (OutputStream out = Files.newOutputStream(temporal)) {
+                reportService.generarReporteVentasPdf(from, to, productoId, includeAnalysis, out, p -> job.progreso = p);
+            }
+            // Renombrado atómico: nunca se sirve un PDF a medio escribir
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            job.archivo = destino;
+            job.progreso = 100;
+            job.estado = Estado.COMPLETADO;
+            logger.info("Reporte {} generado en {} ms ({} bytes)", job.id,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio), Files.size(destino));
+        } catch (Throwable t) {
+            logger.error("Error generando reporte {}: {}", job.id, t.getMessage(), t);
+            job.error = "No se pudo generar el reporte.";
+            job.estado = Estado.ERROR;
+            try {
+                Files.deleteIfExists(temporal);
+            } catch (IOException ignored) {}
+        } finally {
+            job.finalizado = Instant.now();
+        }
+    }
+
+    /**
+     * Borra los trabajos terminados hace más de ttl-minutos y sus archivos.
+     */
+    @Scheduled(fixedDelayString = "${app.reportes.jobs.limpieza-ms:300000}")
+    public void limpiarExpirados() {
+        Instant limite = Instant.now().minusSeconds(TimeUnit.MINUTES.toSeconds(ttlMinutos));
+        int borrados = 0;
+        for (Iterator<ReportJob> it = jobs.values().iterator(); it.hasNext(); ) {
+            ReportJob job = it.next();
+            if (job.finalizado == null || job.finalizado.isAfter(limite)) continue;
+            it.remove();
+            borrados++;
+            if (job.archivo != null) {
+                try {
+                    Files.deleteIfExists(job.archivo);
+                } catch (IOException e) {
+                    logger.warn("No se pudo borrar el reporte {}: {}", job.archivo, e.getMessage());
+                }
+            }
+        }
+        if (borrados > 0) {
+            logger.info("Reportes expirados eliminados: {}", borrados);
+        }
+    }
+}
@@ -1,16 +1,23 @@
 package com.alemandan.crm.service;
 
+import com.alemandan.crm.dto.VentaExportada;
 import com.alemandan.crm.model.Producto;
 import com.alemandan.crm.model.Venta;
 import com.alemandan.crm.model.DetalleVenta;
 import com.alemandan.crm.repository.ProductoRepository;
 import com.alemandan.crm.repository.VentaRepository;
 import com.alemandan.crm.service.pdf.HeaderFooterEvent;
+import com.alemandan.crm.service.pdf.PdfResourceRegistry;
 import com.alemandan.crm.util.ExcelReportUtilAvanzado;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.itextpdf.text.BaseColor;
 import com.itextpdf.text.Chunk;
@@ -51,10 +58,19 @@ import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.NumberFormat;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
 
 /**
  * ReportService: generación de PDFs y utilidades para reportes.
@@ -82,12 +98,30 @@ public class ReportService {
 
     private static final Logger logger = LoggerFactory.getLogger(ReportService.class);
 
+    // Filas por bloque al añadir tablas grandes (setComplete(false)): iText escribe y libera las filas de cada bloque
+    private static final int FILAS_POR_BLOQUE_PDF = 50;
+
     @Autowired
     private VentaRepository ventaRepository;
 
     @Autowired
     private ProductoRepository productoRepository;
 
+    @Autowired
+    private PdfResourceRegistry pdfResourceRegistry;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    // Agregados de periodos ya consultados
+    @Autowired
+    private ReporteAgregadosCache agregadosCache;
+
+    // Secciones del informe avanzado
+    @Autowired
+    @Qualifier("reportSectionExecutor")
+    private Executor reportSectionExecutor;
+
     /* ------------------ Informe avanzado (completo) ------------------ */
     
     /**
@@ -97,13 +131,14 @@ public class ReportService {
      * @param from Fecha de inicio
      * @param to Fecha de fin
      * @param productoId Filtro opcional por producto
-     * @return byte array con el PDF básico
+     * @param out Stream de salida donde se escriben las páginas a medida que iText las completa
      * @throws Exception si hay error en la generación
      */
-    private byte[] generarReporteVentasBasicoPdf(LocalDateTime from, LocalDateTime to, Long productoId) throws Exception {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    private void generarReporteVentasBasicoPdf(LocalDateTime from, LocalDateTime to, Long productoId, OutputStream out) throws Exception {
         Document document = new Document(PageSize.A4.rotate(), 36, 36, 72, 54);
-        PdfWriter writer = PdfWriter.getInstance(document, baos);
+        PdfWriter writer = PdfWriter.getInstance(document, out);
+        // El stream lo cierra quien lo abrió (p.ej. la respuesta HTTP)
+        writer.setCloseStream(false);
 
         Image logoForHeader = loadLogoIfExists();
         Font pdfNormalFont = getPdfNormalFont();
@@ -127,8 +162,10 @@ public class ReportService {
         document.add(period);
 
         // ============ RESUMEN BÁSICO ============
-        BigDecimal totalVentas = safeBig(ventaRepository.totalVentasBetween(from, to));
-        Long cantidadVentas = Optional.ofNullable(ventaRepository.countVentasBetween(from, to)).orElse(0L);
+        BigDecimal totalVentas = safeBig(agregadosCache.porDias("totalVentasBetween", from, to,
+                () -> ventaRepository.totalVentasBetween(from, to)));
+        Long cantidadVentas = Optional.ofNullable(agregadosCache.porDias("countVentasBetween", from, to,
+                () -> ventaRepository.countVentasBetween(from, to))).orElse(0L);
         BigDecimal ticketPromedio = (cantidadVentas > 0) 
             ? totalVentas.divide(BigDecimal.valueOf(cantidadVentas), 2, RoundingMode.HALF_UP) 
             : BigDecimal.ZERO;
@@ -154,7 +191,8 @@ public class ReportService {
 
         // ============ TABLA: VENTAS POR PRODUCTO ============
         document.add(new Paragraph("VENTAS POR PRODUCTO", pdfHeaderFont));
-        List<Object[]> salesByProduct = ventaRepository.salesByProductBetween(from, to);
+        List<Object[]> salesByProduct = agregadosCache.porDias("salesByProductBetween", from, to,
+                () -> ventaRepository.salesByProductBetween(from, to));
         
         if (salesByProduct != null && !salesByProduct.isEmpty()) {
             PdfPTable productTable = buildSalesByProductTable(salesByProduct, pdfHeaderFont, pdfNormalFont);
@@ -169,7 +207,8 @@ public class ReportService {
         // ============ TABLA: VENTAS POR USUARIO/VENDEDOR ============
         document.add(Chunk.NEWLINE);
         document.add(new Paragraph("VENTAS POR VENDEDOR", pdfHeaderFont));
-        List<Object[]> salesByUser = ventaRepository.salesByUserBetween(from, to);
+        List<Object[]> salesByUser = agregadosCache.porDias("salesByUserBetween", from, to,
+                () -> ventaRepository.salesByUserBetween(from, to));
         
         if (salesByUser != null && !salesByUser.isEmpty()) {
             PdfPTable userTable = buildSalesByUserTable(salesByUser, pdfHeaderFont, pdfNormalFont);
@@ -181,7 +220,7 @@ public class ReportService {
         }
 
         document.close();
-        return baos.toByteArray();
+        out.flush();
     }
 
     /**
@@ -220,15 +259,38 @@ public class ReportService {
      * @throws Exception si hay error en la generación
      */
     public byte[] generarReporteVentasPdf(LocalDateTime from, LocalDateTime to, Long productoId, boolean includeAnalysis) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        generarReporteVentasPdf(from, to, productoId, includeAnalysis, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Variante en streaming de {@link #generarReporteVentasPdf(LocalDateTime, LocalDateTime, Long, boolean)}:
+     * escribe el PDF directamente en {@code out} (p.ej. la respuesta HTTP) sin acumular el documento en memoria.
+     * No cierra {@code out}.
+     */
+    public void generarReporteVentasPdf(LocalDateTime from, LocalDateTime to, Long productoId, boolean includeAnalysis, OutputStream out) throws Exception {
+        generarReporteVentasPdf(from, to, productoId, includeAnalysis, out, progreso -> {});
+    }
+
+    /**
+     * Igual que la variante en streaming, informando el avance (0-100) a {@code progreso}
+     * al terminar cada sección. Lo usa ReportJobService para los reportes en segundo plano.
+     */
+    public void generarReporteVentasPdf(LocalDateTime from, LocalDateTime to, Long productoId, boolean includeAnalysis,
+                                        OutputStream out, IntConsumer progreso) throws Exception {
         if (!includeAnalysis) {
             // Generate basic report without analysis
-            return generarReporteVentasBasicoPdf(from, to, productoId);
+            generarReporteVentasBasicoPdf(from, to, productoId, out);
+            progreso.accept(100);
+            return;
         }
         
         // Generate full report with analysis (existing implementation)
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
         Document document = new Document(PageSize.A4.rotate(), 36, 36, 72, 54);
-        PdfWriter writer = PdfWriter.getInstance(document, baos);
+        PdfWriter writer = PdfWriter.getInstance(document, out);
+        // El stream lo cierra quien lo abrió (p.ej. la respuesta HTTP)
+        writer.setCloseStream(false);
 
         Image logoForHeader = loadLogoIfExists();
         Font pdfNormalFont = getPdfNormalFont();
@@ -251,8 +313,35 @@ public class ReportService {
         period.setAlignment(Element.ALIGN_CENTER);
         document.add(period);
 
+        // ============ SECCIONES EN PARALELO ============
+        // Consultas (una por conjunto de datos, ver ReportDataContext) y tablas en reportSectionExecutor; el documento
+        // se arma después, en orden, en este hilo (iText no es thread-safe).
+        long inicio = System.nanoTime();
+        Map<String, Long> tiempos = new ConcurrentHashMap<>();
+        ReportDataContext datos = new ReportDataContext(from, to, tiempos);
+        CompletableFuture<List<Object[]>> salesByProductF = datos.salesByProduct;
+        CompletableFuture<List<Object[]>> salesByUserF = datos.salesByUser;
+        CompletableFuture<Map<String, Object>> metricsF = CompletableFuture.allOf(datos.ventasPorDia, datos.cantidadVentas)
+                .thenApplyAsync(v -> medir("metricas", tiempos, () -> computeMetrics(datos)), reportSectionExecutor);
+        CompletableFuture<PdfPTable> periodTableF = datos.ventasPorDia.thenApplyAsync(rows -> medir("ventasPorPeriodo", tiempos,
+                () -> buildSalesByPeriodTable(datos, pdfHeaderFont, pdfNormalFont)), reportSectionExecutor);
+        CompletableFuture<Paragraph> periodAnalysisF = datos.ventasPorDia.thenApplyAsync(rows -> medir("tendencias", tiempos,
+                () -> buildPeriodAnalysis(datos, pdfNormalFont)), reportSectionExecutor);
+        CompletableFuture<List<Element>> lowStockF = datos.stock.thenApplyAsync(rows -> medir("stockBajo", tiempos,
+                () -> buildLowStockSection(rows, pdfHeaderFont, pdfNormalFont)), reportSectionExecutor);
+        CompletableFuture<PdfPTable> productTableF = salesByProductF.thenApplyAsync(rows -> medir("tablaProductos", tiempos,
+                () -> buildSalesByProductTable(rows, pdfHeaderFont, pdfNormalFont)), reportSectionExecutor);
+        CompletableFuture<PdfPTable> userTableF = salesByUserF.thenApplyAsync(rows -> medir("tablaVendedores", tiempos,
+                () -> buildSalesByUserTable(rows, pdfHeaderFont, pdfNormalFont)), reportSectionExecutor);
+        CompletableFuture<Element> participationF = salesByProductF.thenApplyAsync(rows -> medir("participacion", tiempos,
+                () -> buildTopProductsParticipationTable(rows, pdfHeaderFont, pdfNormalFont)), reportSectionExecutor);
+        CompletableFuture<String> analysisF = CompletableFuture.allOf(metricsF, salesByProductF, salesByUserF)
+                .thenApplyAsync(v -> medir("analisis", tiempos,
+                        () -> generateTextualAnalysis(metricsF.join(), salesByProductF.join(), salesByUserF.join())),
+                        reportSectionExecutor);
+
         // ============ 1. RESUMEN EJECUTIVO CON MÉTRICAS CLAVE ============
-        Map<String, Object> metrics = computeMetrics(from, to);
+        Map<String, Object> metrics = resultado(metricsF);
         document.add(new Paragraph("RESUMEN EJECUTIVO", pdfHeaderFont));
         PdfPTable executiveSummary = new PdfPTable(2);
         executiveSummary.setWidths(new int[]{3, 2});
@@ -279,19 +368,18 @@ public class ReportService {
         executiveSummary.setSpacingAfter(16f);
         executiveSummary.setSpacingBefore(8f);
         document.add(executiveSummary);
+        progreso.accept(15);
 
         // ============ 2. TABLA: VENTAS POR PRODUCTO ============
         document.add(new Paragraph("VENTAS POR PRODUCTO", pdfHeaderFont));
-        List<Object[]> salesByProduct = ventaRepository.salesByProductBetween(from, to);
-        PdfPTable productTable = buildSalesByProductTable(salesByProduct, pdfHeaderFont, pdfNormalFont);
-        document.add(productTable);
+        document.add(resultado(productTableF));
+        progreso.accept(35);
 
         // ============ 3. TABLA: VENTAS POR USUARIO/VENDEDOR ============
         document.add(Chunk.NEWLINE);
         document.add(new Paragraph("VENTAS POR VENDEDOR", pdfHeaderFont));
-        List<Object[]> salesByUser = ventaRepository.salesByUserBetween(from, to);
-        PdfPTable userTable = buildSalesByUserTable(salesByUser, pdfHeaderFont, pdfNormalFont);
-        document.add(userTable);
+        document.add(resultado(userTableF));
+        progreso.accept(50);
 
         // ============ 4. TABLA: VENTAS POR PERIODO (reemplaza gráfico de barras) ============
         document.newPage();
@@ -300,8 +388,10 @@ public class ReportService {
         chartTitle1.setSpacingAfter(12f);
         document.add(chartTitle1);
         
-        // Generar tabla de ventas por periodo en lugar de gráfico
-        addSalesByPeriodTable(document, from, to, pdfHeaderFont, pdfNormalFont);
+        // Tabla de ventas por periodo en lugar de gráfico, seguida del análisis de tendencias
+        document.add(resultado(periodTableF));
+        document.add(resultado(periodAnalysisF));
+        progreso.accept(65);
 
         // ============ 5. TABLA: PARTICIPACIÓN TOP 10 PRODUCTOS (reemplaza gráfico de torta) ============
         document.newPage();
@@ -310,50 +400,32 @@ public class ReportService {
         chartTitle2.setSpacingAfter(12f);
         document.add(chartTitle2);
         
-        // Generar tabla de participación de productos en lugar de gráfico
-        addTopProductsParticipationTable(document, salesByProduct, pdfHeaderFont, pdfNormalFont);
+        // Tabla de participación de productos en lugar de gráfico
+        document.add(resultado(participationF));
+        progreso.accept(75);
 
         // ============ 6. ANÁLISIS TEXTUAL CON INSIGHTS ============
         document.newPage();
         document.add(new Paragraph("ANÁLISIS E INSIGHTS", pdfHeaderFont));
-        String analysis = generateTextualAnalysis(metrics, salesByProduct, salesByUser);
-        Paragraph analysisP = new Paragraph(analysis, pdfNormalFont);
+        Paragraph analysisP = new Paragraph(resultado(analysisF), pdfNormalFont);
         analysisP.setSpacingBefore(8f);
         analysisP.setAlignment(Element.ALIGN_JUSTIFIED);
         document.add(analysisP);
+        progreso.accept(85);
 
         // ============ SECCIÓN ADICIONAL: Stock bajo (mantener compatibilidad) ============
         document.add(Chunk.NEWLINE);
         document.add(new Paragraph("PRODUCTOS CON STOCK BAJO (≤5)", pdfHeaderFont));
-        List<Object[]> stockList = productoRepository.stockProductos();
-        PdfPTable stockTable = new PdfPTable(new float[]{6, 2});
-        stockTable.setWidthPercentage(60);
-        stockTable.setHorizontalAlignment(Element.ALIGN_CENTER);
-        stockTable.addCell(createHeaderCell("Producto", pdfHeaderFont));
-        stockTable.addCell(createHeaderCell("Stock", pdfHeaderFont));
-        boolean hasLowStock = false;
-        if (stockList != null) {
-            for (Object[] r : stockList) {
-                Number stock = r[2] == null ? 0 : (Number) r[2];
-                if (stock.intValue() <= 5) {
-                    stockTable.addCell(createCell(String.valueOf(r[1]), pdfNormalFont));
-                    stockTable.addCell(createCell(String.valueOf(stock.intValue()), pdfNormalFont));
-                    hasLowStock = true;
-                }
-            }
-        }
-        if (hasLowStock) {
-            stockTable.setSpacingAfter(12f);
-            stockTable.setSpacingBefore(6f);
-            document.add(stockTable);
-        } else {
-            Paragraph noLowStock = new Paragraph("No hay productos con stock bajo en este momento.", pdfNormalFont);
-            noLowStock.setSpacingBefore(8f);
-            document.add(noLowStock);
+        for (Element e : resultado(lowStockF)) {
+            document.add(e);
         }
 
+        logger.info("Informe avanzado {} - {} armado en {} ms; secciones (ms): {}", from, to,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio), tiempos);
+
         document.close();
-        return baos.toByteArray();
+        out.flush();
+        progreso.accept(100);
     }
 
     /* ------------------ Helper Methods for Enhanced PDF Report ------------------ */
@@ -381,15 +453,193 @@ public class ReportService {
     }
 
     /**
-     * Calcula métricas clave del periodo de ventas.
+     * Tarea de una sección del informe avanzado en reportSectionExecutor, con su tiempo medido.
+     */
+    private <T> CompletableFuture<T> seccion(String nombre, Map<String, Long> tiempos, Callable<T> tarea) {
+        return CompletableFuture.supplyAsync(() -> medir(nombre, tiempos, tarea), reportSectionExecutor);
+    }
+
+    /**
+     * Ejecuta la tarea y anota su duración en {@code tiempos} y en el timer reportes.seccion{seccion=nombre}.
+     */
+    private <T> T medir(String nombre, Map<String, Long> tiempos, Callable<T> tarea) {
+        long inicio = System.nanoTime();
+        try {
+            return tarea.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        } finally {
+            long nanos = System.nanoTime() - inicio;
+            tiempos.put(nombre, TimeUnit.NANOSECONDS.toMillis(nanos));
+            if (meterRegistry != null) {
+                Timer.builder("reportes.seccion").tag("seccion", nombre).register(meterRegistry)
+                        .record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Resultado de una sección; relanza la excepción original si la tarea falló.
+     */
+    private static <T> T resultado(CompletableFuture<T> seccion) throws Exception {
+        try {
+            return seccion.join();
+        } catch (CompletionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof Exception ex) throw ex;
+            if (causa instanceof Error err) throw err;
+            throw e;
+        }
+    }
+
+    /**
+     * Tabla de productos con stock ≤ 5, o un párrafo si no hay ninguno.
+     */
+    private List<Element> buildLowStockSection(List<Object[]> stockList, Font headerFont, Font normalFont) {
+        PdfPTable stockTable = new PdfPTable(new float[]{6, 2});
+        stockTable.setWidthPercentage(60);
+        stockTable.setHorizontalAlignment(Element.ALIGN_CENTER);
+        stockTable.addCell(createHeaderCell("Producto", headerFont));
+        stockTable.addCell(createHeaderCell("Stock", headerFont));
+        boolean hasLowStock = false;
+        if (stockList != null) {
+            for (Object[] r : stockList) {
+                Number stock = r[2] == null ? 0 : (Number) r[2];
+                if (stock.intValue() <= 5) {
+                    stockTable.addCell(createCell(String.valueOf(r[1]), normalFont));
+                    stockTable.addCell(createCell(String.valueOf(stock.intValue()), normalFont));
+                    hasLowStock = true;
+                }
+            }
+        }
+        if (hasLowStock) {
+            stockTable.setSpacingAfter(12f);
+            stockTable.setSpacingBefore(6f);
+            return List.of(stockTable);
+        }
+        Paragraph noLowStock = new Paragraph("No hay productos con stock bajo en este momento.", normalFont);
+        noLowStock.setSpacingBefore(8f);
+        return List.of(noLowStock);
+    }
+
+    /**
+     * Datos de un informe avanzado. Cada conjunto se consulta una sola vez (en reportSectionExecutor, a través de
+     * ReporteAgregadosCache salvo el stock) y las secciones derivan de ellos lo que necesitan, sin volver a la BD:
+     * - ventasPorDia abarca también el periodo anterior de igual duración; de esa serie salen el total del periodo,
+     *   el del periodo anterior (crecimiento), la serie mensual y el análisis de tendencias.
+     * - cantidadVentas es la única métrica que no se deriva de las filas (las ventas sin vendedor no están en salesByUser).
+     * Los métodos de acceso esperan a ventasPorDia: las secciones se encadenan a ese future antes de llamarlos.
+     */
+    private final class ReportDataContext {
+        private final LocalDate desde;
+        private final LocalDate hasta;
+        private final LocalDate desdeAnterior;
+        private final LocalDate hastaAnterior;
+        private final boolean porDia;
+
+        final CompletableFuture<List<Object[]>> ventasPorDia;
+        final CompletableFuture<Long> cantidadVentas;
+        final CompletableFuture<List<Object[]>> salesByProduct;
+        final CompletableFuture<List<Object[]>> salesByUser;
+        final CompletableFuture<List<Object[]>> stock;
+
+        ReportDataContext(LocalDateTime from, LocalDateTime to, Map<String, Long> tiempos) {
+            // Periodo anterior de igual duración, terminando justo antes de from
+            long daysDiff = java.time.Duration.between(from, to).toDays();
+            LocalDateTime prevFrom = from.minusDays(daysDiff);
+            this.desde = from.toLocalDate();
+            this.hasta = to.toLocalDate();
+            this.desdeAnterior = prevFrom.toLocalDate();
+            this.hastaAnterior = from.minusSeconds(1).toLocalDate();
+            this.porDia = daysDiff <= 60;
+
+            ventasPorDia = seccion("ventasPorDia", tiempos, () -> agregadosCache.porDias("ventasPorDiaBetween", prevFrom, to,
+                    () -> ventaRepository.ventasPorDiaBetween(prevFrom, to)));
+            cantidadVentas = seccion("cantidadVentas", tiempos, () -> Optional.ofNullable(agregadosCache.porDias(
+                    "countVentasBetween", from, to, () -> ventaRepository.countVentasBetween(from, to))).orElse(0L));
+            salesByProduct = seccion("ventasPorProducto", tiempos, () -> agregadosCache.porDias("salesByProductBetween", from, to,
+                    () -> ventaRepository.salesByProductBetween(from, to)));
+            salesByUser = seccion("ventasPorVendedor", tiempos, () -> agregadosCache.porDias("salesByUserBetween", from, to,
+                    () -> ventaRepository.salesByUserBetween(from, to)));
+            stock = seccion("stock", tiempos, () -> productoRepository.stockProductos());
+        }
+
+        /** true: la tabla y el análisis van por día (hasta 60 días); false: por mes. */
+        boolean porDia() {
+            return porDia;
+        }
+
+        /** [dia, totalMonto] del periodo del informe. */
+        List<Object[]> ventasPorDiaPeriodo() {
+            return filasEntre(desde, hasta);
+        }
+
+        /** [yyyy-MM, totalMonto] del periodo, sumando la serie diaria (mismo formato que salesByMonthBetween). */
+        List<Object[]> ventasPorMesPeriodo() {
+            Map<YearMonth, BigDecimal> porMes = new TreeMap<>();
+            for (Object[] row : ventasPorDiaPeriodo()) {
+                if (row[1] == null) continue;
+                porMes.merge(YearMonth.from(diaDe(row[0])), numberToBigDecimal((Number) row[1]), BigDecimal::add);
+            }
+            List<Object[]> result = new ArrayList<>(porMes.size());
+            porMes.forEach((mes, total) -> result.add(new Object[]{mes.toString(), total}));
+            return result;
+        }
+
+        /** Serie de la tabla y el análisis de tendencias: diaria o mensual según porDia(). */
+        List<Object[]> seriePeriodo() {
+            return porDia ? ventasPorDiaPeriodo() : ventasPorMesPeriodo();
+        }
+
+        BigDecimal totalPeriodo() {
+            return sumar(filasEntre(desde, hasta));
+        }
+
+        BigDecimal totalPeriodoAnterior() {
+            return sumar(filasEntre(desdeAnterior, hastaAnterior));
+        }
+
+        private List<Object[]> filasEntre(LocalDate inicio, LocalDate fin) {
+            List<Object[]> result = new ArrayList<>();
+            List<Object[]> rows = ventasPorDia.join();
+            if (rows == null) return result;
+            for (Object[] row : rows) {
+                LocalDate dia = diaDe(row[0]);
+                if (dia != null && !dia.isBefore(inicio) && !dia.isAfter(fin)) {
+                    result.add(row);
+                }
+            }
+            return result;
+        }
+
+        private BigDecimal sumar(List<Object[]> rows) {
+            BigDecimal total = BigDecimal.ZERO;
+            for (Object[] row : rows) {
+                if (row[1] != null) total = total.add(numberToBigDecimal((Number) row[1]));
+            }
+            return total;
+        }
+
+        private LocalDate diaDe(Object dia) {
+            if (dia == null) return null;
+            if (dia instanceof LocalDate d) return d;
+            if (dia instanceof java.sql.Date d) return d.toLocalDate();
+            return LocalDate.parse(String.valueOf(dia));
+        }
+    }
+
+    /**
+     * Calcula métricas clave del periodo de ventas a partir de los datos ya cargados (sin consultas).
      * Retorna un mapa con: totalVentas, cantidadVentas, ticketPromedio, crecimientoPorcentual
      */
-    private Map<String, Object> computeMetrics(LocalDateTime from, LocalDateTime to) {
+    private Map<String, Object> computeMetrics(ReportDataContext datos) {
         Map<String, Object> metrics = new HashMap<>();
         
         // Métricas del periodo actual
-        BigDecimal totalVentas = safeBig(ventaRepository.totalVentasBetween(from, to));
-        Long cantidadVentas = Optional.ofNullable(ventaRepository.countVentasBetween(from, to)).orElse(0L);
+        BigDecimal totalVentas = datos.totalPeriodo();
+        Long cantidadVentas = datos.cantidadVentas.join();
         BigDecimal ticketPromedio = (cantidadVentas > 0) 
             ? totalVentas.divide(BigDecimal.valueOf(cantidadVentas), 2, RoundingMode.HALF_UP) 
             : BigDecimal.ZERO;
@@ -400,11 +650,7 @@ public class ReportService {
         
         // Calcular crecimiento comparando con periodo anterior de igual duración
         try {
-            long daysDiff = java.time.Duration.between(from, to).toDays();
-            LocalDateTime prevFrom = from.minusDays(daysDiff);
-            LocalDateTime prevTo = from.minusSeconds(1);
-            
-            BigDecimal totalPrevio = safeBig(ventaRepository.totalVentasBetween(prevFrom, prevTo));
+            BigDecimal totalPrevio = datos.totalPeriodoAnterior();
             BigDecimal crecimiento = null;
             
             if (totalPrevio.compareTo(BigDecimal.ZERO) > 0) {
@@ -498,29 +744,24 @@ public class ReportService {
 
     /**
      * Genera tabla de ventas por periodo (mensual o diaria según rango de fechas).
-     * Reemplaza el gráfico de barras con una tabla detallada.
+     * Reemplaza el gráfico de barras con una tabla detallada (el análisis de tendencias va aparte).
      * 
-     * @param document Documento PDF donde se añadirá la tabla
-     * @param from Fecha de inicio
-     * @param to Fecha de fin
+     * @param datos Datos del informe (serie diaria ya cargada)
      * @param headerFont Fuente para encabezados
      * @param normalFont Fuente para contenido
      */
-    private void addSalesByPeriodTable(Document document, LocalDateTime from, LocalDateTime to, 
-                                       Font headerFont, Font normalFont) throws Exception {
-        long daysDiff = java.time.Duration.between(from, to).toDays();
-        
+    private PdfPTable buildSalesByPeriodTable(ReportDataContext datos, Font headerFont, Font normalFont) {
         PdfPTable table = new PdfPTable(new float[]{4, 3});
         table.setWidthPercentage(70);
         table.setHorizontalAlignment(Element.ALIGN_CENTER);
         
-        String periodLabel = daysDiff <= 60 ? "Fecha" : "Mes";
+        String periodLabel = datos.porDia() ? "Fecha" : "Mes";
         table.addCell(createHeaderCell(periodLabel, headerFont));
         table.addCell(createHeaderCell("Total Ventas", headerFont));
         
-        if (daysDiff <= 60) {
+        if (datos.porDia()) {
             // Usar datos diarios para rangos cortos
-            List<Object[]> ventasPorDia = ventaRepository.ventasPorDiaBetween(from, to);
+            List<Object[]> ventasPorDia = datos.ventasPorDiaPeriodo();
             if (ventasPorDia != null && !ventasPorDia.isEmpty()) {
                 for (Object[] row : ventasPorDia) {
                     Object fecha = row[0];
@@ -535,7 +776,7 @@ public class ReportService {
             }
         } else {
             // Usar datos mensuales para rangos largos
-            List<Object[]> ventasPorMes = ventaRepository.salesByMonthBetween(from, to);
+            List<Object[]> ventasPorMes = datos.ventasPorMesPeriodo();
             if (ventasPorMes != null && !ventasPorMes.isEmpty()) {
                 for (Object[] row : ventasPorMes) {
                     String mes = row[0] == null ? "N/A" : String.valueOf(row[0]);
@@ -551,29 +792,24 @@ public class ReportService {
         
         table.setSpacingBefore(8f);
         table.setSpacingAfter(16f);
-        document.add(table);
-        
-        // Añadir análisis textual adicional sobre tendencias
-        addPeriodAnalysis(document, from, to, normalFont);
+        return table;
     }
     
     /**
      * Genera tabla de participación de top productos con porcentajes.
      * Reemplaza el gráfico de torta con una tabla detallada.
      * 
-     * @param document Documento PDF donde se añadirá la tabla
      * @param salesByProduct Datos de ventas por producto
      * @param headerFont Fuente para encabezados
      * @param normalFont Fuente para contenido
      */
-    private void addTopProductsParticipationTable(Document document, List<Object[]> salesByProduct,
-                                                   Font headerFont, Font normalFont) throws Exception {
+    private Element buildTopProductsParticipationTable(List<Object[]> salesByProduct,
+                                                       Font headerFont, Font normalFont) {
         if (salesByProduct == null || salesByProduct.isEmpty()) {
             Paragraph noData = new Paragraph("No hay datos de productos disponibles.", normalFont);
             noData.setSpacingBefore(8f);
             noData.setAlignment(Element.ALIGN_CENTER);
-            document.add(noData);
-            return;
+            return noData;
         }
         
         // Calcular total para porcentajes
@@ -620,15 +856,14 @@ public class ReportService {
         
         table.setSpacingBefore(8f);
         table.setSpacingAfter(16f);
-        document.add(table);
+        return table;
     }
     
     /**
-     * Añade análisis textual sobre tendencias del periodo.
+     * Análisis textual sobre tendencias del periodo (va tras la tabla de ventas por periodo).
      */
-    private void addPeriodAnalysis(Document document, LocalDateTime from, LocalDateTime to, Font normalFont) throws Exception {
-        long daysDiff = java.time.Duration.between(from, to).toDays();
-        
+    private Paragraph buildPeriodAnalysis(ReportDataContext datos, Font normalFont) {
+
         Paragraph analysis = new Paragraph();
         analysis.setFont(normalFont);
         analysis.setSpacingBefore(8f);
@@ -638,8 +873,8 @@ public class ReportService {
         StringBuilder text = new StringBuilder();
         text.append("ANÁLISIS DE TENDENCIAS: ");
         
-        if (daysDiff <= 60) {
-            List<Object[]> ventasPorDia = ventaRepository.ventasPorDiaBetween(from, to);
+        if (datos.porDia()) {
+            List<Object[]> ventasPorDia = datos.ventasPorDiaPeriodo();
             if (ventasPorDia != null && ventasPorDia.size() > 1) {
                 // Encontrar día con mayores y menores ventas
                 Object[] maxDay = null;
@@ -681,7 +916,7 @@ public class ReportService {
                 text.append("Período corto sin suficientes datos para análisis de tendencias detallado.");
             }
         } else {
-            List<Object[]> ventasPorMes = ventaRepository.salesByMonthBetween(from, to);
+            List<Object[]> ventasPorMes = datos.ventasPorMesPeriodo();
             if (ventasPorMes != null && ventasPorMes.size() > 1) {
                 // Encontrar mes con mayores y menores ventas
                 Object[] maxMonth = null;
@@ -725,7 +960,7 @@ public class ReportService {
         }
         
         analysis.add(text.toString());
-        document.add(analysis);
+        return analysis;
     }
     
     /**
@@ -745,13 +980,12 @@ public class ReportService {
      * @deprecated No se usa más. Los reportes ahora usan tablas en lugar de gráficos.
      */
     @Deprecated
-    private JFreeChart createMonthlySalesChart(LocalDateTime from, LocalDateTime to) {
-        long daysDiff = java.time.Duration.between(from, to).toDays();
+    private JFreeChart createMonthlySalesChart(ReportDataContext datos) {
         DefaultCategoryDataset dataset = new DefaultCategoryDataset();
         
-        if (daysDiff <= 60) {
+        if (datos.porDia()) {
             // Usar datos diarios para rangos cortos
-            List<Object[]> ventasPorDia = ventaRepository.ventasPorDiaBetween(from, to);
+            List<Object[]> ventasPorDia = datos.ventasPorDiaPeriodo();
             if (ventasPorDia != null) {
                 for (Object[] row : ventasPorDia) {
                     Object fecha = row[0];
@@ -762,7 +996,7 @@ public class ReportService {
             }
         } else {
             // Usar datos mensuales para rangos largos
-            List<Object[]> ventasPorMes = ventaRepository.salesByMonthBetween(from, to);
+            List<Object[]> ventasPorMes = datos.ventasPorMesPeriodo();
             if (ventasPorMes != null) {
                 for (Object[] row : ventasPorMes) {
                     String mes = row[0] == null ? "N/A" : String.valueOf(row[0]);
@@ -772,7 +1006,7 @@ public class ReportService {
             }
         }
         
-        String xAxisLabel = daysDiff <= 60 ? "Fecha" : "Mes";
+        String xAxisLabel = datos.porDia() ? "Fecha" : "Mes";
         JFreeChart chart = ChartFactory.createBarChart(
             "", xAxisLabel, "Total Ventas", dataset, 
             PlotOrientation.VERTICAL, false, true, false
@@ -951,8 +1185,45 @@ public class ReportService {
 
     public byte[] generarMisVentasPdfFromList(List<Venta> ventas, LocalDateTime from, LocalDateTime to, String empleadoNombre) throws Exception {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        generarMisVentasPdfFromList(ventas, from, to, empleadoNombre, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Variante en streaming a partir de una lista ya cargada. No cierra {@code out}.
+     */
+    public void generarMisVentasPdfFromList(List<Venta> ventas, LocalDateTime from, LocalDateTime to, String empleadoNombre, OutputStream out) throws Exception {
+        Iterator<VentaExportada> it = ventas == null ? Collections.emptyIterator()
+                : ventas.stream().map(VentaExportada::de).iterator();
+        generarMisVentasPdf(it, from, to, empleadoNombre, out);
+    }
+
+    /**
+     * Historial del empleado leído de la BD con un cursor (VentaRepository.streamLineasEmpleado) y escrito
+     * a medida que llegan las filas: mismos filtros que /ventas/mis-ventas (fechas yyyy-MM-dd, ambos días inclusive).
+     * from/to sólo se usan para el encabezado. No cierra {@code out}.
+     */
+    @Transactional(readOnly = true)
+    public void generarMisVentasPdf(Long usuarioId, String fechaInicio, String fechaFin, Long productoId, String metodoPago,
+                                    LocalDateTime from, LocalDateTime to, String empleadoNombre, OutputStream out) throws Exception {
+        LocalDateTime desde = (fechaInicio == null || fechaInicio.isEmpty()) ? null : LocalDate.parse(fechaInicio).atStartOfDay();
+        LocalDateTime hasta = (fechaFin == null || fechaFin.isEmpty()) ? null : LocalDate.parse(fechaFin).plusDays(1).atStartOfDay();
+        try (Stream<Object[]> lineas = ventaRepository.streamLineasEmpleado(usuarioId, desde, hasta, productoId,
+                (metodoPago == null || metodoPago.isEmpty()) ? null : metodoPago)) {
+            generarMisVentasPdf(VentaExportada.agrupar(lineas.iterator()), from, to, empleadoNombre, out);
+        }
+    }
+
+    /**
+     * Construye el historial recorriendo las ventas una sola vez: la tabla se añade por bloques (tabla "grande"
+     * de iText, las filas ya escritas se liberan) y el total y las cantidades por producto se acumulan al pasar.
+     * La memoria depende del número de productos distintos, no del de ventas. No cierra {@code out}.
+     */
+    void generarMisVentasPdf(Iterator<VentaExportada> ventas, LocalDateTime from, LocalDateTime to, String empleadoNombre, OutputStream out) throws Exception {
         Document document = new Document(PageSize.A4, 36, 36, 72, 54);
-        PdfWriter writer = PdfWriter.getInstance(document, baos);
+        PdfWriter writer = PdfWriter.getInstance(document, out);
+        // El stream lo cierra quien lo abrió (p.ej. la respuesta HTTP)
+        writer.setCloseStream(false);
 
         Image logo = loadLogoIfExists();
         Font pdfNormalFont = getPdfNormalFont();
@@ -984,6 +1255,8 @@ public class ReportService {
         table.addCell(createHeaderCell("Método pago", pdfHeaderFont));
         table.addCell(createHeaderCell("Total", pdfHeaderFont));
         table.addCell(createHeaderCell("Productos", pdfHeaderFont));
+        table.setHeaderRows(1);
+        table.setComplete(false);
 
         DateTimeFormatter dtfFull = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
         NumberFormat nf = NumberFormat.getNumberInstance(new Locale("es", "ES"));
@@ -991,48 +1264,50 @@ public class ReportService {
         nf.setMaximumFractionDigits(2);
 
         boolean odd = true;
+        int filas = 0;
         BigDecimal totalSum = BigDecimal.ZERO;
-        if (ventas != null) {
-            for (Venta v : ventas) {
-                PdfPCell idCell = createCell(String.valueOf(v.getId()), pdfNormalFont);
-                PdfPCell fechaCell = createCell(v.getFecha() != null ? v.getFecha().format(dtfFull) : "N/A", pdfNormalFont);
-                PdfPCell metodoCell = createCell(v.getMetodoPago() != null ? v.getMetodoPago() : "N/A", pdfNormalFont);
-                BigDecimal t = numberToBigDecimal(v.getTotal());
-                PdfPCell totalCell = createCell(formatPeso(nf, t), pdfNormalFont);
-
-                StringBuilder sb = new StringBuilder();
-                if (v.getDetalles() != null) {
-                    for (DetalleVenta d : v.getDetalles()) {
-                        String prodName = d.getProducto() != null ? d.getProducto().getNombre() : "N/A";
-                        BigDecimal price = numberToBigDecimal(d.getPrecioUnitario());
-                        long qty = d.getCantidad() == null ? 0L : d.getCantidad().longValue();
-                        sb.append(prodName)
-                                .append(" (").append(qty).append(" x ").append(formatPeso(nf, price)).append(")")
-                                .append("\n");
-                    }
-                }
-                PdfPCell prodCell = createCell(sb.toString(), pdfNormalFont);
-
-                if (odd) {
-                    BaseColor alt = new BaseColor(0xF9, 0xF9, 0xF9);
-                    idCell.setBackgroundColor(alt);
-                    fechaCell.setBackgroundColor(alt);
-                    metodoCell.setBackgroundColor(alt);
-                    totalCell.setBackgroundColor(alt);
-                    prodCell.setBackgroundColor(alt);
-                }
-                odd = !odd;
+        Map<String, Long> ventasPorProducto = new LinkedHashMap<>();
+        while (ventas.hasNext()) {
+            VentaExportada v = ventas.next();
+            PdfPCell idCell = createCell(String.valueOf(v.getId()), pdfNormalFont);
+            PdfPCell fechaCell = createCell(v.getFecha() != null ? v.getFecha().format(dtfFull) : "N/A", pdfNormalFont);
+            PdfPCell metodoCell = createCell(v.getMetodoPago() != null ? v.getMetodoPago() : "N/A", pdfNormalFont);
+            BigDecimal t = v.getTotal();
+            PdfPCell totalCell = createCell(formatPeso(nf, t), pdfNormalFont);
+
+            StringBuilder sb = new StringBuilder();
+            for (VentaExportada.Linea d : v.getLineas()) {
+                String prodName = d.getProducto() != null ? d.getProducto() : "N/A";
+                sb.append(prodName)
+                        .append(" (").append(d.getCantidad()).append(" x ").append(formatPeso(nf, d.getPrecioUnitario())).append(")")
+                        .append("\n");
+                ventasPorProducto.merge(prodName, (long) d.getCantidad(), Long::sum);
+            }
+            PdfPCell prodCell = createCell(sb.toString(), pdfNormalFont);
+
+            if (odd) {
+                BaseColor alt = new BaseColor(0xF9, 0xF9, 0xF9);
+                idCell.setBackgroundColor(alt);
+                fechaCell.setBackgroundColor(alt);
+                metodoCell.setBackgroundColor(alt);
+                totalCell.setBackgroundColor(alt);
+                prodCell.setBackgroundColor(alt);
+            }
+            odd = !odd;
 
-                table.addCell(idCell);
-                table.addCell(fechaCell);
-                table.addCell(metodoCell);
-                table.addCell(totalCell);
-                table.addCell(prodCell);
+            table.addCell(idCell);
+            table.addCell(fechaCell);
+            table.addCell(metodoCell);
+            table.addCell(totalCell);
+            table.addCell(prodCell);
 
-                totalSum = totalSum.add(t);
+            totalSum = totalSum.add(t);
+            if (++filas % FILAS_POR_BLOQUE_PDF == 0) {
+                document.add(table);
             }
         }
 
+        table.setComplete(true);
         document.add(table);
 
         Paragraph suma = new Paragraph("Total ventas: " + formatPeso(nf, totalSum), pdfHeaderFont);
@@ -1040,19 +1315,6 @@ public class ReportService {
         suma.setSpacingBefore(8f);
         document.add(suma);
 
-        // Construir mapa de ventas por producto
-        Map<String, Long> ventasPorProducto = new LinkedHashMap<>();
-        if (ventas != null) {
-            for (Venta v : ventas) {
-                if (v.getDetalles() == null) continue;
-                for (DetalleVenta d : v.getDetalles()) {
-                    String nombre = d.getProducto() == null ? "N/A" : d.getProducto().getNombre();
-                    long add = d.getCantidad() == null ? 0L : d.getCantidad().longValue();
-                    ventasPorProducto.merge(nombre, add, Long::sum);
-                }
-            }
-        }
-
         // Tabla de ventas por producto (reemplaza el gráfico anterior)
         if (!ventasPorProducto.isEmpty()) {
             document.add(Chunk.NEWLINE);
@@ -1078,40 +1340,47 @@ public class ReportService {
         }
 
         document.close();
-        return baos.toByteArray();
+        out.flush();
     }
 
     /* ------------------ Resumen corto (Exportar PDF resumen) ------------------ */
 
-    public byte[] generarResumenVentasPdf(LocalDateTime from, LocalDateTime to,
-                                          Long usuarioId, Long productoId, String metodoPago) throws Exception {
-        List<Venta> ventasFiltradas = ventaRepository.filtrarAdmin(from, to, usuarioId, productoId, metodoPago);
-
-        BigDecimal totalVentas = ventasFiltradas.stream()
-                .map(v -> numberToBigDecimal(v.getTotal()))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        int count = ventasFiltradas.size();
+    /**
+     * Variante en streaming del resumen: escribe en {@code out} y añade la tabla de ventas por bloques. No cierra {@code out}.
+     * Los totales y el top de productos salen de consultas agregadas; la tabla se lee con un cursor
+     * (VentaRepository.streamLineasAdmin) y se escribe a medida que llegan las filas, sin cargar entidades.
+     */
+    @Transactional(readOnly = true)
+    public void generarResumenVentasPdf(LocalDateTime from, LocalDateTime to,
+                                        Long usuarioId, Long productoId, String metodoPago, OutputStream out) throws Exception {
+        List<Object[]> resumen = agregadosCache.porInstantes("resumenFiltradoAdmin", from, to,
+                () -> ventaRepository.resumenFiltradoAdmin(from, to, usuarioId, productoId, metodoPago),
+                usuarioId, productoId, metodoPago);
+        Object[] fila = resumen.isEmpty() ? new Object[]{0L, BigDecimal.ZERO} : resumen.get(0);
+        long count = fila[0] == null ? 0L : ((Number) fila[0]).longValue();
+        BigDecimal totalVentas = fila[1] == null ? BigDecimal.ZERO : numberToBigDecimal((Number) fila[1]);
         BigDecimal avg = (count > 0) ? totalVentas.divide(BigDecimal.valueOf(count), 2, RoundingMode.HALF_UP) : BigDecimal.ZERO;
 
-        Map<Long, ProductAgg> productoAgg = new HashMap<>();
-        for (Venta v : ventasFiltradas) {
-            if (v.getDetalles() == null) continue;
-            for (DetalleVenta d : v.getDetalles()) {
-                if (d == null || d.getProducto() == null) continue;
-                Long pid = d.getProducto().getId();
-                ProductAgg pa = productoAgg.computeIfAbsent(pid, k -> new ProductAgg(pid, d.getProducto().getNombre(), 0L));
-                long add = d.getCantidad() == null ? 0L : d.getCantidad().longValue();
-                pa.cantidad += add;
-            }
+        List<ProductAgg> topProductos = new ArrayList<>();
+        List<Object[]> top = agregadosCache.porInstantes("topProductosFiltradoAdmin", from, to,
+                () -> ventaRepository.topProductosFiltradoAdmin(from, to, usuarioId, productoId, metodoPago, PageRequest.of(0, 5)),
+                usuarioId, productoId, metodoPago, 5);
+        for (Object[] r : top) {
+            topProductos.add(new ProductAgg((Long) r[0], (String) r[1], r[2] == null ? 0L : ((Number) r[2]).longValue()));
         }
-        List<ProductAgg> topProductos = productoAgg.values().stream()
-                .sorted(Comparator.comparingLong(ProductAgg::getCantidad).reversed())
-                .collect(Collectors.toList());
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (Stream<Object[]> lineas = ventaRepository.streamLineasAdmin(from, to, usuarioId, productoId, metodoPago)) {
+            escribirResumenVentasPdf(from, to, count, totalVentas, avg, topProductos,
+                    VentaExportada.agrupar(lineas.iterator()), out);
+        }
+    }
+
+    void escribirResumenVentasPdf(LocalDateTime from, LocalDateTime to, long count, BigDecimal totalVentas, BigDecimal avg,
+                                  List<ProductAgg> topProductos, Iterator<VentaExportada> ventas, OutputStream out) throws Exception {
         Document document = new Document(PageSize.A4.rotate(), 36, 36, 72, 54);
-        PdfWriter writer = PdfWriter.getInstance(document, baos);
+        PdfWriter writer = PdfWriter.getInstance(document, out);
+        // El stream lo cierra quien lo abrió (p.ej. la respuesta HTTP)
+        writer.setCloseStream(false);
 
         Image logo = loadLogoIfExists();
         Font pdfNormalFont = getPdfNormalFont();
@@ -1160,7 +1429,7 @@ public class ReportService {
         prodTable.setSpacingAfter(12f);
         document.add(prodTable);
 
-        if (!ventasFiltradas.isEmpty()) {
+        if (ventas.hasNext()) {
             document.add(new Paragraph("Ventas filtradas", pdfHeaderFont));
             PdfPTable ventasTable = new PdfPTable(new float[]{1, 2, 3, 2, 4});
             ventasTable.setWidthPercentage(95);
@@ -1170,27 +1439,33 @@ public class ReportService {
             ventasTable.addCell(createHeaderCell("Empleado", pdfHeaderFont));
             ventasTable.addCell(createHeaderCell("Método pago", pdfHeaderFont));
             ventasTable.addCell(createHeaderCell("Productos (cantidad x precio)", pdfHeaderFont));
-            for (Venta v : ventasFiltradas) {
+            ventasTable.setHeaderRows(1);
+            ventasTable.setComplete(false);
+            int filas = 0;
+            while (ventas.hasNext()) {
+                VentaExportada v = ventas.next();
                 ventasTable.addCell(createCell(String.valueOf(v.getId()), pdfNormalFont));
                 ventasTable.addCell(createCell(v.getFecha() == null ? "N/A" : v.getFecha().toString(), pdfNormalFont));
-                ventasTable.addCell(createCell(v.getUsuario() == null ? "N/A" : v.getUsuario().getNombre(), pdfNormalFont));
+                ventasTable.addCell(createCell(v.getUsuarioNombre() == null ? "N/A" : v.getUsuarioNombre(), pdfNormalFont));
                 ventasTable.addCell(createCell(v.getMetodoPago() == null ? "N/A" : v.getMetodoPago(), pdfNormalFont));
                 StringBuilder sb = new StringBuilder();
-                if (v.getDetalles() != null) {
-                    for (DetalleVenta d : v.getDetalles()) {
-                        sb.append(d.getProducto().getNombre())
-                                .append(" (").append(d.getCantidad()).append(" x ").append(d.getPrecioUnitario()).append(")");
-                        sb.append("\n");
-                    }
+                for (VentaExportada.Linea d : v.getLineas()) {
+                    sb.append(d.getProducto() == null ? "N/A" : d.getProducto())
+                            .append(" (").append(d.getCantidad()).append(" x ").append(d.getPrecioUnitario()).append(")");
+                    sb.append("\n");
                 }
                 ventasTable.addCell(createCell(sb.toString(), pdfNormalFont));
+                if (++filas % FILAS_POR_BLOQUE_PDF == 0) {
+                    document.add(ventasTable);
+                }
             }
+            ventasTable.setComplete(true);
             ventasTable.setSpacingAfter(12f);
             document.add(ventasTable);
         }
 
         document.close();
-        return baos.toByteArray();
+        out.flush();
     }
 
     /* ------------------ Compatibilidad: método antiguo delegado ------------------ */
@@ -1204,14 +1479,28 @@ public class ReportService {
         return generarReciboVentaPdfEstilo(venta, "ALEMANDAN");
     }
 
+    /**
+     * Variante en streaming del recibo. No cierra {@code out}.
+     */
+    public void generarReciboVentaPdf(Venta venta, OutputStream out) throws Exception {
+        generarReciboVentaPdfEstilo(venta, "ALEMANDAN", out);
+    }
+
     /* ------------------ Diseño NUEVO: recibo estilo columnar / secciones por categoría ------------------ */
 
     public byte[] generarReciboVentaPdfEstilo(Venta venta, String comercioNombre) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        generarReciboVentaPdfEstilo(venta, comercioNombre, baos);
+        return baos.toByteArray();
+    }
+
+    public void generarReciboVentaPdfEstilo(Venta venta, String comercioNombre, OutputStream out) throws Exception {
         if (venta == null) throw new IllegalArgumentException("Venta es null");
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
         Document document = new Document(PageSize.A4, 36, 36, 36, 36);
-        PdfWriter writer = PdfWriter.getInstance(document, baos);
+        PdfWriter writer = PdfWriter.getInstance(document, out);
+        // El stream lo cierra quien lo abrió (p.ej. la respuesta HTTP)
+        writer.setCloseStream(false);
 
         document.open();
 
@@ -1452,7 +1741,7 @@ public class ReportService {
         document.add(totals);
 
         document.close();
-        return baos.toByteArray();
+        out.flush();
     }
 
     // Helper: create a dashed separator as a paragraph (simple approach)
@@ -1619,58 +1908,17 @@ public class ReportService {
 
     /* ------------------ Utilities: logo, fonts, cells, IO ------------------ */
 
+    // Fuentes y logo se parsean una sola vez en PdfResourceRegistry (antes: lectura + archivo temporal por documento)
     private Image loadLogoIfExists() {
-        try (InputStream logoIs = Thread.currentThread().getContextClassLoader().getResourceAsStream("static/assets/img/Alogo.png")) {
-            if (logoIs != null) {
-                byte[] logoBytes = readAllBytes(logoIs);
-                Image logoForHeader = Image.getInstance(logoBytes);
-                logoForHeader.scaleToFit(80, 80);
-                return logoForHeader;
-            }
-        } catch (Exception ignored) {}
-        return null;
+        return pdfResourceRegistry.logo();
     }
 
     private Font getPdfNormalFont() {
-        try (InputStream regularIs = Thread.currentThread().getContextClassLoader().getResourceAsStream("fonts/Roboto-Regular.ttf")) {
-            if (regularIs != null) {
-                File tmpReg = File.createTempFile("roboto_reg", ".ttf");
-                try (OutputStream os = new FileOutputStream(tmpReg)) {
-                    os.write(readAllBytes(regularIs));
-                }
-                com.itextpdf.text.pdf.BaseFont bfReg = com.itextpdf.text.pdf.BaseFont.createFont(tmpReg.getAbsolutePath(), com.itextpdf.text.pdf.BaseFont.IDENTITY_H, com.itextpdf.text.pdf.BaseFont.EMBEDDED);
-                Font f = new Font(bfReg, 10);
-                tmpReg.deleteOnExit();
-                return f;
-            }
-        } catch (Exception ignored) {}
-        return FontFactory.getFont(FontFactory.HELVETICA, 10);
+        return pdfResourceRegistry.normalFont(10);
     }
 
     private Font getPdfHeaderFont() {
-        try (InputStream boldIs = Thread.currentThread().getContextClassLoader().getResourceAsStream("fonts/Roboto-Bold.ttf")) {
-            if (boldIs != null) {
-                File tmpBold = File.createTempFile("roboto_bold", ".ttf");
-                try (OutputStream os = new FileOutputStream(tmpBold)) {
-                    os.write(readAllBytes(boldIs));
-                }
-                com.itextpdf.text.pdf.BaseFont bfBold = com.itextpdf.text.pdf.BaseFont.createFont(tmpBold.getAbsolutePath(), com.itextpdf.text.pdf.BaseFont.IDENTITY_H, com.itextpdf.text.pdf.BaseFont.EMBEDDED);
-                Font f = new Font(bfBold, 12, Font.BOLD);
-                tmpBold.deleteOnExit();
-                return f;
-            }
-        } catch (Exception ignored) {}
-        return FontFactory.getFont(FontFactory.HELVETICA_BOLD, 12);
-    }
-
-    private byte[] readAllBytes(InputStream is) throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        int nRead;
-        byte[] data = new byte[4096];
-        while ((nRead = is.read(data, 0, data.length)) != -1) {
-            buffer.write(data, 0, nRead);
-        }
-        return buffer.toByteArray();
+        return pdfResourceRegistry.headerFont(12);
     }
 
     // internal aggregator for product totals
@@ -0,0 +1,174 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.events.VentaRegistradaEvent;
+import com.alemandan.crm.util.TtlCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caché de resultados de las consultas agregadas de los reportes (VentaRepository), por (consulta, desde, hasta, filtros).
+ * Un mes cerrado no cambia: reexportarlo sale de memoria en lugar de volver a agregar las filas.
+ *
+ * - Periodo cerrado (termina antes de hoy): la entrada no expira; sólo sale por LRU o por invalidación.
+ * - Periodo abierto (incluye hoy o no tiene fin): TTL corto (ttl-abierto-segundos).
+ * - Una venta confirmada (VentasListener, tras el commit) invalida las entradas cuyo rango incluye su día,
+ *   también si el día es anterior (ventas con fecha atrasada).
+ *   Una consulta en curso durante la invalidación puede guardar el resultado anterior; en periodos abiertos lo acota el TTL.
+ * - Acotada a max-entradas (LRU). Aciertos y fallos se publican como cache.gets{cache=reportes,result=hit|miss}.
+ * - Las listas se devuelven inmodificables; las filas (Object[]) se comparten entre llamadas y no deben modificarse.
+ */
+@Component
+public class ReporteAgregadosCache {
+
+    // now() + SIN_EXPIRACION no desborda
+    private static final long SIN_EXPIRACION = Long.MAX_VALUE / 2;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.reportes.cache.max-entradas:500}")
+    private int maxEntradas;
+
+    @Value("${app.reportes.cache.ttl-abierto-segundos:60}")
+    private long ttlAbiertoSegundos;
+
+    private Clock clock = Clock.systemDefaultZone();
+
+    // Se crea en init(), con los límites ya inyectados
+    private TtlCache<Clave, Object> resultados;
+
+    private static final class Clave {
+        final String consulta;
+        final LocalDate desde;
+        final LocalDate hasta;
+        final LocalDateTime desdeExacto;
+        final LocalDateTime hastaExacto;
+        final List<Object> filtros;
+
+        Clave(String consulta, LocalDate desde, LocalDate hasta, LocalDateTime desdeExacto, LocalDateTime hastaExacto,
+              Object[] filtros) {
+            this.consulta = consulta;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.desdeExacto = desdeExacto;
+            this.hastaExacto = hastaExacto;
+            this.filtros = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(filtros)));
+        }
+
+        /** null en desde/hasta = sin límite por ese lado. */
+        boolean incluye(LocalDate dia) {
+            return (desde == null || !dia.isBefore(desde)) && (hasta == null || !dia.isAfter(hasta));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Clave c)) return false;
+            return consulta.equals(c.consulta) && Objects.equals(desde, c.desde) && Objects.equals(hasta, c.hasta)
+                    && Objects.equals(desdeExacto, c.desdeExacto) && Objects.equals(hastaExacto, c.hastaExacto)
+                    && filtros.equals(c.filtros);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(consulta, desde, hasta, desdeExacto, hastaExacto, filtros);
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        resultados = crearCache();
+        if (meterRegistry != null) {
+            TtlCache<Clave, Object> cache = resultados;
+            FunctionCounter.builder("cache.gets", cache, TtlCache::getHits)
+                    .tag("cache", "reportes").tag("result", "hit").register(meterRegistry);
+            FunctionCounter.builder("cache.gets", cache, TtlCache::getMisses)
+                    .tag("cache", "reportes").tag("result", "miss").register(meterRegistry);
+            Gauge.builder("cache.size", cache, TtlCache::size).tag("cache", "reportes").register(meterRegistry);
+        }
+    }
+
+    /**
+     * Consulta por días (las que leen venta_resumen_diario): [desde, hasta] por fecha, ambos inclusive.
+     */
+    public <T> T porDias(String consulta, LocalDateTime from, LocalDateTime to, Supplier<T> carga, Object... filtros) {
+        LocalDate desde = from == null ? null : from.toLocalDate();
+        LocalDate hasta = to == null ? null : to.toLocalDate();
+        return obtener(new Clave(consulta, desde, hasta, null, null, filtros), carga);
+    }
+
+    /**
+     * Consulta por instantes (las que leen venta con v.fecha entre from y to): la clave lleva la hora exacta.
+     */
+    public <T> T porInstantes(String consulta, LocalDateTime from, LocalDateTime to, Supplier<T> carga, Object... filtros) {
+        LocalDate desde = from == null ? null : from.toLocalDate();
+        LocalDate hasta = to == null ? null : to.toLocalDate();
+        return obtener(new Clave(consulta, desde, hasta, from, to, filtros), carga);
+    }
+
+    /**
+     * Invalida las entradas cuyo periodo incluye el día de la venta. Llamado tras el commit.
+     */
+    public void registrarVenta(VentaRegistradaEvent event) {
+        if (event == null || event.getFecha() == null) return;
+        invalidarDia(event.getFecha().toLocalDate());
+    }
+
+    public void invalidarDia(LocalDate dia) {
+        resultados.invalidateIf(clave -> clave.incluye(dia));
+    }
+
+    public void limpiar() {
+        resultados.clear();
+    }
+
+    public long getHits() {
+        return resultados.getHits();
+    }
+
+    public long getMisses() {
+        return resultados.getMisses();
+    }
+
+    public double hitRatio() {
+        return resultados.hitRatio();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T obtener(Clave clave, Supplier<T> carga) {
+        Object cached = resultados.get(clave);
+        if (cached != null) return (T) cached;
+
+        T valor = carga.get();
+        if (valor == null) return null;
+        if (valor instanceof List<?> lista) valor = (T) Collections.unmodifiableList(new ArrayList<>(lista));
+        boolean cerrado = clave.hasta != null && clave.hasta.isBefore(LocalDate.now(clock));
+        resultados.put(clave, valor, cerrado ? SIN_EXPIRACION : TimeUnit.SECONDS.toMillis(ttlAbiertoSegundos));
+        return valor;
+    }
+
+    private TtlCache<Clave, Object> crearCache() {
+        return new TtlCache<>(maxEntradas, TimeUnit.SECONDS.toMillis(ttlAbiertoSegundos)) {
+            @Override
+            protected long now() {
+                return clock.millis();
+            }
+        };
+    }
+}
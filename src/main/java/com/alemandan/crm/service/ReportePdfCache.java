@@ -0,0 +1,302 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.repository.ProductoRepository;
+import com.alemandan.crm.repository.VentaRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Caché en disco de PDFs de reportes ya generados: &lt;app.uploads-dir&gt;/reportes-cache/&lt;hash&gt;.pdf.
+ * - Clave: formato + tipo de reporte + parámetros normalizados + versión de los datos. El formato es el build
+ *   desplegado (build-info; sin él, el momento del arranque): tras un despliegue que cambie el diseño de los PDF
+ *   los ETag anteriores dejan de valer. La versión de los datos es (cantidad de ventas, mayor id de venta) del
+ *   rango y, si el reporte muestra stock, una firma del stock de productos. Una venta nueva en el rango o un
+ *   cambio de stock da otra clave; los archivos viejos salen por LRU.
+ * - No se siguen los cambios de nombre de productos o usuarios que aparecen en el PDF: el archivo (y su ETag)
+ *   sigue valiendo hasta que cambie la versión de los datos o salga por LRU.
+ * - El hash de la clave es el ETag. clave() sólo consulta la versión: el controlador responde 304 con ella
+ *   sin generar ni abrir el PDF. Last-Modified es el momento en que se generó el archivo.
+ * - Se genera en un .part y se renombra: nunca se sirve un PDF a medio escribir.
+ * - obtener() devuelve el archivo ya abierto y marcado en uso; mientras no se cierre la Entrada no se borra
+ *   por LRU. Si el archivo desapareció del disco, se vuelve a generar.
+ * - Tamaño total acotado (max-mb): al superarlo se borran los archivos usados hace más tiempo que no estén en uso.
+ * - Se vacía al arrancar: un despliegue puede cambiar el formato de los PDF.
+ */
+@Component
+public class ReportePdfCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportePdfCache.class);
+
+    static final String SUBDIRECTORIO = "reportes-cache";
+
+    /**
+     * Escribe el PDF en {@code out}; no debe cerrarlo.
+     */
+    @FunctionalInterface
+    public interface Generador {
+        void generar(OutputStream out) throws Exception;
+    }
+
+    /**
+     * Identifica un PDF: parámetros + versión de los datos en el momento de calcularla.
+     */
+    public static final class Clave {
+        private final String hash;
+
+        Clave(String hash) {
+            this.hash = hash;
+        }
+
+        public String getEtag() { return "\"" + hash + "\""; }
+    }
+
+    /**
+     * PDF abierto y en uso. Cerrarla (try-with-resources) cierra el canal y permite volver a borrarlo por LRU.
+     */
+    public static final class Entrada implements Closeable {
+        private final ReportePdfCache cache;
+        private final Archivo archivo;
+        private final Path ruta;
+        private final FileChannel canal;
+        private final String etag;
+        private boolean cerrada;
+
+        Entrada(ReportePdfCache cache, Archivo archivo, Path ruta, FileChannel canal, String etag) {
+            this.cache = cache;
+            this.archivo = archivo;
+            this.ruta = ruta;
+            this.canal = canal;
+            this.etag = etag;
+        }
+
+        public Path getArchivo() { return ruta; }
+        public FileChannel getCanal() { return canal; }
+        public long getTamano() { return archivo.bytes; }
+        public String getEtag() { return etag; }
+        public long getModificado() { return archivo.modificado; }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (cache) {
+                if (cerrada) return;
+                cerrada = true;
+            }
+            try {
+                canal.close();
+            } finally {
+                cache.soltar(archivo);
+            }
+        }
+    }
+
+    /** Estado de un archivo de la caché; se modifica sólo con el lock de la caché. */
+    static final class Archivo {
+        final long bytes;
+        final long modificado;
+        int enUso;
+
+        Archivo(long bytes, long modificado) {
+            this.bytes = bytes;
+            this.modificado = modificado;
+        }
+    }
+
+    @Autowired
+    private VentaRepository ventaRepository;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    // Sólo existe si el build generó META-INF/build-info.properties (spring-boot-maven-plugin, goal build-info)
+    @Autowired(required = false)
+    private BuildProperties buildProperties;
+
+    @Value("${app.uploads-dir:uploads}")
+    private String uploadsDir = "uploads";
+
+    @Value("${app.reportes.pdf-cache.max-mb:200}")
+    private long maxMb = 200;
+
+    // hash -> archivo, en orden de uso (LRU)
+    private final LinkedHashMap<String, Archivo> archivos = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private Path directorio;
+
+    // Versión del formato de los PDF; forma parte de todas las claves
+    private String formato;
+
+    @PostConstruct
+    void init() {
+        formato = buildProperties != null
+                ? buildProperties.getVersion() + "@" + buildProperties.getTime()
+                : "arranque@" + Instant.now();
+        directorio = Paths.get(uploadsDir).toAbsolutePath().resolve(SUBDIRECTORIO);
+        try {
+            Files.createDirectories(directorio);
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(directorio)) {
+                for (Path p : ds) Files.deleteIfExists(p);
+            }
+        } catch (IOException e) {
+            logger.warn("No se pudo preparar el directorio de caché de reportes {}: {}", directorio, e.getMessage());
+        }
+    }
+
+    /**
+     * Clave del reporte para estos parámetros y los datos actuales (consultas agregadas sobre idx_venta_fecha_id).
+     *
+     * @param tipo       nombre del reporte (forma parte de la clave)
+     * @param from       inicio del rango de ventas del reporte
+     * @param to         fin del rango de ventas del reporte
+     * @param conStock   el reporte muestra stock de productos
+     * @param parametros resto de parámetros que cambian el contenido (ya normalizados por el controlador)
+     */
+    public Clave clave(String tipo, LocalDateTime from, LocalDateTime to, boolean conStock, Object... parametros) {
+        StringBuilder clave = new StringBuilder(formato).append('|').append(tipo)
+                .append('|').append(from).append('|').append(to);
+        for (Object p : parametros) clave.append('|').append(p);
+        clave.append("|ventas=").append(firma(ventaRepository.versionEntre(from, to)));
+        if (conStock) clave.append("|stock=").append(firma(productoRepository.firmaStock()));
+        return new Clave(hash(clave.toString()));
+    }
+
+    /**
+     * PDF para la clave: el archivo en caché o uno recién generado, abierto y en uso hasta cerrar la Entrada.
+     *
+     * @param generador escribe el PDF si no está en caché
+     */
+    public Entrada obtener(Clave clave, Generador generador) throws Exception {
+        Entrada enCache = abrir(clave.hash);
+        if (enCache != null) return enCache;
+
+        Path archivo = directorio.resolve(clave.hash + ".pdf");
+        Path temporal = directorio.resolve(clave.hash + "." + UUID.randomUUID() + ".part");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporal))) {
+                generador.generar(out);
+            }
+            synchronized (this) {
+                // Otra petición pudo generar el mismo PDF mientras tanto: se usa el suyo
+                Entrada existente = abrir(clave.hash);
+                if (existente != null) {
+                    Files.deleteIfExists(temporal);
+                    return existente;
+                }
+                Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Archivo nuevo = new Archivo(Files.size(archivo), Files.getLastModifiedTime(archivo).toMillis());
+                archivos.put(clave.hash, nuevo);
+                totalBytes += nuevo.bytes;
+                Entrada entrada = abrir(clave.hash);
+                liberarEspacio();
+                return entrada;
+            }
+        } catch (Exception e) {
+            Files.deleteIfExists(temporal);
+            throw e;
+        }
+    }
+
+    /**
+     * Atajo: clave + obtener.
+     */
+    public Entrada obtener(String tipo, LocalDateTime from, LocalDateTime to, boolean conStock,
+                           Generador generador, Object... parametros) throws Exception {
+        return obtener(clave(tipo, from, to, conStock, parametros), generador);
+    }
+
+    /**
+     * Bytes ocupados por los PDF en caché.
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Abre el archivo en caché y lo marca en uso, o null si no está. El borrado por LRU también toma este lock:
+     * entre comprobar y abrir no puede desaparecer. Si falta en disco (borrado por fuera) se olvida y se regenera.
+     */
+    private synchronized Entrada abrir(String hash) throws IOException {
+        Archivo archivo = archivos.get(hash);
+        if (archivo == null) return null;
+        Path ruta = directorio.resolve(hash + ".pdf");
+        FileChannel canal;
+        try {
+            canal = FileChannel.open(ruta, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            logger.warn("Reporte en caché {} no encontrado en disco, se genera de nuevo", hash);
+            archivos.remove(hash);
+            totalBytes -= archivo.bytes;
+            return null;
+        }
+        archivo.enUso++;
+        return new Entrada(this, archivo, ruta, canal, "\"" + hash + "\"");
+    }
+
+    private synchronized void soltar(Archivo archivo) {
+        archivo.enUso--;
+        liberarEspacio();
+    }
+
+    /**
+     * Borra los archivos usados hace más tiempo, sin tocar los que están en uso, hasta quedar bajo max-mb.
+     */
+    private synchronized void liberarEspacio() {
+        long limite = maxMb * 1024 * 1024;
+        for (Iterator<Map.Entry<String, Archivo>> it = archivos.entrySet().iterator(); it.hasNext() && totalBytes > limite; ) {
+            Map.Entry<String, Archivo> e = it.next();
+            if (e.getValue().enUso > 0) continue;
+            try {
+                Files.deleteIfExists(directorio.resolve(e.getKey() + ".pdf"));
+            } catch (IOException ex) {
+                logger.warn("No se pudo borrar el reporte en caché {}: {}", e.getKey(), ex.getMessage());
+                continue;
+            }
+            totalBytes -= e.getValue().bytes;
+            it.remove();
+        }
+    }
+
+    private static String firma(List<Object[]> filas) {
+        if (filas == null || filas.isEmpty()) return "-";
+        StringBuilder s = new StringBuilder();
+        for (Object v : filas.get(0)) s.append(v).append(':');
+        return s.toString();
+    }
+
+    private static String hash(String texto) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha.digest(texto.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.model.DetalleVenta;
+import com.alemandan.crm.model.Venta;
+import com.alemandan.crm.repository.VentaResumenDiarioRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mantiene el resumen diario de ventas (venta_resumen_diario) que usan los reportes.
+ * - registrarVenta: incremento en el checkout, dentro de la transacción de la venta
+ *   (si la venta se revierte, el resumen también).
+ * - reconstruir: recalcula un rango de días desde venta/detalle_venta (backfill o corrección).
+ */
+@Service
+public class ResumenDiarioService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResumenDiarioService.class);
+
+    @Autowired
+    private VentaResumenDiarioRepository resumenRepository;
+
+    /**
+     * Suma una venta ya persistida al resumen: una fila por producto del ticket.
+     * Las filas se actualizan en orden de producto para que dos cajas concurrentes
+     * bloqueen las filas del resumen siempre en el mismo orden.
+     */
+    @Transactional
+    public void registrarVenta(Venta venta) {
+        if (venta.getDetalles() == null || venta.getDetalles().isEmpty()) return;
+
+        LocalDate dia = venta.getFecha() != null ? venta.getFecha().toLocalDate() : LocalDate.now();
+        Long usuarioId = venta.getUsuario() != null && venta.getUsuario().getId() != null ? venta.getUsuario().getId() : 0L;
+        String metodoPago = venta.getMetodoPago() != null ? venta.getMetodoPago() : "";
+
+        Map<Long, Acumulado> porProducto = new TreeMap<>();
+        Long primerProducto = null;
+        for (DetalleVenta d : venta.getDetalles()) {
+            if (d.getProducto() == null || d.getProducto().getId() == null) continue;
+            Long productoId = d.getProducto().getId();
+            if (primerProducto == null) primerProducto = productoId;
+            Acumulado a = porProducto.computeIfAbsent(productoId, k -> new Acumulado());
+            a.unidades += d.getCantidad();
+            a.monto = a.monto.add(d.getPrecioUnitario().multiply(BigDecimal.valueOf(d.getCantidad())));
+            a.iva = a.iva.add(d.getIvaMonto());
+        }
+
+        for (Map.Entry<Long, Acumulado> e : porProducto.entrySet()) {
+            Acumulado a = e.getValue();
+            // La venta cuenta una vez, en la fila del producto de su primera línea
+            long numVentas = e.getKey().equals(primerProducto) ? 1 : 0;
+            resumenRepository.acumular(dia, e.getKey(), usuarioId, metodoPago, a.unidades, a.monto, a.iva, numVentas);
+        }
+    }
+
+    /**
+     * Borra y recalcula el resumen de los días [desde, hasta] en una transacción.
+     * No ejecutar sobre el día en curso con cajas vendiendo: una venta confirmada entre el
+     * borrado y el recálculo podría contarse dos veces.
+     *
+     * @return filas del resumen generadas
+     */
+    @Transactional
+    public int reconstruir(LocalDate desde, LocalDate hasta) {
+        if (desde == null || hasta == null || desde.isAfter(hasta)) {
+            throw new IllegalArgumentException("Rango de fechas inválido para reconstruir el resumen diario.");
+        }
+        int borradas = resumenRepository.borrarRango(desde, hasta);
+        int generadas = resumenRepository.reconstruirRango(desde, hasta);
+        logger.info("Resumen diario reconstruido {} - {}: {} filas borradas, {} filas generadas", desde, hasta, borradas, generadas);
+        return generadas;
+    }
+
+    private static final class Acumulado {
+        long unidades;
+        BigDecimal monto = BigDecimal.ZERO;
+        BigDecimal iva = BigDecimal.ZERO;
+    }
+}
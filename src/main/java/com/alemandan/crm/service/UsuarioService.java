@@ -2,21 +2,69 @@ package com.alemandan.crm.service;
 
 import com.alemandan.crm.model.Usuario;
 import com.alemandan.crm.repository.UsuarioRepository;
+import com.alemandan.crm.util.TtlCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Usuarios. La búsqueda por email (login, caja, dashboards, perfiles) se sirve desde una caché acotada con TTL:
+ * una sesión de caja resuelve su usuario una vez y luego no vuelve a consultar la BD.
+ * - Se guardan y devuelven copias: los controladores modifican el usuario antes de guardarlo.
+ * - Cualquier escritura por este servicio vacía la caché (son raras y así un cambio de email
+ *   no deja la entrada del email anterior). Las escrituras de usuarios deben pasar por saveUsuario.
+ * - El TTL acota lo que tarda en verse un cambio hecho fuera de la aplicación o en otra instancia.
+ * - Aciertos y fallos se publican como cache.gets{cache=usuarios,result=hit|miss} (Micrometer).
+ */
 @Service
 public class UsuarioService {
 
     @Autowired
     private UsuarioRepository usuarioRepository;
 
+    @Autowired
+    private DashboardCounters dashboardCounters;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.usuarios.cache.max-entradas:1000}")
+    private int maxEntradas = 1000;
+
+    @Value("${app.usuarios.cache.ttl-minutos:10}")
+    private long ttlMinutos = 10;
+
+    // email en minúsculas -> copia del usuario; se crea en init(), con los límites ya inyectados
+    private TtlCache<String, Usuario> porEmail;
+
+    @PostConstruct
+    void init() {
+        porEmail = new TtlCache<>(maxEntradas, TimeUnit.MINUTES.toMillis(ttlMinutos));
+        if (meterRegistry != null) {
+            TtlCache<String, Usuario> cache = porEmail;
+            FunctionCounter.builder("cache.gets", cache, TtlCache::getHits)
+                    .tag("cache", "usuarios").tag("result", "hit").register(meterRegistry);
+            FunctionCounter.builder("cache.gets", cache, TtlCache::getMisses)
+                    .tag("cache", "usuarios").tag("result", "miss").register(meterRegistry);
+            Gauge.builder("cache.size", cache, TtlCache::size).tag("cache", "usuarios").register(meterRegistry);
+        }
+    }
+
     // Guardar un usuario
     public Usuario saveUsuario(Usuario usuario) {
-        return usuarioRepository.save(usuario);
+        Usuario saved = usuarioRepository.save(usuario);
+        porEmail.clear();
+        dashboardCounters.invalidarCatalogo();
+        return saved;
     }
 
     // Buscar usuario por ID
@@ -27,15 +75,27 @@ public class UsuarioService {
     // Eliminar usuario por ID
     public void deleteUsuario(Long id) {
         usuarioRepository.deleteById(id);
+        porEmail.clear();
+        dashboardCounters.invalidarCatalogo();
     }
 
     // Buscar usuario por email
     public Usuario getUsuarioByEmail(String email) {
-        return usuarioRepository.findByEmail(email);
+        return findByEmail(email);
     }
 
+    // Desde la caché; null si no existe (los inexistentes no se guardan).
+    // Siempre una copia desacoplada, también en el primer acceso: el resultado no depende de si estaba en caché
     public Usuario findByEmail(String email) {
-        return usuarioRepository.findByEmail(email);
+        if (email == null) return null;
+        String clave = email.toLowerCase(Locale.ROOT);
+        Usuario cached = porEmail.get(clave);
+        if (cached != null) return copiar(cached);
+
+        Usuario usuario = usuarioRepository.findByEmail(email);
+        if (usuario == null) return null;
+        porEmail.put(clave, copiar(usuario));
+        return copiar(usuario);
     }
 
     // Listar todos los usuarios activos
@@ -50,6 +110,8 @@ public class UsuarioService {
             Usuario usuario = usuarioOpt.get();
             usuario.setActivo(false);
             usuarioRepository.save(usuario);
+            porEmail.clear();
+            dashboardCounters.invalidarCatalogo();
         }
     }
 
@@ -63,13 +125,33 @@ public class UsuarioService {
         return usuarioRepository.findByRolAndActivoTrue("EMPLEADO");
     }
 
-    // Obtener el total de empleados activos
+    // Obtener el total de empleados activos (contadores del dashboard, sin consultar la BD)
     public long countEmpleados() {
-        return usuarioRepository.countByRolAndActivoTrue("EMPLEADO");
+        return dashboardCounters.empleados();
     }
 
     // Obtener el total por rol (útil para admins, empleados, etc.)
     public long countPorRol(String rol) {
         return usuarioRepository.countByRolAndActivoTrue(rol);
     }
-}
\ No newline at end of file
+
+    public long getCacheHits() {
+        return porEmail.getHits();
+    }
+
+    public long getCacheMisses() {
+        return porEmail.getMisses();
+    }
+
+    private static Usuario copiar(Usuario u) {
+        Usuario c = new Usuario();
+        c.setId(u.getId());
+        c.setNombre(u.getNombre());
+        c.setEmail(u.getEmail());
+        c.setPassword(u.getPassword());
+        c.setRol(u.getRol());
+        c.setActivo(u.getActivo());
+        c.setImagePath(u.getImagePath());
+        return c;
+    }
+}
@@ -0,0 +1,129 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.model.Usuario;
+import com.alemandan.crm.model.Venta;
+import com.alemandan.crm.repository.VentaRepository;
+import com.alemandan.crm.util.TtlCache;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Registro idempotente de ventas desde la caja (cabecera Idempotency-Key).
+ * - La caja genera una clave por ticket y la reenvía en cada reintento.
+ * - Si la clave ya tiene venta asociada se devuelve esa venta sin volver a ejecutar
+ *   procesarYGuardarVenta (no se descuenta stock dos veces).
+ * - Primero se consulta una caché en memoria acotada con TTL; si no está, la columna única
+ *   venta.idempotency_key (sobrevive a reinicios y funciona con varias instancias).
+ * - Si dos reintentos llegan a la vez, el índice único hace fallar al segundo y se devuelve la venta del primero.
+ */
+@Service
+public class VentaIdempotenciaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VentaIdempotenciaService.class);
+
+    public static final int MAX_LONGITUD_CLAVE = 64;
+    private static final Pattern CLAVE_VALIDA = Pattern.compile("[A-Za-z0-9._:-]+");
+
+    @Autowired
+    private VentaService ventaService;
+
+    @Autowired
+    private VentaRepository ventaRepository;
+
+    @Value("${app.ventas.idempotencia.max-claves:10000}")
+    private int maxClaves = 10000;
+
+    @Value("${app.ventas.idempotencia.ttl-minutos:1440}")
+    private long ttlMinutos = 1440;
+
+    // clave -> ventaId; se crea en init(), con los límites ya inyectados
+    private TtlCache<String, Long> claves;
+
+    @PostConstruct
+    void init() {
+        claves = new TtlCache<>(maxClaves, TimeUnit.MINUTES.toMillis(ttlMinutos));
+    }
+
+    /**
+     * Registra la venta aplicando idempotencia si se recibe clave.
+     * Sin clave (formulario clásico, clientes antiguos) delega directamente en procesarYGuardarVenta.
+     *
+     * Lanza IllegalArgumentException si la clave es inválida o pertenece a una venta de otro usuario.
+     */
+    public Venta registrar(Venta venta, String idempotencyKey) {
+        String clave = normalizarClave(idempotencyKey);
+        // La clave sólo se acepta por cabecera, nunca desde el cuerpo JSON
+        venta.setIdempotencyKey(clave);
+        if (clave == null) {
+            return ventaService.procesarYGuardarVenta(venta);
+        }
+
+        Venta previa = buscarVentaPrevia(clave, venta.getUsuario());
+        if (previa != null) {
+            logger.info("Reintento de venta con Idempotency-Key {}: se devuelve la venta {}", clave, previa.getId());
+            return previa;
+        }
+
+        try {
+            Venta saved = ventaService.procesarYGuardarVenta(venta);
+            claves.put(clave, saved.getId());
+            return saved;
+        } catch (DataIntegrityViolationException e) {
+            // Otra petición con la misma clave se registró primero (la transacción de ésta ya se revirtió)
+            Venta ganadora = ventaRepository.findByIdempotencyKey(clave).orElseThrow(() -> e);
+            verificarPropietario(ganadora, venta.getUsuario());
+            claves.put(clave, ganadora.getId());
+            logger.info("Reintento concurrente con Idempotency-Key {}: se devuelve la venta {}", clave, ganadora.getId());
+            return ganadora;
+        }
+    }
+
+    /**
+     * Busca la venta ya registrada con la clave: caché en memoria y, si no está, la base de datos.
+     * Devuelve null si la clave no se ha usado.
+     */
+    public Venta buscarVentaPrevia(String clave, Usuario usuario) {
+        Long ventaId = claves.get(clave);
+        Optional<Venta> previa = ventaId != null
+                ? ventaRepository.findById(ventaId)
+                : ventaRepository.findByIdempotencyKey(clave);
+        if (previa.isEmpty()) {
+            return null;
+        }
+        Venta venta = previa.get();
+        verificarPropietario(venta, usuario);
+        claves.put(clave, venta.getId());
+        return venta;
+    }
+
+    /**
+     * Normaliza la clave recibida: null/vacía -> null. Valida longitud y caracteres (UUID u otro token opaco).
+     */
+    public static String normalizarClave(String raw) {
+        if (raw == null) return null;
+        String clave = raw.trim();
+        if (clave.isEmpty()) return null;
+        if (clave.length() > MAX_LONGITUD_CLAVE || !CLAVE_VALIDA.matcher(clave).matches()) {
+            throw new IllegalArgumentException("Idempotency-Key inválida (máximo " + MAX_LONGITUD_CLAVE + " caracteres alfanuméricos).");
+        }
+        return clave;
+    }
+
+    private void verificarPropietario(Venta venta, Usuario usuario) {
+        Long propietario = venta.getUsuario() != null ? venta.getUsuario().getId() : null;
+        Long solicitante = usuario != null ? usuario.getId() : null;
+        if (!Objects.equals(propietario, solicitante)) {
+            throw new IllegalArgumentException("La clave de idempotencia ya fue utilizada por otra venta.");
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.alemandan.crm.service;
 
+import com.alemandan.crm.events.VentaRegistradaEvent;
 import com.alemandan.crm.model.Venta;
 import com.alemandan.crm.model.DetalleVenta;
 import com.alemandan.crm.model.Producto;
 import com.alemandan.crm.repository.VentaRepository;
 import com.alemandan.crm.repository.ProductoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -16,7 +21,8 @@ import java.time.ZoneOffset;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.stream.Collectors;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
@@ -30,13 +36,25 @@ public class VentaService {
     @Autowired
     private ProductoRepository productoRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ResumenDiarioService resumenDiarioService;
+
+    @Autowired
+    private DashboardCounters dashboardCounters;
+
     /**
      * Nuevo: procesa y guarda la venta.
-     * - Valida stock y cantidades.
-     * - Actualiza stock en Producto.
+     * - Carga todos los productos del ticket en una sola consulta (findAllById).
+     * - Valida cantidades (agrupando líneas repetidas del mismo producto).
+     * - Descuenta stock con un UPDATE condicional por producto (descontarStock); si no afecta filas no hay stock suficiente.
      * - Calcula precioUnitario, ivaRate e ivaMonto por DetalleVenta.
      * - Calcula subtotal, iva total y total de la venta.
      * - Persiste la venta con sus detalles y devuelve la entidad guardada (con id).
+     * - Suma la venta al resumen diario de reportes en la misma transacción.
+     * - Publica VentaRegistradaEvent (los listeners actúan tras el commit, p.ej. generar el recibo).
      *
      * Lanza IllegalArgumentException en caso de validación fallida.
      */
@@ -48,12 +66,25 @@ public class VentaService {
             throw new IllegalArgumentException("La venta no contiene productos.");
         }
 
-        // Validación de stock y cantidades
+        // Cantidad total solicitada por producto (un mismo producto puede venir en varias líneas)
+        Map<Long, Integer> cantidadesPorProducto = new LinkedHashMap<>();
         for (DetalleVenta detalle : venta.getDetalles()) {
             if (detalle.getProducto() == null || detalle.getProducto().getId() == null) {
                 throw new IllegalArgumentException("Producto inválido en detalle.");
             }
-            Producto producto = productoRepository.findById(detalle.getProducto().getId()).orElse(null);
+            int qty = detalle.getCantidad() == null ? 0 : detalle.getCantidad();
+            cantidadesPorProducto.merge(detalle.getProducto().getId(), qty, Integer::sum);
+        }
+
+        // Un único round-trip para todos los productos del ticket
+        Map<Long, Producto> productos = new HashMap<>();
+        for (Producto p : productoRepository.findAllById(cantidadesPorProducto.keySet())) {
+            productos.put(p.getId(), p);
+        }
+
+        // Validación de stock y cantidades
+        for (DetalleVenta detalle : venta.getDetalles()) {
+            Producto producto = productos.get(detalle.getProducto().getId());
             if (producto == null) {
                 throw new IllegalArgumentException("Producto con id " + detalle.getProducto().getId() + " no encontrado.");
             }
@@ -61,8 +92,18 @@ public class VentaService {
             if (qty < 1) {
                 throw new IllegalArgumentException("La cantidad del producto '" + producto.getNombre() + "' debe ser al menos 1.");
             }
-            int available = producto.getCantidad() == null ? 0 : producto.getCantidad();
-            if (qty > available) {
+        }
+
+        // Descuento atómico de stock: el UPDATE condicional es la verificación de stock.
+        // Orden por id para que dos tickets con los mismos productos no se bloqueen mutuamente.
+        // Si algún producto no alcanza, la excepción revierte los descuentos ya aplicados.
+        for (Map.Entry<Long, Integer> entry : new TreeMap<>(cantidadesPorProducto).entrySet()) {
+            int filas = productoRepository.descontarStock(entry.getKey(), entry.getValue());
+            if (filas == 0) {
+                Producto producto = productos.get(entry.getKey());
+                // La entidad cargada arriba no refleja los descuentos de otras cajas: releer el stock
+                Integer stock = productoRepository.stockActual(entry.getKey());
+                int available = stock == null ? 0 : stock;
                 throw new IllegalArgumentException("No hay suficiente stock del producto '" + producto.getNombre() + "'. Disponible: " + available);
             }
         }
@@ -74,17 +115,12 @@ public class VentaService {
         List<DetalleVenta> detallesPersist = new ArrayList<>();
 
         for (DetalleVenta detalle : venta.getDetalles()) {
-            Producto producto = productoRepository.findById(detalle.getProducto().getId()).orElseThrow();
-
-            // Actualizar stock
-            int currentStock = producto.getCantidad() == null ? 0 : producto.getCantidad();
+            Producto producto = productos.get(detalle.getProducto().getId());
             int qty = detalle.getCantidad() == null ? 0 : detalle.getCantidad();
-            producto.setCantidad(currentStock - qty);
-            productoRepository.save(producto);
 
             // Determinar precioUnitario (Detalle puede venir con precioUnitario, si no usamos producto.precio)
             BigDecimal precioUnitario;
-            if (detalle.getPrecioUnitario() != null) {
+            if (detalle.getPrecioUnitario() != null && detalle.getPrecioUnitario().compareTo(BigDecimal.ZERO) != 0) {
                 precioUnitario = detalle.getPrecioUnitario();
             } else {
                 precioUnitario = producto.getPrecio() == null ? BigDecimal.ZERO : BigDecimal.valueOf(producto.getPrecio());
@@ -99,7 +135,8 @@ public class VentaService {
             // Calcular monto de IVA de la línea (redondeo a 2 decimales)
             BigDecimal ivaLinea = lineaSubtotal.multiply(ivaRate).divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
 
-            // Setear valores en DetalleVenta y relación con venta
+            // Setear valores en DetalleVenta y relación con venta (producto gestionado, no la referencia del JSON)
+            detalle.setProducto(producto);
             detalle.setPrecioUnitario(precioUnitario);
             detalle.setIvaRate(ivaRate);
             detalle.setIvaMonto(ivaLinea);
@@ -122,6 +159,11 @@ public class VentaService {
 
         // Persistir la venta
         Venta saved = ventaRepository.save(venta);
+        resumenDiarioService.registrarVenta(saved);
+
+        Long usuarioId = saved.getUsuario() != null ? saved.getUsuario().getId() : null;
+        eventPublisher.publishEvent(new VentaRegistradaEvent(saved.getId(), usuarioId, saved.getFecha(), saved.getTotal(),
+                new HashMap<>(cantidadesPorProducto)));
         return saved;
     }
 
@@ -146,65 +188,75 @@ public class VentaService {
 
     // Buscar ventas por usuario
     public List<Venta> obtenerVentasPorUsuario(Long usuarioId) {
-        return ventaRepository.findByUsuarioId(usuarioId);
+        return ventaRepository.findConDetallesByUsuarioId(usuarioId);
     }
 
-    // Filtrar ventas
+    // Filtrar ventas: todo el historial filtrado (exportar-pdf). Fechas yyyy-MM-dd, ambos días inclusive.
     public List<Venta> filtrarVentas(Long usuarioId, String fechaInicio, String fechaFin, Long productoId, String metodoPago) {
-        List<Venta> ventas = ventaRepository.findByUsuarioId(usuarioId);
+        return ventaRepository.filtrarEmpleado(usuarioId, inicioDelDia(fechaInicio), inicioDelDiaSiguiente(fechaFin),
+                productoId, vacioANull(metodoPago));
+    }
 
-        // Filtrado por fecha
-        if (fechaInicio != null && !fechaInicio.isEmpty()) {
-            LocalDate inicio = LocalDate.parse(fechaInicio);
-            ventas = ventas.stream().filter(v -> !v.getFecha().toLocalDate().isBefore(inicio)).collect(Collectors.toList());
-        }
-        if (fechaFin != null && !fechaFin.isEmpty()) {
-            LocalDate fin = LocalDate.parse(fechaFin);
-            ventas = ventas.stream().filter(v -> !v.getFecha().toLocalDate().isAfter(fin)).collect(Collectors.toList());
+    /**
+     * Página del historial filtrado (mis-ventas), más recientes primero. El filtro se hace en la BD:
+     * una consulta de ids paginada (más su conteo) y otra que carga esas ventas con sus detalles.
+     */
+    public Page<Venta> filtrarVentas(Long usuarioId, String fechaInicio, String fechaFin, Long productoId, String metodoPago,
+                                     Pageable pageable) {
+        Page<Long> ids = ventaRepository.idsFiltrarEmpleado(usuarioId, inicioDelDia(fechaInicio),
+                inicioDelDiaSiguiente(fechaFin), productoId, vacioANull(metodoPago), pageable);
+        if (ids.isEmpty()) {
+            return new PageImpl<>(new ArrayList<>(), pageable, ids.getTotalElements());
         }
-        // Filtrado por producto
-        if (productoId != null) {
-            ventas = ventas.stream().filter(v -> v.getDetalles().stream().anyMatch(d -> d.getProducto() != null && productoId.equals(d.getProducto().getId()))).collect(Collectors.toList());
+        // findConDetallesByIdIn no garantiza orden: se recoloca según la página de ids
+        Map<Long, Venta> porId = new HashMap<>();
+        for (Venta v : ventaRepository.findConDetallesByIdIn(ids.getContent())) {
+            porId.put(v.getId(), v);
         }
-        // Filtrado por método de pago
-        if (metodoPago != null && !metodoPago.isEmpty()) {
-            ventas = ventas.stream().filter(v -> metodoPago.equalsIgnoreCase(v.getMetodoPago())).collect(Collectors.toList());
+        List<Venta> ventas = new ArrayList<>();
+        for (Long id : ids.getContent()) {
+            Venta v = porId.get(id);
+            if (v != null) ventas.add(v);
         }
-        return ventas;
+        return new PageImpl<>(ventas, pageable, ids.getTotalElements());
+    }
+
+    private static LocalDateTime inicioDelDia(String fecha) {
+        return (fecha == null || fecha.isEmpty()) ? null : LocalDate.parse(fecha).atStartOfDay();
+    }
+
+    private static LocalDateTime inicioDelDiaSiguiente(String fecha) {
+        return (fecha == null || fecha.isEmpty()) ? null : LocalDate.parse(fecha).plusDays(1).atStartOfDay();
+    }
+
+    private static String vacioANull(String valor) {
+        return (valor == null || valor.isEmpty()) ? null : valor;
     }
 
     // Conteo de ventas del día usando LocalDateTime
     public long countVentasDelDia() {
-        LocalDate hoy = LocalDate.now();
-        LocalDateTime inicio = hoy.atStartOfDay();
-        LocalDateTime fin = hoy.plusDays(1).atStartOfDay();
-        return ventaRepository.countByFechaBetween(inicio, fin);
+        return dashboardCounters.ventasDelDia();
     }
 
     // Ventas del día de un empleado
     public long countVentasDelDiaEmpleado(Long empleadoId) {
-        LocalDate hoy = LocalDate.now();
-        LocalDateTime inicio = hoy.atStartOfDay();
-        LocalDateTime fin = hoy.plusDays(1).atStartOfDay();
-        return ventaRepository.countByUsuarioIdAndFechaBetween(empleadoId, inicio, fin);
+        return dashboardCounters.ventasDelDiaEmpleado(empleadoId);
     }
 
     // Ventas totales de un empleado
     public long countVentasTotalesEmpleado(Long empleadoId) {
-        return ventaRepository.countByUsuarioId(empleadoId);
+        return dashboardCounters.ventasTotalesEmpleado(empleadoId);
     }
 
     // NUEVO: resumen general de ventas para dashboard y web service
+    // Los totales salen de los contadores en memoria (DashboardCounters), sin consultar la BD.
+    // Devuelve siempre un mapa nuevo: los llamadores lo modifican (p.ej. fechaFormateada).
     public Map<String, Object> getResumenVentas() {
         Map<String, Object> resumen = new HashMap<>();
         // Total de ventas
-        resumen.put("totalVentas", ventaRepository.count());
+        resumen.put("totalVentas", dashboardCounters.totalVentas());
         // Monto total de ventas
-        BigDecimal montoTotal = ventaRepository.findAll()
-                .stream()
-                .map(v -> v.getTotal() == null ? BigDecimal.ZERO : v.getTotal())
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        resumen.put("montoTotal", montoTotal);
+        resumen.put("montoTotal", dashboardCounters.montoTotal());
         // Fecha actual en formato ISO8601 (string compatible con frontend y formateo)
         OffsetDateTime fechaActual = OffsetDateTime.now(ZoneOffset.UTC);
         resumen.put("fecha", fechaActual.toString());
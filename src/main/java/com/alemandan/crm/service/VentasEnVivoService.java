@@ -0,0 +1,229 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.events.VentaRegistradaEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ventas en vivo para el dashboard de administración (/dashboard-admin/stream, Server-Sent Events).
+ * - registrarVenta (VentasListener, tras el commit) sólo guarda la venta en un anillo de las últimas
+ *   {@link #MAX_VENTAS_RECIENTES}: no escribe a ningún cliente desde el hilo de la caja.
+ * - Cada intervalo se envía a cada suscriptor un evento "ventas" con las ventas que no ha recibido y los
+ *   totales actuales (DashboardCounters, en memoria). Si no hay ventas, un comentario de latido cada heartbeat-ms.
+ * - Los envíos van a dashboardStreamExecutor. Un cliente con un envío aún en curso (conexión lenta) se salta
+ *   en ese ciclo y recibe todo junto en el siguiente; si se atrasa más que el anillo, recibe "perdidas": true
+ *   y sólo los totales.
+ * - Máximo de suscriptores simultáneos (app.dashboard.stream.max-suscriptores).
+ */
+@Service
+public class VentasEnVivoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VentasEnVivoService.class);
+
+    static final int MAX_VENTAS_RECIENTES = 50;
+
+    @Autowired
+    private DashboardCounters dashboardCounters;
+
+    @Autowired
+    @Qualifier("dashboardStreamExecutor")
+    private Executor dashboardStreamExecutor;
+
+    @Value("${app.dashboard.stream.max-suscriptores:20}")
+    private int maxSuscriptores;
+
+    @Value("${app.dashboard.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${app.dashboard.stream.heartbeat-ms:20000}")
+    private long heartbeatMs;
+
+    private final Set<Suscriptor> suscriptores = ConcurrentHashMap.newKeySet();
+
+    // Últimas ventas, la más reciente al final; secuencia = número de la última registrada
+    private final ArrayDeque<VentaEnVivo> recientes = new ArrayDeque<>();
+    private long secuencia;
+
+    /**
+     * Venta tal como se envía al navegador.
+     */
+    public static class VentaEnVivo {
+        private final long secuencia;
+        private final Long id;
+        private final Long usuarioId;
+        private final LocalDateTime fecha;
+        private final BigDecimal total;
+
+        VentaEnVivo(long secuencia, Long id, Long usuarioId, LocalDateTime fecha, BigDecimal total) {
+            this.secuencia = secuencia;
+            this.id = id;
+            this.usuarioId = usuarioId;
+            this.fecha = fecha;
+            this.total = total;
+        }
+
+        public long getSecuencia() { return secuencia; }
+        public Long getId() { return id; }
+        public Long getUsuarioId() { return usuarioId; }
+        public LocalDateTime getFecha() { return fecha; }
+        public BigDecimal getTotal() { return total; }
+    }
+
+    static final class Suscriptor {
+        final SseEmitter emitter;
+        final String usuario;
+        final AtomicBoolean enviando = new AtomicBoolean(true);
+        volatile long ultimaSecuencia;
+        volatile long ultimoEnvio = System.currentTimeMillis();
+
+        Suscriptor(SseEmitter emitter, String usuario) {
+            this.emitter = emitter;
+            this.usuario = usuario;
+        }
+    }
+
+    /**
+     * Registra un suscriptor y le envía los totales actuales.
+     *
+     * @throws IllegalStateException si ya hay el máximo de suscriptores
+     */
+    public SseEmitter suscribir(String usuario) {
+        SseEmitter emitter = crearEmitter();
+        Suscriptor s = new Suscriptor(emitter, usuario);
+        synchronized (suscriptores) {
+            if (suscriptores.size() >= maxSuscriptores) {
+                throw new IllegalStateException("Demasiadas conexiones al dashboard en vivo.");
+            }
+            suscriptores.add(s);
+        }
+        emitter.onCompletion(() -> suscriptores.remove(s));
+        emitter.onTimeout(() -> suscriptores.remove(s));
+        emitter.onError(e -> suscriptores.remove(s));
+
+        long ultima;
+        synchronized (recientes) {
+            ultima = secuencia;
+        }
+        // enviando empieza en true: el ciclo no escribe a este cliente hasta terminar el envío inicial
+        enviar(s, evento(List.of(), false, totales()), ultima);
+        logger.debug("Suscriptor del dashboard en vivo: {} ({} activos)", usuario, suscriptores.size());
+        return emitter;
+    }
+
+    /**
+     * Anota una venta confirmada. No hace E/S: el envío lo hace {@link #difundir()}.
+     */
+    public void registrarVenta(VentaRegistradaEvent event) {
+        if (event == null) return;
+        synchronized (recientes) {
+            secuencia++;
+            recientes.addLast(new VentaEnVivo(secuencia, event.getVentaId(), event.getUsuarioId(), event.getFecha(), event.getTotal()));
+            if (recientes.size() > MAX_VENTAS_RECIENTES) recientes.removeFirst();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.dashboard.stream.intervalo-ms:1000}")
+    public void difundir() {
+        if (suscriptores.isEmpty()) return;
+
+        long ultima;
+        List<VentaEnVivo> copia;
+        synchronized (recientes) {
+            ultima = secuencia;
+            copia = new ArrayList<>(recientes);
+        }
+        long ahora = System.currentTimeMillis();
+        Map<String, Object> totales = null;
+
+        for (Suscriptor s : suscriptores) {
+            boolean hayVentas = s.ultimaSecuencia < ultima;
+            if (!hayVentas && ahora - s.ultimoEnvio < heartbeatMs) continue;
+            // Envío anterior aún en curso: las ventas se juntan en el siguiente ciclo
+            if (!s.enviando.compareAndSet(false, true)) continue;
+
+            Map<String, Object> payload = null;
+            if (hayVentas) {
+                if (totales == null) totales = totales();
+                List<VentaEnVivo> nuevas = new ArrayList<>();
+                for (VentaEnVivo v : copia) {
+                    if (v.secuencia > s.ultimaSecuencia) nuevas.add(v);
+                }
+                boolean perdidas = nuevas.isEmpty() || nuevas.get(0).secuencia > s.ultimaSecuencia + 1;
+                payload = evento(perdidas ? List.of() : nuevas, perdidas, totales);
+            }
+            Map<String, Object> datos = payload;
+            try {
+                dashboardStreamExecutor.execute(() -> enviar(s, datos, ultima));
+            } catch (RejectedExecutionException e) {
+                s.enviando.set(false);
+            }
+        }
+    }
+
+    public int suscriptoresActivos() {
+        return suscriptores.size();
+    }
+
+    SseEmitter crearEmitter() {
+        return new SseEmitter(timeoutMs);
+    }
+
+    /**
+     * Escribe al cliente (datos null = latido) y libera el suscriptor para el siguiente ciclo.
+     */
+    private void enviar(Suscriptor s, Map<String, Object> datos, long hastaSecuencia) {
+        try {
+            if (datos != null) {
+                s.emitter.send(SseEmitter.event().name("ventas").id(String.valueOf(hastaSecuencia))
+                        .data(datos, MediaType.APPLICATION_JSON));
+                s.ultimaSecuencia = hastaSecuencia;
+            } else {
+                s.emitter.send(SseEmitter.event().comment("ping"));
+            }
+            s.ultimoEnvio = System.currentTimeMillis();
+        } catch (IOException | IllegalStateException e) {
+            // Cliente desconectado: el contenedor completa el emitter
+            suscriptores.remove(s);
+            logger.debug("Suscriptor del dashboard en vivo desconectado ({}): {}", s.usuario, e.getMessage());
+        } finally {
+            s.enviando.set(false);
+        }
+    }
+
+    private Map<String, Object> totales() {
+        Map<String, Object> totales = new LinkedHashMap<>();
+        totales.put("ventasDia", dashboardCounters.ventasDelDia());
+        totales.put("totalVentas", dashboardCounters.totalVentas());
+        totales.put("montoTotal", dashboardCounters.montoTotal());
+        return totales;
+    }
+
+    private static Map<String, Object> evento(List<VentaEnVivo> ventas, boolean perdidas, Map<String, Object> totales) {
+        Map<String, Object> datos = new LinkedHashMap<>();
+        datos.put("ventas", ventas);
+        datos.put("perdidas", perdidas);
+        datos.put("totales", totales);
+        return datos;
+    }
+}
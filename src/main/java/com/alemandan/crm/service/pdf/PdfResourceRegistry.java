@@ -0,0 +1,139 @@
+package com.alemandan.crm.service.pdf;
+
+import com.itextpdf.text.Font;
+import com.itextpdf.text.FontFactory;
+import com.itextpdf.text.Image;
+import com.itextpdf.text.pdf.BaseFont;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+
+/**
+ * Recursos compartidos para la generación de PDFs (fuentes y logo).
+ * - Las fuentes TTF se leen del classpath y se parsean una sola vez (sin archivos temporales).
+ *   Se prueba Roboto y, si no está empaquetada, DejaVuSans (incluida en resources/fonts); si ninguna
+ *   carga se usa Helvetica.
+ * - El logo se decodifica una sola vez; cada documento recibe una copia (Image.getInstance(Image))
+ *   que comparte los datos de la imagen pero no el estado de posición/escala.
+ *
+ * Thread-safe: la carga es perezosa e idempotente (holder inmutable publicado vía volatile).
+ * Los BaseFont de iText se pueden compartir entre documentos; el subset de glifos lo lleva cada PdfWriter.
+ */
+@Component
+public class PdfResourceRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(PdfResourceRegistry.class);
+
+    private static final String[] FUENTES_NORMAL = {"fonts/Roboto-Regular.ttf", "fonts/DejaVuSans.ttf"};
+    private static final String[] FUENTES_NEGRITA = {"fonts/Roboto-Bold.ttf", "fonts/DejaVuSans-Bold.ttf"};
+    private static final String LOGO = "static/assets/img/Alogo.png";
+    private static final float LOGO_MAX = 80f;
+
+    private static final class Recursos {
+        final BaseFont normal;
+        final BaseFont negrita;
+        final Image logo;
+
+        Recursos(BaseFont normal, BaseFont negrita, Image logo) {
+            this.normal = normal;
+            this.negrita = negrita;
+            this.logo = logo;
+        }
+    }
+
+    private volatile Recursos recursos;
+
+    private Recursos recursos() {
+        Recursos r = recursos;
+        if (r == null) {
+            synchronized (this) {
+                r = recursos;
+                if (r == null) {
+                    r = new Recursos(cargarFuente(FUENTES_NORMAL), cargarFuente(FUENTES_NEGRITA), cargarLogo());
+                    recursos = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Fuente normal (texto de tablas y párrafos). Cada llamada devuelve un Font nuevo (mutable)
+     * sobre el BaseFont compartido.
+     */
+    public Font normalFont(float size) {
+        BaseFont bf = recursos().normal;
+        return bf != null ? new Font(bf, size) : FontFactory.getFont(FontFactory.HELVETICA, size);
+    }
+
+    /**
+     * Fuente de encabezados. Con la TTF negrita no se aplica estilo BOLD adicional (evita negrita simulada).
+     */
+    public Font headerFont(float size) {
+        BaseFont bf = recursos().negrita;
+        return bf != null ? new Font(bf, size, Font.NORMAL) : FontFactory.getFont(FontFactory.HELVETICA_BOLD, size);
+    }
+
+    /**
+     * Copia del logo lista para añadir a un documento, o null si no existe.
+     */
+    public Image logo() {
+        Image template = recursos().logo;
+        if (template == null) return null;
+        try {
+            return Image.getInstance(template);
+        } catch (Exception e) {
+            logger.warn("No se pudo copiar el logo para el PDF: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    BaseFont baseFontNormal() {
+        return recursos().normal;
+    }
+
+    BaseFont baseFontNegrita() {
+        return recursos().negrita;
+    }
+
+    private BaseFont cargarFuente(String[] candidatas) {
+        for (String path : candidatas) {
+            byte[] bytes = leerRecurso(path);
+            if (bytes == null) continue;
+            try {
+                String nombre = path.substring(path.lastIndexOf('/') + 1);
+                BaseFont bf = BaseFont.createFont(nombre, BaseFont.IDENTITY_H, BaseFont.EMBEDDED, false, bytes, null);
+                logger.info("Fuente PDF cargada: {}", path);
+                return bf;
+            } catch (Exception e) {
+                logger.warn("No se pudo cargar la fuente {}: {}", path, e.getMessage());
+            }
+        }
+        logger.warn("No hay fuentes TTF disponibles para PDF, se usará Helvetica");
+        return null;
+    }
+
+    private Image cargarLogo() {
+        byte[] bytes = leerRecurso(LOGO);
+        if (bytes == null) return null;
+        try {
+            Image logo = Image.getInstance(bytes);
+            logo.scaleToFit(LOGO_MAX, LOGO_MAX);
+            return logo;
+        } catch (Exception e) {
+            logger.warn("No se pudo cargar el logo {}: {}", LOGO, e.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] leerRecurso(String path) {
+        try (InputStream is = PdfResourceRegistry.class.getClassLoader().getResourceAsStream(path)) {
+            return is == null ? null : is.readAllBytes();
+        } catch (Exception e) {
+            logger.warn("No se pudo leer el recurso {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+}
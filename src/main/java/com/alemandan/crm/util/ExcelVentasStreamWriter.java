@@ -0,0 +1,146 @@
+package com.alemandan.crm.util;
+
+import com.alemandan.crm.dto.VentaExportada;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+
+/**
+ * Exportación de ventas a Excel en streaming (vista empleado y vista admin).
+ * - SXSSFWorkbook con una ventana de {@link #VENTANA_FILAS} filas: las anteriores se vuelcan a un
+ *   temporal comprimido, así la memoria no depende del número de ventas.
+ * - Anchos de columna fijos (sin autoSizeColumn, que recorre todas las filas).
+ * - Recibe las ventas de una en una (VentaExportada.agrupar sobre VentaRepository.streamLineas*).
+ * - Si se supera el máximo de filas de una hoja se continúa en otra; el total general va al final de la última.
+ * Mismas columnas y formato que los exportes anteriores basados en XSSFWorkbook.
+ */
+public final class ExcelVentasStreamWriter {
+
+    public static final int VENTANA_FILAS = 100;
+
+    // Límite de una celda de texto en Excel
+    private static final int MAX_TEXTO_CELDA = 32_767;
+    // Última fila usable por hoja (se reservan dos para el total)
+    static final int MAX_FILAS_HOJA = SpreadsheetVersion.EXCEL2007.getLastRowIndex() - 2;
+
+    private static final DateTimeFormatter DTF = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+    private static final String[] COLUMNAS_EMPLEADO = {"ID", "Fecha", "Método pago", "Total", "Productos"};
+    private static final int[] ANCHOS_EMPLEADO = {10, 18, 16, 14, 90};
+
+    private static final String[] COLUMNAS_ADMIN = {"ID", "Fecha", "Usuario", "Método pago", "Subtotal", "IVA", "Total", "Productos"};
+    private static final int[] ANCHOS_ADMIN = {10, 18, 28, 16, 14, 12, 14, 90};
+
+    private ExcelVentasStreamWriter() {}
+
+    /**
+     * Escribe el libro en {@code os} (no lo cierra) y devuelve el número de ventas exportadas.
+     *
+     * @param admin true: columnas de administración (usuario, subtotal, IVA); false: vista empleado
+     */
+    public static int escribirVentas(Iterator<VentaExportada> ventas, boolean admin, String nombreHoja, OutputStream os) throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(null, VENTANA_FILAS, true, false);
+        try {
+            Font headerFont = wb.createFont();
+            headerFont.setBold(true);
+            CellStyle headerStyle = wb.createCellStyle();
+            headerStyle.setFont(headerFont);
+
+            String[] columnas = admin ? COLUMNAS_ADMIN : COLUMNAS_EMPLEADO;
+            int[] anchos = admin ? ANCHOS_ADMIN : ANCHOS_EMPLEADO;
+
+            int hojas = 1;
+            Sheet sheet = nuevaHoja(wb, nombreHoja, columnas, anchos, headerStyle);
+            int rowIdx = 1;
+            int exportadas = 0;
+            BigDecimal totalSum = BigDecimal.ZERO;
+
+            while (ventas.hasNext()) {
+                VentaExportada v = ventas.next();
+                if (rowIdx > MAX_FILAS_HOJA) {
+                    sheet = nuevaHoja(wb, nombreHoja + " (" + (++hojas) + ")", columnas, anchos, headerStyle);
+                    rowIdx = 1;
+                }
+                escribirFila(sheet.createRow(rowIdx++), v, admin);
+                totalSum = totalSum.add(v.getTotal());
+                exportadas++;
+            }
+
+            escribirTotal(sheet, rowIdx, admin, totalSum);
+            wb.write(os);
+            return exportadas;
+        } finally {
+            // Borra los temporales de las hojas
+            wb.dispose();
+            wb.close();
+        }
+    }
+
+    private static Sheet nuevaHoja(SXSSFWorkbook wb, String nombre, String[] columnas, int[] anchos, CellStyle headerStyle) {
+        SXSSFSheet sheet = wb.createSheet(nombre);
+        for (int i = 0; i < anchos.length; i++) {
+            sheet.setColumnWidth(i, anchos[i] * 256);
+        }
+        Row header = sheet.createRow(0);
+        for (int i = 0; i < columnas.length; i++) {
+            Cell c = header.createCell(i);
+            c.setCellValue(columnas[i]);
+            c.setCellStyle(headerStyle);
+        }
+        return sheet;
+    }
+
+    private static void escribirFila(Row r, VentaExportada v, boolean admin) {
+        int col = 0;
+        Cell cId = r.createCell(col++);
+        if (v.getId() != null) cId.setCellValue(v.getId());
+        else cId.setCellValue("");
+
+        r.createCell(col++).setCellValue(v.getFecha() == null ? "" : v.getFecha().format(DTF));
+
+        if (admin) {
+            String user = v.getUsuarioNombre() != null ? v.getUsuarioNombre() : (v.getUsuarioEmail() == null ? "" : v.getUsuarioEmail());
+            r.createCell(col++).setCellValue(user);
+        }
+
+        r.createCell(col++).setCellValue(v.getMetodoPago() == null ? "" : v.getMetodoPago());
+
+        if (admin) {
+            r.createCell(col++).setCellValue(v.getSubtotal().doubleValue());
+            r.createCell(col++).setCellValue(v.getIva().doubleValue());
+        }
+        r.createCell(col++).setCellValue(v.getTotal().doubleValue());
+
+        // Productos: nombre (cantidad x precio)[ IVA: x%];
+        StringBuilder sb = new StringBuilder();
+        for (VentaExportada.Linea d : v.getLineas()) {
+            if (sb.length() > MAX_TEXTO_CELDA) break;
+            sb.append(d.getProducto() == null ? "N/A" : d.getProducto()).append(" (").append(d.getCantidad()).append(" x ")
+                    .append(d.getPrecioUnitario().setScale(2, RoundingMode.HALF_UP).toString()).append(")");
+            if (admin && d.getIvaRate().compareTo(BigDecimal.ZERO) > 0) {
+                sb.append(" IVA: ").append(d.getIvaRate().setScale(2, RoundingMode.HALF_UP).toString()).append("%");
+            }
+            sb.append("; ");
+        }
+        r.createCell(col).setCellValue(sb.length() > MAX_TEXTO_CELDA ? sb.substring(0, MAX_TEXTO_CELDA) : sb.toString());
+    }
+
+    private static void escribirTotal(Sheet sheet, int rowIdx, boolean admin, BigDecimal totalSum) {
+        int colTotal = admin ? 6 : 3;
+        Row sumaRow = sheet.createRow(rowIdx + 1);
+        sumaRow.createCell(colTotal - 1).setCellValue("Total ventas:");
+        sumaRow.createCell(colTotal).setCellValue(totalSum.doubleValue());
+    }
+}
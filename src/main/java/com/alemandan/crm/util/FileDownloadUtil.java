@@ -0,0 +1,82 @@
+package com.alemandan.crm.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Descarga de archivos del disco sin cargarlos enteros en memoria.
+ * - enviarArchivo, con el conector NIO de Tomcat (sendfile habilitado por defecto): se delega el envío al
+ *   conector; el kernel copia del page cache al socket (sin pasar por el heap) y el hilo de la petición queda
+ *   libre al volver.
+ * - Sin sendfile, y siempre en enviarCanal, se copia por bloques al stream de la respuesta. transferTo hacia un
+ *   canal que envuelve el OutputStream no es zero-copy: cada bloque pasa por un buffer del heap. La memoria
+ *   usada es la de un bloque, no la del archivo, pero el hilo de la petición queda ocupado hasta terminar.
+ * - enviarCanal: para archivos que pueden borrarse durante el envío (ReportePdfCache). Sendfile vuelve a abrir
+ *   la ruta después de que el servlet retorna y el contenedor no avisa cuando termina, así que la caché no
+ *   sabría cuándo puede borrarlo; un canal ya abierto conserva el contenido aunque se borre la ruta. Se acepta
+ *   la copia: los PDF de reportes pesan poco comparados con las exportaciones que van por enviarArchivo.
+ */
+public final class FileDownloadUtil {
+
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private FileDownloadUtil() {}
+
+    /**
+     * Envía {@code archivo} como adjunto. Debe llamarse antes de escribir nada en la respuesta.
+     */
+    public static void enviarArchivo(HttpServletRequest request, HttpServletResponse response, Path archivo,
+                                     String contentType, String nombreDescarga) throws IOException {
+        long tamano = Files.size(archivo);
+        response.setContentType(contentType);
+        response.setContentLengthLong(tamano);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + nombreDescarga + "\"");
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, archivo.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, tamano);
+            return;
+        }
+
+        try (FileChannel in = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            copiar(in, tamano, response);
+        }
+    }
+
+    /**
+     * Envía como adjunto el contenido de {@code canal}, ya abierto por quien llama (que también lo cierra).
+     * Debe llamarse antes de escribir nada en la respuesta.
+     */
+    public static void enviarCanal(HttpServletResponse response, FileChannel canal,
+                                   String contentType, String nombreDescarga) throws IOException {
+        long tamano = canal.size();
+        response.setContentType(contentType);
+        response.setContentLengthLong(tamano);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + nombreDescarga + "\"");
+        copiar(canal, tamano, response);
+    }
+
+    private static void copiar(FileChannel in, long tamano, HttpServletResponse response) throws IOException {
+        OutputStream os = response.getOutputStream();
+        WritableByteChannel out = Channels.newChannel(os);
+        long enviado = 0;
+        while (enviado < tamano) {
+            enviado += in.transferTo(enviado, tamano - enviado, out);
+        }
+        os.flush();
+    }
+}
@@ -0,0 +1,133 @@
+package com.alemandan.crm.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Caché en memoria acotada con expiración por tiempo (TTL) y desalojo LRU.
+ * - maxEntries: número máximo de entradas; al superarlo se descarta la menos usada recientemente.
+ * - ttlMillis: vida por defecto de cada entrada (se puede indicar otra en put).
+ * - Lleva contadores de aciertos/fallos para exponer métricas.
+ *
+ * Thread-safe mediante sincronización sobre la propia instancia: las operaciones son O(1)
+ * y muy cortas, por lo que no justifica una estructura lock-free.
+ */
+public class TtlCache<K, V> {
+
+    private static final class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LinkedHashMap<K, Entry<V>> map;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public TtlCache(int maxEntries, long ttlMillis) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries debe ser >= 1");
+        if (ttlMillis < 1) throw new IllegalArgumentException("ttlMillis debe ser >= 1");
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        // accessOrder=true -> orden LRU
+        this.map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > TtlCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Devuelve el valor si existe y no ha expirado; null en otro caso.
+     */
+    public synchronized V get(K key) {
+        Entry<V> e = map.get(key);
+        if (e == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (e.expiresAt <= now()) {
+            map.remove(key);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return e.value;
+    }
+
+    public void put(K key, V value) {
+        put(key, value, ttlMillis);
+    }
+
+    /**
+     * Guarda el valor con un TTL específico (en milisegundos).
+     */
+    public synchronized void put(K key, V value, long ttlMillis) {
+        if (key == null || value == null) return;
+        map.put(key, new Entry<>(value, now() + ttlMillis));
+    }
+
+    public synchronized void invalidate(K key) {
+        map.remove(key);
+    }
+
+    /**
+     * Elimina todas las entradas cuya clave cumpla el predicado.
+     */
+    public synchronized void invalidateIf(Predicate<K> predicate) {
+        map.keySet().removeIf(predicate);
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    /**
+     * Elimina las entradas expiradas. Opcional: get() ya las descarta al leerlas.
+     */
+    public synchronized int purgeExpired() {
+        long now = now();
+        int removed = 0;
+        Iterator<Entry<V>> it = map.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expiresAt <= now) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double hitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,28 @@
+-- Migration script for idempotent sale submission (Idempotency-Key header)
+-- This script is compatible with MySQL 5.7+ and MariaDB 10.2+
+-- Apply manually before deploying the new version
+
+-- =============================================================================
+-- 1. Add idempotency key column to venta table
+-- =============================================================================
+
+-- Client-generated key sent by the POS on every (re)try of the same ticket.
+-- NULL for sales registered without the header (classic form flow, older clients).
+ALTER TABLE venta
+  ADD COLUMN idempotency_key VARCHAR(64) NULL AFTER comprador_nombre;
+
+-- Unique index: a retried request can never insert a second row for the same key.
+-- MySQL allows multiple NULL values in a UNIQUE index.
+ALTER TABLE venta
+  ADD CONSTRAINT uk_venta_idempotency_key UNIQUE (idempotency_key);
+
+-- =============================================================================
+-- Migration complete
+-- =============================================================================
+
+-- Verify changes
+SELECT COLUMN_NAME, DATA_TYPE, IS_NULLABLE, COLUMN_KEY
+FROM INFORMATION_SCHEMA.COLUMNS
+WHERE TABLE_SCHEMA = DATABASE()
+  AND TABLE_NAME = 'venta'
+  AND COLUMN_NAME = 'idempotency_key';
@@ -0,0 +1,44 @@
+-- Migration script for the daily sales rollup used by reports
+-- This script is compatible with MySQL 5.7+ and MariaDB 10.2+
+-- Apply manually before deploying the new version
+
+-- =============================================================================
+-- 1. Create venta_resumen_diario table
+-- =============================================================================
+
+-- One row per (day, product, seller, payment method).
+-- usuario_id = 0 for sales without a user, metodo_pago = '' when missing
+-- (NULLs would break the unique key used by the checkout upsert).
+-- monto = SUM(cantidad * precio_unitario) without IVA, iva = SUM(iva_monto).
+-- num_ventas counts each sale once, on the row of its first line.
+CREATE TABLE IF NOT EXISTS venta_resumen_diario (
+  id BIGINT NOT NULL AUTO_INCREMENT,
+  dia DATE NOT NULL,
+  producto_id BIGINT NOT NULL,
+  usuario_id BIGINT NOT NULL DEFAULT 0,
+  metodo_pago VARCHAR(50) NOT NULL DEFAULT '',
+  unidades BIGINT NOT NULL DEFAULT 0,
+  monto DECIMAL(14,2) NOT NULL DEFAULT 0,
+  iva DECIMAL(14,2) NOT NULL DEFAULT 0,
+  num_ventas BIGINT NOT NULL DEFAULT 0,
+  PRIMARY KEY (id),
+  CONSTRAINT uk_resumen_diario UNIQUE (dia, producto_id, usuario_id, metodo_pago),
+  INDEX idx_resumen_diario_dia_usuario (dia, usuario_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- =============================================================================
+-- 2. Backfill historical sales
+-- =============================================================================
+
+-- Reports read only from this table, so it must be filled before switching over.
+-- Run the application once with:
+--   --rebuild-resumen-diario [--desde=YYYY-MM-DD] [--hasta=YYYY-MM-DD]
+-- Prefer doing it outside business hours: a sale committed on a day that is being
+-- rebuilt at the same moment may be counted twice (re-run that day to fix it).
+
+-- =============================================================================
+-- Migration complete
+-- =============================================================================
+
+-- Verify changes
+SELECT COUNT(*) AS filas_resumen FROM venta_resumen_diario;
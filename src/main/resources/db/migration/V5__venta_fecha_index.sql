@@ -0,0 +1,18 @@
+-- Migration script for keyset pagination of the admin sales listing
+-- This script is compatible with MySQL 5.7+ and MariaDB 10.2+
+-- Apply manually before deploying the new version
+
+-- =============================================================================
+-- 1. Index venta by (fecha, id)
+-- =============================================================================
+
+-- /admin/ventas pages with WHERE (fecha, id) < (cursor) ORDER BY fecha DESC, id DESC.
+-- With this index every page reads only its own rows, however deep the cursor is.
+CREATE INDEX idx_venta_fecha_id ON venta (fecha, id);
+
+-- =============================================================================
+-- Migration complete
+-- =============================================================================
+
+-- Verify changes
+SHOW INDEX FROM venta WHERE Key_name = 'idx_venta_fecha_id';
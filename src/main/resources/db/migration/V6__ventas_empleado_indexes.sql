@@ -0,0 +1,26 @@
+-- Migration script for the filtered sales history of an employee (mis-ventas)
+-- This script is compatible with MySQL 5.7+ and MariaDB 10.2+
+-- Apply manually before deploying the new version
+
+-- =============================================================================
+-- 1. Index venta by (usuario_id, fecha)
+-- =============================================================================
+
+-- /ventas/mis-ventas and /ventas/exportar-pdf filter WHERE usuario_id = ? AND fecha in range.
+-- The index reads only the employee's rows in the range instead of the whole history.
+CREATE INDEX idx_venta_usuario_fecha ON venta (usuario_id, fecha);
+
+-- =============================================================================
+-- 2. Index detalle_venta by (producto_id, venta_id)
+-- =============================================================================
+
+-- The product filter is an EXISTS (detalle_venta WHERE venta_id = ? AND producto_id = ?)
+CREATE INDEX idx_detalle_producto_venta ON detalle_venta (producto_id, venta_id);
+
+-- =============================================================================
+-- Migration complete
+-- =============================================================================
+
+-- Verify changes
+SHOW INDEX FROM venta WHERE Key_name = 'idx_venta_usuario_fecha';
+SHOW INDEX FROM detalle_venta WHERE Key_name = 'idx_detalle_producto_venta';
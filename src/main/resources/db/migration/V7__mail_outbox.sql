@@ -0,0 +1,35 @@
+-- Migration script for the persistent mail queue (bulk emails and retries)
+-- This script requires MySQL 8.0+ or MariaDB 10.6+ (the dispatcher uses FOR UPDATE SKIP LOCKED)
+-- Apply manually before deploying the new version
+
+-- =============================================================================
+-- 1. Create mail_outbox table
+-- =============================================================================
+
+-- One row per email. MailOutboxService inserts it and a scheduled dispatcher sends it.
+-- estado: PENDIENTE -> ENVIANDO -> ENVIADO, or back to PENDIENTE with a later
+-- proximo_intento after a failure (exponential backoff), FALLIDO after the last attempt.
+-- While ENVIANDO, proximo_intento is the end of the send lease: rows left behind by a
+-- restart are claimed again once it expires.
+CREATE TABLE IF NOT EXISTS mail_outbox (
+  id BIGINT NOT NULL AUTO_INCREMENT,
+  destinatario VARCHAR(255) NOT NULL,
+  asunto VARCHAR(255) NOT NULL,
+  cuerpo TEXT NOT NULL,
+  html BIT(1) NOT NULL DEFAULT b'0',
+  estado VARCHAR(20) NOT NULL DEFAULT 'PENDIENTE',
+  intentos INT NOT NULL DEFAULT 0,
+  proximo_intento DATETIME(6) NOT NULL,
+  ultimo_error VARCHAR(500) NULL,
+  creado DATETIME(6) NOT NULL,
+  enviado DATETIME(6) NULL,
+  PRIMARY KEY (id),
+  INDEX idx_mail_outbox_estado_proximo (estado, proximo_intento)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- =============================================================================
+-- Migration complete
+-- =============================================================================
+
+-- Verify changes
+SELECT COUNT(*) AS correos_en_cola FROM mail_outbox;
@@ -24,7 +24,75 @@ document.addEventListener('DOMContentLoaded', function() {
     };
     let productosCache = []; // Para búsqueda manual
 
+    // Idempotency-Key del ticket en curso: se reutiliza en cada reintento para que el servidor
+    // no registre la venta dos veces si se pierde la respuesta.
+    let idempotencyKey = null;
+    const MAX_REINTENTOS = 3;
+    const TIMEOUT_REGISTRO_MS = 8000;
+
+    function nuevaIdempotencyKey() {
+        if (window.crypto && typeof window.crypto.randomUUID === 'function') {
+            return window.crypto.randomUUID();
+        }
+        // Fallback para navegadores sin randomUUID
+        return Date.now().toString(36) + '-' + Math.random().toString(36).slice(2) + '-' + Math.random().toString(36).slice(2);
+    }
+
+    // Reintenta sólo fallos de red/timeout o 5xx; con la misma clave el servidor devuelve la venta original.
+    function registrarConReintentos(payload, intento) {
+        return axios.post('/ventas/api/ventas/registrar', payload, {
+            headers: { 'Idempotency-Key': idempotencyKey },
+            timeout: TIMEOUT_REGISTRO_MS
+        }).catch(err => {
+            const status = err.response ? err.response.status : 0;
+            const reintentable = !err.response || status >= 500;
+            if (reintentable && intento < MAX_REINTENTOS) {
+                const espera = 300 * Math.pow(2, intento);
+                return new Promise(resolve => setTimeout(resolve, espera))
+                    .then(() => registrarConReintentos(payload, intento + 1));
+            }
+            throw err;
+        });
+    }
+
+    // Descarga el recibo PDF. El servidor responde 202 mientras lo genera: se reintenta según Retry-After.
+    const MAX_SONDEOS_RECIBO = 10;
+    function abrirRecibo(url, ventaIdNum, intento) {
+        axios.get(url, { params: { espera: 10 }, responseType: 'blob', timeout: 30000 })
+            .then(res => {
+                if (res.status === 202) {
+                    if (intento < MAX_SONDEOS_RECIBO) {
+                        const retryAfter = parseInt(res.headers['retry-after'], 10);
+                        const espera = (isNaN(retryAfter) ? 1 : retryAfter) * 1000;
+                        setTimeout(() => abrirRecibo(url, ventaIdNum, intento + 1), espera);
+                    } else {
+                        console.warn("El recibo no estuvo listo a tiempo:", url);
+                    }
+                    return;
+                }
+                const blobUrl = URL.createObjectURL(res.data);
+                const downloadLink = document.createElement("a");
+                downloadLink.href = blobUrl;
+                const ventaId = ventaIdNum ? ventaIdNum.toString().padStart(4, "0") : "recibo";
+                downloadLink.download = "recibo_venta_" + ventaId + ".pdf";
+                downloadLink.target = "_blank";
+                document.body.appendChild(downloadLink);
+                downloadLink.click();
+                document.body.removeChild(downloadLink);
+                setTimeout(() => URL.revokeObjectURL(blobUrl), 60000);
+            })
+            .catch(err => {
+                const status = err.response ? err.response.status : 0;
+                if ((status === 0 || status === 503) && intento < MAX_SONDEOS_RECIBO) {
+                    setTimeout(() => abrirRecibo(url, ventaIdNum, intento + 1), 2000);
+                } else {
+                    console.warn("No se pudo abrir el recibo en PDF automáticamente:", err);
+                }
+            });
+    }
+
     function resetVenta() {
+        idempotencyKey = null;
         venta = {
             productos: [],
             metodoPago: null
@@ -135,7 +203,7 @@ document.addEventListener('DOMContentLoaded', function() {
 
     // Buscar manualmente (mostrar todos los productos)
     btnBuscarManual.addEventListener('click', function() {
-        axios.get(`/api/productos/buscar?term=`)
+        axios.get(`/api/productos/buscar?term=&limit=200`)
             .then(res => {
                 productosCache = res.data;
                 if (!Array.isArray(productosCache) || productosCache.length === 0) {
@@ -237,7 +305,7 @@ document.addEventListener('DOMContentLoaded', function() {
         });
     });
 
-    // Finalizar compra AJAX (ahora abre recibo PDF si backend lo devuelve en base64)
+    // Finalizar compra AJAX (el recibo PDF se descarga desde receiptUrl cuando el servidor lo tenga listo)
     btnFinalizarCompra.addEventListener('click', function() {
         btnFinalizarCompra.disabled = true;
         btnFinalizarCompra.classList.remove('enabled');
@@ -260,25 +328,14 @@ document.addEventListener('DOMContentLoaded', function() {
         };
         console.log("Enviando venta:", ventaPayload);
 
-        axios.post('/ventas/api/ventas/registrar', ventaPayload)
+        if (!idempotencyKey) idempotencyKey = nuevaIdempotencyKey();
+
+        registrarConReintentos(ventaPayload, 0)
             .then(res => {
                 if (res.data.success) {
-                    // Si el backend devolvió el PDF en base64, abrir en nueva pestaña
-                    if (res.data.receiptBase64) {
-                        try {
-                            const pdfBase64 = res.data.receiptBase64;
-                            const linkSource = "data:application/pdf;base64," + pdfBase64;
-                            const downloadLink = document.createElement("a");
-                            downloadLink.href = linkSource;
-                            const ventaId = res.data.ventaId ? res.data.ventaId.toString().padStart(4, "0") : "recibo";
-                            downloadLink.download = "recibo_venta_" + ventaId + ".pdf";
-                            downloadLink.target = "_blank";
-                            document.body.appendChild(downloadLink);
-                            downloadLink.click();
-                            document.body.removeChild(downloadLink);
-                        } catch (err) {
-                            console.warn("No se pudo abrir el recibo en PDF automáticamente:", err);
-                        }
+                    // El recibo se genera en segundo plano: se descarga desde receiptUrl cuando esté listo
+                    if (res.data.receiptUrl) {
+                        abrirRecibo(res.data.receiptUrl, res.data.ventaId, 0);
                     }
 
                     ventaExitosa.textContent = "¡Venta realizada exitosamente!";
@@ -298,6 +355,9 @@ document.addEventListener('DOMContentLoaded', function() {
                         pagoBtns.forEach(btn => btn.disabled = true);
                     }, 2500);
                 } else {
+                    // Rechazo definitivo (stock, datos inválidos): la venta no se registró. Clave nueva para que
+                    // el reenvío corregido se procese y no devuelva este mismo error
+                    idempotencyKey = null;
                     ventaError.textContent = res.data.error || "Error inesperado";
                     ventaError.style.display = "";
                     btnFinalizarCompra.disabled = false;
@@ -305,6 +365,10 @@ document.addEventListener('DOMContentLoaded', function() {
                 }
             })
             .catch(err => {
+                // 4xx: el servidor rechazó la petición, clave nueva. Sin respuesta o 5xx tras los reintentos
+                // no se sabe si se registró: se conserva la clave para que reenviar devuelva la misma venta
+                const status = err.response ? err.response.status : 0;
+                if (status >= 400 && status < 500) idempotencyKey = null;
                 ventaError.textContent = err.response?.data?.error || "Error de comunicación";
                 ventaError.style.display = "";
                 btnFinalizarCompra.disabled = false;
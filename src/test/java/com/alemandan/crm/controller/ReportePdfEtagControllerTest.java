@@ -0,0 +1,140 @@
+package com.alemandan.crm.controller;
+
+import com.alemandan.crm.repository.ProductoRepository;
+import com.alemandan.crm.repository.VentaRepository;
+import com.alemandan.crm.service.ReportService;
+import com.alemandan.crm.service.ReportePdfCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Tests for the ETag / 304 path of the cached PDF exports (ReportController, AdminVentaController)
+ */
+class ReportePdfEtagControllerTest {
+
+    private static final String REPORTE = "/ventas/reporte/pdf?from=2025-02-01&to=2025-02-28&includeAnalysis=false";
+    private static final String RESUMEN = "/admin/ventas/exportar-pdf?fechaInicio=2025-02-01&fechaFin=2025-02-28";
+
+    @Mock
+    private ReportService reportService;
+
+    @Mock
+    private VentaRepository ventaRepository;
+
+    @Mock
+    private ProductoRepository productoRepository;
+
+    @TempDir
+    Path uploads;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+
+        ReportePdfCache cache = new ReportePdfCache();
+        ReflectionTestUtils.setField(cache, "ventaRepository", ventaRepository);
+        ReflectionTestUtils.setField(cache, "productoRepository", productoRepository);
+        ReflectionTestUtils.setField(cache, "uploadsDir", uploads.toString());
+        ReflectionTestUtils.invokeMethod(cache, "init");
+
+        ReportController reportController = new ReportController();
+        ReflectionTestUtils.setField(reportController, "reportService", reportService);
+        ReflectionTestUtils.setField(reportController, "reportePdfCache", cache);
+
+        AdminVentaController adminVentaController = new AdminVentaController();
+        ReflectionTestUtils.setField(adminVentaController, "reportService", reportService);
+        ReflectionTestUtils.setField(adminVentaController, "reportePdfCache", cache);
+
+        mockMvc = MockMvcBuilders.standaloneSetup(reportController, adminVentaController).build();
+
+        when(ventaRepository.versionEntre(any(), any())).thenReturn(version(10L, 100L));
+        doAnswer(inv -> escribir(inv.getArgument(4))).when(reportService)
+                .generarReporteVentasPdf(any(), any(), any(), anyBoolean(), any(OutputStream.class));
+        doAnswer(inv -> escribir(inv.getArgument(5))).when(reportService)
+                .generarResumenVentasPdf(any(), any(), any(), any(), any(), any(OutputStream.class));
+    }
+
+    @Test
+    void testReportePdf_MatchingEtagReturns304WithoutRendering() throws Exception {
+        String etag = descargar(REPORTE);
+
+        mockMvc.perform(get(REPORTE).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().bytes(new byte[0]));
+
+        verify(reportService, times(1)).generarReporteVentasPdf(any(), any(), any(), anyBoolean(), any(OutputStream.class));
+    }
+
+    @Test
+    void testReportePdf_NewSaleInvalidatesEtag() throws Exception {
+        String etag = descargar(REPORTE);
+        when(ventaRepository.versionEntre(any(), any())).thenReturn(version(11L, 101L));
+
+        MvcResult result = mockMvc.perform(get(REPORTE).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertNotEquals(etag, result.getResponse().getHeader(HttpHeaders.ETAG));
+        verify(reportService, times(2)).generarReporteVentasPdf(any(), any(), any(), anyBoolean(), any(OutputStream.class));
+    }
+
+    @Test
+    void testResumenAdminPdf_MatchingEtagReturns304WithoutRendering() throws Exception {
+        String etag = descargar(RESUMEN);
+
+        mockMvc.perform(get(RESUMEN).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+
+        verify(reportService, times(1)).generarResumenVentasPdf(any(), any(), any(), any(), any(), any(OutputStream.class));
+    }
+
+    // Helper methods
+
+    private String descargar(String url) throws Exception {
+        MvcResult result = mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "private, no-cache"))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(content().contentType("application/pdf"))
+                .andExpect(content().bytes("%PDF-prueba".getBytes(StandardCharsets.ISO_8859_1)))
+                .andReturn();
+        String etag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag, "The PDF must be sent with an ETag");
+        return etag;
+    }
+
+    private static Object escribir(OutputStream out) throws Exception {
+        out.write("%PDF-prueba".getBytes(StandardCharsets.ISO_8859_1));
+        return null;
+    }
+
+    private static List<Object[]> version(Long cantidad, Long maxId) {
+        List<Object[]> filas = new ArrayList<>();
+        filas.add(new Object[]{cantidad, maxId});
+        return filas;
+    }
+}
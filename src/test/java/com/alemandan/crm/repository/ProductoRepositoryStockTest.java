@@ -0,0 +1,111 @@
+package com.alemandan.crm.repository;
+
+import com.alemandan.crm.model.Producto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Concurrency tests for ProductoRepository.descontarStock against a real database
+ *
+ * Sin transacción en el test (NOT_SUPPORTED): cada caja descuenta en su propia transacción,
+ * como procesarYGuardarVenta, y el stock inicial está confirmado antes de empezar.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:stock_concurrente;MODE=MySQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProductoRepositoryStockTest {
+
+    private static final int UNIDADES = 5;
+    private static final int CAJAS = 32;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Long productoId;
+
+    @BeforeEach
+    void setUp() {
+        Producto p = new Producto();
+        p.setNombre("Última unidad");
+        p.setCantidad(UNIDADES);
+        p.setPrecio(1000.0);
+        p.setActivo(true);
+        productoId = productoRepository.save(p).getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        productoRepository.deleteAll();
+    }
+
+    /**
+     * N cajas venden a la vez las últimas unidades del mismo producto:
+     * sólo se completan tantas ventas como unidades había y el stock nunca queda negativo.
+     */
+    @Test
+    void testDescontarStock_ConcurrentSalesNeverOversell() throws Exception {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger vendidas = new AtomicInteger();
+        AtomicInteger rechazadas = new AtomicInteger();
+        List<Future<?>> cajas = new ArrayList<>();
+        try {
+            for (int i = 0; i < CAJAS; i++) {
+                cajas.add(pool.submit(() -> {
+                    start.await();
+                    Integer filas = tx.execute(status -> productoRepository.descontarStock(productoId, 1));
+                    (filas != null && filas == 1 ? vendidas : rechazadas).incrementAndGet();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> caja : cajas) caja.get(30, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(UNIDADES, vendidas.get());
+        assertEquals(CAJAS - UNIDADES, rechazadas.get());
+        assertEquals(0, productoRepository.stockActual(productoId), "Stock must end at zero, never negative");
+    }
+
+    @Test
+    void testDescontarStock_InsufficientStockLeavesRowUnchanged() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+
+        Integer filas = tx.execute(status -> productoRepository.descontarStock(productoId, UNIDADES + 1));
+
+        assertEquals(0, filas);
+        assertEquals(UNIDADES, productoRepository.stockActual(productoId));
+    }
+}
@@ -0,0 +1,169 @@
+package com.alemandan.crm.repository;
+
+import com.alemandan.crm.model.Categoria;
+import com.alemandan.crm.model.DetalleVenta;
+import com.alemandan.crm.model.Producto;
+import com.alemandan.crm.model.Usuario;
+import com.alemandan.crm.model.Venta;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Regression tests for the number of SQL statements needed to render sales history views
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:ventas_n1;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class VentaRepositoryQueryCountTest {
+
+    private static final int VENTAS = 500;
+    private static final int LINEAS_POR_VENTA = 3;
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private VentaRepository ventaRepository;
+
+    private Usuario empleado;
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        Categoria categoria = new Categoria();
+        categoria.setNombre("Bebidas");
+        em.persist(categoria);
+
+        empleado = new Usuario();
+        empleado.setNombre("Empleado");
+        empleado.setEmail("empleado@crm.com");
+        empleado.setPassword("secreto");
+        empleado.setRol("EMPLEADO");
+        em.persist(empleado);
+
+        List<Producto> productos = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Producto p = new Producto();
+            p.setNombre("Producto " + i);
+            p.setCantidad(1000);
+            p.setPrecio(1000.0);
+            p.setActivo(true);
+            p.setCategoria(categoria);
+            productos.add(em.persist(p));
+        }
+
+        LocalDateTime fecha = LocalDateTime.of(2025, 1, 1, 8, 0);
+        for (int i = 0; i < VENTAS; i++) {
+            Venta v = new Venta();
+            v.setFecha(fecha.plusMinutes(i * 30L));
+            v.setUsuario(empleado);
+            v.setMetodoPago(i % 2 == 0 ? "EFECTIVO" : "TARJETA");
+            v.setTotal(new BigDecimal("3000.00"));
+            for (int j = 0; j < LINEAS_POR_VENTA; j++) {
+                DetalleVenta d = new DetalleVenta();
+                d.setVenta(v);
+                d.setProducto(productos.get((i + j) % productos.size()));
+                d.setCantidad(1);
+                d.setPrecioUnitario(new BigDecimal("1000.00"));
+                v.getDetalles().add(d);
+            }
+            em.persist(v);
+        }
+        em.flush();
+        em.clear();
+
+        statistics = em.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void testHistorialEmpleado_500SalesInASingleQuery() {
+        List<Venta> ventas = ventaRepository.findConDetallesByUsuarioId(empleado.getId());
+
+        assertEquals(VENTAS * LINEAS_POR_VENTA, recorrerComoLaVista(ventas));
+        assertEquals(VENTAS, ventas.size(), "Fetching the collection must not duplicate sales");
+        assertTrue(statistics.getPrepareStatementCount() <= 2,
+                "Rendering 500 sales took " + statistics.getPrepareStatementCount() + " statements");
+    }
+
+    @Test
+    void testFiltrarAdmin_500SalesInASingleQuery() {
+        List<Venta> ventas = ventaRepository.filtrarAdmin(null, null, empleado.getId(), null, null);
+
+        assertEquals(VENTAS * LINEAS_POR_VENTA, recorrerComoLaVista(ventas));
+        assertTrue(statistics.getPrepareStatementCount() <= 2,
+                "Rendering 500 sales took " + statistics.getPrepareStatementCount() + " statements");
+    }
+
+    @Test
+    void testPlainFinder_BatchFetchKeepsQueriesBounded() {
+        List<Venta> ventas = ventaRepository.findByUsuarioId(empleado.getId());
+
+        assertEquals(VENTAS * LINEAS_POR_VENTA, recorrerComoLaVista(ventas));
+        // 1 ventas + 10 lotes de detalles (50 por lote) + usuario/productos/categoría por lotes
+        assertTrue(statistics.getPrepareStatementCount() <= 20,
+                "Without an entity graph, batch fetching must still avoid one query per sale; took "
+                        + statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void testFiltrarEmpleado_FiltersInDatabaseWithPagedIds() {
+        LocalDateTime desde = LocalDateTime.of(2025, 1, 2, 0, 0);
+        LocalDateTime hasta = LocalDateTime.of(2025, 1, 3, 0, 0);
+
+        // 48 ventas el 2 de enero (una cada 30 min); la mitad con tarjeta
+        List<Venta> filtradas = ventaRepository.filtrarEmpleado(empleado.getId(), desde, hasta, null, "tarjeta");
+        assertEquals(24, filtradas.size());
+        assertTrue(filtradas.get(0).getFecha().isAfter(filtradas.get(23).getFecha()), "Newest first");
+
+        Page<Long> ids = ventaRepository.idsFiltrarEmpleado(empleado.getId(), desde, hasta, null, null, PageRequest.of(1, 20));
+        assertEquals(48, ids.getTotalElements());
+        assertEquals(20, ids.getContent().size());
+
+        List<Venta> conProducto = ventaRepository.filtrarEmpleado(empleado.getId(), null, null,
+                filtradas.get(0).getDetalles().get(0).getProducto().getId(), null);
+        assertEquals(VENTAS * LINEAS_POR_VENTA / 20, conProducto.size());
+        assertTrue(statistics.getPrepareStatementCount() <= 5,
+                "Each call is a single query, took " + statistics.getPrepareStatementCount());
+    }
+
+    // Helper methods
+
+    /**
+     * Accede a lo mismo que misventas.html / adminventas.html / generarMisVentasPdfFromList.
+     */
+    private int recorrerComoLaVista(List<Venta> ventas) {
+        int lineas = 0;
+        for (Venta v : ventas) {
+            assertNotNull(v.getUsuario().getNombre());
+            for (DetalleVenta d : v.getDetalles()) {
+                assertNotNull(d.getProducto().getNombre());
+                assertNotNull(d.getProducto().getCategoria().getNombre());
+                lineas++;
+            }
+        }
+        return lineas;
+    }
+}
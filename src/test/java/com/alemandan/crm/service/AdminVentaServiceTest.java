@@ -0,0 +1,134 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.dto.VentaFilaAdmin;
+import com.alemandan.crm.dto.VentasPagina;
+import com.alemandan.crm.repository.VentaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Pageable;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for AdminVentaService
+ */
+class AdminVentaServiceTest {
+
+    @Mock
+    private VentaRepository ventaRepository;
+
+    @InjectMocks
+    private AdminVentaService adminVentaService;
+
+    private final LocalDateTime base = LocalDateTime.of(2025, 3, 10, 12, 0);
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testPaginarVentas_FetchesOneExtraRowToDetectNextPage() {
+        when(ventaRepository.paginaAdmin(any(), any(), any(), any(), any(), any(), any(), any(Pageable.class)))
+                .thenReturn(filas(3));
+
+        VentasPagina pagina = adminVentaService.paginarVentas(null, null, null, null, null, null, null, 2);
+
+        ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+        verify(ventaRepository).paginaAdmin(isNull(), isNull(), isNull(), isNull(), isNull(), isNull(), isNull(), pageable.capture());
+        assertEquals(3, pageable.getValue().getPageSize());
+        assertEquals(0, pageable.getValue().getPageNumber());
+
+        assertEquals(2, pagina.getFilas().size());
+        assertTrue(pagina.isHaySiguiente());
+        assertEquals(2L, pagina.getSiguienteId());
+        assertEquals(pagina.getFilas().get(1).getFecha(), pagina.getSiguienteFecha());
+    }
+
+    @Test
+    void testPaginarVentas_LastPageHasNoCursor() {
+        when(ventaRepository.paginaAdmin(any(), any(), any(), any(), any(), any(), any(), any(Pageable.class)))
+                .thenReturn(filas(1));
+
+        VentasPagina pagina = adminVentaService.paginarVentas("2025-03-01", "2025-03-31", 7L, null, "EFECTIVO",
+                base, 99L, 2);
+
+        verify(ventaRepository).paginaAdmin(eq(LocalDateTime.of(2025, 3, 1, 0, 0)), eq(LocalDateTime.of(2025, 3, 31, 23, 59, 59)),
+                eq(7L), isNull(), eq("EFECTIVO"), eq(base), eq(99L), any(Pageable.class));
+        assertFalse(pagina.isHaySiguiente());
+        assertNull(pagina.getSiguienteFecha());
+        assertNull(pagina.getSiguienteId());
+    }
+
+    @Test
+    void testPaginarVentas_ClampsPageSizeAndIgnoresHalfCursor() {
+        when(ventaRepository.paginaAdmin(any(), any(), any(), any(), any(), any(), any(), any(Pageable.class)))
+                .thenReturn(new ArrayList<>());
+
+        adminVentaService.paginarVentas(null, null, null, null, null, base, null, 10_000);
+        adminVentaService.paginarVentas(null, null, null, null, null, null, null, null);
+
+        ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+        verify(ventaRepository, times(2)).paginaAdmin(any(), any(), any(), any(), any(), isNull(), isNull(), pageable.capture());
+        assertEquals(AdminVentaService.TAMANO_PAGINA_MAXIMO + 1, pageable.getAllValues().get(0).getPageSize());
+        assertEquals(AdminVentaService.TAMANO_PAGINA_POR_DEFECTO + 1, pageable.getAllValues().get(1).getPageSize());
+        verify(ventaRepository, never()).lineasDeVentas(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPaginarVentas_LoadsLinesOfThePageWithOneQuery() {
+        when(ventaRepository.paginaAdmin(any(), any(), any(), any(), any(), any(), any(), any(Pageable.class)))
+                .thenReturn(filas(3));
+        List<Object[]> lineas = new ArrayList<>();
+        lineas.add(new Object[]{1L, "Café", 2, new BigDecimal("5000.00")});
+        lineas.add(new Object[]{1L, null, 1, new BigDecimal("1000.00")});
+        lineas.add(new Object[]{2L, "Azúcar", 3, new BigDecimal("2500.00")});
+        when(ventaRepository.lineasDeVentas(any())).thenReturn(lineas);
+
+        VentasPagina pagina = adminVentaService.paginarVentas(null, null, null, null, null, null, null, 2);
+
+        ArgumentCaptor<Collection<Long>> ids = ArgumentCaptor.forClass(Collection.class);
+        verify(ventaRepository, times(1)).lineasDeVentas(ids.capture());
+        assertEquals(List.of(1L, 2L), new ArrayList<>(ids.getValue()), "Only the rows of the page, not the look-ahead row");
+        assertEquals(List.of("Café ( 2 x 5000.00 )", "Producto eliminado ( 1 x 1000.00 )"), pagina.getFilas().get(0).getProductos());
+        assertEquals(List.of("Azúcar ( 3 x 2500.00 )"), pagina.getFilas().get(1).getProductos());
+    }
+
+    @Test
+    void testTotalesPorEmpleado_MergesNullNames() {
+        List<Object[]> totales = new ArrayList<>();
+        totales.add(new Object[]{"Ana", new BigDecimal("100.00")});
+        totales.add(new Object[]{null, new BigDecimal("20.00")});
+        totales.add(new Object[]{null, null});
+        when(ventaRepository.totalesPorEmpleadoAdmin(any(), any(), any(), any(), any())).thenReturn(totales);
+
+        Map<String, BigDecimal> resultado = adminVentaService.totalesPorEmpleado(null, null, null, null, null);
+
+        assertEquals(new BigDecimal("100.00"), resultado.get("Ana"));
+        assertEquals(new BigDecimal("20.00"), resultado.get("Sin nombre"));
+    }
+
+    // Helper methods
+
+    private List<VentaFilaAdmin> filas(int n) {
+        List<VentaFilaAdmin> filas = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            filas.add(new VentaFilaAdmin((long) i, base.minusMinutes(i), "Empleado " + i, "EFECTIVO", new BigDecimal("1000.00")));
+        }
+        return filas;
+    }
+}
@@ -0,0 +1,270 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.events.VentaRegistradaEvent;
+import com.alemandan.crm.repository.ProductoRepository;
+import com.alemandan.crm.repository.ProveedorRepository;
+import com.alemandan.crm.repository.UsuarioRepository;
+import com.alemandan.crm.repository.VentaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for DashboardCounters
+ */
+class DashboardCountersTest {
+
+    private static final ZoneId ZONA = ZoneId.of("America/Bogota");
+    private static final LocalDate HOY = LocalDate.of(2025, 3, 10);
+
+    @Mock
+    private VentaRepository ventaRepository;
+
+    @Mock
+    private UsuarioRepository usuarioRepository;
+
+    @Mock
+    private ProveedorRepository proveedorRepository;
+
+    @Mock
+    private ProductoRepository productoRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private DashboardCounters counters;
+
+    private final RelojManual reloj = new RelojManual(HOY.atTime(9, 0));
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(counters, "clock", reloj);
+        ReflectionTestUtils.invokeMethod(counters, "init");
+        // BD: 10 ventas (id <= 10) por 1000.50; empleado 7 tiene 6 (2 hoy), empleado 8 tiene 4 (1 hoy)
+        when(ventaRepository.maxId()).thenReturn(10L);
+        when(ventaRepository.resumenGlobalHasta(10L)).thenReturn(filas(new Object[]{10L, new BigDecimal("1000.50")}));
+        when(ventaRepository.conteoPorEmpleadoHasta(10L)).thenReturn(filas(new Object[]{7L, 6L}, new Object[]{8L, 4L}));
+        when(ventaRepository.conteoPorEmpleadoEntreHasta(HOY.atStartOfDay(), HOY.plusDays(1).atStartOfDay(), 10L))
+                .thenReturn(filas(new Object[]{7L, 2L}, new Object[]{8L, 1L}));
+        when(usuarioRepository.countByRolAndActivoTrue("EMPLEADO")).thenReturn(3L);
+        when(proveedorRepository.count()).thenReturn(5L);
+        when(productoRepository.count()).thenReturn(40L);
+    }
+
+    @Test
+    void testSeededFromDatabaseThenServedFromMemory() {
+        assertEquals(3, counters.ventasDelDia());
+        assertEquals(2, counters.ventasDelDiaEmpleado(7L));
+        assertEquals(4, counters.ventasTotalesEmpleado(8L));
+        assertEquals(0, counters.ventasTotalesEmpleado(99L));
+        assertEquals(10, counters.totalVentas());
+        assertEquals(new BigDecimal("1000.50"), counters.montoTotal());
+
+        counters.registrarVenta(venta(11L, 7L, HOY.atTime(10, 0), "250.25"));
+
+        assertEquals(4, counters.ventasDelDia());
+        assertEquals(3, counters.ventasDelDiaEmpleado(7L));
+        assertEquals(7, counters.ventasTotalesEmpleado(7L));
+        assertEquals(11, counters.totalVentas());
+        assertEquals(new BigDecimal("1250.75"), counters.montoTotal());
+        verify(ventaRepository, times(1)).maxId();
+        verify(ventaRepository, times(1)).resumenGlobalHasta(anyLong());
+    }
+
+    @Test
+    void testDayCountersRollOverAtMidnight() {
+        counters.totalVentas(); // carga inicial
+        counters.registrarVenta(venta(11L, 7L, HOY.atTime(23, 59), "10.00"));
+        assertEquals(4, counters.ventasDelDia());
+
+        reloj.ahora = HOY.plusDays(1).atTime(0, 0, 1);
+        // Venta de ayer confirmada después de medianoche: sólo cuenta en los totales
+        counters.registrarVenta(venta(12L, 7L, HOY.atTime(23, 59, 59), "10.00"));
+        assertEquals(0, counters.ventasDelDia());
+        assertEquals(0, counters.ventasDelDiaEmpleado(7L));
+        assertEquals(8, counters.ventasTotalesEmpleado(7L));
+
+        counters.registrarVenta(venta(13L, 8L, HOY.plusDays(1).atTime(8, 0), "10.00"));
+        assertEquals(1, counters.ventasDelDia());
+        assertEquals(1, counters.ventasDelDiaEmpleado(8L));
+        assertEquals(13, counters.totalVentas());
+    }
+
+    @Test
+    void testReconcileCountsSalesCommittedDuringReloadOnce() {
+        counters.totalVentas(); // carga inicial
+
+        // Segunda carga: la BD ya tiene 12 ventas (una hecha fuera de la aplicación)
+        when(ventaRepository.maxId()).thenAnswer(inv -> {
+            // Venta confirmada antes de leer MAX(id): está en la BD y llega su evento
+            counters.registrarVenta(venta(12L, 7L, HOY.atTime(11, 0), "100.00"));
+            return 12L;
+        });
+        when(ventaRepository.resumenGlobalHasta(12L)).thenAnswer(inv -> {
+            // Venta confirmada mientras se consulta: id > 12, sólo se conoce por el evento
+            counters.registrarVenta(venta(13L, 8L, HOY.atTime(11, 1), "50.00"));
+            return filas(new Object[]{12L, new BigDecimal("1200.50")});
+        });
+        when(ventaRepository.conteoPorEmpleadoHasta(12L)).thenReturn(filas(new Object[]{7L, 8L}, new Object[]{8L, 4L}));
+        when(ventaRepository.conteoPorEmpleadoEntreHasta(any(), any(), eq(12L)))
+                .thenReturn(filas(new Object[]{7L, 4L}, new Object[]{8L, 1L}));
+        when(ventaRepository.idsExistentes(List.of(12L))).thenReturn(List.of(12L));
+
+        counters.reconciliar();
+
+        assertEquals(13, counters.totalVentas());
+        assertEquals(new BigDecimal("1250.50"), counters.montoTotal());
+        assertEquals(8, counters.ventasTotalesEmpleado(7L));
+        assertEquals(5, counters.ventasTotalesEmpleado(8L));
+        assertEquals(6, counters.ventasDelDia());
+    }
+
+    /**
+     * La venta 11 tenía id asignado pero no estaba confirmada al leer MAX(id) = 12: la carga no la ve
+     * y su evento (id <= 12) llega durante la reconciliación. Debe contarse por el evento.
+     */
+    @Test
+    void testReconcileCountsSaleUncommittedWhenMaxIdWasRead() {
+        counters.totalVentas(); // carga inicial
+        clearInvocations(transactionManager);
+
+        when(ventaRepository.maxId()).thenAnswer(inv -> {
+            counters.registrarVenta(venta(12L, 7L, HOY.atTime(11, 0), "100.00"));
+            return 12L;
+        });
+        // Instantánea: las 10 anteriores y la 12 (la 11 todavía sin confirmar)
+        when(ventaRepository.resumenGlobalHasta(12L)).thenReturn(filas(new Object[]{11L, new BigDecimal("1100.50")}));
+        when(ventaRepository.conteoPorEmpleadoHasta(12L)).thenReturn(filas(new Object[]{7L, 7L}, new Object[]{8L, 4L}));
+        when(ventaRepository.conteoPorEmpleadoEntreHasta(any(), any(), eq(12L))).thenAnswer(inv -> {
+            counters.registrarVenta(venta(11L, 8L, HOY.atTime(10, 59), "40.00"));
+            return filas(new Object[]{7L, 3L}, new Object[]{8L, 1L});
+        });
+        when(ventaRepository.idsExistentes(any())).thenAnswer(inv -> {
+            List<Long> vistas = new ArrayList<>(inv.<Collection<Long>>getArgument(0));
+            vistas.remove(11L);
+            return vistas;
+        });
+
+        counters.reconciliar();
+
+        assertEquals(12, counters.totalVentas());
+        assertEquals(new BigDecimal("1140.50"), counters.montoTotal());
+        assertEquals(7, counters.ventasTotalesEmpleado(7L));
+        assertEquals(5, counters.ventasTotalesEmpleado(8L));
+        assertEquals(5, counters.ventasDelDia());
+        // Todas las consultas de carga en una misma instantánea
+        verify(transactionManager).getTransaction(argThat(def -> def.isReadOnly()
+                && def.getIsolationLevel() == TransactionDefinition.ISOLATION_REPEATABLE_READ));
+    }
+
+    @Test
+    void testConcurrentSalesAreNotLost() throws Exception {
+        counters.totalVentas(); // carga inicial
+        int hilos = 8;
+        int ventasPorHilo = 10_000;
+        AtomicLong ids = new AtomicLong(100);
+        ExecutorService pool = Executors.newFixedThreadPool(hilos);
+        CountDownLatch inicio = new CountDownLatch(1);
+        try {
+            for (int h = 0; h < hilos; h++) {
+                long usuarioId = 7L + (h % 2);
+                pool.submit(() -> {
+                    inicio.await();
+                    for (int i = 0; i < ventasPorHilo; i++) {
+                        counters.registrarVenta(venta(ids.incrementAndGet(), usuarioId, HOY.atTime(12, 0), "1.00"));
+                    }
+                    return null;
+                });
+            }
+            inicio.countDown();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long nuevas = (long) hilos * ventasPorHilo;
+        assertEquals(10 + nuevas, counters.totalVentas());
+        assertEquals(3 + nuevas, counters.ventasDelDia());
+        assertEquals(2 + nuevas / 2, counters.ventasDelDiaEmpleado(7L));
+        assertEquals(new BigDecimal("1000.50").add(BigDecimal.valueOf(nuevas)).setScale(2), counters.montoTotal());
+    }
+
+    @Test
+    void testCatalogCountsCachedUntilInvalidated() {
+        assertEquals(3, counters.empleados());
+        assertEquals(5, counters.proveedores());
+        assertEquals(40, counters.productos());
+        verify(productoRepository, times(1)).count();
+
+        when(productoRepository.count()).thenReturn(41L);
+        counters.invalidarCatalogo();
+        assertEquals(41, counters.productos());
+        assertEquals(41, counters.productos());
+        verify(productoRepository, times(2)).count();
+    }
+
+    // Helper methods
+
+    private static List<Object[]> filas(Object[]... filas) {
+        List<Object[]> lista = new ArrayList<>();
+        for (Object[] f : filas) lista.add(f);
+        return lista;
+    }
+
+    private static VentaRegistradaEvent venta(Long id, Long usuarioId, LocalDateTime fecha, String total) {
+        return new VentaRegistradaEvent(id, usuarioId, fecha, new BigDecimal(total));
+    }
+
+    private static class RelojManual extends Clock {
+        volatile LocalDateTime ahora;
+
+        RelojManual(LocalDateTime ahora) {
+            this.ahora = ahora;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZONA;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return ahora.atZone(ZONA).toInstant();
+        }
+    }
+}
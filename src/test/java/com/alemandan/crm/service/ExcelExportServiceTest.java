@@ -0,0 +1,178 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.repository.VentaRepository;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.util.DefaultTempFileCreationStrategy;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.util.TempFileCreationStrategy;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ExcelExportService
+ */
+class ExcelExportServiceTest {
+
+    @Mock
+    private VentaRepository ventaRepository;
+
+    @InjectMocks
+    private ExcelExportService excelExportService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testExportarVentasAdmin_GroupsLinesPerSaleAndWritesTotal() throws Exception {
+        List<Object[]> lineas = new ArrayList<>();
+        lineas.add(linea(2L, "Ana", 10L, "Café", 2, "5000.00", "19.00", "11900.00"));
+        lineas.add(linea(2L, "Ana", 11L, "Azúcar", 1, "2000.00", null, "11900.00"));
+        lineas.add(linea(1L, null, null, null, null, null, null, "500.00"));
+        AtomicBoolean cerrado = new AtomicBoolean();
+        when(ventaRepository.streamLineasAdmin(any(), any(), any(), any(), any()))
+                .thenReturn(lineas.stream().onClose(() -> cerrado.set(true)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int ventas = excelExportService.exportarVentasAdmin("2025-03-01", "2025-03-31", null, null, "", out);
+
+        assertEquals(2, ventas);
+        assertTrue(cerrado.get(), "The DB stream must be closed");
+        verify(ventaRepository).streamLineasAdmin(eq(LocalDateTime.of(2025, 3, 1, 0, 0)),
+                eq(LocalDateTime.of(2025, 3, 31, 23, 59, 59)), isNull(), isNull(), isNull());
+
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            Sheet sheet = wb.getSheet("Ventas - Admin");
+            assertEquals("Usuario", sheet.getRow(0).getCell(2).getStringCellValue());
+            Row primera = sheet.getRow(1);
+            assertEquals(2.0, primera.getCell(0).getNumericCellValue());
+            assertEquals("Ana", primera.getCell(2).getStringCellValue());
+            assertEquals("Café (2 x 5000.00) IVA: 19.00%; Azúcar (1 x 2000.00); ", primera.getCell(7).getStringCellValue());
+            assertEquals("", sheet.getRow(2).getCell(7).getStringCellValue(), "Sale without lines");
+            assertEquals("usuario@crm.com", sheet.getRow(2).getCell(2).getStringCellValue(), "Falls back to e-mail");
+            Row total = sheet.getRow(4);
+            assertEquals("Total ventas:", total.getCell(5).getStringCellValue());
+            assertEquals(12400.0, total.getCell(6).getNumericCellValue());
+            assertTrue(sheet.getColumnWidth(7) > sheet.getColumnWidth(0), "Precomputed widths, no autosize");
+        }
+    }
+
+    @Test
+    void testExportarVentasEmpleado_EmployeeColumnsAndExclusiveEndDate() throws Exception {
+        List<Object[]> lineas = new ArrayList<>();
+        lineas.add(linea(5L, "Ana", 50L, "Café", 3, "1000.00", "19.00", "3570.00"));
+        when(ventaRepository.streamLineasEmpleado(any(), any(), any(), any(), any())).thenReturn(lineas.stream());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        excelExportService.exportarVentasEmpleado(7L, null, "2025-03-31", 4L, "Efectivo", out);
+
+        verify(ventaRepository).streamLineasEmpleado(eq(7L), isNull(), eq(LocalDateTime.of(2025, 4, 1, 0, 0)), eq(4L), eq("Efectivo"));
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            Sheet sheet = wb.getSheet("Mis Ventas");
+            assertEquals(5, sheet.getRow(0).getLastCellNum());
+            assertEquals("Café (3 x 1000.00); ", sheet.getRow(1).getCell(4).getStringCellValue(), "No IVA detail for employees");
+            assertEquals(3570.0, sheet.getRow(3).getCell(3).getNumericCellValue());
+        }
+    }
+
+    /**
+     * 200k ventas generadas al vuelo: mientras se lee el cursor, las filas que salen de la ventana ya están
+     * en el temporal de la hoja (y el temporal sigue creciendo); al terminar se borra y el cursor queda cerrado.
+     */
+    @Test
+    void testExportarVentasAdmin_LargeExportFlushesRowsWhileStreaming() throws Exception {
+        int n = 200_000;
+        List<File> temporales = new CopyOnWriteArrayList<>();
+        DefaultTempFileCreationStrategy porDefecto = new DefaultTempFileCreationStrategy();
+        TempFile.setTempFileCreationStrategy(new TempFileCreationStrategy() {
+            @Override
+            public File createTempFile(String prefix, String suffix) throws IOException {
+                File f = porDefecto.createTempFile(prefix, suffix);
+                temporales.add(f);
+                return f;
+            }
+
+            @Override
+            public File createTempDirectory(String prefix) throws IOException {
+                return porDefecto.createTempDirectory(prefix);
+            }
+        });
+        try {
+            long[] enDisco = new long[2];
+            AtomicBoolean cerrado = new AtomicBoolean();
+            when(ventaRepository.streamLineasAdmin(any(), any(), any(), any(), any())).thenReturn(
+                    Stream.iterate(0L, i -> i + 1).limit(n)
+                            .peek(i -> {
+                                if (i == n / 4) enDisco[0] = bytes(temporales);
+                                if (i == 3 * n / 4) enDisco[1] = bytes(temporales);
+                            })
+                            .map(i -> linea(i, "Empleado", i, "Producto " + (i % 50), 1, "1000.00", null, "1000.00"))
+                            .onClose(() -> cerrado.set(true)));
+
+            CountingOutputStream out = new CountingOutputStream();
+            int ventas = excelExportService.exportarVentasAdmin(null, null, null, null, null, out);
+
+            assertEquals(n, ventas);
+            assertTrue(enDisco[0] > 0, "Rows outside the window must already be flushed to disk while streaming");
+            assertTrue(enDisco[1] > enDisco[0], "The sheet temp file must keep growing with the rows read");
+            assertTrue(temporales.stream().noneMatch(File::exists), "Temp files must be removed after writing");
+            assertTrue(cerrado.get(), "The DB stream must be closed");
+            assertTrue(out.bytes > 0);
+        } finally {
+            TempFile.setTempFileCreationStrategy(porDefecto);
+        }
+    }
+
+    // Helper methods
+
+    private Object[] linea(Long ventaId, String usuario, Long detalleId, String producto, Integer cantidad,
+                           String precio, String ivaRate, String total) {
+        return new Object[]{ventaId, LocalDateTime.of(2025, 3, 10, 12, 0), usuario, "usuario@crm.com", "Efectivo",
+                new BigDecimal(total), BigDecimal.ZERO, new BigDecimal(total),
+                detalleId, producto, cantidad, precio == null ? null : new BigDecimal(precio),
+                ivaRate == null ? null : new BigDecimal(ivaRate)};
+    }
+
+    private static long bytes(List<File> archivos) {
+        return archivos.stream().mapToLong(File::length).sum();
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.model.MailOutbox;
+import com.alemandan.crm.repository.MailOutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for MailOutboxService
+ */
+class MailOutboxServiceTest {
+
+    private static final ZoneId ZONA = ZoneId.of("America/Bogota");
+    private static final LocalDateTime AHORA = LocalDateTime.of(2025, 3, 10, 9, 0);
+
+    @Mock
+    private MailOutboxRepository mailOutboxRepository;
+
+    @Mock
+    private MailService mailService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private MailOutboxService service;
+
+    private final List<Runnable> tareas = new ArrayList<>();
+    private int capacidadPool = Integer.MAX_VALUE;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(service, "mailExecutor", (Executor) tarea -> {
+            if (tareas.size() >= capacidadPool) throw new RejectedExecutionException("cola llena");
+            tareas.add(tarea);
+        });
+        ReflectionTestUtils.setField(service, "clock", Clock.fixed(AHORA.atZone(ZONA).toInstant(), ZONA));
+        ReflectionTestUtils.setField(service, "lote", 20);
+        ReflectionTestUtils.setField(service, "maxIntentos", 3);
+        ReflectionTestUtils.setField(service, "backoffInicialSegundos", 60L);
+        ReflectionTestUtils.setField(service, "backoffMaxMinutos", 60L);
+        ReflectionTestUtils.setField(service, "plazoEnvioMinutos", 10L);
+        service.init();
+    }
+
+    @Test
+    void testEncolarTodosOnlyInsertsRows() throws Exception {
+        int encolados = service.encolarTodos(List.of("a@crm.com", "b@crm.com", " "), "Aviso", "Hola");
+
+        assertEquals(2, encolados);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<MailOutbox>> filas = ArgumentCaptor.forClass(List.class);
+        verify(mailOutboxRepository).saveAll(filas.capture());
+        assertEquals(List.of("a@crm.com", "b@crm.com"), filas.getValue().stream().map(MailOutbox::getDestinatario).toList());
+        assertTrue(filas.getValue().stream().allMatch(m -> m.getEstado() == MailOutbox.Estado.PENDIENTE
+                && AHORA.equals(m.getProximoIntento())));
+        verify(mailService, never()).enviarDesdeOutbox(anyString(), anyString(), anyString(), anyBoolean());
+    }
+
+    @Test
+    void testDespacharClaimsBatchAndMarksSent() throws Exception {
+        MailOutbox correo = correo(1L, 0);
+        when(mailOutboxRepository.bloquearListos(AHORA, 20)).thenReturn(List.of(1L));
+        when(mailOutboxRepository.findAllById(List.of(1L))).thenReturn(List.of(correo));
+
+        service.despachar();
+        verify(mailOutboxRepository).marcarEnviando(List.of(1L), AHORA.plusMinutes(10));
+        verify(mailService, never()).enviarDesdeOutbox(anyString(), anyString(), anyString(), anyBoolean());
+
+        tareas.forEach(Runnable::run);
+        verify(mailService).enviarDesdeOutbox("a@crm.com", "Aviso", "Hola", false);
+        verify(mailOutboxRepository).saveAll(List.of(correo));
+        assertEquals(MailOutbox.Estado.ENVIADO, correo.getEstado());
+        assertEquals(1, correo.getIntentos());
+        assertEquals(AHORA, correo.getEnviado());
+    }
+
+    @Test
+    void testFailureIsRetriedWithExponentialBackoffThenFails() throws Exception {
+        doThrow(new RuntimeException("SMTP timeout")).when(mailService)
+                .enviarDesdeOutbox(anyString(), anyString(), anyString(), anyBoolean());
+        MailOutbox correo = correo(1L, 0);
+
+        service.enviar(correo);
+        assertEquals(MailOutbox.Estado.PENDIENTE, correo.getEstado());
+        assertEquals(AHORA.plusSeconds(60), correo.getProximoIntento());
+        assertEquals("SMTP timeout", correo.getUltimoError());
+
+        service.enviar(correo);
+        assertEquals(AHORA.plusSeconds(120), correo.getProximoIntento());
+
+        service.enviar(correo);
+        assertEquals(MailOutbox.Estado.FALLIDO, correo.getEstado());
+        assertEquals(3, correo.getIntentos());
+        verify(mailOutboxRepository, times(3)).saveAll(List.of(correo));
+
+        assertEquals(3600, service.backoffSegundos(10));
+    }
+
+    @Test
+    void testFullPoolReleasesRestOfBatch() {
+        capacidadPool = 1;
+        List<MailOutbox> lote = List.of(correo(1L, 0), correo(2L, 0), correo(3L, 0));
+        when(mailOutboxRepository.bloquearListos(any(), anyInt())).thenReturn(List.of(1L, 2L, 3L));
+        when(mailOutboxRepository.findAllById(anyList())).thenReturn(lote);
+
+        service.despachar();
+
+        assertEquals(1, tareas.size());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<MailOutbox>> liberados = ArgumentCaptor.forClass(List.class);
+        verify(mailOutboxRepository).saveAll(liberados.capture());
+        assertEquals(List.of(2L, 3L), liberados.getValue().stream().map(MailOutbox::getId).toList());
+        assertTrue(liberados.getValue().stream().allMatch(m -> m.getEstado() == MailOutbox.Estado.PENDIENTE));
+        verify(mailOutboxRepository, times(1)).bloquearListos(any(), anyInt());
+    }
+
+    @Test
+    void testFirstAttemptsWithSameContentGoInOneBulkCall() throws Exception {
+        when(mailService.admiteEnvioMasivo()).thenReturn(true);
+        MailOutbox a = correo(1L, 0, "a@crm.com");
+        MailOutbox b = correo(2L, 0, "b@crm.com");
+        MailOutbox c = correo(3L, 0, "malo@crm");
+        MailOutbox reintento = correo(4L, 1, "d@crm.com");
+        when(mailOutboxRepository.bloquearListos(any(), anyInt())).thenReturn(List.of(1L, 2L, 3L, 4L));
+        when(mailOutboxRepository.findAllById(anyList())).thenReturn(List.of(a, b, c, reintento));
+        when(mailService.enviarMasivo(List.of("a@crm.com", "b@crm.com", "malo@crm"), "Aviso", "Hola", false))
+                .thenReturn(Map.of("malo@crm", "Does not contain a valid address."));
+
+        service.despachar();
+        assertEquals(2, tareas.size());
+        tareas.forEach(Runnable::run);
+
+        // El reintento va solo, por el camino con respaldo SMTP
+        verify(mailService).enviarDesdeOutbox("d@crm.com", "Aviso", "Hola", false);
+        assertEquals(MailOutbox.Estado.ENVIADO, a.getEstado());
+        assertEquals(MailOutbox.Estado.ENVIADO, b.getEstado());
+        assertEquals(MailOutbox.Estado.PENDIENTE, c.getEstado());
+        assertEquals("Does not contain a valid address.", c.getUltimoError());
+        assertEquals(AHORA.plusSeconds(60), c.getProximoIntento());
+        verify(mailOutboxRepository).saveAll(List.of(a, b, c));
+    }
+
+    /**
+     * Llamadas a la API por cada 1000 destinatarios de un correo masivo encolado (lotes reclamados de 100).
+     */
+    @Test
+    void testBulkMailThroughOutbox_OneApiCallPerThousandRecipients() throws Exception {
+        ReflectionTestUtils.setField(service, "lote", 100);
+        when(mailService.admiteEnvioMasivo()).thenReturn(true);
+        List<Integer> destinatariosPorLlamada = stubEnviarMasivo();
+        stubListos(1000);
+
+        service.despachar();
+        tareas.forEach(Runnable::run);
+
+        assertEquals(List.of(1000), destinatariosPorLlamada);
+        verify(mailService, never()).enviarDesdeOutbox(anyString(), anyString(), anyString(), anyBoolean());
+        verify(mailOutboxRepository, times(11)).bloquearListos(any(), eq(100));
+    }
+
+    @Test
+    void testBulkMailThroughOutbox_GroupsSplitAtPersonalizationLimit() throws Exception {
+        ReflectionTestUtils.setField(service, "lote", 100);
+        when(mailService.admiteEnvioMasivo()).thenReturn(true);
+        List<Integer> destinatariosPorLlamada = stubEnviarMasivo();
+        Map<Long, MailOutbox> correos = stubListos(2550);
+
+        service.despachar();
+        tareas.forEach(Runnable::run);
+
+        assertEquals(List.of(1000, 1000, 550), destinatariosPorLlamada);
+        assertTrue(correos.values().stream().allMatch(m -> m.getEstado() == MailOutbox.Estado.ENVIADO));
+    }
+
+    @Test
+    void testFullPoolReleasesPendingGroupsToo() {
+        ReflectionTestUtils.setField(service, "lote", 300);
+        when(mailService.admiteEnvioMasivo()).thenReturn(true);
+        capacidadPool = 0;
+        Map<Long, MailOutbox> correos = stubListos(1200);
+
+        service.despachar();
+
+        // El cuarto lote completa el grupo de 1000, que se rechaza: vuelve a la cola junto con
+        // los 200 ya reclamados del grupo siguiente, y no se reclama más
+        assertTrue(tareas.isEmpty());
+        assertTrue(correos.values().stream().allMatch(m -> m.getEstado() == MailOutbox.Estado.PENDIENTE));
+        verify(mailOutboxRepository, times(4)).bloquearListos(any(), eq(300));
+    }
+
+    @Test
+    void testNothingReadyDoesNotUpdate() {
+        when(mailOutboxRepository.bloquearListos(any(), eq(20))).thenReturn(List.of());
+
+        service.despachar();
+
+        verify(mailOutboxRepository, never()).marcarEnviando(anyList(), any());
+        assertTrue(tareas.isEmpty());
+    }
+
+    // Helper methods
+
+    /**
+     * n primeros intentos del mismo correo, reclamados de a {@code lote} por bloquearListos.
+     */
+    private Map<Long, MailOutbox> stubListos(int n) {
+        Map<Long, MailOutbox> correos = new LinkedHashMap<>();
+        for (long id = 1; id <= n; id++) correos.put(id, correo(id, 0, "cliente" + id + "@crm.com"));
+        List<Long> pendientes = new ArrayList<>(correos.keySet());
+        when(mailOutboxRepository.bloquearListos(any(), anyInt())).thenAnswer(invocation -> {
+            int limite = invocation.getArgument(1);
+            List<Long> ids = new ArrayList<>(pendientes.subList(0, Math.min(limite, pendientes.size())));
+            pendientes.removeAll(ids);
+            return ids;
+        });
+        when(mailOutboxRepository.findAllById(anyList())).thenAnswer(invocation -> {
+            List<MailOutbox> filas = new ArrayList<>();
+            for (Object id : invocation.<List<?>>getArgument(0)) filas.add(correos.get((Long) id));
+            return filas;
+        });
+        return correos;
+    }
+
+    private List<Integer> stubEnviarMasivo() {
+        List<Integer> destinatariosPorLlamada = new ArrayList<>();
+        when(mailService.enviarMasivo(anyList(), anyString(), anyString(), anyBoolean())).thenAnswer(invocation -> {
+            destinatariosPorLlamada.add(invocation.<List<?>>getArgument(0).size());
+            return new HashMap<String, String>();
+        });
+        return destinatariosPorLlamada;
+    }
+
+    private static MailOutbox correo(Long id, int intentos) {
+        return correo(id, intentos, "a@crm.com");
+    }
+
+    private static MailOutbox correo(Long id, int intentos, String destinatario) {
+        MailOutbox m = new MailOutbox();
+        m.setId(id);
+        m.setDestinatario(destinatario);
+        m.setAsunto("Aviso");
+        m.setCuerpo("Hola");
+        m.setEstado(MailOutbox.Estado.ENVIANDO);
+        m.setIntentos(intentos);
+        m.setProximoIntento(AHORA.plusMinutes(10));
+        m.setCreado(AHORA);
+        return m;
+    }
+}
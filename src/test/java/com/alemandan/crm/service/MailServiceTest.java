@@ -0,0 +1,158 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.config.SendGridConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sendgrid.Client;
+import com.sendgrid.SendGrid;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for MailService bulk sending against a local SendGrid stub
+ */
+class MailServiceTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private HttpServer servidor;
+    private Client cliente;
+    private MailService mailService;
+
+    // Llamadas recibidas por el stub y personalizations de cada una
+    private final AtomicInteger llamadas = new AtomicInteger();
+    private final List<Integer> personalizacionesPorLlamada = new CopyOnWriteArrayList<>();
+    private final List<String> aceptados = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        servidor = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        servidor.createContext("/v3/mail/send", this::responderMailSend);
+        servidor.start();
+
+        cliente = new Client(SendGridConfig.crearHttpClient(4, 5000), true);
+        SendGrid sendGrid = new SendGrid("SG.test", cliente);
+        sendGrid.setHost("localhost:" + servidor.getAddress().getPort());
+
+        mailService = new MailService();
+        ReflectionTestUtils.setField(mailService, "sendGrid", sendGrid);
+        ReflectionTestUtils.setField(mailService, "sendGridApiKey", "SG.test");
+        ReflectionTestUtils.setField(mailService, "senderEmail", "noreply@alemandanpos.com");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        servidor.stop(0);
+        cliente.close();
+    }
+
+    @Test
+    void testThousandRecipientsInOneApiCall() {
+        Map<String, String> fallidos = mailService.enviarMasivo(destinatarios(1000), "Aviso", "Hola", false);
+
+        assertTrue(fallidos.isEmpty());
+        assertEquals(1, llamadas.get());
+        assertEquals(List.of(1000), personalizacionesPorLlamada);
+        assertEquals(1000, aceptados.size());
+    }
+
+    @Test
+    void testRecipientsSplitAtPersonalizationLimit() {
+        Map<String, String> fallidos = mailService.enviarMasivo(destinatarios(2500), "Aviso", "Hola", false);
+
+        assertTrue(fallidos.isEmpty());
+        assertEquals(3, llamadas.get());
+        assertEquals(List.of(1000, 1000, 500), personalizacionesPorLlamada);
+    }
+
+    @Test
+    void testRejectedRecipientsMappedAndRestResent() {
+        List<String> destinatarios = destinatarios(10);
+        destinatarios.set(3, "invalido-1");
+        destinatarios.set(7, "invalido-2");
+
+        Map<String, String> fallidos = mailService.enviarMasivo(destinatarios, "Aviso", "Hola", false);
+
+        assertEquals(Map.of("invalido-1", "Does not contain a valid address.",
+                "invalido-2", "Does not contain a valid address."), fallidos);
+        assertEquals(2, llamadas.get());
+        assertEquals(List.of(10, 8), personalizacionesPorLlamada);
+        assertEquals(8, aceptados.size());
+    }
+
+    @Test
+    void testWholeRequestErrorFailsEveryRecipient() {
+        servidor.removeContext("/v3/mail/send");
+        servidor.createContext("/v3/mail/send", ex -> {
+            llamadas.incrementAndGet();
+            responder(ex, 401, "{\"errors\":[{\"message\":\"The provided authorization grant is invalid\",\"field\":null}]}");
+        });
+
+        Map<String, String> fallidos = mailService.enviarMasivo(destinatarios(3), "Aviso", "Hola", false);
+
+        assertEquals(3, fallidos.size());
+        assertEquals("SendGrid status 401", fallidos.get("cliente0@crm.com"));
+        assertEquals(1, llamadas.get());
+    }
+
+    // Helper methods
+
+    private static List<String> destinatarios(int n) {
+        List<String> lista = new ArrayList<>();
+        for (int i = 0; i < n; i++) lista.add("cliente" + i + "@crm.com");
+        return lista;
+    }
+
+    /**
+     * Imita mail/send: 202 si todos los destinatarios son válidos; 400 con personalizations.N.to.0.email
+     * por cada destinatario sin '@'.
+     */
+    private void responderMailSend(HttpExchange ex) throws IOException {
+        llamadas.incrementAndGet();
+        JsonNode personalizaciones = JSON.readTree(ex.getRequestBody()).path("personalizations");
+        personalizacionesPorLlamada.add(personalizaciones.size());
+
+        List<String> errores = new ArrayList<>();
+        List<String> emails = new ArrayList<>();
+        for (int i = 0; i < personalizaciones.size(); i++) {
+            String email = personalizaciones.get(i).path("to").get(0).path("email").asText();
+            emails.add(email);
+            if (!email.contains("@")) {
+                errores.add("{\"message\":\"Does not contain a valid address.\",\"field\":\"personalizations." + i + ".to.0.email\"}");
+            }
+        }
+        if (errores.isEmpty()) {
+            aceptados.addAll(emails);
+            responder(ex, 202, "");
+        } else {
+            responder(ex, 400, "{\"errors\":[" + String.join(",", errores) + "]}");
+        }
+    }
+
+    private static void responder(HttpExchange ex, int status, String cuerpo) throws IOException {
+        byte[] bytes = cuerpo.getBytes(StandardCharsets.UTF_8);
+        ex.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+        ex.close();
+    }
+}
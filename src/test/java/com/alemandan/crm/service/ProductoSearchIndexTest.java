@@ -0,0 +1,204 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.events.VentaRegistradaEvent;
+import com.alemandan.crm.model.Producto;
+import com.alemandan.crm.repository.ProductoRepository;
+import com.alemandan.crm.repository.VentaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ProductoSearchIndex
+ */
+class ProductoSearchIndexTest {
+
+    @Mock
+    private ProductoRepository productoRepository;
+
+    @Mock
+    private VentaRepository ventaRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private ProductoSearchIndex index;
+
+    private final List<Producto> catalogo = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.invokeMethod(index, "init");
+        catalogo.add(producto(1L, "Café Molido 500g", 10));
+        catalogo.add(producto(2L, "Cafetera Eléctrica", 3));
+        catalogo.add(producto(3L, "Azúcar Morena", 20));
+        catalogo.add(producto(4L, "Café", 7));
+        catalogo.add(producto(5L, "Galletas de Café", 15));
+        when(productoRepository.findByActivoTrue()).thenAnswer(invocation -> new ArrayList<>(catalogo));
+    }
+
+    @Test
+    void testBuscar_AccentInsensitiveAndRanked() {
+        List<Long> ids = ids(index.buscar("cafe", 10));
+
+        // exacto, empieza por la búsqueda (más corto primero), prefijo de palabra
+        assertEquals(List.of(4L, 1L, 2L, 5L), ids);
+        assertEquals(ids, ids(index.buscar("CAFÉ", 10)));
+    }
+
+    @Test
+    void testBuscar_SubstringShortPrefixAndMultipleTerms() {
+        assertEquals(List.of(3L), ids(index.buscar("ucar", 10)), "3+ chars match inside a word");
+        assertEquals(List.of(3L), ids(index.buscar("az", 10)), "1-2 chars match word prefixes only");
+        assertTrue(index.buscar("ca", 10).stream().noneMatch(p -> p.getId() == 3L));
+        assertEquals(List.of(1L), ids(index.buscar("caf 500", 10)), "All terms must match");
+        assertTrue(index.buscar("xyz", 10).isEmpty());
+    }
+
+    @Test
+    void testBuscar_LimitAndEmptyTermAlphabetical() {
+        assertEquals(2, index.buscar("cafe", 2).size());
+        assertEquals(List.of(3L, 4L, 1L), ids(index.buscar("  ", 3)));
+    }
+
+    @Test
+    void testBuscar_LoadsOnceAndNeverHitsDbPerKeystroke() {
+        for (String term : new String[]{"c", "ca", "caf", "cafe", "cafet"}) {
+            index.buscar(term, 20);
+        }
+        verify(productoRepository, times(1)).findByActivoTrue();
+        verify(productoRepository, never()).findByNombreContainingIgnoreCaseAndActivoTrue(anyString());
+    }
+
+    @Test
+    void testSync_SaveInactivateActivateAndStock() {
+        index.buscar("", 1); // carga inicial
+
+        index.actualizar(producto(6L, "Té Verde", 5));
+        assertEquals(List.of(6L), ids(index.buscar("te", 10)));
+
+        Producto renombrado = producto(4L, "Cacao", 7);
+        index.actualizar(renombrado);
+        assertFalse(ids(index.buscar("cafe", 10)).contains(4L));
+        assertEquals(List.of(4L), ids(index.buscar("cacao", 10)));
+
+        index.eliminar(6L);
+        assertTrue(index.buscar("verde", 10).isEmpty());
+
+        Producto inactivo = producto(5L, "Galletas de Café", 15);
+        inactivo.setActivo(false);
+        index.actualizar(inactivo);
+        assertFalse(ids(index.buscar("galletas", 10)).contains(5L));
+
+        index.descontarStock(venta(20L, Map.of(1L, 4)));
+        assertEquals(6, index.buscar("molido", 1).get(0).getCantidad());
+        verify(productoRepository, times(1)).findByActivoTrue();
+    }
+
+    @Test
+    void testBuscar_ReturnsCopies() {
+        Producto p = index.buscar("azucar", 1).get(0);
+        p.setCantidad(0);
+        assertEquals(20, index.buscar("azucar", 1).get(0).getCantidad());
+    }
+
+    /**
+     * Catálogo de 100k productos: después de la carga, las búsquedas por pulsación se resuelven en el índice
+     * sin volver al repositorio.
+     */
+    @Test
+    void testBuscar_100kProductsServedFromIndexWithoutRepositoryCalls() {
+        catalogo.clear();
+        String[] marcas = {"Alpina", "Colanta", "Nestlé", "Postobón", "Ramo", "Zenú", "Águila", "Noel"};
+        String[] tipos = {"Leche", "Yogur", "Galletas", "Gaseosa", "Ponqué", "Salchicha", "Cerveza", "Café", "Chocolate", "Arroz"};
+        for (int i = 0; i < 100_000; i++) {
+            catalogo.add(producto((long) i + 1, tipos[i % tipos.length] + " " + marcas[(i / 10) % marcas.length] + " " + (i % 997) + "g ref" + i, 10));
+        }
+        index.recargar();
+        assertEquals(100_000, index.size());
+        clearInvocations(productoRepository);
+
+        List<Producto> chocolates = index.buscar("choco noel", 20);
+        assertEquals(20, chocolates.size());
+        assertTrue(chocolates.stream().allMatch(p -> p.getNombre().startsWith("Chocolate Noel ")), "All terms must match");
+        assertEquals(12345L + 1, index.buscar("ref12345", 1).get(0).getId());
+        assertEquals(20, index.buscar("leche alp", 20).size());
+        List<Producto> cafes = index.buscar("cafe 99", 20);
+        assertFalse(cafes.isEmpty());
+        assertTrue(cafes.stream().allMatch(p -> p.getNombre().startsWith("Café ")));
+
+        verifyNoMoreInteractions(productoRepository);
+    }
+
+    /**
+     * Ventas confirmadas mientras la recarga lee la BD: no esperan a que termine y su stock se descuenta
+     * una sola vez. La 20 ya está en la instantánea (su descuento viene en la carga); la 21 se confirmó después.
+     */
+    @Test
+    void testRecargar_SalesDuringReloadDoNotBlockAndAreCountedOnce() {
+        index.buscar("", 1); // carga inicial
+        clearInvocations(transactionManager);
+
+        when(productoRepository.findByActivoTrue()).thenAnswer(inv -> {
+            CompletableFuture.runAsync(() -> {
+                index.descontarStock(venta(20L, Map.of(1L, 4)));
+                index.descontarStock(venta(21L, Map.of(2L, 1)));
+            }).get(5, TimeUnit.SECONDS);
+            // Instantánea: la venta 20 ya descontó el café molido, la 21 todavía no
+            List<Producto> instantanea = new ArrayList<>(catalogo);
+            instantanea.set(0, producto(1L, "Café Molido 500g", 6));
+            return instantanea;
+        });
+        when(ventaRepository.idsExistentes(any())).thenAnswer(inv -> {
+            List<Long> vistas = new ArrayList<>(inv.<List<Long>>getArgument(0));
+            vistas.remove(21L);
+            return vistas;
+        });
+
+        index.recargar();
+
+        assertEquals(6, index.buscar("molido", 1).get(0).getCantidad());
+        assertEquals(2, index.buscar("cafetera", 1).get(0).getCantidad());
+        verify(transactionManager).getTransaction(argThat(def -> def.isReadOnly()
+                && def.getIsolationLevel() == TransactionDefinition.ISOLATION_REPEATABLE_READ));
+    }
+
+    // Helper methods
+
+    private VentaRegistradaEvent venta(Long id, Map<Long, Integer> cantidades) {
+        return new VentaRegistradaEvent(id, 7L, LocalDateTime.now(), BigDecimal.TEN, cantidades);
+    }
+
+    private List<Long> ids(List<Producto> productos) {
+        return productos.stream().map(Producto::getId).collect(Collectors.toList());
+    }
+
+    private Producto producto(Long id, String nombre, int stock) {
+        Producto p = new Producto();
+        p.setId(id);
+        p.setNombre(nombre);
+        p.setCantidad(stock);
+        p.setPrecio(1000.0);
+        p.setActivo(true);
+        return p;
+    }
+}
@@ -0,0 +1,239 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.model.DetalleVenta;
+import com.alemandan.crm.model.Producto;
+import com.alemandan.crm.model.Venta;
+import com.alemandan.crm.repository.VentaRepository;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfWriter;
+import com.itextpdf.text.pdf.parser.PdfTextExtractor;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ReciboService
+ */
+class ReciboServiceTest {
+
+    @Mock
+    private VentaRepository ventaRepository;
+
+    @Mock
+    private ReportService reportService;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @InjectMocks
+    private ReciboService reciboService;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        executor = Executors.newSingleThreadExecutor();
+        ReflectionTestUtils.setField(reciboService, "reciboExecutor", executor);
+        ReflectionTestUtils.setField(reciboService, "reciboLoteExecutor", executor);
+        ReflectionTestUtils.setField(reciboService, "maxVentasLote", 2000);
+        ReflectionTestUtils.setField(reciboService, "ventanaLote", 8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testSolicitar_ConcurrentRequestsShareOneRenderAndThenHitCache() throws Exception {
+        Venta venta = createVenta(1L);
+        when(ventaRepository.findByIdConDetalles(1L)).thenReturn(Optional.of(venta));
+
+        CountDownLatch liberarRender = new CountDownLatch(1);
+        byte[] pdf = new byte[]{'%', 'P', 'D', 'F'};
+        when(reportService.generarReciboVentaPdf(any(Venta.class))).thenAnswer(invocation -> {
+            liberarRender.await(5, TimeUnit.SECONDS);
+            return pdf;
+        });
+
+        CompletableFuture<byte[]> primera = reciboService.solicitar(1L);
+        CompletableFuture<byte[]> segunda = reciboService.solicitar(1L);
+        assertSame(primera, segunda, "A receipt already in progress must not be rendered twice");
+        assertFalse(primera.isDone());
+
+        liberarRender.countDown();
+        assertArrayEquals(pdf, primera.get(5, TimeUnit.SECONDS));
+
+        CompletableFuture<byte[]> tercera = reciboService.solicitar(1L);
+        assertTrue(tercera.isDone(), "Rendered receipt should be served from cache");
+        assertArrayEquals(pdf, tercera.get());
+        verify(reportService, times(1)).generarReciboVentaPdf(any(Venta.class));
+        verify(ventaRepository, times(1)).findByIdConDetalles(1L);
+    }
+
+    @Test
+    void testSolicitar_FillsMissingValuesInMemoryWithoutSaving() throws Exception {
+        Venta venta = createVenta(2L);
+        when(ventaRepository.findByIdConDetalles(2L)).thenReturn(Optional.of(venta));
+        when(reportService.generarReciboVentaPdf(any(Venta.class))).thenReturn(new byte[]{1});
+
+        reciboService.solicitar(2L).get(5, TimeUnit.SECONDS);
+
+        DetalleVenta d = venta.getDetalles().get(0);
+        assertEquals(0, new BigDecimal("1000").compareTo(d.getPrecioUnitario()));
+        assertEquals(0, new BigDecimal("380.00").compareTo(d.getIvaMonto()));
+        assertEquals(0, new BigDecimal("2380.00").compareTo(venta.getTotal()));
+        verify(ventaRepository, never()).save(any(Venta.class));
+    }
+
+    @Test
+    void testSolicitar_UnknownSaleFailsWithIllegalArgument() {
+        when(ventaRepository.findByIdConDetalles(99L)).thenReturn(Optional.empty());
+
+        ExecutionException ex = assertThrows(ExecutionException.class,
+                () -> reciboService.solicitar(99L).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, ex.getCause());
+    }
+
+    @Test
+    void testSolicitar_RejectedWhenQueueIsFull() {
+        ReflectionTestUtils.setField(reciboService, "reciboExecutor",
+                (Executor) command -> { throw new RejectedExecutionException("cola llena"); });
+
+        CompletableFuture<byte[]> future = reciboService.solicitar(3L);
+
+        assertTrue(future.isCompletedExceptionally());
+        ExecutionException ex = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(RejectedExecutionException.class, ex.getCause());
+    }
+
+    @Test
+    void testExportarLote_MergedPdfInOrderWithBatchedLoads() throws Exception {
+        List<Long> ids = ids(1, 60);
+        mockLote();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int escritos = reciboService.exportarLote(ids, ReciboService.FormatoLote.PDF, out);
+
+        assertEquals(60, escritos);
+        PdfReader reader = new PdfReader(out.toByteArray());
+        assertEquals(60, reader.getNumberOfPages());
+        assertTrue(PdfTextExtractor.getTextFromPage(reader, 1).contains("Recibo 1"));
+        assertTrue(PdfTextExtractor.getTextFromPage(reader, 60).contains("Recibo 60"));
+        // 60 ventas en lotes de 50: dos consultas, ninguna por venta
+        verify(ventaRepository, times(2)).findByIdInConDetalles(anyCollection());
+        // Cada lote se suelta del contexto de persistencia (open-in-view) en cuanto se carga
+        verify(entityManager, times(2)).clear();
+        verify(ventaRepository, never()).findByIdConDetalles(anyLong());
+        verify(ventaRepository, never()).save(any(Venta.class));
+    }
+
+    @Test
+    void testExportarLote_ZipOneEntryPerSaleSkippingDeleted() throws Exception {
+        mockLote();
+        List<Long> ids = ids(1, 5);
+        ids.add(999L); // borrada después de listar los ids
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int escritos = reciboService.exportarLote(ids, ReciboService.FormatoLote.ZIP, out);
+
+        List<String> entradas = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            for (ZipEntry e = zip.getNextEntry(); e != null; e = zip.getNextEntry()) {
+                entradas.add(e.getName());
+                assertTrue(new String(zip.readAllBytes(), "ISO-8859-1").startsWith("%PDF"));
+            }
+        }
+        assertEquals(5, escritos);
+        assertEquals(List.of("recibo_venta_1.pdf", "recibo_venta_2.pdf", "recibo_venta_3.pdf",
+                "recibo_venta_4.pdf", "recibo_venta_5.pdf"), entradas);
+    }
+
+    @Test
+    void testIdsLote_TooManySalesRejected() {
+        ReflectionTestUtils.setField(reciboService, "maxVentasLote", 3);
+        when(ventaRepository.idsParaRecibos(any(), any(), any(), any())).thenReturn(ids(1, 4));
+
+        assertThrows(IllegalArgumentException.class, () -> reciboService.idsLote(null, null, null));
+    }
+
+    // Helper methods
+
+    private void mockLote() throws Exception {
+        when(ventaRepository.findByIdInConDetalles(anyCollection())).thenAnswer(invocation -> {
+            List<Venta> ventas = new ArrayList<>();
+            for (Long id : invocation.<Collection<Long>>getArgument(0)) {
+                if (id < 999L) ventas.add(0, createVenta(id)); // orden distinto al pedido
+            }
+            return ventas;
+        });
+        when(reportService.generarReciboVentaPdf(any(Venta.class)))
+                .thenAnswer(invocation -> createPdf("Recibo " + invocation.<Venta>getArgument(0).getId()));
+    }
+
+    private List<Long> ids(long desde, long hasta) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = desde; id <= hasta; id++) ids.add(id);
+        return ids;
+    }
+
+    private byte[] createPdf(String texto) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Document document = new Document();
+        PdfWriter.getInstance(document, out);
+        document.open();
+        document.add(new Paragraph(texto));
+        document.close();
+        return out.toByteArray();
+    }
+
+    private Venta createVenta(Long id) {
+        Producto p = new Producto();
+        p.setId(10L);
+        p.setNombre("Producto");
+        p.setPrecio(1000.0);
+        p.setIva(BigDecimal.valueOf(19));
+
+        DetalleVenta d = new DetalleVenta();
+        d.setProducto(p);
+        d.setCantidad(2);
+
+        Venta v = new Venta();
+        v.setId(id);
+        v.getDetalles().add(d);
+        d.setVenta(v);
+        return v;
+    }
+}
@@ -0,0 +1,151 @@
+package com.alemandan.crm.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ReportJobService
+ */
+class ReportJobServiceTest {
+
+    @Mock
+    private ReportService reportService;
+
+    @InjectMocks
+    private ReportJobService reportJobService;
+
+    @TempDir
+    Path uploads;
+
+    private final List<Runnable> encolados = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(reportJobService, "uploadsDir", uploads.toString());
+        ReflectionTestUtils.setField(reportJobService, "maxPorUsuario", 2);
+        ReflectionTestUtils.setField(reportJobService, "ttlMinutos", 60L);
+        ReflectionTestUtils.setField(reportJobService, "reportJobExecutor", (Executor) encolados::add);
+        reportJobService.init();
+
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(4);
+            IntConsumer progreso = invocation.getArgument(5);
+            progreso.accept(50);
+            out.write("%PDF-1.4".getBytes());
+            progreso.accept(100);
+            return null;
+        }).when(reportService).generarReporteVentasPdf(any(), any(), any(), anyBoolean(), any(OutputStream.class), any(IntConsumer.class));
+    }
+
+    @Test
+    void testEnviar_RunsOnWorkerAndStoresPdfUnderUploads() {
+        ReportJobService.ReportJob job = enviar("admin@crm.com");
+        assertEquals(ReportJobService.Estado.EN_COLA, job.getEstado());
+        assertEquals(0, job.getProgreso());
+
+        ejecutarEncolados();
+
+        assertEquals(ReportJobService.Estado.COMPLETADO, job.getEstado());
+        assertEquals(100, job.getProgreso());
+        assertTrue(job.getArchivo().startsWith(uploads.resolve(ReportJobService.SUBDIRECTORIO)));
+        assertTrue(Files.exists(job.getArchivo()));
+        assertFalse(Files.exists(job.getArchivo().resolveSibling(job.getId() + ".pdf.part")));
+    }
+
+    @Test
+    void testObtener_OnlyOwnerSeesTheJob() {
+        ReportJobService.ReportJob job = enviar("admin@crm.com");
+
+        assertTrue(reportJobService.obtener(job.getId(), "admin@crm.com").isPresent());
+        assertTrue(reportJobService.obtener(job.getId(), "otro@crm.com").isEmpty());
+        assertTrue(reportJobService.obtener("no-existe", "admin@crm.com").isEmpty());
+    }
+
+    @Test
+    void testEnviar_PerUserLimitOnActiveJobs() {
+        enviar("admin@crm.com");
+        enviar("admin@crm.com");
+
+        assertThrows(IllegalStateException.class, () -> enviar("admin@crm.com"));
+        assertNotNull(enviar("otro@crm.com"), "The limit is per user");
+
+        ejecutarEncolados();
+        assertNotNull(enviar("admin@crm.com"), "Finished jobs no longer count against the limit");
+    }
+
+    @Test
+    void testEnviar_RejectedWhenQueueIsFullDoesNotConsumeTheLimit() {
+        ReflectionTestUtils.setField(reportJobService, "reportJobExecutor",
+                (Executor) command -> { throw new RejectedExecutionException("cola llena"); });
+
+        assertThrows(RejectedExecutionException.class, () -> enviar("admin@crm.com"));
+        assertThrows(RejectedExecutionException.class, () -> enviar("admin@crm.com"));
+        assertThrows(RejectedExecutionException.class, () -> enviar("admin@crm.com"));
+    }
+
+    @Test
+    void testEjecutar_FailureMarksErrorAndLeavesNoFile() throws Exception {
+        doThrow(new IllegalStateException("boom")).when(reportService)
+                .generarReporteVentasPdf(any(), any(), any(), anyBoolean(), any(OutputStream.class), any(IntConsumer.class));
+
+        ReportJobService.ReportJob job = enviar("admin@crm.com");
+        ejecutarEncolados();
+
+        assertEquals(ReportJobService.Estado.ERROR, job.getEstado());
+        assertNotNull(job.getError());
+        assertNull(job.getArchivo());
+        try (var archivos = Files.list(uploads.resolve(ReportJobService.SUBDIRECTORIO))) {
+            assertEquals(0, archivos.count());
+        }
+    }
+
+    @Test
+    void testLimpiarExpirados_RemovesJobAndFileAfterTtl() {
+        ReportJobService.ReportJob job = enviar("admin@crm.com");
+        ejecutarEncolados();
+        Path archivo = job.getArchivo();
+
+        reportJobService.limpiarExpirados();
+        assertTrue(Files.exists(archivo), "Within TTL the report must be kept");
+
+        ReflectionTestUtils.setField(reportJobService, "ttlMinutos", -1L);
+        reportJobService.limpiarExpirados();
+
+        assertFalse(Files.exists(archivo));
+        assertTrue(reportJobService.obtener(job.getId(), "admin@crm.com").isEmpty());
+    }
+
+    // Helper methods
+
+    private ReportJobService.ReportJob enviar(String usuario) {
+        LocalDateTime to = LocalDateTime.now();
+        return reportJobService.enviar(usuario, to.minusDays(30), to, null, true, "reporte.pdf");
+    }
+
+    private void ejecutarEncolados() {
+        List<Runnable> tareas = new ArrayList<>(encolados);
+        encolados.clear();
+        tareas.forEach(Runnable::run);
+    }
+}
@@ -0,0 +1,149 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.model.Categoria;
+import com.alemandan.crm.model.Producto;
+import com.alemandan.crm.model.Usuario;
+import com.alemandan.crm.model.VentaResumenDiario;
+import com.alemandan.crm.service.pdf.PdfResourceRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Regression tests for the number of SQL statements needed to build the advanced sales report
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:reportes_sql;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ReportService.class, ReporteAgregadosCache.class, PdfResourceRegistry.class, ReportServiceQueryCountTest.SeccionesEnLinea.class})
+class ReportServiceQueryCountTest {
+
+    // ventasPorDia (con el periodo anterior), cantidadVentas, ventasPorProducto, ventasPorVendedor, stock
+    private static final int CONSULTAS_POR_INFORME = 5;
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private ReportService reportService;
+
+    @Autowired
+    private ReporteAgregadosCache reporteAgregadosCache;
+
+    private Statistics statistics;
+
+    /**
+     * Secciones en el hilo del test: los datos sólo son visibles dentro de su transacción.
+     */
+    @TestConfiguration
+    static class SeccionesEnLinea {
+        @Bean(name = "reportSectionExecutor")
+        Executor reportSectionExecutor() {
+            return Runnable::run;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        reporteAgregadosCache.limpiar();
+
+        Categoria categoria = new Categoria();
+        categoria.setNombre("Bebidas");
+        em.persist(categoria);
+
+        Usuario empleado = new Usuario();
+        empleado.setNombre("Empleado");
+        empleado.setEmail("empleado@crm.com");
+        empleado.setPassword("secreto");
+        empleado.setRol("EMPLEADO");
+        em.persist(empleado);
+
+        for (int i = 0; i < 5; i++) {
+            Producto p = new Producto();
+            p.setNombre("Producto " + i);
+            p.setCantidad(i * 3);
+            p.setPrecio(1000.0);
+            p.setActivo(true);
+            p.setCategoria(categoria);
+            em.persist(p);
+
+            // Un año de resumen diario: cubre el periodo del informe y el anterior
+            for (int dia = 0; dia < 365; dia += 2) {
+                VentaResumenDiario r = new VentaResumenDiario();
+                r.setDia(LocalDate.now().minusDays(dia));
+                r.setProductoId(p.getId());
+                r.setUsuarioId(empleado.getId());
+                r.setMetodoPago("EFECTIVO");
+                r.setUnidades(2L);
+                r.setMonto(new BigDecimal("2000.00"));
+                r.setIva(new BigDecimal("380.00"));
+                r.setNumVentas(1L);
+                em.persist(r);
+            }
+        }
+        em.flush();
+        em.clear();
+
+        statistics = em.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void testInformeDiario_EachDatasetQueriedOnce() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reportService.generarReporteVentasPdf(LocalDateTime.now().minusDays(30), LocalDateTime.now(), null, true, out);
+
+        assertTrue(out.toString("ISO-8859-1").contains("%%EOF"));
+        assertEquals(CONSULTAS_POR_INFORME, statistics.getPrepareStatementCount(),
+                "A 30-day report must query each dataset once");
+    }
+
+    @Test
+    void testInformeMensual_MonthSeriesDerivedFromDays() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reportService.generarReporteVentasPdf(LocalDateTime.now().minusDays(120), LocalDateTime.now(), null, true, out);
+
+        assertTrue(out.toString("ISO-8859-1").contains("%%EOF"));
+        assertEquals(CONSULTAS_POR_INFORME, statistics.getPrepareStatementCount(),
+                "The month table and trend analysis must not query again");
+    }
+
+    @Test
+    void testInformeCerrado_RepeatedExportOnlyReadsStock() throws Exception {
+        LocalDateTime desde = LocalDate.now().minusMonths(2).withDayOfMonth(1).atStartOfDay();
+        LocalDateTime hasta = desde.plusMonths(1).minusSeconds(1);
+        reportService.generarReporteVentasPdf(desde, hasta, null, true, new ByteArrayOutputStream());
+        statistics.clear();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reportService.generarReporteVentasPdf(desde, hasta, null, true, out);
+
+        assertTrue(out.toString("ISO-8859-1").contains("%%EOF"));
+        // El stock no se cachea: es el estado actual, no un agregado del periodo
+        assertEquals(1, statistics.getPrepareStatementCount(),
+                "Re-exporting a closed month must take its aggregates from the cache");
+    }
+}
@@ -0,0 +1,184 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.model.DetalleVenta;
+import com.alemandan.crm.model.Producto;
+import com.alemandan.crm.model.Usuario;
+import com.alemandan.crm.model.Venta;
+import com.alemandan.crm.repository.VentaRepository;
+import com.alemandan.crm.service.pdf.PdfResourceRegistry;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.parser.PdfTextExtractor;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.QueryHint;
+import org.hibernate.SessionFactory;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the cursor-based report path: VentaRepository.streamLineasAdmin read through ReportService's transaction
+ *
+ * Sin transacción en el test (NOT_SUPPORTED): los datos se confirman antes y el stream sólo puede abrirse
+ * dentro de la transacción de solo lectura que abre el proxy de ReportService.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:reportes_stream;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ReportService.class, ReporteAgregadosCache.class, PdfResourceRegistry.class, ReportServiceQueryCountTest.SeccionesEnLinea.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReportServiceStreamingTest {
+
+    private static final LocalDateTime DESDE = LocalDateTime.of(2025, 3, 1, 0, 0);
+    private static final LocalDateTime HASTA = LocalDateTime.of(2025, 3, 31, 23, 59, 59);
+
+    @Autowired
+    private ReportService reportService;
+
+    @Autowired
+    private VentaRepository ventaRepository;
+
+    @Autowired
+    private ReporteAgregadosCache reporteAgregadosCache;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        reporteAgregadosCache.limpiar();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Usuario empleado = new Usuario();
+            empleado.setNombre("Empleado");
+            empleado.setEmail("empleado@crm.com");
+            empleado.setPassword("secreto");
+            empleado.setRol("EMPLEADO");
+            em.persist(empleado);
+
+            String[] nombres = {"Café molido", "Azúcar", "Galletas"};
+            for (int i = 0; i < nombres.length; i++) {
+                Producto p = new Producto();
+                p.setNombre(nombres[i]);
+                p.setCantidad(100);
+                p.setPrecio(1000.0);
+                p.setActivo(true);
+                em.persist(p);
+
+                Venta v = new Venta();
+                v.setFecha(DESDE.plusDays(i + 1));
+                v.setUsuario(empleado);
+                v.setMetodoPago("EFECTIVO");
+                v.setTotal(new BigDecimal("2000.00"));
+                DetalleVenta d = new DetalleVenta();
+                d.setVenta(v);
+                d.setProducto(p);
+                d.setCantidad(2);
+                d.setPrecioUnitario(new BigDecimal("1000.00"));
+                v.getDetalles().add(d);
+                em.persist(v);
+            }
+        });
+
+        statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("DELETE FROM DetalleVenta").executeUpdate();
+            em.createQuery("DELETE FROM Venta").executeUpdate();
+            em.createQuery("DELETE FROM Producto").executeUpdate();
+            em.createQuery("DELETE FROM Usuario").executeUpdate();
+        });
+    }
+
+    @Test
+    void testResumenPdf_StreamsLinesInsideServiceTransaction() throws Exception {
+        assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reportService.generarResumenVentasPdf(DESDE, HASTA, null, null, null, out);
+
+        String texto = extraerTexto(out.toByteArray());
+        assertTrue(texto.contains("Café molido (2 x 1000.00)"), texto);
+        assertTrue(texto.contains("Azúcar (2 x 1000.00)"), texto);
+        assertTrue(texto.contains("Galletas (2 x 1000.00)"), texto);
+        // Resumen, top de productos y el cursor de líneas; las filas llegan como proyecciones, sin entidades
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void testStreamLineasAdmin_RequiresTransaction() {
+        assertThrows(InvalidDataAccessApiUsageException.class,
+                () -> ventaRepository.streamLineasAdmin(DESDE, HASTA, null, null, null).close());
+    }
+
+    @Test
+    void testStreamQueries_DeclareFetchSize() throws Exception {
+        Method admin = VentaRepository.class.getMethod("streamLineasAdmin",
+                LocalDateTime.class, LocalDateTime.class, Long.class, Long.class, String.class);
+        Method empleado = VentaRepository.class.getMethod("streamLineasEmpleado",
+                Long.class, LocalDateTime.class, LocalDateTime.class, Long.class, String.class);
+
+        // Sin fetch size, MySQL (useCursorFetch) entrega el resultado entero de una vez
+        assertEquals("500", fetchSize(admin));
+        assertEquals("500", fetchSize(empleado));
+    }
+
+    // Helper methods
+
+    private String fetchSize(Method metodo) {
+        QueryHints hints = metodo.getAnnotation(QueryHints.class);
+        assertNotNull(hints, metodo.getName() + " has no query hints");
+        for (QueryHint hint : hints.value()) {
+            if (HibernateHints.HINT_FETCH_SIZE.equals(hint.name())) return hint.value();
+        }
+        return null;
+    }
+
+    private String extraerTexto(byte[] pdf) throws Exception {
+        PdfReader reader = new PdfReader(pdf);
+        try {
+            StringBuilder texto = new StringBuilder();
+            for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+                texto.append(PdfTextExtractor.getTextFromPage(reader, i)).append('\n');
+            }
+            return texto.toString();
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -6,16 +6,29 @@ import com.alemandan.crm.model.Venta;
 import com.alemandan.crm.model.DetalleVenta;
 import com.alemandan.crm.repository.ProductoRepository;
 import com.alemandan.crm.repository.VentaRepository;
+import com.alemandan.crm.service.pdf.PdfResourceRegistry;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.parser.PdfTextExtractor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -35,12 +48,18 @@ class ReportServiceTest {
     @Mock
     private ProductoRepository productoRepository;
 
+    @Spy
+    private PdfResourceRegistry pdfResourceRegistry = new PdfResourceRegistry();
+
     @InjectMocks
     private ReportService reportService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(reportService, "agregadosCache", ReporteAgregadosCacheTest.nuevaCache(Clock.systemDefaultZone()));
+        // Las secciones del informe avanzado se ejecutan en el hilo del test
+        ReflectionTestUtils.setField(reportService, "reportSectionExecutor", (Executor) Runnable::run);
     }
 
     /**
@@ -68,14 +87,14 @@ class ReportServiceTest {
         assertNotNull(pdfData, "PDF data should not be null");
         assertTrue(pdfData.length > 0, "PDF data should not be empty");
         
-        // Verify repository methods were called
-        // totalVentasBetween is called twice (current period + previous period for growth calculation)
-        verify(ventaRepository, atLeast(1)).totalVentasBetween(any(), any());
-        verify(ventaRepository, atLeast(1)).countVentasBetween(any(), any());
+        // Verify repository methods were called once each
+        // Totals (current and previous period) come from the daily series, which also covers the previous period
+        verify(ventaRepository, never()).totalVentasBetween(any(), any());
+        verify(ventaRepository, times(1)).countVentasBetween(any(), any());
         verify(ventaRepository, times(1)).salesByProductBetween(any(), any());
         verify(ventaRepository, times(1)).salesByUserBetween(any(), any());
-        // For 30-day range (≤ 60 days), ventasPorDiaBetween is called instead of salesByMonthBetween
-        verify(ventaRepository, atLeast(1)).ventasPorDiaBetween(any(), any());
+        verify(ventaRepository, times(1)).ventasPorDiaBetween(eq(from.minusDays(30)), eq(to));
+        verify(ventaRepository, never()).salesByMonthBetween(any(), any());
     }
 
     /**
@@ -140,33 +159,26 @@ class ReportServiceTest {
         LocalDateTime from = LocalDateTime.now().minusDays(30);
         LocalDateTime to = LocalDateTime.now();
 
-        // Current period: 15000
-        when(ventaRepository.totalVentasBetween(eq(from), eq(to))).thenReturn(BigDecimal.valueOf(15000));
+        // One daily series covering both periods: previous 10000, current 15000 (should show 50% growth)
+        List<Object[]> ventasPorDia = new ArrayList<>();
+        ventasPorDia.add(new Object[]{from.toLocalDate().minusDays(10), BigDecimal.valueOf(10000)});
+        ventasPorDia.add(new Object[]{from.toLocalDate().plusDays(5), BigDecimal.valueOf(9000)});
+        ventasPorDia.add(new Object[]{to.toLocalDate(), BigDecimal.valueOf(6000)});
+        when(ventaRepository.ventasPorDiaBetween(any(), any())).thenReturn(ventasPorDia);
         when(ventaRepository.countVentasBetween(eq(from), eq(to))).thenReturn(20L);
         
-        // Previous period: 10000 (should show 50% growth)
-        when(ventaRepository.totalVentasBetween(any(LocalDateTime.class), any(LocalDateTime.class)))
-            .thenAnswer(invocation -> {
-                LocalDateTime argFrom = invocation.getArgument(0);
-                LocalDateTime argTo = invocation.getArgument(1);
-                if (argTo.isBefore(from)) {
-                    return BigDecimal.valueOf(10000); // Previous period
-                }
-                return BigDecimal.valueOf(15000); // Current period
-            });
-        
         when(ventaRepository.salesByProductBetween(any(), any())).thenReturn(createMockSalesByProduct());
         when(ventaRepository.salesByUserBetween(any(), any())).thenReturn(createMockSalesByUser());
-        when(ventaRepository.salesByMonthBetween(any(), any())).thenReturn(new ArrayList<>());
-        when(ventaRepository.ventasPorDiaBetween(any(), any())).thenReturn(new ArrayList<>());
         when(productoRepository.stockProductos()).thenReturn(new ArrayList<>());
 
         // Execute
-        byte[] pdfData = reportService.generarReporteVentasPdf(from, to, null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reportService.generarReporteVentasPdf(from, to, null, true, out);
 
         // Verify
-        assertNotNull(pdfData);
-        assertTrue(pdfData.length > 0);
+        String content = extraerTexto(out.toByteArray());
+        assertTrue(content.contains("50.0%"), "Growth vs previous period should be 50%");
+        verify(ventaRepository, never()).totalVentasBetween(any(), any());
     }
     
     /**
@@ -227,9 +239,9 @@ class ReportServiceTest {
         assertNotNull(pdfData, "Full PDF should not be null");
         assertTrue(pdfData.length > 0, "Full PDF should not be empty");
         
-        // Verify all repository methods were called for full report
-        verify(ventaRepository, atLeast(1)).totalVentasBetween(any(), any());
-        verify(ventaRepository, atLeast(1)).countVentasBetween(any(), any());
+        // Verify all repository methods were called for full report, once each
+        verify(ventaRepository, times(1)).ventasPorDiaBetween(any(), any());
+        verify(ventaRepository, times(1)).countVentasBetween(any(), any());
         verify(ventaRepository, times(1)).salesByProductBetween(any(), any());
         verify(ventaRepository, times(1)).salesByUserBetween(any(), any());
         verify(productoRepository, times(1)).stockProductos();
@@ -261,8 +273,165 @@ class ReportServiceTest {
         assertTrue(pdfData.length > 0);
     }
 
+    /**
+     * Test the streaming variant: writes a complete PDF to the given stream and leaves it open
+     * (the servlet container owns the response stream).
+     */
+    @Test
+    void testGenerarReporteVentasPdf_StreamsToOutputStreamWithoutClosingIt() throws Exception {
+        LocalDateTime from = LocalDateTime.now().minusDays(30);
+        LocalDateTime to = LocalDateTime.now();
+
+        when(ventaRepository.totalVentasBetween(any(), any())).thenReturn(BigDecimal.valueOf(15000.50));
+        when(ventaRepository.countVentasBetween(any(), any())).thenReturn(25L);
+        when(ventaRepository.salesByProductBetween(any(), any())).thenReturn(createMockSalesByProduct());
+        when(ventaRepository.salesByUserBetween(any(), any())).thenReturn(createMockSalesByUser());
+        when(ventaRepository.ventasPorDiaBetween(any(), any())).thenReturn(createMockSalesByDay());
+        when(productoRepository.stockProductos()).thenReturn(createMockStockProducts());
+
+        TrackingOutputStream out = new TrackingOutputStream();
+        reportService.generarReporteVentasPdf(from, to, null, true, out);
+
+        assertFalse(out.closed, "Streaming variant must not close the caller's stream");
+        String content = out.toString("ISO-8859-1");
+        assertTrue(content.startsWith("%PDF"), "Output should be a PDF");
+        assertTrue(content.contains("%%EOF"), "PDF should be complete");
+    }
+
+    /**
+     * Test that a long sales history is written in blocks: the stream receives data while rows are still being added,
+     * instead of one write at document close.
+     */
+    @Test
+    void testGenerarMisVentasPdfFromList_WritesLargeTableIncrementally() throws Exception {
+        List<Venta> ventas = new ArrayList<>();
+        for (long i = 1; i <= 2000; i++) {
+            ventas.add(createVentaConDetalle(i));
+        }
+
+        TrackingOutputStream out = new TrackingOutputStream();
+        reportService.generarMisVentasPdfFromList(ventas, LocalDateTime.now().minusDays(30), LocalDateTime.now(), "Empleado", out);
+
+        assertFalse(out.closed);
+        assertTrue(out.writes > 10, "Pages should be flushed to the stream as they are completed");
+        assertTrue(out.toString("ISO-8859-1").contains("%%EOF"));
+    }
+
+    /**
+     * Test that the admin summary PDF takes totals from aggregate queries and streams the detail table,
+     * without loading Venta entities.
+     */
+    @Test
+    void testGenerarResumenVentasPdf_StreamsRowsAndUsesAggregates() throws Exception {
+        List<Object[]> resumen = new ArrayList<>();
+        resumen.add(new Object[]{2L, BigDecimal.valueOf(4500)});
+        List<Object[]> top = new ArrayList<>();
+        top.add(new Object[]{1L, "Producto A", 3L});
+        List<Object[]> lineas = new ArrayList<>();
+        lineas.add(new Object[]{2L, LocalDateTime.now(), "Empleado", "e@crm.com", "Efectivo",
+                BigDecimal.valueOf(1500), BigDecimal.ZERO, BigDecimal.valueOf(1500), 1L, "Producto A", 1, BigDecimal.valueOf(1500), null});
+        lineas.add(new Object[]{1L, LocalDateTime.now(), "Empleado", "e@crm.com", "Efectivo",
+                BigDecimal.valueOf(3000), BigDecimal.ZERO, BigDecimal.valueOf(3000), 2L, "Producto A", 2, BigDecimal.valueOf(1500), null});
+        when(ventaRepository.resumenFiltradoAdmin(any(), any(), any(), any(), any())).thenReturn(resumen);
+        when(ventaRepository.topProductosFiltradoAdmin(any(), any(), any(), any(), any(), any())).thenReturn(top);
+        when(ventaRepository.streamLineasAdmin(any(), any(), any(), any(), any())).thenReturn(lineas.stream());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reportService.generarResumenVentasPdf(LocalDateTime.now().minusDays(30), LocalDateTime.now(), null, null, null, out);
+
+        assertTrue(out.toString("ISO-8859-1").startsWith("%PDF"));
+        verify(ventaRepository).streamLineasAdmin(any(), any(), any(), any(), any());
+        verify(ventaRepository, never()).filtrarAdmin(any(), any(), any(), any(), any());
+    }
+
+    /**
+     * Test that the independent sections of the advanced report query in parallel: the three mocked queries
+     * only return once all of them are running, so a sequential build would time out at the barrier.
+     */
+    @Test
+    void testGenerarReporteVentasPdf_BuildsSectionsInParallel() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        ReflectionTestUtils.setField(reportService, "reportSectionExecutor", executor);
+        try {
+            CyclicBarrier barrier = new CyclicBarrier(3);
+            when(ventaRepository.totalVentasBetween(any(), any())).thenReturn(BigDecimal.valueOf(15000.50));
+            when(ventaRepository.countVentasBetween(any(), any())).thenReturn(25L);
+            when(ventaRepository.salesByProductBetween(any(), any())).thenAnswer(inv -> {
+                barrier.await(5, TimeUnit.SECONDS);
+                return createMockSalesByProduct();
+            });
+            when(ventaRepository.salesByUserBetween(any(), any())).thenAnswer(inv -> {
+                barrier.await(5, TimeUnit.SECONDS);
+                return createMockSalesByUser();
+            });
+            when(productoRepository.stockProductos()).thenAnswer(inv -> {
+                barrier.await(5, TimeUnit.SECONDS);
+                return createMockStockProducts();
+            });
+            when(ventaRepository.ventasPorDiaBetween(any(), any())).thenReturn(createMockSalesByDay());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            reportService.generarReporteVentasPdf(LocalDateTime.now().minusDays(30), LocalDateTime.now(), null, true, out);
+
+            String content = out.toString("ISO-8859-1");
+            assertTrue(content.startsWith("%PDF"));
+            assertTrue(content.contains("%%EOF"));
+            verify(ventaRepository, times(1)).salesByProductBetween(any(), any());
+            verify(ventaRepository, times(1)).salesByUserBetween(any(), any());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     // Helper methods to create mock data
 
+    private String extraerTexto(byte[] pdf) throws Exception {
+        PdfReader reader = new PdfReader(pdf);
+        try {
+            StringBuilder texto = new StringBuilder();
+            for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+                texto.append(PdfTextExtractor.getTextFromPage(reader, i)).append('\n');
+            }
+            return texto.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private Venta createVentaConDetalle(Long id) {
+        Producto p = new Producto();
+        p.setId(id % 20);
+        p.setNombre("Producto " + (id % 20));
+        DetalleVenta d = new DetalleVenta();
+        d.setProducto(p);
+        d.setCantidad(2);
+        d.setPrecioUnitario(BigDecimal.valueOf(1500));
+        Venta v = new Venta();
+        v.setId(id);
+        v.setFecha(LocalDateTime.now().minusMinutes(id));
+        v.setMetodoPago("Efectivo");
+        v.setTotal(BigDecimal.valueOf(3000));
+        v.getDetalles().add(d);
+        return v;
+    }
+
+    private static class TrackingOutputStream extends ByteArrayOutputStream {
+        boolean closed = false;
+        int writes = 0;
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            writes++;
+            super.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+
     private List<Object[]> createMockSalesByProduct() {
         List<Object[]> result = new ArrayList<>();
         // [productoId, productoNombre, cantidadVendida, totalMonto]
@@ -294,10 +463,11 @@ class ReportServiceTest {
 
     private List<Object[]> createMockSalesByDay() {
         List<Object[]> result = new ArrayList<>();
-        // [fecha, totalMonto]
-        result.add(new Object[]{"2024-03-01", BigDecimal.valueOf(500.00)});
-        result.add(new Object[]{"2024-03-02", BigDecimal.valueOf(750.00)});
-        result.add(new Object[]{"2024-03-03", BigDecimal.valueOf(600.00)});
+        // [dia, totalMonto], dentro de los últimos días (los informes usan periodos relativos a hoy)
+        LocalDate hoy = LocalDate.now();
+        result.add(new Object[]{hoy.minusDays(3), BigDecimal.valueOf(500.00)});
+        result.add(new Object[]{hoy.minusDays(2), BigDecimal.valueOf(750.00)});
+        result.add(new Object[]{hoy.minusDays(1), BigDecimal.valueOf(600.00)});
         return result;
     }
 
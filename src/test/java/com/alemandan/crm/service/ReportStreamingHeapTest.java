@@ -0,0 +1,143 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.dto.VentaExportada;
+import com.alemandan.crm.service.pdf.PdfResourceRegistry;
+import com.alemandan.crm.util.ExcelVentasStreamWriter;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the streaming report builders under a fixed heap budget.
+ *
+ * Lanza una JVM hija con -Xmx64m que exporta 2 millones de filas (1M ventas de 2 líneas) a Excel
+ * y 200k filas al PDF de historial, generadas al vuelo con la misma forma que VentaRepository.streamLineas*.
+ * Si algún builder acumulara filas o entidades, la JVM hija terminaría con OutOfMemoryError.
+ * La prueba de heap tarda minutos: lleva el tag "slow" y sólo corre con el perfil slow-tests
+ * (mvn -Pslow-tests test). El camino real del cursor (streamLineasAdmin) lo cubre ReportServiceStreamingTest.
+ */
+class ReportStreamingHeapTest {
+
+    private static final String HEAP = "-Xmx64m";
+    private static final int VENTAS_EXCEL = 1_000_000;
+    private static final int VENTAS_PDF = 100_000;
+
+    @Test
+    @Tag("slow")
+    void testExportsOfMillionsOfRowsRunWithinFixedHeap() throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process proceso = new ProcessBuilder(java, HEAP, "-cp", System.getProperty("java.class.path"),
+                Sonda.class.getName(), String.valueOf(VENTAS_EXCEL), String.valueOf(VENTAS_PDF))
+                .redirectErrorStream(true)
+                .start();
+
+        StringBuilder salida = new StringBuilder();
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(proceso.getInputStream(), StandardCharsets.UTF_8))) {
+            String linea;
+            while ((linea = r.readLine()) != null) salida.append(linea).append('\n');
+        }
+        assertTrue(proceso.waitFor(10, TimeUnit.MINUTES), "Child JVM timed out");
+
+        // La JVM hija verifica sus resultados y termina con error (y la traza en la salida) si algo falla
+        assertEquals(0, proceso.exitValue(), "Export failed with " + HEAP + ":\n" + salida);
+    }
+
+    @Test
+    void testAgrupar_GroupsConsecutiveLinesAndKeepsSalesWithoutLines() {
+        Iterator<VentaExportada> it = VentaExportada.agrupar(List.of(
+                fila(3L, 1L, "Café"), fila(3L, 2L, "Azúcar"), fila(2L, null, null), fila(1L, 3L, null)).iterator());
+
+        VentaExportada v3 = it.next();
+        assertEquals(3L, v3.getId());
+        assertEquals(List.of("Café", "Azúcar"), v3.getLineas().stream().map(VentaExportada.Linea::getProducto).toList());
+        assertTrue(it.next().getLineas().isEmpty());
+        VentaExportada v1 = it.next();
+        assertEquals(1, v1.getLineas().size());
+        assertNull(v1.getLineas().get(0).getProducto(), "Deleted product");
+        assertFalse(it.hasNext());
+    }
+
+    // Helper methods
+
+    private static Object[] fila(long ventaId, Long detalleId, String producto) {
+        return new Object[]{ventaId, LocalDateTime.of(2025, 3, 10, 12, 0), "Empleado", "empleado@crm.com", "Efectivo",
+                new BigDecimal("100.00"), new BigDecimal("19.00"), new BigDecimal("119.00"),
+                detalleId, producto, 2, new BigDecimal("50.00"), null};
+    }
+
+    /**
+     * Filas generadas sin guardar nada: 2 líneas por venta, 300 productos distintos.
+     */
+    private static Iterator<Object[]> filas(int ventas) {
+        return new Iterator<>() {
+            private long i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < ventas * 2L;
+            }
+
+            @Override
+            public Object[] next() {
+                long venta = i / 2;
+                i++;
+                return new Object[]{venta, LocalDateTime.of(2025, 1, 1, 0, 0).plusMinutes(venta), "Empleado", "empleado@crm.com",
+                        "Efectivo", new BigDecimal("100.00"), new BigDecimal("19.00"), new BigDecimal("119.00"),
+                        i, "Producto " + (venta % 300), 2, new BigDecimal("50.00"), null};
+            }
+        };
+    }
+
+    private static class Descarte extends OutputStream {
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+
+    /**
+     * Punto de entrada de la JVM hija.
+     */
+    static class Sonda {
+        public static void main(String[] args) throws Exception {
+            int ventasExcel = Integer.parseInt(args[0]);
+            int ventasPdf = Integer.parseInt(args[1]);
+
+            Descarte excel = new Descarte();
+            int exportadas = ExcelVentasStreamWriter.escribirVentas(VentaExportada.agrupar(filas(ventasExcel)), true, "Ventas", excel);
+            assertEquals(ventasExcel, exportadas);
+            assertTrue(excel.bytes > 0);
+
+            ReportService reportService = new ReportService();
+            ReflectionTestUtils.setField(reportService, "pdfResourceRegistry", new PdfResourceRegistry());
+            ReflectionTestUtils.setField(reportService, "agregadosCache", ReporteAgregadosCacheTest.nuevaCache(Clock.systemDefaultZone()));
+            ReflectionTestUtils.setField(reportService, "reportSectionExecutor", (Executor) Runnable::run);
+            Descarte pdf = new Descarte();
+            reportService.generarMisVentasPdf(VentaExportada.agrupar(filas(ventasPdf)), LocalDateTime.now().minusDays(30),
+                    LocalDateTime.now(), "Empleado", pdf);
+            assertTrue(pdf.bytes > 0);
+        }
+    }
+}
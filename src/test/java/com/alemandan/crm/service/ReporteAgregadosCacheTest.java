@@ -0,0 +1,180 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.events.VentaRegistradaEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ReporteAgregadosCache
+ */
+class ReporteAgregadosCacheTest {
+
+    private static final ZoneId ZONA = ZoneId.systemDefault();
+    private static final LocalDateTime AHORA = LocalDateTime.of(2025, 3, 15, 12, 0);
+
+    private ReporteAgregadosCache cache;
+    private MutableClock clock;
+    private AtomicInteger consultas;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(AHORA.atZone(ZONA).toInstant());
+        cache = nuevaCache(clock);
+        consultas = new AtomicInteger();
+    }
+
+    @Test
+    void testClosedPeriod_NeverExpires() {
+        LocalDateTime desde = LocalDateTime.of(2025, 2, 1, 0, 0);
+        LocalDateTime hasta = LocalDateTime.of(2025, 2, 28, 23, 59);
+
+        assertEquals(BigDecimal.TEN, total(desde, hasta));
+        clock.avanzar(Duration.ofDays(30));
+        assertEquals(BigDecimal.TEN, total(desde, hasta));
+
+        assertEquals(1, consultas.get(), "A closed month must be computed once");
+        assertEquals(0.5, cache.hitRatio(), 0.001);
+    }
+
+    @Test
+    void testOpenPeriod_ExpiresAfterShortTtl() {
+        LocalDateTime desde = LocalDateTime.of(2025, 3, 1, 0, 0);
+
+        total(desde, AHORA);
+        clock.avanzar(Duration.ofSeconds(30));
+        total(desde, AHORA);
+        assertEquals(1, consultas.get());
+
+        clock.avanzar(Duration.ofSeconds(31));
+        total(desde, AHORA);
+        assertEquals(2, consultas.get(), "Open periods must be recomputed after the TTL");
+    }
+
+    @Test
+    void testSale_InvalidatesOnlyPeriodsContainingItsDay() {
+        LocalDateTime febrero = LocalDateTime.of(2025, 2, 1, 0, 0);
+        LocalDateTime finFebrero = LocalDateTime.of(2025, 2, 28, 23, 59);
+        LocalDateTime marzo = LocalDateTime.of(2025, 3, 1, 0, 0);
+
+        total(febrero, finFebrero);
+        total(marzo, AHORA);
+        cache.registrarVenta(new VentaRegistradaEvent(1L, 1L, AHORA, BigDecimal.ONE));
+
+        total(febrero, finFebrero);
+        assertEquals(2, consultas.get(), "February does not contain the sale");
+        total(marzo, AHORA);
+        assertEquals(3, consultas.get(), "March contains the sale");
+
+        // Venta con fecha atrasada: invalida también el mes cerrado
+        cache.invalidarDia(LocalDate.of(2025, 2, 10));
+        total(febrero, finFebrero);
+        assertEquals(4, consultas.get());
+    }
+
+    @Test
+    void testKey_IncludesQueryAndFilters() {
+        LocalDateTime desde = LocalDateTime.of(2025, 2, 1, 0, 0);
+        LocalDateTime hasta = LocalDateTime.of(2025, 2, 28, 23, 59);
+
+        cache.porInstantes("resumenFiltradoAdmin", desde, hasta, this::fila, 1L, null, "EFECTIVO");
+        cache.porInstantes("resumenFiltradoAdmin", desde, hasta, this::fila, 1L, null, "TARJETA");
+        cache.porInstantes("resumenFiltradoAdmin", desde, hasta, this::fila, 1L, null, "EFECTIVO");
+        cache.porInstantes("topProductosFiltradoAdmin", desde, hasta, this::fila, 1L, null, "EFECTIVO");
+        cache.porInstantes("resumenFiltradoAdmin", desde, hasta.minusHours(1), this::fila, 1L, null, "EFECTIVO");
+
+        assertEquals(4, consultas.get());
+    }
+
+    @Test
+    void testCachedLists_AreUnmodifiable() {
+        LocalDateTime desde = LocalDateTime.of(2025, 2, 1, 0, 0);
+        LocalDateTime hasta = LocalDateTime.of(2025, 2, 28, 23, 59);
+
+        List<Object[]> filas = cache.porDias("salesByProductBetween", desde, hasta, this::fila);
+
+        assertThrows(UnsupportedOperationException.class, () -> filas.add(new Object[0]));
+    }
+
+    @Test
+    void testEviction_BoundedBySize() {
+        ReflectionTestUtils.setField(cache, "maxEntradas", 2);
+        ReflectionTestUtils.invokeMethod(cache, "init");
+        LocalDateTime desde = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+        for (int dia = 1; dia <= 3; dia++) {
+            total(desde, LocalDateTime.of(2025, 2, dia, 0, 0));
+        }
+        total(desde, LocalDateTime.of(2025, 2, 1, 0, 0));
+
+        assertEquals(4, consultas.get(), "The least recently used entry must be evicted");
+    }
+
+    // Helper methods
+
+    /**
+     * Caché como la deja Spring con los valores por defecto (max-entradas 500, ttl-abierto-segundos 60).
+     */
+    static ReporteAgregadosCache nuevaCache(Clock clock) {
+        ReporteAgregadosCache cache = new ReporteAgregadosCache();
+        ReflectionTestUtils.setField(cache, "clock", clock);
+        ReflectionTestUtils.setField(cache, "maxEntradas", 500);
+        ReflectionTestUtils.setField(cache, "ttlAbiertoSegundos", 60L);
+        ReflectionTestUtils.invokeMethod(cache, "init");
+        return cache;
+    }
+
+    private BigDecimal total(LocalDateTime desde, LocalDateTime hasta) {
+        return cache.porDias("totalVentasBetween", desde, hasta, () -> {
+            consultas.incrementAndGet();
+            return BigDecimal.TEN;
+        });
+    }
+
+    private List<Object[]> fila() {
+        consultas.incrementAndGet();
+        List<Object[]> filas = new ArrayList<>();
+        filas.add(new Object[]{1L, BigDecimal.TEN});
+        return filas;
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant instante;
+
+        MutableClock(Instant instante) {
+            this.instante = instante;
+        }
+
+        void avanzar(Duration duracion) {
+            instante = instante.plus(duracion);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZONA;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instante;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.repository.ProductoRepository;
+import com.alemandan.crm.repository.VentaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ReportePdfCache
+ */
+class ReportePdfCacheTest {
+
+    private static final LocalDateTime DESDE = LocalDateTime.of(2025, 2, 1, 0, 0);
+    private static final LocalDateTime HASTA = LocalDateTime.of(2025, 2, 28, 23, 59, 59);
+
+    @Mock
+    private VentaRepository ventaRepository;
+
+    @Mock
+    private ProductoRepository productoRepository;
+
+    @InjectMocks
+    private ReportePdfCache cache;
+
+    @TempDir
+    Path uploads;
+
+    private AtomicInteger generaciones;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(cache, "uploadsDir", uploads.toString());
+        ReflectionTestUtils.invokeMethod(cache, "init");
+        generaciones = new AtomicInteger();
+
+        when(ventaRepository.versionEntre(any(), any())).thenReturn(version(10L, 100L));
+        when(productoRepository.firmaStock()).thenReturn(version(5L, 40L));
+    }
+
+    @Test
+    void testSameParamsAndData_ServedFromDisk() throws Exception {
+        ReportePdfCache.Entrada primera = obtener("avanzado", 1L);
+        ReportePdfCache.Entrada segunda = obtener("avanzado", 1L);
+
+        assertEquals(1, generaciones.get(), "The PDF must be rendered once");
+        assertEquals(primera.getEtag(), segunda.getEtag());
+        assertEquals(primera.getArchivo(), segunda.getArchivo());
+        assertEquals("PDF 1", Files.readString(segunda.getArchivo(), StandardCharsets.ISO_8859_1));
+        assertTrue(primera.getEtag().startsWith("\"") && primera.getEtag().endsWith("\""));
+    }
+
+    @Test
+    void testClave_EtagKnownBeforeRendering() throws Exception {
+        ReportePdfCache.Clave clave = cache.clave("avanzado", DESDE, HASTA, true, 1L);
+
+        assertEquals(0, generaciones.get(), "Computing the ETag must not render the PDF");
+        try (ReportePdfCache.Entrada pdf = cache.obtener(clave, this::generar)) {
+            assertEquals(clave.getEtag(), pdf.getEtag());
+        }
+    }
+
+    @Test
+    void testNewSaleInRange_Rerenders() throws Exception {
+        ReportePdfCache.Entrada antes = obtener("avanzado", 1L);
+        when(ventaRepository.versionEntre(any(), any())).thenReturn(version(11L, 101L));
+        ReportePdfCache.Entrada despues = obtener("avanzado", 1L);
+
+        assertEquals(2, generaciones.get());
+        assertNotEquals(antes.getEtag(), despues.getEtag());
+    }
+
+    @Test
+    void testStockChange_OnlyAffectsReportsWithStock() throws Exception {
+        obtener("avanzado", 1L);
+        cache.obtener("resumen", DESDE, HASTA, false, this::generar, 1L).close();
+        verify(productoRepository, times(1)).firmaStock();
+
+        when(productoRepository.firmaStock()).thenReturn(version(5L, 39L));
+        obtener("avanzado", 1L);
+        cache.obtener("resumen", DESDE, HASTA, false, this::generar, 1L).close();
+
+        assertEquals(3, generaciones.get(), "Only the report with stock must be rendered again");
+    }
+
+    @Test
+    void testNewBuild_ChangesEtag() throws Exception {
+        String etag = cache.clave("avanzado", DESDE, HASTA, true, 1L).getEtag();
+
+        ReflectionTestUtils.setField(cache, "buildProperties", build("2025-03-01T10:00:00Z"));
+        ReflectionTestUtils.invokeMethod(cache, "init");
+        String conBuild = cache.clave("avanzado", DESDE, HASTA, true, 1L).getEtag();
+        assertNotEquals(etag, conBuild, "A deploy may change the PDF layout: old ETags must not match");
+        assertEquals(conBuild, cache.clave("avanzado", DESDE, HASTA, true, 1L).getEtag());
+
+        ReflectionTestUtils.setField(cache, "buildProperties", build("2025-03-02T10:00:00Z"));
+        ReflectionTestUtils.invokeMethod(cache, "init");
+        assertNotEquals(conBuild, cache.clave("avanzado", DESDE, HASTA, true, 1L).getEtag());
+    }
+
+    @Test
+    void testDifferentParams_DifferentEntries() throws Exception {
+        ReportePdfCache.Entrada a = obtener("avanzado", 1L);
+        ReportePdfCache.Entrada b = obtener("avanzado", 2L);
+        ReportePdfCache.Entrada c = obtener("resumen", 1L);
+
+        assertEquals(3, generaciones.get());
+        assertNotEquals(a.getEtag(), b.getEtag());
+        assertNotEquals(a.getEtag(), c.getEtag());
+    }
+
+    @Test
+    void testFailedRender_LeavesNoFile() throws Exception {
+        assertThrows(IllegalStateException.class, () -> cache.obtener("avanzado", DESDE, HASTA, true, out -> {
+            out.write(new byte[]{1, 2, 3});
+            throw new IllegalStateException("fallo");
+        }, 1L));
+
+        try (var archivos = Files.list(uploads.resolve(ReportePdfCache.SUBDIRECTORIO))) {
+            assertEquals(0, archivos.count(), "Partial files must be removed");
+        }
+        obtener("avanzado", 1L);
+        assertEquals(1, generaciones.get());
+    }
+
+    @Test
+    void testEviction_LeastRecentlyUsedFileRemoved() throws Exception {
+        ReflectionTestUtils.setField(cache, "maxMb", 1L);
+        byte[] medioMega = new byte[600 * 1024];
+
+        ReportePdfCache.Entrada a = cache.obtener("avanzado", DESDE, HASTA, true, out -> out.write(medioMega), 1L);
+        a.close();
+        ReportePdfCache.Entrada b = cache.obtener("avanzado", DESDE, HASTA, true, out -> out.write(medioMega), 2L);
+        b.close();
+
+        assertFalse(Files.exists(a.getArchivo()), "The oldest PDF must be evicted");
+        assertTrue(Files.exists(b.getArchivo()));
+        assertEquals(medioMega.length, cache.getTotalBytes());
+    }
+
+    @Test
+    void testEviction_SkipsFilesBeingServed() throws Exception {
+        ReflectionTestUtils.setField(cache, "maxMb", 1L);
+        byte[] medioMega = new byte[600 * 1024];
+
+        ReportePdfCache.Entrada a = cache.obtener("avanzado", DESDE, HASTA, true, out -> out.write(medioMega), 1L);
+        ReportePdfCache.Entrada b = cache.obtener("avanzado", DESDE, HASTA, true, out -> out.write(medioMega), 2L);
+
+        // Los dos se están enviando: siguen en disco aunque se pase del límite
+        assertTrue(Files.exists(a.getArchivo()));
+        assertTrue(Files.exists(b.getArchivo()));
+        assertEquals(2L * medioMega.length, cache.getTotalBytes());
+        assertEquals(medioMega.length, leer(a));
+
+        a.close();
+        a.close();
+        assertFalse(Files.exists(a.getArchivo()), "Once released, the oldest PDF must be evicted");
+        assertTrue(Files.exists(b.getArchivo()));
+        b.close();
+        assertEquals(medioMega.length, cache.getTotalBytes());
+    }
+
+    @Test
+    void testFileDeletedFromDisk_Rerenders() throws Exception {
+        ReportePdfCache.Entrada primera = obtener("avanzado", 1L);
+        Files.delete(primera.getArchivo());
+
+        ReportePdfCache.Entrada segunda = obtener("avanzado", 1L);
+
+        assertEquals(2, generaciones.get());
+        assertEquals(primera.getEtag(), segunda.getEtag());
+        assertEquals("PDF 2", Files.readString(segunda.getArchivo(), StandardCharsets.ISO_8859_1));
+        assertEquals(Files.size(segunda.getArchivo()), cache.getTotalBytes());
+    }
+
+    // Helper methods
+
+    private ReportePdfCache.Entrada obtener(String tipo, Long productoId) throws Exception {
+        try (ReportePdfCache.Entrada pdf = cache.obtener(tipo, DESDE, HASTA, true, this::generar, productoId)) {
+            return pdf;
+        }
+    }
+
+    private int leer(ReportePdfCache.Entrada pdf) throws java.io.IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) pdf.getTamano());
+        while (buffer.hasRemaining() && pdf.getCanal().read(buffer) >= 0) {
+            // leer hasta el final
+        }
+        return buffer.position();
+    }
+
+    private void generar(java.io.OutputStream out) throws java.io.IOException {
+        out.write(("PDF " + generaciones.incrementAndGet()).getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static BuildProperties build(String time) {
+        Properties p = new Properties();
+        p.setProperty("version", "0.0.1-SNAPSHOT");
+        p.setProperty("time", time);
+        return new BuildProperties(p);
+    }
+
+    private static List<Object[]> version(Long cantidad, Long maxId) {
+        List<Object[]> filas = new ArrayList<>();
+        filas.add(new Object[]{cantidad, maxId});
+        return filas;
+    }
+}
@@ -0,0 +1,119 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.model.DetalleVenta;
+import com.alemandan.crm.model.Producto;
+import com.alemandan.crm.model.Usuario;
+import com.alemandan.crm.model.Venta;
+import com.alemandan.crm.repository.VentaResumenDiarioRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ResumenDiarioService
+ */
+class ResumenDiarioServiceTest {
+
+    @Mock
+    private VentaResumenDiarioRepository resumenRepository;
+
+    @InjectMocks
+    private ResumenDiarioService resumenDiarioService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testRegistrarVenta_OneUpsertPerProductInIdOrder() {
+        Venta venta = createVenta(LocalDateTime.of(2025, 3, 10, 15, 30), 7L, "Tarjeta");
+        venta.getDetalles().add(createDetalle(20L, 1, "500", "95.00"));
+        venta.getDetalles().add(createDetalle(5L, 2, "1000", "380.00"));
+        venta.getDetalles().add(createDetalle(20L, 3, "500", "285.00"));
+
+        resumenDiarioService.registrarVenta(venta);
+
+        LocalDate dia = LocalDate.of(2025, 3, 10);
+        InOrder orden = inOrder(resumenRepository);
+        // La venta cuenta una sola vez: en el producto de su primera línea (20)
+        orden.verify(resumenRepository).acumular(dia, 5L, 7L, "Tarjeta", 2L,
+                new BigDecimal("2000"), new BigDecimal("380.00"), 0L);
+        orden.verify(resumenRepository).acumular(dia, 20L, 7L, "Tarjeta", 4L,
+                new BigDecimal("2000"), new BigDecimal("380.00"), 1L);
+        verifyNoMoreInteractions(resumenRepository);
+    }
+
+    @Test
+    void testRegistrarVenta_MissingUserAndPaymentMethodUseDefaults() {
+        Venta venta = createVenta(LocalDateTime.of(2025, 3, 10, 9, 0), null, null);
+        venta.getDetalles().add(createDetalle(1L, 1, "100", "0.00"));
+
+        resumenDiarioService.registrarVenta(venta);
+
+        verify(resumenRepository).acumular(eq(LocalDate.of(2025, 3, 10)), eq(1L), eq(0L), eq(""),
+                eq(1L), any(BigDecimal.class), any(BigDecimal.class), eq(1L));
+    }
+
+    @Test
+    void testReconstruir_DeletesThenRebuildsRange() {
+        LocalDate desde = LocalDate.of(2025, 1, 1);
+        LocalDate hasta = LocalDate.of(2025, 12, 31);
+        when(resumenRepository.reconstruirRango(desde, hasta)).thenReturn(1200);
+
+        assertEquals(1200, resumenDiarioService.reconstruir(desde, hasta));
+
+        InOrder orden = inOrder(resumenRepository);
+        orden.verify(resumenRepository).borrarRango(desde, hasta);
+        orden.verify(resumenRepository).reconstruirRango(desde, hasta);
+    }
+
+    @Test
+    void testReconstruir_InvalidRangeIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> resumenDiarioService.reconstruir(LocalDate.of(2025, 2, 1), LocalDate.of(2025, 1, 1)));
+        verify(resumenRepository, never()).borrarRango(any(), any());
+        verify(resumenRepository, never()).acumular(any(), anyLong(), anyLong(), anyString(),
+                anyLong(), any(), any(), anyLong());
+    }
+
+    // Helper methods
+
+    private Venta createVenta(LocalDateTime fecha, Long usuarioId, String metodoPago) {
+        Venta v = new Venta();
+        v.setId(1L);
+        v.setFecha(fecha);
+        v.setMetodoPago(metodoPago);
+        if (usuarioId != null) {
+            Usuario u = new Usuario();
+            u.setId(usuarioId);
+            v.setUsuario(u);
+        }
+        return v;
+    }
+
+    private DetalleVenta createDetalle(Long productoId, int cantidad, String precio, String ivaMonto) {
+        Producto p = new Producto();
+        p.setId(productoId);
+        DetalleVenta d = new DetalleVenta();
+        d.setProducto(p);
+        d.setCantidad(cantidad);
+        d.setPrecioUnitario(new BigDecimal(precio));
+        d.setIvaMonto(new BigDecimal(ivaMonto));
+        return d;
+    }
+}
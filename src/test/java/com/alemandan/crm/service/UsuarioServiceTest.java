@@ -0,0 +1,122 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.model.Usuario;
+import com.alemandan.crm.repository.UsuarioRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for UsuarioService user cache
+ */
+class UsuarioServiceTest {
+
+    @Mock
+    private UsuarioRepository usuarioRepository;
+
+    @Mock
+    private DashboardCounters dashboardCounters;
+
+    @InjectMocks
+    private UsuarioService usuarioService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(usuarioService, "meterRegistry", meterRegistry);
+        usuarioService.init();
+        when(usuarioRepository.findByEmail("cajero@crm.com")).thenReturn(usuario("cajero@crm.com", "hash-1"));
+        when(usuarioRepository.save(any(Usuario.class))).thenAnswer(inv -> inv.getArgument(0));
+    }
+
+    @Test
+    void testFindByEmail_CashierSessionHitsDatabaseOnce() {
+        for (int i = 0; i < 50; i++) {
+            Usuario u = usuarioService.findByEmail(i % 2 == 0 ? "cajero@crm.com" : "CAJERO@crm.com");
+            assertEquals(1L, u.getId());
+        }
+
+        verify(usuarioRepository, times(1)).findByEmail(any());
+        assertEquals(49, usuarioService.getCacheHits());
+        assertEquals(1, usuarioService.getCacheMisses());
+        assertEquals(49.0, meterRegistry.get("cache.gets").tag("cache", "usuarios").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "usuarios").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void testFindByEmail_ReturnsCopiesAndDoesNotCacheUnknownEmails() {
+        Usuario primero = usuarioService.findByEmail("cajero@crm.com");
+        primero.setNombre("Modificado sin guardar");
+        assertEquals("Cajero", usuarioService.findByEmail("cajero@crm.com").getNombre());
+
+        assertNull(usuarioService.findByEmail("nadie@crm.com"));
+        assertNull(usuarioService.findByEmail("nadie@crm.com"));
+        verify(usuarioRepository, times(2)).findByEmail("nadie@crm.com");
+    }
+
+    @Test
+    void testFindByEmail_MissAlsoReturnsDetachedCopy() {
+        Usuario gestionado = usuario("admin@crm.com", "hash-1");
+        when(usuarioRepository.findByEmail("admin@crm.com")).thenReturn(gestionado);
+
+        Usuario miss = usuarioService.findByEmail("admin@crm.com");
+        assertNotSame(gestionado, miss, "A miss must not hand out the repository's managed entity");
+        miss.setNombre("Modificado sin guardar");
+
+        Usuario hit = usuarioService.findByEmail("admin@crm.com");
+        assertNotSame(miss, hit);
+        assertEquals("Cajero", hit.getNombre());
+        assertEquals("Cajero", gestionado.getNombre());
+    }
+
+    @Test
+    void testSaveUsuario_PasswordChangeVisibleToLogin() {
+        CustomUserDetailsService userDetailsService = new CustomUserDetailsService();
+        ReflectionTestUtils.setField(userDetailsService, "usuarioService", usuarioService);
+        assertEquals("hash-1", userDetailsService.loadUserByUsername("cajero@crm.com").getPassword());
+
+        Usuario u = usuarioService.findByEmail("cajero@crm.com");
+        u.setPassword("hash-2");
+        usuarioService.saveUsuario(u);
+        when(usuarioRepository.findByEmail("cajero@crm.com")).thenReturn(usuario("cajero@crm.com", "hash-2"));
+
+        UserDetails despues = userDetailsService.loadUserByUsername("cajero@crm.com");
+        assertEquals("hash-2", despues.getPassword());
+        verify(usuarioRepository, times(2)).findByEmail("cajero@crm.com");
+        verify(dashboardCounters).invalidarCatalogo();
+    }
+
+    @Test
+    void testSaveUsuario_EmailChangeDropsOldEntry() {
+        Usuario u = usuarioService.findByEmail("cajero@crm.com");
+        u.setEmail("nuevo@crm.com");
+        usuarioService.saveUsuario(u);
+        when(usuarioRepository.findByEmail("cajero@crm.com")).thenReturn(null);
+
+        assertNull(usuarioService.findByEmail("cajero@crm.com"));
+    }
+
+    // Helper methods
+
+    private Usuario usuario(String email, String password) {
+        Usuario u = new Usuario();
+        u.setId(1L);
+        u.setNombre("Cajero");
+        u.setEmail(email);
+        u.setPassword(password);
+        u.setRol("EMPLEADO");
+        u.setActivo(true);
+        return u;
+    }
+}
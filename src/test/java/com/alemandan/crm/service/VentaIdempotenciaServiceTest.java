@@ -0,0 +1,133 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.model.Usuario;
+import com.alemandan.crm.model.Venta;
+import com.alemandan.crm.repository.VentaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for VentaIdempotenciaService
+ */
+class VentaIdempotenciaServiceTest {
+
+    private static final String CLAVE = "3f1c2a9e-7b4d-4e1a-9c55-0a1b2c3d4e5f";
+
+    @Mock
+    private VentaService ventaService;
+
+    @Mock
+    private VentaRepository ventaRepository;
+
+    @InjectMocks
+    private VentaIdempotenciaService ventaIdempotenciaService;
+
+    private Usuario cajero;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.invokeMethod(ventaIdempotenciaService, "init");
+        cajero = createUsuario(7L);
+        when(ventaRepository.findByIdempotencyKey(anyString())).thenReturn(Optional.empty());
+    }
+
+    @Test
+    void testRegistrar_RetryReturnsOriginalSaleWithoutReprocessing() {
+        Venta original = createVenta(10L, cajero);
+        when(ventaService.procesarYGuardarVenta(any(Venta.class))).thenReturn(original);
+        when(ventaRepository.findById(10L)).thenReturn(Optional.of(original));
+
+        Venta primera = ventaIdempotenciaService.registrar(createVenta(null, cajero), CLAVE);
+        Venta reintento = ventaIdempotenciaService.registrar(createVenta(null, cajero), CLAVE);
+
+        assertEquals(10L, primera.getId());
+        assertSame(original, reintento);
+        verify(ventaService, times(1)).procesarYGuardarVenta(any(Venta.class));
+        // El reintento se resuelve desde la caché en memoria, sin buscar por clave en BD
+        verify(ventaRepository, times(1)).findByIdempotencyKey(CLAVE);
+    }
+
+    @Test
+    void testRegistrar_KeyFoundInDatabaseAfterRestart() {
+        Venta original = createVenta(20L, cajero);
+        when(ventaRepository.findByIdempotencyKey(CLAVE)).thenReturn(Optional.of(original));
+
+        Venta result = ventaIdempotenciaService.registrar(createVenta(null, cajero), CLAVE);
+
+        assertSame(original, result);
+        verify(ventaService, never()).procesarYGuardarVenta(any(Venta.class));
+    }
+
+    @Test
+    void testRegistrar_ConcurrentDuplicateReturnsWinningSale() {
+        Venta ganadora = createVenta(30L, cajero);
+        when(ventaService.procesarYGuardarVenta(any(Venta.class)))
+                .thenThrow(new DataIntegrityViolationException("Duplicate entry for key 'uk_venta_idempotency_key'"));
+        when(ventaRepository.findByIdempotencyKey(CLAVE))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(ganadora));
+
+        Venta result = ventaIdempotenciaService.registrar(createVenta(null, cajero), CLAVE);
+
+        assertSame(ganadora, result);
+    }
+
+    @Test
+    void testRegistrar_KeyFromAnotherUserIsRejected() {
+        Venta ajena = createVenta(40L, createUsuario(99L));
+        when(ventaRepository.findByIdempotencyKey(CLAVE)).thenReturn(Optional.of(ajena));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> ventaIdempotenciaService.registrar(createVenta(null, cajero), CLAVE));
+        verify(ventaService, never()).procesarYGuardarVenta(any(Venta.class));
+    }
+
+    @Test
+    void testRegistrar_WithoutKeyDelegatesDirectly() {
+        Venta nueva = createVenta(null, cajero);
+        when(ventaService.procesarYGuardarVenta(nueva)).thenReturn(nueva);
+
+        ventaIdempotenciaService.registrar(nueva, "  ");
+
+        assertNull(nueva.getIdempotencyKey());
+        verify(ventaService, times(1)).procesarYGuardarVenta(nueva);
+        verify(ventaRepository, never()).findByIdempotencyKey(anyString());
+        verify(ventaRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void testNormalizarClave_RejectsInvalidKeys() {
+        assertThrows(IllegalArgumentException.class, () -> VentaIdempotenciaService.normalizarClave("a".repeat(65)));
+        assertThrows(IllegalArgumentException.class, () -> VentaIdempotenciaService.normalizarClave("clave con espacios"));
+        assertEquals(CLAVE, VentaIdempotenciaService.normalizarClave(" " + CLAVE + " "));
+    }
+
+    // Helper methods
+
+    private Usuario createUsuario(Long id) {
+        Usuario u = new Usuario();
+        u.setId(id);
+        return u;
+    }
+
+    private Venta createVenta(Long id, Usuario usuario) {
+        Venta v = new Venta();
+        v.setId(id);
+        v.setUsuario(usuario);
+        return v;
+    }
+}
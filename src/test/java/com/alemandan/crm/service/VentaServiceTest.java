@@ -0,0 +1,278 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.events.VentaRegistradaEvent;
+import com.alemandan.crm.model.DetalleVenta;
+import com.alemandan.crm.model.Producto;
+import com.alemandan.crm.model.Venta;
+import com.alemandan.crm.repository.ProductoRepository;
+import com.alemandan.crm.repository.VentaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for VentaService checkout (procesarYGuardarVenta).
+ *
+ * Verifica el número de round-trips al repositorio por venta: los productos del ticket
+ * se cargan en una sola consulta sin importar cuántas líneas tenga, y el stock se descuenta
+ * con un UPDATE condicional (descontarStock) por producto.
+ */
+class VentaServiceTest {
+
+    @Mock
+    private VentaRepository ventaRepository;
+
+    @Mock
+    private ProductoRepository productoRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private ResumenDiarioService resumenDiarioService;
+
+    @Mock
+    private DashboardCounters dashboardCounters;
+
+    @InjectMocks
+    private VentaService ventaService;
+
+    /** Stock simulado de la base de datos, manipulado por el stub de descontarStock. */
+    private final Map<Long, AtomicInteger> stockDb = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(ventaRepository.save(any(Venta.class))).thenAnswer(invocation -> {
+            Venta v = invocation.getArgument(0);
+            v.setId(1L);
+            return v;
+        });
+        // Simula el UPDATE ... WHERE cantidad >= :qty: atómico, sin bloqueo en la aplicación
+        when(productoRepository.descontarStock(anyLong(), anyInt())).thenAnswer(invocation -> {
+            AtomicInteger stock = stockDb.get(invocation.<Long>getArgument(0));
+            int qty = invocation.getArgument(1);
+            if (stock == null) return 0;
+            while (true) {
+                int actual = stock.get();
+                if (actual < qty) return 0;
+                if (stock.compareAndSet(actual, actual - qty)) return 1;
+            }
+        });
+        when(productoRepository.stockActual(anyLong())).thenAnswer(invocation -> {
+            AtomicInteger stock = stockDb.get(invocation.<Long>getArgument(0));
+            return stock == null ? null : stock.get();
+        });
+    }
+
+    /**
+     * Tickets de 1, 10 y 50 líneas: una sola carga de productos, sin findById ni save por línea.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 50})
+    void testProcesarYGuardarVenta_LoadsProductsInOneRoundTrip(int lineas) {
+        List<Producto> catalogo = createProductos(lineas, 100);
+        stubFindAllById(catalogo);
+
+        Venta venta = createVenta(lineas, 2);
+        Venta saved = ventaService.procesarYGuardarVenta(venta);
+
+        assertNotNull(saved);
+        verify(productoRepository, times(1)).findAllById(anyIterable());
+        verify(productoRepository, times(lineas)).descontarStock(anyLong(), eq(2));
+        verify(productoRepository, never()).findById(anyLong());
+        verify(productoRepository, never()).save(any(Producto.class));
+        verify(ventaRepository, times(1)).save(any(Venta.class));
+
+        for (Producto p : catalogo) {
+            assertEquals(98, stockDb.get(p.getId()).get(), "Stock should be decremented by the conditional update");
+        }
+    }
+
+    @Test
+    void testProcesarYGuardarVenta_CalculatesTotalsFromProductPrice() {
+        List<Producto> catalogo = createProductos(1, 10);
+        catalogo.get(0).setPrecio(1000.0);
+        catalogo.get(0).setIva(BigDecimal.valueOf(19));
+        stubFindAllById(catalogo);
+
+        Venta saved = ventaService.procesarYGuardarVenta(createVenta(1, 3));
+
+        assertEquals(0, new BigDecimal("3000.00").compareTo(saved.getSubtotal()));
+        assertEquals(0, new BigDecimal("570.00").compareTo(saved.getIva()));
+        assertEquals(0, new BigDecimal("3570.00").compareTo(saved.getTotal()));
+        assertSame(catalogo.get(0), saved.getDetalles().get(0).getProducto());
+        verify(resumenDiarioService, times(1)).registrarVenta(saved);
+        verify(eventPublisher, times(1)).publishEvent(any(VentaRegistradaEvent.class));
+    }
+
+    @Test
+    void testProcesarYGuardarVenta_RepeatedLinesAreValidatedAgainstTotalQuantity() {
+        List<Producto> catalogo = createProductos(1, 5);
+        stubFindAllById(catalogo);
+
+        Venta venta = new Venta();
+        venta.getDetalles().add(createDetalle(1L, 3));
+        venta.getDetalles().add(createDetalle(1L, 3));
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> ventaService.procesarYGuardarVenta(venta));
+        assertTrue(ex.getMessage().contains("No hay suficiente stock"));
+        assertTrue(ex.getMessage().endsWith("Disponible: 5"));
+        verify(productoRepository, times(1)).descontarStock(1L, 6);
+        assertEquals(5, stockDb.get(1L).get(), "Stock must not change when validation fails");
+        verify(ventaRepository, never()).save(any(Venta.class));
+        verify(resumenDiarioService, never()).registrarVenta(any(Venta.class));
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    /**
+     * Otra caja vendió entre la carga de productos y el UPDATE: el mensaje informa el stock vigente,
+     * no la cantidad del Producto ya cargado. (La concurrencia real del UPDATE la cubre ProductoRepositoryStockTest.)
+     */
+    @Test
+    void testProcesarYGuardarVenta_InsufficientStockReportsCurrentQuantity() {
+        List<Producto> catalogo = createProductos(1, 10);
+        stubFindAllById(catalogo);
+        stockDb.get(1L).set(2);
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> ventaService.procesarYGuardarVenta(createVenta(1, 3)));
+
+        assertTrue(ex.getMessage().endsWith("Disponible: 2"), ex.getMessage());
+        verify(productoRepository).stockActual(1L);
+    }
+
+    @Test
+    void testProcesarYGuardarVenta_UnknownProductIsRejected() {
+        stubFindAllById(new ArrayList<>());
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> ventaService.procesarYGuardarVenta(createVenta(1, 1)));
+        assertTrue(ex.getMessage().contains("no encontrado"));
+    }
+
+    @Test
+    void testGetResumenVentas_ServedFromCountersWithoutQueries() {
+        when(dashboardCounters.totalVentas()).thenReturn(158L);
+        when(dashboardCounters.montoTotal()).thenReturn(new BigDecimal("5420000.00"));
+
+        Map<String, Object> r1 = ventaService.getResumenVentas();
+        Map<String, Object> r2 = ventaService.getResumenVentas();
+
+        assertEquals(158L, r1.get("totalVentas"));
+        assertEquals(new BigDecimal("5420000.00"), r1.get("montoTotal"));
+        assertNotNull(r1.get("fecha"));
+        assertNotSame(r1, r2, "Callers modify the returned map, each call needs its own");
+        verifyNoInteractions(ventaRepository);
+    }
+
+    @Test
+    void testFiltrarVentas_FiltersInDatabaseAndKeepsPageOrder() {
+        PageRequest pageable = PageRequest.of(1, 3);
+        when(ventaRepository.idsFiltrarEmpleado(eq(7L), any(), any(), eq(5L), eq("Efectivo"), eq(pageable)))
+                .thenReturn(new PageImpl<>(List.of(30L, 20L, 10L), pageable, 8));
+        when(ventaRepository.findConDetallesByIdIn(List.of(30L, 20L, 10L)))
+                .thenReturn(List.of(venta(10L), venta(30L), venta(20L)));
+
+        Page<Venta> pagina = ventaService.filtrarVentas(7L, "2025-03-01", "2025-03-31", 5L, "Efectivo", pageable);
+
+        assertEquals(List.of(30L, 20L, 10L), pagina.getContent().stream().map(Venta::getId).toList());
+        assertEquals(8, pagina.getTotalElements());
+        verify(ventaRepository).idsFiltrarEmpleado(7L, LocalDateTime.of(2025, 3, 1, 0, 0),
+                LocalDateTime.of(2025, 4, 1, 0, 0), 5L, "Efectivo", pageable);
+        verify(ventaRepository, never()).findByUsuarioId(anyLong());
+    }
+
+    @Test
+    void testFiltrarVentas_EmptyFiltersAreNullAndEmptyPageSkipsSecondQuery() {
+        PageRequest pageable = PageRequest.of(0, 50);
+        when(ventaRepository.idsFiltrarEmpleado(eq(7L), isNull(), isNull(), isNull(), isNull(), eq(pageable)))
+                .thenReturn(new PageImpl<>(new ArrayList<>(), pageable, 0));
+
+        Page<Venta> pagina = ventaService.filtrarVentas(7L, "", null, null, "", pageable);
+
+        assertTrue(pagina.isEmpty());
+        verify(ventaRepository, never()).findConDetallesByIdIn(any());
+    }
+
+    // Helper methods
+
+    private Venta venta(Long id) {
+        Venta v = new Venta();
+        v.setId(id);
+        return v;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubFindAllById(List<Producto> catalogo) {
+        when(productoRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            Iterable<Long> ids = invocation.getArgument(0);
+            List<Long> requested = new ArrayList<>();
+            ids.forEach(requested::add);
+            List<Producto> result = new ArrayList<>();
+            for (Producto p : catalogo) {
+                if (requested.contains(p.getId())) result.add(p);
+            }
+            return result;
+        });
+    }
+
+    private List<Producto> createProductos(int n, int stock) {
+        List<Producto> productos = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            Producto p = new Producto();
+            p.setId((long) i);
+            p.setNombre("Producto " + i);
+            p.setCantidad(stock);
+            p.setPrecio(100.0);
+            p.setIva(BigDecimal.ZERO);
+            productos.add(p);
+            stockDb.put(p.getId(), new AtomicInteger(stock));
+        }
+        return productos;
+    }
+
+    private Venta createVenta(int lineas, int cantidad) {
+        Venta venta = new Venta();
+        for (int i = 1; i <= lineas; i++) {
+            venta.getDetalles().add(createDetalle((long) i, cantidad));
+        }
+        venta.setMetodoPago("Efectivo");
+        return venta;
+    }
+
+    private DetalleVenta createDetalle(Long productoId, int cantidad) {
+        Producto ref = new Producto();
+        ref.setId(productoId);
+        DetalleVenta d = new DetalleVenta();
+        d.setProducto(ref);
+        d.setCantidad(cantidad);
+        return d;
+    }
+}
@@ -0,0 +1,181 @@
+package com.alemandan.crm.service;
+
+import com.alemandan.crm.events.VentaRegistradaEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for VentasEnVivoService
+ */
+class VentasEnVivoServiceTest {
+
+    @Mock
+    private DashboardCounters dashboardCounters;
+
+    private VentasEnVivoService service;
+
+    // Envíos encolados en el executor; se ejecutan a mano para simular un cliente lento
+    private final List<Runnable> pendientes = new ArrayList<>();
+    private boolean ejecutarAlInstante = true;
+
+    private final List<EmitterDePrueba> emitters = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        service = new VentasEnVivoService() {
+            @Override
+            SseEmitter crearEmitter() {
+                EmitterDePrueba e = new EmitterDePrueba();
+                emitters.add(e);
+                return e;
+            }
+        };
+        ReflectionTestUtils.setField(service, "dashboardCounters", dashboardCounters);
+        ReflectionTestUtils.setField(service, "dashboardStreamExecutor", (java.util.concurrent.Executor) tarea -> {
+            if (ejecutarAlInstante) tarea.run();
+            else pendientes.add(tarea);
+        });
+        ReflectionTestUtils.setField(service, "maxSuscriptores", 2);
+        ReflectionTestUtils.setField(service, "heartbeatMs", 60_000L);
+        when(dashboardCounters.ventasDelDia()).thenReturn(4L);
+        when(dashboardCounters.totalVentas()).thenReturn(10L);
+        when(dashboardCounters.montoTotal()).thenReturn(new BigDecimal("1000.00"));
+    }
+
+    @Test
+    void testSubscribeSendsTotalsThenOnlyNewSales() {
+        service.suscribir("admin@crm.com");
+        EmitterDePrueba cliente = emitters.get(0);
+        assertEquals(1, cliente.eventos.size());
+        assertEquals(4L, totales(cliente.eventos.get(0)).get("ventasDia"));
+        assertTrue(ventas(cliente.eventos.get(0)).isEmpty());
+
+        service.registrarVenta(venta(1L));
+        service.registrarVenta(venta(2L));
+        service.difundir();
+        service.difundir(); // sin ventas nuevas ni latido pendiente: nada
+
+        assertEquals(2, cliente.eventos.size());
+        assertEquals(List.of(1L, 2L), ids(cliente.eventos.get(1)));
+        assertEquals(false, cliente.eventos.get(1).get("perdidas"));
+    }
+
+    @Test
+    void testSlowClientGetsCoalescedUpdate() {
+        service.suscribir("admin@crm.com");
+        EmitterDePrueba cliente = emitters.get(0);
+        ejecutarAlInstante = false;
+
+        service.registrarVenta(venta(1L));
+        service.difundir();
+        assertEquals(1, pendientes.size());
+
+        // El envío anterior sigue en curso: no se encola otro
+        service.registrarVenta(venta(2L));
+        service.registrarVenta(venta(3L));
+        service.difundir();
+        assertEquals(1, pendientes.size());
+
+        pendientes.remove(0).run();
+        service.difundir();
+        pendientes.remove(0).run();
+
+        assertEquals(3, cliente.eventos.size());
+        assertEquals(List.of(1L), ids(cliente.eventos.get(1)));
+        assertEquals(List.of(2L, 3L), ids(cliente.eventos.get(2)));
+    }
+
+    @Test
+    void testClientBehindTheBufferGetsTotalsOnly() {
+        service.suscribir("admin@crm.com");
+        EmitterDePrueba cliente = emitters.get(0);
+        ejecutarAlInstante = false;
+
+        service.registrarVenta(venta(1L));
+        service.difundir();
+        for (long id = 2; id <= 2 + VentasEnVivoService.MAX_VENTAS_RECIENTES; id++) {
+            service.registrarVenta(venta(id));
+        }
+        service.difundir();
+        pendientes.remove(0).run();
+        ejecutarAlInstante = true;
+        service.difundir();
+
+        Map<String, Object> ultimo = cliente.eventos.get(cliente.eventos.size() - 1);
+        assertEquals(true, ultimo.get("perdidas"));
+        assertTrue(ventas(ultimo).isEmpty());
+        assertEquals(10L, totales(ultimo).get("totalVentas"));
+    }
+
+    @Test
+    void testRegistryIsBoundedAndDropsDisconnectedClients() {
+        service.suscribir("a@crm.com");
+        service.suscribir("b@crm.com");
+        assertThrows(IllegalStateException.class, () -> service.suscribir("c@crm.com"));
+        assertEquals(2, service.suscriptoresActivos());
+
+        emitters.get(0).desconectado = true;
+        service.registrarVenta(venta(1L));
+        service.difundir();
+
+        assertEquals(1, service.suscriptoresActivos());
+        assertEquals(List.of(1L), ids(emitters.get(1).eventos.get(1)));
+        service.suscribir("c@crm.com");
+        assertEquals(2, service.suscriptoresActivos());
+    }
+
+    // Helper methods
+
+    private static VentaRegistradaEvent venta(Long id) {
+        return new VentaRegistradaEvent(id, 7L, LocalDateTime.now(), new BigDecimal("100.00"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> totales(Map<String, Object> evento) {
+        return (Map<String, Object>) evento.get("totales");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<VentasEnVivoService.VentaEnVivo> ventas(Map<String, Object> evento) {
+        return (List<VentasEnVivoService.VentaEnVivo>) evento.get("ventas");
+    }
+
+    private static List<Long> ids(Map<String, Object> evento) {
+        return ventas(evento).stream().map(VentasEnVivoService.VentaEnVivo::getId).toList();
+    }
+
+    /**
+     * Guarda los datos JSON de cada evento "ventas" en lugar de escribirlos a una respuesta.
+     */
+    private static class EmitterDePrueba extends SseEmitter {
+        final List<Map<String, Object>> eventos = new ArrayList<>();
+        boolean desconectado = false;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void send(SseEventBuilder builder) throws IOException {
+            if (desconectado) throw new IOException("Broken pipe");
+            Set<ResponseBodyEmitter.DataWithMediaType> partes = builder.build();
+            for (ResponseBodyEmitter.DataWithMediaType parte : partes) {
+                if (parte.getData() instanceof Map) eventos.add((Map<String, Object>) parte.getData());
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.alemandan.crm.service.pdf;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.Image;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.BaseFont;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfWriter;
+import com.itextpdf.text.pdf.parser.PdfTextExtractor;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PdfResourceRegistry
+ */
+class PdfResourceRegistryTest {
+
+    @Test
+    void testFonts_LoadedOnceAndShared() {
+        PdfResourceRegistry registry = new PdfResourceRegistry();
+
+        Font f1 = registry.normalFont(10);
+        Font f2 = registry.normalFont(12);
+
+        assertNotNull(registry.baseFontNormal(), "Bundled DejaVuSans should be loaded when Roboto is not packaged");
+        assertSame(f1.getBaseFont(), f2.getBaseFont(), "Every document should reuse the same parsed BaseFont");
+        assertNotSame(f1, f2, "Font objects are mutable, each caller gets its own");
+        assertSame(registry.baseFontNegrita(), registry.headerFont(12).getBaseFont());
+    }
+
+    @Test
+    void testLogo_EachDocumentGetsItsOwnCopy() {
+        PdfResourceRegistry registry = new PdfResourceRegistry();
+
+        Image l1 = registry.logo();
+        Image l2 = registry.logo();
+
+        assertNotNull(l1);
+        assertNotSame(l1, l2);
+        assertEquals(l1.getScaledWidth(), l2.getScaledWidth(), 0.01);
+        assertTrue(l1.getScaledWidth() <= 80f && l1.getScaledHeight() <= 80f);
+    }
+
+    @Test
+    void testConcurrentFirstUse_ParsesOnce() throws Exception {
+        PdfResourceRegistry registry = new PdfResourceRegistry();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<BaseFont>> tareas = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                tareas.add(() -> registry.normalFont(10).getBaseFont());
+            }
+            BaseFont primera = null;
+            for (Future<BaseFont> f : pool.invokeAll(tareas)) {
+                BaseFont bf = f.get();
+                if (primera == null) primera = bf;
+                assertSame(primera, bf);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Varios recibos seguidos: cada documento usa los mismos BaseFont ya parseados (no se vuelven a leer las TTF)
+     * y sigue siendo un PDF válido aunque otro documento haya usado antes la misma fuente.
+     */
+    @Test
+    void testPerReceipt_SameBaseFontReusedAcrossDocuments() throws Exception {
+        PdfResourceRegistry registry = new PdfResourceRegistry();
+        BaseFont normal = registry.baseFontNormal();
+        BaseFont negrita = registry.baseFontNegrita();
+
+        for (int i = 1; i <= 5; i++) {
+            Font texto = registry.normalFont(10);
+            Font titulo = registry.headerFont(12);
+            assertSame(normal, texto.getBaseFont(), "Receipt " + i + " must reuse the parsed regular font");
+            assertSame(negrita, titulo.getBaseFont(), "Receipt " + i + " must reuse the parsed bold font");
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Document document = new Document();
+            PdfWriter.getInstance(document, out);
+            document.open();
+            document.add(new Paragraph("Recibo #" + i, titulo));
+            document.add(new Paragraph("Café molido x 2", texto));
+            document.close();
+
+            PdfReader reader = new PdfReader(out.toByteArray());
+            try {
+                assertTrue(PdfTextExtractor.getTextFromPage(reader, 1).contains("Recibo #" + i));
+            } finally {
+                reader.close();
+            }
+        }
+    }
+}